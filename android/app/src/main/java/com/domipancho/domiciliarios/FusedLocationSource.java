@@ -0,0 +1,110 @@
+package com.domipancho.domiciliarios;
+
+import android.content.Context;
+import android.location.Location;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.GoogleApiAvailability;
+import com.google.android.gms.location.FusedLocationProviderClient;
+import com.google.android.gms.location.LocationCallback;
+import com.google.android.gms.location.LocationRequest;
+import com.google.android.gms.location.LocationResult;
+import com.google.android.gms.location.LocationServices;
+import com.google.android.gms.location.Priority;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * El proveedor fusionado de Play services. Fuera de entrega pide los fixes con
+ * {@link SamplingPolicy.Profile#getMaxUpdateDelayMs()}: el chip los junta y los
+ * entrega en lote una vez por intervalo de subida, en vez de despertar la CPU
+ * por cada uno. En entrega el retraso es 0 y se comporta como el GPS de siempre.
+ *
+ * Confinada al hilo de tracking (el callback y la última conocida llegan en su looper).
+ */
+final class FusedLocationSource implements LocationSource {
+    private static final String TAG = "LocationService";
+
+    private final FusedLocationProviderClient client;
+    private final Looper looper;
+    private final Handler handler;
+    private final LocationSource.Listener listener;
+    private boolean registrado;
+
+    private final LocationCallback callback = new LocationCallback() {
+        @Override
+        public void onLocationResult(LocationResult result) {
+            List<Location> locations = result.getLocations();
+            if (locations.isEmpty()) {
+                return;
+            }
+            List<LocationFix> fixes = new ArrayList<>(locations.size());
+            for (Location location : locations) {
+                fixes.add(LocationManagerSource.toFix(location));
+            }
+            listener.onLocations(fixes);
+        }
+    };
+
+    FusedLocationSource(Context context, Looper looper, LocationSource.Listener listener) {
+        this.client = LocationServices.getFusedLocationProviderClient(context);
+        this.looper = looper;
+        this.handler = new Handler(looper);
+        this.listener = listener;
+    }
+
+    /**
+     * Play services instalado y al día (si no, queda el LocationManager)
+     */
+    static boolean isAvailable(Context context) {
+        return GoogleApiAvailability.getInstance().isGooglePlayServicesAvailable(context)
+            == ConnectionResult.SUCCESS;
+    }
+
+    @Override
+    public boolean request(SamplingPolicy.Profile perfil) {
+        LocationRequest request = new LocationRequest.Builder(Priority.PRIORITY_HIGH_ACCURACY, perfil.getGpsIntervalMs())
+            .setMinUpdateDistanceMeters(perfil.getGpsMinDistanceM())
+            .setMaxUpdateDelayMillis(perfil.getMaxUpdateDelayMs())
+            .build();
+        try {
+            if (registrado) {
+                client.removeLocationUpdates(callback);
+            }
+            client.requestLocationUpdates(request, callback, looper);
+            registrado = true;
+            Log.d(TAG, "✅ Proveedor fusionado activado - Lote: " + perfil.getMaxUpdateDelayMs() + "ms");
+            return true;
+        } catch (SecurityException e) {
+            Log.e(TAG, "❌ Error de permisos: " + e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public void requestLastKnown() {
+        try {
+            client.getLastLocation().addOnSuccessListener(handler::post, location -> {
+                if (location != null) {
+                    listener.onLastKnown(Collections.singletonList(LocationManagerSource.toFix(location)));
+                }
+            });
+        } catch (SecurityException e) {
+            Log.e(TAG, "❌ Error de permisos: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void stop() {
+        client.removeLocationUpdates(callback);
+        registrado = false;
+    }
+
+    @Override
+    public String getName() {
+        return "fused";
+    }
+}
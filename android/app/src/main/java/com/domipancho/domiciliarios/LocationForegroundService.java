@@ -7,41 +7,108 @@ import android.app.PendingIntent;
 import android.app.Service;
 import android.content.Context;
 import android.content.Intent;
-import android.location.Location;
-import android.location.LocationListener;
-import android.location.LocationManager;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkInfo;
+import android.net.NetworkRequest;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Debug;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IBinder;
-import android.os.Looper;
 import android.os.PowerManager;
+import android.os.Process;
 import android.util.Log;
 import androidx.core.app.NotificationCompat;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.nio.charset.StandardCharsets;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.json.JSONObject;
 import android.app.AlarmManager;
 import android.os.SystemClock;
 
-public class LocationForegroundService extends Service implements LocationListener {
+public class LocationForegroundService extends Service implements LocationSource.Listener {
     private static final String TAG = "LocationService";
     private static final String CHANNEL_ID = "location_tracking_channel";
     private static final int NOTIFICATION_ID = 12345;
     
-    private LocationManager locationManager;
-    private PowerManager.WakeLock wakeLock;
+    // ✅ Cambio de estado de pedido llegado por push (OrderMessagingService)
+    static final String ACTION_PEDIDO_ESTADO = "com.domipancho.domiciliarios.PEDIDO_ESTADO";
+    static final String EXTRA_PEDIDO_ID = "pedidoId";
+    static final String EXTRA_ESTADO = "estado";
+    
+    // ✅ Todo el pipeline corre en su propio hilo, fuera del hilo de la WebView.
+    // Confinado a ese hilo (solo se toca desde el handler): el motor (filtro, simplificador,
+    // muestreo, scheduler, notificación y pedidos activos) y la fuente de ubicación.
+    private HandlerThread trackingThread;
     private Handler handler;
-    private Runnable locationUpdateRunnable;
-    private Runnable heartbeatRunnable;
+    private Runnable tickRunnable;
+    private boolean iniciado; // solo desde el hilo principal (onStartCommand)
+    
+    // ✅ Fusionado (fixes en lote) si hay Play services; si no, LocationManager
+    private LocationSource fuente;
+    
+    // ✅ Wake lock por ciclos: CPU retenida solo alrededor del trabajo real
+    private WakeLockManager wakeLocks;
+    private AlarmManager alarmManager;
+    private AlarmManager.OnAlarmListener tickAlarm; // despierta el tick en reposo profundo (API 24+)
+    private PowerManager.WakeLock legacyWakeLock;   // API 23: sin alarmas con listener, retención continua
+    private static final long TICK_ALARM_WINDOW_MS = 5000;
+    
+    // ✅ Notificación: un solo builder, se publica solo si cambia el texto visible
+    private NotificationCompat.Builder notificationBuilder;
+    private NotificationManager notificationManager;
+    private boolean primerPlanoPendiente; // el próximo render va por startForeground
+    
+    static final String SERVER_URL = "https://domipancho.com";
+    private String serverUrl = SERVER_URL;
+    
+    // ✅ Decisiones por fix y por tick (filtro, simplificador, muestreo adaptativo, un solo
+    // tick para ubicación/heartbeat/pedidos, notificación): ver TrackingEngine
+    private TrackingEngine engine;
+    private SamplingPolicy.Profile perfilRegistrado;
+    
+    // ✅ Bandeja persistente: ningún fix se pierde si falla el envío
+    private static final int OUTBOX_BATCH_SIZE = 50;
+    private static final int OUTBOX_MAX_PENDING = 20000;
+    private LocationOutbox outbox;
+    private final AtomicBoolean drenandoOutbox = new AtomicBoolean(false);
+    private final ConcurrentLinkedQueue<LocationFix> fixesPorGuardar = new ConcurrentLinkedQueue<>();
+    private volatile boolean loteBinarioSoportado = true; // false si el servidor no acepta el formato compacto
+    
+    // ✅ Sin red no se sube nada; errores del servidor con backoff y la bandeja en ráfagas
+    private final UploadGate uploadGate = new UploadGate();
+    // Carril de la última subida pedida por el motor (para la edad del punto por carril)
+    private volatile UploadLanes.Lane carrilActual = UploadLanes.Lane.IDLE;
+    private final Runnable drenarBandeja = this::drainOutbox;
+    private ConnectivityManager connectivityManager;
+    private ConnectivityManager.NetworkCallback networkCallback;
     
-    private Location lastLocation;
-    private String serverUrl = "https://domipancho.com";
-    private long lastUpdateTime = 0;
-    private static final long UPDATE_INTERVAL = 10000; // 10 segundos
-    private boolean tienePedidosActivos = false; // ✅ NUEVO
+    // ✅ El único polling de pedidos: lista indexada por id, diff y usuario en memoria.
+    // Cada 10 s mientras la WebView muestra los pedidos; si no, el respaldo de siempre.
+    private static final long PEDIDOS_VIGILADOS_INTERVAL_MS = 10000;
+    private OrderPoller pedidosPoller;
+    // ✅ Solo con sesión: sin ella (o con la que el servidor ya rechazó) los pedidos los
+    // sigue verificando JS, y se reintenta cuando el plugin manda una sesión nueva
+    private volatile String sesionRechazada;
+    private final TrackingEvents.Control control = vigilados -> handler.post(() -> vigilarPedidos(vigilados));
+    
+    // ✅ Proceso propio (":tracking"): la WebView vive aparte y el plugin se enlaza por IPC
+    private TrackingIpcServer ipc;
+    
+    // ✅ Pool acotado para toda la red (sin un hilo nuevo por tick)
+    private static final int NET_THREADS = 2;
+    private static final int NET_QUEUE_CAPACITY = 8;
+    private static final String TASK_DRENADO = "drenado";
+    
+    // ✅ Métricas sin locks (getStats del plugin); foto periódica y volcado opcional a archivo
+    private final TrackingMetrics metrics = TrackingMetrics.get();
+    private NetworkExecutor networkExecutor;
+    private ServiceHttpClient httpClient;
     
     @Override
     public void onCreate() {
@@ -49,272 +116,708 @@ public class LocationForegroundService extends Service implements LocationListen
         Log.d(TAG, "✅ Servicio creado");
         
         createNotificationChannel();
+        crearNotificacion();
+        engine = new TrackingEngine(new Acciones(), this::publicarNotificacion, System.currentTimeMillis());
         
-        // ✅ Wake Lock PARTIAL
+        // ✅ Wake Lock PARTIAL, solo con timeout y alrededor del trabajo (ya no permanente)
         PowerManager powerManager = (PowerManager) getSystemService(POWER_SERVICE);
-        wakeLock = powerManager.newWakeLock(
+        PowerManager.WakeLock wakeLock = powerManager.newWakeLock(
             PowerManager.PARTIAL_WAKE_LOCK,
             "DomiPancho::LocationWakeLock"
         );
-        wakeLock.acquire();
-        Log.d(TAG, "✅ Wake Lock adquirido");
-        
-        handler = new Handler(Looper.getMainLooper());
-        
-        // ✅ Runnable para actualización de ubicación
-        locationUpdateRunnable = new Runnable() {
+        wakeLock.setReferenceCounted(false);
+        wakeLocks = new WakeLockManager(new WakeLockManager.Lock() {
             @Override
-            public void run() {
-                if (lastLocation != null) {
-                    long currentTime = System.currentTimeMillis();
-                    if (currentTime - lastUpdateTime >= UPDATE_INTERVAL) {
-                        sendLocationToServer(lastLocation);
-                        lastUpdateTime = currentTime;
-                    }
+            public void acquire(long timeoutMs) {
+                wakeLock.acquire(timeoutMs);
+            }
+            
+            @Override
+            public void release() {
+                if (wakeLock.isHeld()) {
+                    wakeLock.release();
                 }
-                handler.postDelayed(this, UPDATE_INTERVAL);
             }
-        };
+        }, SystemClock::elapsedRealtime);
+        
+        alarmManager = (AlarmManager) getSystemService(Context.ALARM_SERVICE);
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.N) {
+            legacyWakeLock = powerManager.newWakeLock(
+                PowerManager.PARTIAL_WAKE_LOCK,
+                "DomiPancho::LegacyWakeLock"
+            );
+            legacyWakeLock.acquire();
+            Log.d(TAG, "✅ Wake Lock continuo adquirido (API " + Build.VERSION.SDK_INT + ")");
+        }
+        
+        try {
+            outbox = new LocationOutbox(new File(getFilesDir(), "location_outbox"), OUTBOX_MAX_PENDING);
+            Log.d(TAG, "✅ Bandeja de ubicaciones abierta - Pendientes: " + outbox.pendingCount());
+        } catch (IOException e) {
+            Log.e(TAG, "❌ Error abriendo bandeja de ubicaciones: " + e.getMessage());
+        }
         
-        // ✅ Runnable para heartbeat + verificar pedidos activos
-        heartbeatRunnable = new Runnable() {
+        networkExecutor = new NetworkExecutor("DomiPancho-Net", NET_THREADS, NET_QUEUE_CAPACITY);
+        // Cada envío retiene la CPU desde que entra a la cola hasta que termina
+        networkExecutor.setGuard(new NetworkExecutor.Guard() {
             @Override
-            public void run() {
-                sendHeartbeat();
-                verificarPedidosActivos(); // ✅ NUEVO
-                handler.postDelayed(this, 30000); // Cada 30 segundos
+            public void enter() {
+                wakeLocks.acquire();
             }
-        };
+            
+            @Override
+            public void exit() {
+                wakeLocks.release();
+            }
+        });
+        // ✅ La sesión del login de la WebView, que manda el plugin (ver TrackingIpc)
+        httpClient = new ServiceHttpClient(serverUrl,
+            new SessionCookieJar(serverUrl, TrackingStateManager.sessionStore(this)));
+        pedidosPoller = new OrderPoller(httpClient, new OrderPoller.Listener() {
+            @Override
+            public void onOrderEvents(List<OrderBook.Event> events) {
+                Log.d(TAG, "📦 Pedidos: " + events);
+                TrackingEvents.publishOrderEvents(events);
+            }
+            
+            @Override
+            public void onActiveOrders(boolean enCamino) {
+                actualizarPedidosActivos(enCamino);
+            }
+        });
+        
+        trackingThread = new HandlerThread("DomiPancho-Tracking", Process.THREAD_PRIORITY_BACKGROUND);
+        trackingThread.start();
+        handler = new Handler(trackingThread.getLooper());
+        ipc = new TrackingIpcServer(trackingThread.getLooper(), this::estadisticas);
+        TrackingEvents.setListener(ipc);
+        
+        // ✅ Re-arranque tibio: pedidos, carril y último fix como quedaron guardados. La
+        // notificación sale bien de entrada y un fix reciente se sube en el primer tick,
+        // sin esperar a getLastKnownLocation ni a la verificación de pedidos por red.
+        long creadoEn = SystemClock.elapsedRealtime();
+        TrackingState estado = TrackingStateManager.snapshot(this);
+        Log.d(TAG, "✅ Estado de tracking - " + estado);
+        handler.post(() -> {
+            boolean tibio = engine.restore(estado, System.currentTimeMillis());
+            metrics.onServiceStarted(tibio, creadoEn);
+            TrackingEvents.publishPedidosActivos(engine.hasActiveOrders());
+            Log.d(TAG, tibio ? "♨️ Arranque tibio desde el fix guardado" : "🧊 Arranque en frío");
+        });
+        TrackingEvents.setControl(control);
+        vigilarRed();
+        
+        // ✅ Tick único: corre todo lo vencido (y lo que está por vencer) en la misma despertada
+        tickRunnable = () -> wakeLocks.run(() -> engine.tick(System.currentTimeMillis()));
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            tickAlarm = () -> {
+                handler.removeCallbacks(tickRunnable);
+                tickRunnable.run();
+            };
+        }
     }
     
-    @Override
-    public int onStartCommand(Intent intent, int flags, int startId) {
-        Log.d(TAG, "✅ onStartCommand - Iniciando servicio foreground");
+    /**
+     * Lo que el motor pide; todo llega desde el hilo del handler
+     */
+    private final class Acciones implements TrackingEngine.Actions {
+        @Override
+        public void registerProfile(SamplingPolicy.Profile profile) {
+            registrarListeners(profile);
+        }
+        
+        @Override
+        public void scheduleTick(long delayMs) {
+            programarTick(delayMs);
+        }
         
-        // ✅ Verificar si tiene pedidos activos al iniciar
-        verificarPedidosActivos();
+        @Override
+        public void sendPoints(List<LocationFix> points, UploadLanes.Lane lane) {
+            enviarPuntos(points, lane);
+        }
         
-        // ✅ Iniciar como Foreground Service
-        Notification notification = createNotification();
-        startForeground(NOTIFICATION_ID, notification);
+        @Override
+        public void checkOrders() {
+            verificarPedidosActivos();
+        }
         
-        // ✅ Iniciar tracking
-        startLocationTracking();
+        @Override
+        public void sendHeartbeat() {
+            LocationForegroundService.this.sendHeartbeat();
+        }
         
-        // ✅ Iniciar handlers
-        handler.post(locationUpdateRunnable);
-        handler.post(heartbeatRunnable);
+        @Override
+        public void refreshStats(long now) {
+            actualizarMetricas(now);
+        }
         
-        return START_REDELIVER_INTENT;
+        @Override
+        public void persistFix(LocationFix fix) {
+            // En memoria ya; a disco en diferido, junto con cualquier otro cambio de estado
+            TrackingStateManager.setLastFix(LocationForegroundService.this, fix);
+        }
     }
     
-    private void startLocationTracking() {
-        locationManager = (LocationManager) getSystemService(Context.LOCATION_SERVICE);
+    /**
+     * Estado de red por callbacks de ConnectivityManager (sin consultar en cada envío)
+     */
+    private void vigilarRed() {
+        connectivityManager = (ConnectivityManager) getSystemService(Context.CONNECTIVITY_SERVICE);
+        uploadGate.setOnline(hayRed(), System.currentTimeMillis());
         
-        try {
-            // ✅ GPS Provider
-            if (locationManager.isProviderEnabled(LocationManager.GPS_PROVIDER)) {
-                locationManager.requestLocationUpdates(
-                    LocationManager.GPS_PROVIDER,
-                    5000,
-                    5,
-                    this,
-                    Looper.getMainLooper()
-                );
-                Log.d(TAG, "✅ GPS Provider activado");
+        networkCallback = new ConnectivityManager.NetworkCallback() {
+            @Override
+            public void onAvailable(Network network) {
+                handler.post(() -> aplicarRed(true));
             }
             
-            // ✅ Network Provider
-            if (locationManager.isProviderEnabled(LocationManager.NETWORK_PROVIDER)) {
-                locationManager.requestLocationUpdates(
-                    LocationManager.NETWORK_PROVIDER,
-                    10000,
-                    10,
-                    this,
-                    Looper.getMainLooper()
-                );
-                Log.d(TAG, "✅ Network Provider activado");
+            @Override
+            public void onLost(Network network) {
+                // Puede quedar otra red (wifi -> datos): se mira la activa
+                handler.post(() -> aplicarRed(hayRed()));
             }
-            
-            // ✅ Última ubicación conocida
-            Location lastKnownGPS = locationManager.getLastKnownLocation(LocationManager.GPS_PROVIDER);
-            Location lastKnownNetwork = locationManager.getLastKnownLocation(LocationManager.NETWORK_PROVIDER);
-            
-            if (lastKnownGPS != null) {
-                lastLocation = lastKnownGPS;
-                Log.d(TAG, "✅ Última ubicación GPS obtenida");
-            } else if (lastKnownNetwork != null) {
-                lastLocation = lastKnownNetwork;
-                Log.d(TAG, "✅ Última ubicación Network obtenida");
+        };
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+                connectivityManager.registerDefaultNetworkCallback(networkCallback);
+            } else {
+                connectivityManager.registerNetworkCallback(
+                    new NetworkRequest.Builder().addCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET).build(),
+                    networkCallback);
             }
-            
-        } catch (SecurityException e) {
-            Log.e(TAG, "❌ Error de permisos: " + e.getMessage());
+        } catch (RuntimeException e) {
+            // Sin callback se sigue como antes: siempre con red
+            networkCallback = null;
+            Log.e(TAG, "❌ Error registrando callback de red: " + e.getMessage());
         }
     }
     
+    private boolean hayRed() {
+        NetworkInfo info = connectivityManager.getActiveNetworkInfo();
+        return info != null && info.isConnected();
+    }
+    
+    /**
+     * Desde el hilo del handler. Al volver la red, la bandeja se drena tras una
+     * espera al azar (la flota entera recupera señal a la vez tras una caída).
+     */
+    private void aplicarRed(boolean conectado) {
+        boolean antes = uploadGate.isOnline();
+        long espera = uploadGate.setOnline(conectado, System.currentTimeMillis());
+        if (!conectado) {
+            if (antes) {
+                Log.w(TAG, "📵 Sin red: las ubicaciones quedan en la bandeja");
+            }
+            handler.removeCallbacks(drenarBandeja);
+            return;
+        }
+        if (espera >= 0) {
+            Log.d(TAG, "📶 Red de vuelta - Drenando bandeja en " + espera + " ms");
+            handler.removeCallbacks(drenarBandeja);
+            handler.postDelayed(drenarBandeja, espera);
+        }
+    }
+    
+    /**
+     * Programa el próximo tick. Despierto basta el handler; con la CPU dormida el
+     * reloj del handler se detiene, así que una alarma inexacta lo despierta
+     * (la que llegue primero cancela a la otra).
+     */
+    private void programarTick(long delayMs) {
+        handler.removeCallbacks(tickRunnable);
+        handler.postDelayed(tickRunnable, delayMs);
+        
+        if (tickAlarm != null) {
+            alarmManager.cancel(tickAlarm);
+            alarmManager.setWindow(
+                AlarmManager.ELAPSED_REALTIME_WAKEUP,
+                SystemClock.elapsedRealtime() + delayMs,
+                TICK_ALARM_WINDOW_MS,
+                "DomiPancho:tick",
+                tickAlarm,
+                handler
+            );
+        }
+    }
+    
+    /**
+     * Refresca los valores de estado de las métricas, deja el resumen en el log
+     * y, si getStats lo pidió, agrega la foto al archivo de estadísticas
+     */
+    private void actualizarMetricas(long now) {
+        refrescarMetricas();
+        logStats();
+        
+        if (metrics.isDumpEnabled()) {
+            try {
+                metrics.dump(new File(getFilesDir(), TrackingMetrics.DUMP_FILE_NAME), now);
+            } catch (IOException e) {
+                Log.e(TAG, "❌ Error volcando estadísticas: " + e.getMessage());
+            }
+        }
+    }
+    
+    private void refrescarMetricas() {
+        metrics.setBacklog(outbox != null ? outbox.pendingCount() : 0);
+        metrics.setWakeLock(wakeLocks.getHeldMsInHour(SystemClock.elapsedRealtime()), wakeLocks.getTotalHeldMs());
+        metrics.setBytes(httpClient.getBytesSent(), httpClient.getBytesReceived());
+        metrics.setMemory(Debug.getPss()); // de este proceso, sin la WebView
+    }
+    
+    /**
+     * getStats del plugin, por IPC desde el hilo de tracking: valores al día y la foto
+     */
+    private Bundle estadisticas(int dump) {
+        if (dump != TrackingIpc.DUMP_SIN_CAMBIO) {
+            metrics.setDumpEnabled(dump == TrackingIpc.DUMP_ON);
+            Log.d(TAG, "📊 Volcado de estadísticas: " + metrics.isDumpEnabled());
+        }
+        refrescarMetricas();
+        
+        Bundle data = new Bundle();
+        data.putString(TrackingIpc.KEY_JSON, metrics.toJson(System.currentTimeMillis()));
+        if (metrics.isDumpEnabled()) {
+            data.putString(TrackingIpc.KEY_DUMP_FILE,
+                new File(getFilesDir(), TrackingMetrics.DUMP_FILE_NAME).getAbsolutePath());
+        }
+        return data;
+    }
+    
+    private void logStats() {
+        Log.d(TAG, "📊 Red - " + networkExecutor + " - " + httpClient);
+        Log.d(TAG, "📊 Pedidos - " + pedidosPoller);
+        Log.d(TAG, "📊 Subidas - " + uploadGate);
+        Log.d(TAG, "📊 Carriles - " + engine.getUploadLanes());
+        Log.d(TAG, "📊 Tick - " + engine.getScheduler());
+        Log.d(TAG, "📊 Filtro - " + engine.getFixFilter());
+        Log.d(TAG, "📊 Simplificador - " + engine.getSimplifier());
+        Log.d(TAG, "📊 Wake lock - " + wakeLocks);
+        Log.d(TAG, "📊 Notificación - " + engine.getNotificationRenderer());
+    }
+    
     @Override
-    public void onLocationChanged(Location location) {
-        if (location != null) {
-            lastLocation = location;
-            Log.d(TAG, "📍 Nueva ubicación: " + location.getLatitude() + ", " + location.getLongitude() 
-                + " - Precisión: " + location.getAccuracy() + "m");
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        // Un push ya atendido no se re-entrega si matan el proceso (un EN_CAMINO viejo
+        // volvería a marcar pedidos activos): START_STICKY suelta solo ese intent, el de
+        // inicio se sigue re-entregando y un reinicio sin intent retoma el tracking
+        boolean push = intent != null && ACTION_PEDIDO_ESTADO.equals(intent.getAction());
+        if (push) {
+            manejarEstadoPedido(intent);
+            if (iniciado) {
+                return START_STICKY; // Ya estaba rastreando: solo era el aviso
+            }
+        }
+        
+        Log.d(TAG, "✅ onStartCommand - Iniciando servicio foreground");
+        iniciado = true;
+        
+        handler.post(() -> {
+            // ✅ Iniciar como Foreground Service (el motor publica la notificación ya)
+            primerPlanoPendiente = true;
             
-            // ✅ Actualizar notificación
-            updateNotificationWithLocation(location);
+            // ✅ Iniciar tracking: listeners con el perfil actual y tick inmediato
+            // (sin duplicarlo si el servicio ya estaba corriendo). El primer tick
+            // verifica pedidos activos de inmediato: todas las tareas arrancan vencidas.
+            if (fuente == null) {
+                fuente = crearFuente();
+            }
+            engine.start(System.currentTimeMillis());
+            fuente.requestLastKnown();
+            TrackingEvents.publishRunning(true);
+        });
+        
+        // ✅ Enviar lo que quedó pendiente antes de un reinicio (en el hilo de tracking:
+        // la bandeja se bloquea durante cada append con fsync)
+        handler.post(() -> {
+            if (outbox != null && outbox.pendingCount() > 0) {
+                drainOutbox();
+            }
+        });
+        
+        return push ? START_STICKY : START_REDELIVER_INTENT;
+    }
+    
+    /**
+     * Fusionado si hay Play services (lotes fuera de entrega); si no, el LocationManager de siempre
+     */
+    private LocationSource crearFuente() {
+        LocationSource creada = FusedLocationSource.isAvailable(this)
+            ? new FusedLocationSource(this, handler.getLooper(), this)
+            : new LocationManagerSource(this, handler.getLooper(), this);
+        Log.d(TAG, "📡 Fuente de ubicación: " + creada.getName());
+        return creada;
+    }
+    
+    @Override
+    public void onLastKnown(List<LocationFix> candidatas) {
+        // ✅ También pasan por el filtro: pueden ser viejas o muy imprecisas
+        for (LocationFix candidata : candidatas) {
+            if (procesarFix(candidata) != null) {
+                Log.d(TAG, "✅ Última ubicación " + candidata.getProvider() + " obtenida");
+                return;
+            }
         }
     }
     
-    private void updateNotificationWithLocation(Location location) {
-        Notification notification = createNotificationWithLocation(location);
-        NotificationManager notificationManager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
-        notificationManager.notify(NOTIFICATION_ID, notification);
+    /**
+     * Registra la fuente con los intervalos del perfil.
+     * Solo la toca si el perfil cambió desde el último registro.
+     */
+    private void registrarListeners(SamplingPolicy.Profile perfil) {
+        if (fuente == null || perfil == perfilRegistrado) {
+            return;
+        }
+        if (fuente.request(perfil)) {
+            perfilRegistrado = perfil;
+            Log.d(TAG, "🎚️ Perfil de muestreo: " + perfil);
+            TrackingEvents.publishPerfil(perfil);
+        }
+    }
+    
+    /**
+     * Pasa el fix por el filtro de calidad y el simplificador (ver {@link TrackingEngine#process}).
+     * Devuelve el fix suavizado o null si se descartó.
+     */
+    private LocationFix procesarFix(LocationFix raw) {
+        metrics.onFixReceived(raw.getProvider());
+        LocationFix filtrado = engine.process(raw);
+        if (filtrado == null) {
+            metrics.onFixFiltered();
+            Log.d(TAG, "🚫 Fix descartado (" + raw.getProvider() + ", " + raw.getAccuracy() + "m)");
+        }
+        return filtrado;
+    }
+    
+    @Override
+    public void onLocations(List<LocationFix> fixes) {
+        // ✅ CPU retenida solo mientras se procesa el fix (o el lote entero)
+        wakeLocks.run(() -> manejarUbicaciones(fixes));
+    }
+    
+    private void manejarUbicaciones(List<LocationFix> fixes) {
+        LocationFix nuevo = fixes.get(fixes.size() - 1);
+        Log.d(TAG, "📍 Nueva ubicación: " + nuevo.getLatitude() + ", " + nuevo.getLongitude() 
+            + " - Precisión: " + nuevo.getAccuracy() + "m" + (fixes.size() > 1 ? " - Lote: " + fixes.size() : ""));
+        
+        // ✅ Filtro, muestreo y notificación (solo si cambió lo que se ve); los puntos
+        // de un lote esperan al tick de subida como cualquier otro
+        for (LocationFix raw : fixes) {
+            metrics.onFixReceived(raw.getProvider());
+        }
+        long aceptadosAntes = engine.getFixFilter().getAcceptedCount();
+        LocationFix fix = engine.onFixes(fixes, System.currentTimeMillis());
+        long descartados = fixes.size() - (engine.getFixFilter().getAcceptedCount() - aceptadosAntes);
+        for (long i = 0; i < descartados; i++) {
+            metrics.onFixFiltered();
+        }
+        if (fix == null) {
+            Log.d(TAG, "🚫 Fix descartado (" + nuevo.getProvider() + ", " + nuevo.getAccuracy() + "m)");
+            return;
+        }
+        
+        // ✅ La WebView recibe los fixes nativos (el plugin los junta y limita)
+        TrackingEvents.publishFix(fix);
     }
     
-    // ✅ NUEVA FUNCIÓN: Verificar si tiene pedidos activos
+    /**
+     * Una ronda del poller: GET condicional de la lista (304 sin cuerpo si nada cambió).
+     * Los pedidos en camino deciden el muestreo y la notificación; los cambios van a la WebView.
+     */
     private void verificarPedidosActivos() {
-        new Thread(() -> {
-            HttpURLConnection conn = null;
+        if (!uploadGate.isOnline()) {
+            return; // sin red no hay nada que verificar; al volver lo hace el tick
+        }
+        String sesion = TrackingStateManager.getSession(this);
+        if (sesion.isEmpty() || sesion.equals(sesionRechazada)) {
+            return;
+        }
+        networkExecutor.submitOnce(TrackingEngine.TASK_PEDIDOS, () -> {
             try {
-                URL url = new URL(serverUrl + "/api/pedidos-domiciliario");
-                conn = (HttpURLConnection) url.openConnection();
-                conn.setRequestMethod("GET");
-                conn.setRequestProperty("Content-Type", "application/json");
-                conn.setRequestProperty("X-Requested-With", "XMLHttpRequest");
-                conn.setConnectTimeout(10000);
-                conn.setReadTimeout(10000);
-                
-                int responseCode = conn.getResponseCode();
-                if (responseCode == 200) {
-                    // Leer respuesta
-                    java.io.BufferedReader br = new java.io.BufferedReader(
-                        new java.io.InputStreamReader(conn.getInputStream(), "utf-8")
-                    );
-                    StringBuilder response = new StringBuilder();
-                    String responseLine;
-                    while ((responseLine = br.readLine()) != null) {
-                        response.append(responseLine.trim());
-                    }
-                    
-                    // Parsear JSON
-                    org.json.JSONArray pedidos = new org.json.JSONArray(response.toString());
-                    
-                    // Contar pedidos "camino a tu casa"
-                    int count = 0;
-                    for (int i = 0; i < pedidos.length(); i++) {
-                        JSONObject pedido = pedidos.getJSONObject(i);
-                        String estado = pedido.optString("estado", "");
-                        if ("camino a tu casa".equals(estado)) {
-                            count++;
-                        }
-                    }
-                    
-                    boolean tienePedidos = count > 0;
-                    
-                    // Solo actualizar si cambió
-                    if (tienePedidosActivos != tienePedidos) {
-                        tienePedidosActivos = tienePedidos;
-                        Log.d(TAG, "📊 Pedidos activos: " + tienePedidos);
-                        
-                        // Actualizar notificación
-                        if (lastLocation != null) {
-                            handler.post(() -> updateNotificationWithLocation(lastLocation));
-                        }
-                    }
-                    
+                int code = pedidosPoller.poll();
+                if (code == 401 || code == 403) {
+                    Log.w(TAG, "⚠️ Sesión rechazada (" + code + "): los pedidos vuelven a JS");
+                    sesionRechazada = sesion;
+                    TrackingEvents.publishPedidosNativos(false);
+                } else if (code == 200 || code == 304) {
+                    TrackingEvents.publishPedidosNativos(true);
                 } else {
-                    Log.e(TAG, "❌ Error verificando pedidos - Código: " + responseCode);
+                    Log.e(TAG, "❌ Error verificando pedidos - Código: " + code);
                 }
-                
             } catch (Exception e) {
                 Log.e(TAG, "❌ Error verificando pedidos: " + e.getMessage());
-            } finally {
-                if (conn != null) {
-                    conn.disconnect();
-                }
             }
-        }).start();
+        });
+    }
+    
+    /**
+     * Desde el hilo del handler. Al empezar a mirar se verifica ya (la lista en
+     * pantalla puede estar vieja) y después cada 10 s; al dejar de mirar, el respaldo.
+     */
+    private void vigilarPedidos(boolean vigilados) {
+        long now = System.currentTimeMillis();
+        Log.d(TAG, "👀 WebView mirando pedidos: " + vigilados);
+        if (vigilados) {
+            verificarPedidosActivos();
+            engine.markOrdersChecked(now);
+            engine.setOrdersPollInterval(PEDIDOS_VIGILADOS_INTERVAL_MS, now);
+        } else {
+            engine.setOrdersPollInterval(TrackingEngine.PEDIDOS_INTERVAL_MS, now);
+        }
+    }
+    
+    /**
+     * Un solo punto va por el envío directo de siempre; varios (giros entre dos envíos)
+     * se guardan en la bandeja y salen juntos en un lote.
+     */
+    private void enviarPuntos(List<LocationFix> puntos, UploadLanes.Lane lane) {
+        carrilActual = lane;
+        if (puntos.size() == 1) {
+            sendLocationToServer(puntos.get(0));
+        } else {
+            fixesPorGuardar.addAll(puntos);
+            drainOutbox();
+        }
     }
     
-    private void sendLocationToServer(Location location) {
-        new Thread(() -> {
-            HttpURLConnection conn = null;
+    /**
+     * Un pedido en camino activa la entrega de inmediato. Cualquier otro estado
+     * (entregado, cancelado...) no dice si quedan otros pedidos en camino, así
+     * que se verifica ya contra el servidor en vez de esperar al polling.
+     */
+    private void manejarEstadoPedido(Intent intent) {
+        String estado = intent.getStringExtra(EXTRA_ESTADO);
+        int pedidoId = intent.getIntExtra(EXTRA_PEDIDO_ID, 0);
+        Log.d(TAG, "📨 Push de pedido " + pedidoId + ": " + estado);
+        
+        if (OrderStateMessage.ESTADO_EN_CAMINO.equals(estado)) {
+            actualizarPedidosActivos(true);
+        } else {
+            verificarPedidosActivos();
+        }
+        // El push cuenta como verificación: el polling de respaldo vuelve a esperar completo.
+        // El pedido activo (ya guardado por OrderMessagingService) decide el carril de subida.
+        int pedidoActivo = TrackingStateManager.getPedidoActivo(this);
+        handler.post(() -> {
+            long now = System.currentTimeMillis();
+            engine.setPedidoActivo(pedidoActivo, now);
+            engine.markOrdersChecked(now);
+        });
+    }
+    
+    /**
+     * Se llama desde los hilos de red y desde el principal: el cambio se aplica en el handler
+     */
+    private void actualizarPedidosActivos(boolean tienePedidos) {
+        handler.post(() -> {
+            // Solo si cambió: perfil de muestreo y título de la notificación al momento
+            if (engine.setActiveOrders(tienePedidos, System.currentTimeMillis())) {
+                Log.d(TAG, "📊 Pedidos activos: " + tienePedidos);
+                TrackingEvents.publishPedidosActivos(tienePedidos);
+                TrackingStateManager.setPedidosActivos(this, tienePedidos);
+            }
+        });
+    }
+    
+    private void sendLocationToServer(LocationFix fix) {
+        // ✅ Todo fix va a la bandeja; el envío directo se coalesce (gana el más nuevo)
+        fixesPorGuardar.add(fix);
+        networkExecutor.submitLatest(TrackingEngine.TASK_UBICACION, fix, this::enviarUbicacion);
+    }
+    
+    private void guardarFixesPendientes() {
+        LocationFix pendiente;
+        while ((pendiente = fixesPorGuardar.poll()) != null) {
+            if (outbox == null || pendiente.getTimestamp() == outbox.getLastAppendedTimestamp()) {
+                continue;
+            }
             try {
-                URL url = new URL(serverUrl + "/api/domiciliario/ubicacion");
-                conn = (HttpURLConnection) url.openConnection();
-                conn.setRequestMethod("POST");
-                conn.setRequestProperty("Content-Type", "application/json");
-                conn.setRequestProperty("X-Requested-With", "XMLHttpRequest");
-                conn.setDoOutput(true);
-                conn.setConnectTimeout(15000);
-                conn.setReadTimeout(15000);
-                
-                JSONObject json = new JSONObject();
-                json.put("latitud", location.getLatitude());
-                json.put("longitud", location.getLongitude());
-                json.put("timestamp", System.currentTimeMillis());
-                json.put("accuracy", location.getAccuracy());
-                json.put("provider", location.getProvider());
-                
-                OutputStream os = conn.getOutputStream();
-                os.write(json.toString().getBytes(StandardCharsets.UTF_8));
-                os.flush();
-                os.close();
+                outbox.append(pendiente);
+            } catch (IOException e) {
+                Log.e(TAG, "❌ Error guardando ubicación en bandeja: " + e.getMessage());
+            }
+        }
+    }
+    
+    private void enviarUbicacion(LocationFix fix) {
+        // ✅ Guardar primero en disco: si el envío falla, el drenado lo reintenta
+        guardarFixesPendientes();
+
+        // Con atraso en la bandeja el fix ya está en su cola: el drenado lo manda en orden.
+        // Un envío directo aquí no se podría confirmar y el drenado lo repetiría
+        if (outbox != null && (outbox.pendingCount() > 1 || drenandoOutbox.get())) {
+            drainOutbox();
+            return;
+        }
+
+        // Sin red o en backoff el fix espera en la bandeja (sin gastar el timeout de conexión)
+        if (!uploadGate.tryAcquire(System.currentTimeMillis())) {
+            return;
+        }
+        
+        try {
+            String json = LocationBatchCodec.toJson(fix, System.currentTimeMillis());
+            ServiceHttpClient.HttpResponse response = subir(1,
+                () -> httpClient.postJsonWithHeartbeat("/api/domiciliario/ubicacion", json));
+            if (response.isOk()) {
+                Log.d(TAG, "✅ Ubicación enviada");
+                metrics.onPointDelivered(carrilActual, System.currentTimeMillis() - fix.getTimestamp());
+                metrics.onLocationUploaded(SystemClock.elapsedRealtime());
                 
-                int responseCode = conn.getResponseCode();
-                if (responseCode == 200) {
-                    Log.d(TAG, "✅ Ubicación enviada");
-                } else {
-                    Log.e(TAG, "❌ Error enviando ubicación - Código: " + responseCode);
+                if (outbox != null) {
+                    outbox.acknowledgeIfOnlyPending(fix.getTimestamp());
+                    if (outbox.pendingCount() > 0) {
+                        drainOutbox(); // Hay conexión: vaciar el atraso
+                    }
+                }
+            } else {
+                Log.e(TAG, "❌ Error enviando ubicación - Código: " + response.getCode());
+            }
+            
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Error enviando ubicación: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Sube los fixes pendientes de la bandeja en lotes.
+     * Corre en el pool de red sin frenar el envío de la ubicación fresca (hay 2 hilos).
+     * Cada lote se borra de disco solo cuando el servidor responde 200.
+     * Como mucho {@link UploadGate#BURST_MAX_BATCHES} lotes seguidos; lo que queda
+     * sale en la próxima ráfaga, tras una pausa.
+     */
+    private void drainOutbox() {
+        // La marca se toma al encolar, no al empezar: con un drenado en cola el envío
+        // directo ya no sale (el fix está en la bandeja y el drenado lo manda)
+        if (outbox == null || !drenandoOutbox.compareAndSet(false, true)) {
+            return;
+        }
+        
+        boolean encolado = networkExecutor.submitOnce(TASK_DRENADO, () -> {
+            int enviados = 0;
+            int lotes = 0;
+            try {
+                while (true) {
+                    wakeLocks.keepAlive(); // un drenado largo puede pasar el timeout del lock
+                    guardarFixesPendientes();
+                    LocationOutbox.Batch batch = outbox.peek(OUTBOX_BATCH_SIZE);
+                    if (batch.isEmpty()) {
+                        break;
+                    }
+                    if (lotes == UploadGate.BURST_MAX_BATCHES) {
+                        long pausa = uploadGate.onBurstDone(System.currentTimeMillis());
+                        handler.postDelayed(drenarBandeja, pausa);
+                        break;
+                    }
+                    if (!uploadGate.tryAcquire(System.currentTimeMillis())) {
+                        break; // sin red o en backoff: la próxima subida buena lo retoma
+                    }
+                    lotes++;
+                    
+                    int responseCode = postLocationBatch(batch);
+                    if (responseCode != 200) {
+                        Log.e(TAG, "❌ Error enviando lote de ubicaciones - Código: " + responseCode);
+                        break;
+                    }
+                    
+                    outbox.commit(batch);
+                    List<LocationFix> fixes = batch.getFixes();
+                    metrics.onPointDelivered(carrilActual,
+                        System.currentTimeMillis() - fixes.get(fixes.size() - 1).getTimestamp());
+                    metrics.onLocationUploaded(SystemClock.elapsedRealtime());
+                    enviados += batch.size();
                 }
-                
             } catch (Exception e) {
-                Log.e(TAG, "❌ Error enviando ubicación: " + e.getMessage());
+                Log.e(TAG, "❌ Error drenando bandeja: " + e.getMessage());
             } finally {
-                if (conn != null) {
-                    conn.disconnect();
+                drenandoOutbox.set(false);
+                if (enviados > 0) {
+                    Log.d(TAG, "📦 Bandeja drenada - Enviados: " + enviados + " - Pendientes: " + outbox.pendingCount());
                 }
             }
-        }).start();
+        });
+        if (!encolado) {
+            drenandoOutbox.set(false); // cola llena: el próximo envío lo reintenta
+        }
+    }
+    
+    /**
+     * Envía un lote en formato compacto (delta + varint, ~10 bytes por punto).
+     * Si el servidor no conoce el formato, cae al JSON de un fix por petición; si uno
+     * falla, los anteriores quedan confirmados en la bandeja.
+     */
+    private int postLocationBatch(LocationOutbox.Batch batch) throws Exception {
+        if (loteBinarioSoportado) {
+            byte[] body = LocationBatchCodec.encodeSmallest(batch.getFixes());
+            int responseCode = subir(batch.size(), () -> httpClient.postBytesWithHeartbeat(
+                "/api/domiciliario/ubicaciones", body, LocationBatchCodec.CONTENT_TYPE)).getCode();
+            if (responseCode != 404 && responseCode != 415) {
+                return responseCode;
+            }
+            loteBinarioSoportado = false;
+            Log.w(TAG, "⚠️ Servidor sin soporte de lotes (" + responseCode + ") - Usando JSON");
+        }
+        
+        List<LocationFix> fixes = batch.getFixes();
+        for (int i = 0; i < fixes.size(); i++) {
+            String json = LocationBatchCodec.toJson(fixes.get(i), fixes.get(i).getTimestamp());
+            int responseCode = subir(1,
+                () -> httpClient.postJsonWithHeartbeat("/api/domiciliario/ubicacion", json)).getCode();
+            if (responseCode != 200) {
+                // Los que ya aceptó el servidor no se reenvían en el próximo drenado
+                outbox.commit(batch, i);
+                return responseCode;
+            }
+        }
+        return 200;
+    }
+    
+    private interface Subida {
+        ServiceHttpClient.HttpResponse enviar() throws IOException;
+    }
+    
+    /**
+     * Hace una subida de ubicación contando intento, resultado, latencia y puntos
+     */
+    private ServiceHttpClient.HttpResponse subir(int puntos, Subida subida) throws IOException {
+        long inicio = metrics.onUploadStarted();
+        int code = 0; // 0: la conexión falló
+        try {
+            ServiceHttpClient.HttpResponse response = subida.enviar();
+            code = response.getCode();
+            return response;
+        } finally {
+            boolean ok = code >= 200 && code < 300;
+            metrics.onUploadFinished(inicio, ok, ok ? puntos : 0);
+            long espera = uploadGate.onResult(code, System.currentTimeMillis());
+            if (espera > 0) {
+                Log.w(TAG, "⏳ Subidas en pausa " + espera + " ms - " + uploadGate);
+            }
+        }
     }
     
     private void sendHeartbeat() {
-        new Thread(() -> {
-            HttpURLConnection conn = null;
+        if (!uploadGate.isOnline()) {
+            return;
+        }
+        networkExecutor.submitOnce(TrackingEngine.TASK_HEARTBEAT, () -> {
             try {
-                URL url = new URL(serverUrl + "/api/domiciliario-heartbeat");
-                conn = (HttpURLConnection) url.openConnection();
-                conn.setRequestMethod("POST");
-                conn.setRequestProperty("Content-Type", "application/json");
-                conn.setRequestProperty("X-Requested-With", "XMLHttpRequest");
-                conn.setDoOutput(true);
-                conn.setConnectTimeout(10000);
-                conn.setReadTimeout(10000);
-                
-                JSONObject json = new JSONObject();
-                OutputStream os = conn.getOutputStream();
-                os.write(json.toString().getBytes(StandardCharsets.UTF_8));
-                os.flush();
-                os.close();
-                
-                int responseCode = conn.getResponseCode();
-                if (responseCode == 200) {
+                ServiceHttpClient.HttpResponse response = httpClient.postJson("/api/domiciliario-heartbeat", new JSONObject().toString());
+                if (response.isOk()) {
                     Log.d(TAG, "💓 Heartbeat enviado");
                 } else {
-                    Log.e(TAG, "❌ Error heartbeat - Código: " + responseCode);
+                    Log.e(TAG, "❌ Error heartbeat - Código: " + response.getCode());
                 }
                 
             } catch (Exception e) {
                 Log.e(TAG, "❌ Error enviando heartbeat: " + e.getMessage());
-            } finally {
-                if (conn != null) {
-                    conn.disconnect();
-                }
             }
-        }).start();
+        });
     }
     
-    private Notification createNotification() {
+    /**
+     * Arma una sola vez el builder y el PendingIntent; cada publicación solo cambia título y texto
+     */
+    private void crearNotificacion() {
         Intent notificationIntent = new Intent(this, MainActivity.class);
         notificationIntent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
         
@@ -325,68 +828,32 @@ public class LocationForegroundService extends Service implements LocationListen
             PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_UPDATE_CURRENT
         );
         
-        // ✅ Texto según tenga pedidos o no
-        String titulo = tienePedidosActivos ? 
-            "DomiPancho - Entrega Activa" : 
-            "DomiPancho - Rastreando Ubicación";
-        
-        String texto = tienePedidosActivos ?
-            "Realizando entrega" :
-            "Buscando pedidos cercanos";
-        
-        NotificationCompat.Builder builder = new NotificationCompat.Builder(this, CHANNEL_ID)
-            .setContentTitle(titulo)
-            .setContentText(texto)
+        notificationBuilder = new NotificationCompat.Builder(this, CHANNEL_ID)
             .setSmallIcon(android.R.drawable.ic_menu_mylocation)
             .setContentIntent(pendingIntent)
             .setOngoing(true)
+            .setOnlyAlertOnce(true)
             .setPriority(NotificationCompat.PRIORITY_MAX)
             .setCategory(NotificationCompat.CATEGORY_SERVICE)
             .setVisibility(NotificationCompat.VISIBILITY_PUBLIC)
             .setForegroundServiceBehavior(NotificationCompat.FOREGROUND_SERVICE_IMMEDIATE);
         
-        return builder.build();
+        notificationManager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
     }
     
-    private Notification createNotificationWithLocation(Location location) {
-        Intent notificationIntent = new Intent(this, MainActivity.class);
-        notificationIntent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
-        
-        PendingIntent pendingIntent = PendingIntent.getActivity(
-            this, 
-            0, 
-            notificationIntent, 
-            PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_UPDATE_CURRENT
-        );
-        
-        // ✅ CAMBIAR TEXTO SEGÚN TENGA PEDIDOS ACTIVOS O NO
-        String titulo;
-        String contentText;
+    private void publicarNotificacion(String titulo, String texto) {
+        Notification notification = notificationBuilder
+            .setContentTitle(titulo)
+            .setContentText(texto)
+            .build();
         
-        if (tienePedidosActivos) {
-            titulo = "DomiPancho - Entrega Activa";
-            contentText = String.format("Última ubicación: %.5f, %.5f (%.0fm)",
-                location.getLatitude(), 
-                location.getLongitude(),
-                location.getAccuracy());
+        metrics.onNotificationPosted();
+        if (primerPlanoPendiente) {
+            primerPlanoPendiente = false;
+            startForeground(NOTIFICATION_ID, notification);
         } else {
-            titulo = "DomiPancho - Rastreando Ubicación";
-            contentText = String.format("Buscando pedidos cercanos (%.0fm precisión)",
-                location.getAccuracy());
+            notificationManager.notify(NOTIFICATION_ID, notification);
         }
-        
-        NotificationCompat.Builder builder = new NotificationCompat.Builder(this, CHANNEL_ID)
-            .setContentTitle(titulo)
-            .setContentText(contentText)
-            .setSmallIcon(android.R.drawable.ic_menu_mylocation)
-            .setContentIntent(pendingIntent)
-            .setOngoing(true)
-            .setPriority(NotificationCompat.PRIORITY_MAX)
-            .setCategory(NotificationCompat.CATEGORY_SERVICE)
-            .setVisibility(NotificationCompat.VISIBILITY_PUBLIC)
-            .setForegroundServiceBehavior(NotificationCompat.FOREGROUND_SERVICE_IMMEDIATE);
-        
-        return builder.build();
     }
     
     private void createNotificationChannel() {
@@ -413,23 +880,52 @@ public class LocationForegroundService extends Service implements LocationListen
     public void onDestroy() {
         Log.w(TAG, "⚠️ onDestroy llamado - Limpiando recursos");
         
-        // ✅ Limpiar recursos
-        if (locationManager != null) {
+        // ✅ Limpiar recursos en el hilo de tracking, después de lo que ya estaba encolado
+        // (un arranque pendiente no puede registrar listeners después de esto)
+        TrackingEvents.removeControl(control);
+        if (networkCallback != null) {
             try {
-                locationManager.removeUpdates(this);
-            } catch (Exception e) {
-                Log.e(TAG, "Error removiendo location updates: " + e.getMessage());
+                connectivityManager.unregisterNetworkCallback(networkCallback);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Error quitando callback de red: " + e.getMessage());
             }
         }
-        
         if (handler != null) {
-            handler.removeCallbacks(locationUpdateRunnable);
-            handler.removeCallbacks(heartbeatRunnable);
+            handler.removeCallbacks(tickRunnable);
+            handler.post(() -> {
+                if (fuente != null) {
+                    fuente.stop();
+                }
+                handler.removeCallbacks(tickRunnable);
+                if (tickAlarm != null) {
+                    alarmManager.cancel(tickAlarm);
+                }
+                TrackingEvents.publishPedidosNativos(false);
+                TrackingEvents.publishRunning(false);
+                TrackingEvents.removeListener(ipc); // después de avisar al plugin
+            });
+            trackingThread.quitSafely();
+        }
+        
+        if (networkExecutor != null) {
+            networkExecutor.shutdown(1000);
+            Log.d(TAG, "✅ Pool de red detenido - " + networkExecutor);
+        }
+        
+        if (httpClient != null) {
+            httpClient.close();
+            Log.d(TAG, "✅ Cliente HTTP cerrado - " + httpClient);
         }
         
-        if (wakeLock != null && wakeLock.isHeld()) {
-            wakeLock.release();
-            Log.d(TAG, "✅ Wake Lock liberado");
+        // ✅ Punto de cierre: lo pendiente del estado va a disco ya
+        TrackingStateManager.flush(this);
+        
+        if (wakeLocks != null) {
+            wakeLocks.releaseAll();
+            Log.d(TAG, "✅ Wake Lock liberado - " + wakeLocks);
+        }
+        if (legacyWakeLock != null && legacyWakeLock.isHeld()) {
+            legacyWakeLock.release();
         }
         
         super.onDestroy();
@@ -440,40 +936,16 @@ public class LocationForegroundService extends Service implements LocationListen
     
     @Override
     public IBinder onBind(Intent intent) {
-        return null;
-    }
-    
-    @Override
-    public void onStatusChanged(String provider, int status, Bundle extras) {
-        Log.d(TAG, "📡 Status cambiado: " + provider + " - " + status);
-    }
-    
-    @Override
-    public void onProviderEnabled(String provider) {
-        Log.d(TAG, "✅ Provider habilitado: " + provider);
-        try {
-            locationManager.requestLocationUpdates(
-                provider,
-                5000,
-                5,
-                this,
-                Looper.getMainLooper()
-            );
-        } catch (SecurityException e) {
-            Log.e(TAG, "Error reactivando provider: " + e.getMessage());
-        }
-    }
-    
-    @Override
-    public void onProviderDisabled(String provider) {
-        Log.w(TAG, "⚠️ Provider deshabilitado: " + provider);
+        // ✅ El plugin se enlaza sin arrancarnos (TrackingServiceClient)
+        return ipc.getBinder();
     }
     
     @Override
     public void onTaskRemoved(Intent rootIntent) {
         Log.w(TAG, "⚠️ onTaskRemoved - App removida de recientes");
         
-        // ✅ REINICIAR SERVICIO SI ESTÁ DISPONIBLE
+        // ✅ En su propio proceso el servicio sobrevive a la WebView; la alarma queda
+        // de respaldo para los fabricantes que matan todos los procesos de la app
         Intent restartServiceIntent = new Intent(getApplicationContext(), this.getClass());
         restartServiceIntent.setPackage(getPackageName());
         
@@ -0,0 +1,158 @@
+package com.domipancho.domiciliarios;
+
+import android.content.Context;
+import android.location.Location;
+import android.location.LocationListener;
+import android.location.LocationManager;
+import android.os.Bundle;
+import android.os.Looper;
+import android.util.Log;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * La fuente de siempre: GPS y red del LocationManager por separado, un fix por
+ * despertada. Es el respaldo cuando el teléfono no tiene Play services.
+ *
+ * Confinada al hilo de tracking (los callbacks llegan en su looper).
+ */
+final class LocationManagerSource implements LocationSource, LocationListener {
+    private static final String TAG = "LocationService";
+
+    private final LocationManager locationManager;
+    private final Looper looper;
+    private final LocationSource.Listener listener;
+    private SamplingPolicy.Profile registrado;
+
+    LocationManagerSource(Context context, Looper looper, LocationSource.Listener listener) {
+        this.locationManager = (LocationManager) context.getSystemService(Context.LOCATION_SERVICE);
+        this.looper = looper;
+        this.listener = listener;
+    }
+
+    @Override
+    public boolean request(SamplingPolicy.Profile perfil) {
+        try {
+            if (registrado != null) {
+                locationManager.removeUpdates(this);
+            }
+
+            // ✅ GPS Provider
+            if (locationManager.isProviderEnabled(LocationManager.GPS_PROVIDER)) {
+                locationManager.requestLocationUpdates(
+                    LocationManager.GPS_PROVIDER,
+                    perfil.getGpsIntervalMs(),
+                    perfil.getGpsMinDistanceM(),
+                    this,
+                    looper
+                );
+                Log.d(TAG, "✅ GPS Provider activado");
+            }
+
+            // ✅ Network Provider
+            if (locationManager.isProviderEnabled(LocationManager.NETWORK_PROVIDER)) {
+                locationManager.requestLocationUpdates(
+                    LocationManager.NETWORK_PROVIDER,
+                    perfil.getNetworkIntervalMs(),
+                    perfil.getNetworkMinDistanceM(),
+                    this,
+                    looper
+                );
+                Log.d(TAG, "✅ Network Provider activado");
+            }
+
+            registrado = perfil;
+            return true;
+        } catch (SecurityException e) {
+            Log.e(TAG, "❌ Error de permisos: " + e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public void requestLastKnown() {
+        try {
+            // ✅ GPS primero; la de red solo si la del GPS no pasa el filtro
+            List<LocationFix> candidatas = new ArrayList<>(2);
+            Location gps = locationManager.getLastKnownLocation(LocationManager.GPS_PROVIDER);
+            Location network = locationManager.getLastKnownLocation(LocationManager.NETWORK_PROVIDER);
+            if (gps != null) {
+                candidatas.add(toFix(gps));
+            }
+            if (network != null) {
+                candidatas.add(toFix(network));
+            }
+            if (!candidatas.isEmpty()) {
+                listener.onLastKnown(candidatas);
+            }
+        } catch (SecurityException e) {
+            Log.e(TAG, "❌ Error de permisos: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void stop() {
+        try {
+            locationManager.removeUpdates(this);
+        } catch (Exception e) {
+            Log.e(TAG, "Error removiendo location updates: " + e.getMessage());
+        }
+        registrado = null;
+    }
+
+    @Override
+    public String getName() {
+        return "locationManager";
+    }
+
+    static LocationFix toFix(Location location) {
+        return new LocationFix(
+            location.getLatitude(),
+            location.getLongitude(),
+            location.getTime(),
+            location.getAccuracy(),
+            location.getProvider(),
+            location.hasSpeed() ? location.getSpeed() : -1f
+        );
+    }
+
+    // ==================== LocationListener ====================
+
+    @Override
+    public void onLocationChanged(Location location) {
+        if (location != null) {
+            listener.onLocations(Collections.singletonList(toFix(location)));
+        }
+    }
+
+    @Override
+    public void onStatusChanged(String provider, int status, Bundle extras) {
+        Log.d(TAG, "📡 Status cambiado: " + provider + " - " + status);
+    }
+
+    @Override
+    public void onProviderEnabled(String provider) {
+        Log.d(TAG, "✅ Provider habilitado: " + provider);
+        if (registrado == null) {
+            return;
+        }
+        boolean gps = LocationManager.GPS_PROVIDER.equals(provider);
+        try {
+            locationManager.requestLocationUpdates(
+                provider,
+                gps ? registrado.getGpsIntervalMs() : registrado.getNetworkIntervalMs(),
+                gps ? registrado.getGpsMinDistanceM() : registrado.getNetworkMinDistanceM(),
+                this,
+                looper
+            );
+        } catch (SecurityException e) {
+            Log.e(TAG, "Error reactivando provider: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void onProviderDisabled(String provider) {
+        Log.w(TAG, "⚠️ Provider deshabilitado: " + provider);
+    }
+}
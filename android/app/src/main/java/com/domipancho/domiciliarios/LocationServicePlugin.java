@@ -1,18 +1,202 @@
 package com.domipancho.domiciliarios;
 
 import android.content.Intent;
+import android.content.pm.ApplicationInfo;
 import android.os.Build;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
+import android.webkit.CookieManager;
 import com.getcapacitor.JSObject;
 import com.getcapacitor.Plugin;
 import com.getcapacitor.PluginCall;
 import com.getcapacitor.PluginMethod;
 import com.getcapacitor.annotation.CapacitorPlugin;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.json.JSONArray;
+import org.json.JSONException;
 
 @CapacitorPlugin(name = "LocationService")
 public class LocationServicePlugin extends Plugin {
     
     private static final String TAG = "LocationServicePlugin";
+    
+    // ✅ Eventos hacia JS: addListener('location' | 'trackingState' | 'pedidos', ...)
+    static final String EVENT_LOCATION = "location";
+    static final String EVENT_STATE = "trackingState";
+    static final String EVENT_PEDIDOS = "pedidos";
+    
+    private Handler mainHandler;
+    private FixCoalescer fixCoalescer;
+    private TrackingServiceClient servicio; // el servicio corre en el proceso ":tracking"
+    private volatile boolean enPrimerPlano = true;
+    private boolean pedidosVigilados; // watchOrders: JS quiere los eventos de pedidos
+    private boolean sesionEnviada; // ya se mandó la sesión al servicio que está corriendo
+    private final Runnable flushEventos = () -> fixCoalescer.flush(SystemClock.elapsedRealtime());
+    private final TrackingEvents.Listener eventos = new TrackingEvents.Listener() {
+        @Override
+        public void onFix(LocationFix fix) {
+            fixCoalescer.offer(fix, SystemClock.elapsedRealtime());
+        }
+        
+        @Override
+        public void onState(boolean running, boolean pedidosActivos, String perfil, boolean pedidosNativos) {
+            if (!running) {
+                sesionEnviada = false;
+            } else if (!sesionEnviada) {
+                sincronizarSesion(); // el servicio ya corría al abrir la app: pudo haber re-login
+            }
+            emitirEstado(running, pedidosActivos, perfil, pedidosNativos);
+        }
+        
+        @Override
+        public void onOrderEvents(List<OrderBook.Event> events) {
+            emitirPedidos(events);
+        }
+    };
+    
+    @Override
+    public void load() {
+        mainHandler = new Handler(Looper.getMainLooper());
+        // Fixes del servicio a la WebView: uno cada 2 s como mucho, nada en segundo plano
+        fixCoalescer = new FixCoalescer(this::emitirFix, delayMs -> mainHandler.postDelayed(flushEventos, delayMs));
+        servicio = new TrackingServiceClient(getContext(), eventos);
+        servicio.connect();
+    }
+    
+    @Override
+    protected void handleOnPause() {
+        enPrimerPlano = false;
+        fixCoalescer.setForeground(false, SystemClock.elapsedRealtime());
+        mainHandler.removeCallbacks(flushEventos);
+        actualizarVigilancia();
+    }
+    
+    @Override
+    protected void handleOnResume() {
+        enPrimerPlano = true;
+        // Al volver: el estado actual y el último fix, no lo que pasó mientras tanto
+        servicio.replayState();
+        fixCoalescer.setForeground(true, SystemClock.elapsedRealtime());
+        actualizarVigilancia();
+        if (servicio.isRunning()) {
+            sincronizarSesion(); // pudo haber re-login mientras tanto
+        }
+    }
+    
+    @Override
+    protected void handleOnDestroy() {
+        servicio.disconnect(); // sin WebView el servicio vuelve al polling de respaldo
+        mainHandler.removeCallbacks(flushEventos);
+        Log.d(TAG, "📡 Eventos a la WebView - " + fixCoalescer);
+    }
+    
+    /**
+     * Pasa la cookie del login (CookieManager de la WebView, donde la deja CapacitorHttp)
+     * al proceso de tracking: allí no hay WebView y sin ella el servidor responde 401/403.
+     * Solo al iniciar el tracking o con el servicio corriendo: la llamada al provider
+     * arranca el proceso ":tracking", y no hace falta si el domiciliario no rastrea.
+     */
+    private void sincronizarSesion() {
+        try {
+            String cookies = CookieManager.getInstance().getCookie(LocationForegroundService.SERVER_URL);
+            TrackingStateManager.setSession(getContext(), cookies);
+            sesionEnviada = true;
+        } catch (RuntimeException e) {
+            Log.e(TAG, "❌ Error leyendo la sesión: " + e.getMessage());
+        }
+    }
+    
+    private void emitirFix(LocationFix fix) {
+        if (!hasListeners(EVENT_LOCATION)) {
+            return;
+        }
+        JSObject data = new JSObject();
+        data.put("latitude", fix.getLatitude());
+        data.put("longitude", fix.getLongitude());
+        data.put("accuracy", fix.getAccuracy());
+        data.put("timestamp", fix.getTimestamp());
+        data.put("provider", fix.getProvider());
+        if (fix.hasSpeed()) {
+            data.put("speed", fix.getSpeed());
+        }
+        notifyListeners(EVENT_LOCATION, data);
+    }
+    
+    private void emitirEstado(boolean running, boolean pedidosActivos, String perfil, boolean pedidosNativos) {
+        if (!enPrimerPlano) {
+            return; // al volver se manda el estado actual
+        }
+        JSObject data = new JSObject();
+        data.put("running", running);
+        data.put("pedidosActivos", pedidosActivos);
+        data.put("perfil", perfil);
+        data.put("pedidosNativos", pedidosNativos);
+        // Se retiene si JS todavía no se suscribió: el primer addListener lo recibe
+        notifyListeners(EVENT_STATE, data, true);
+    }
+    
+    /**
+     * Eventos del diff de pedidos, con la misma forma que los del socket
+     * (el pedido va tal como lo mandó el servidor)
+     */
+    private void emitirPedidos(List<OrderBook.Event> events) {
+        if (!enPrimerPlano || !hasListeners(EVENT_PEDIDOS)) {
+            return; // al volver JS resincroniza con la lista completa
+        }
+        JSONArray eventos = new JSONArray();
+        for (OrderBook.Event event : events) {
+            OrderBook.Order pedido = event.getOrder();
+            try {
+                JSObject evento = new JSObject();
+                evento.put("tipo", event.getType().name());
+                evento.put("pedidoId", pedido.getId());
+                evento.put("estado", pedido.getEstado());
+                if (event.getEstadoAnterior() != null) {
+                    evento.put("estadoAnterior", event.getEstadoAnterior());
+                }
+                evento.put("pedido", new JSObject(pedido.getJson()));
+                eventos.put(evento);
+            } catch (JSONException e) {
+                Log.e(TAG, "❌ Pedido " + pedido.getId() + " con JSON inválido: " + e.getMessage());
+            }
+        }
+        JSObject data = new JSObject();
+        data.put("eventos", eventos);
+        notifyListeners(EVENT_PEDIDOS, data);
+    }
+    
+    /**
+     * El servicio verifica pedidos seguido solo si JS los pidió y la WebView está visible
+     */
+    private void actualizarVigilancia() {
+        servicio.setOrdersWatched(pedidosVigilados && enPrimerPlano);
+    }
+
+    /**
+     * La WebView muestra (o deja de mostrar) la lista de pedidos:
+     * LocationService.watchOrders({ watching: true }). Mientras tanto el servicio
+     * verifica cada 10 s y manda los cambios en el evento 'pedidos'.
+     * Devuelve { running, pedidosNativos }: mientras el servicio no corra o su polling
+     * no tenga una sesión aceptada por el servidor, JS hace su propio polling.
+     */
+    @PluginMethod
+    public void watchOrders(PluginCall call) {
+        boolean watching = Boolean.TRUE.equals(call.getBoolean("watching", true));
+        mainHandler.post(() -> {
+            pedidosVigilados = watching;
+            actualizarVigilancia();
+        });
+        
+        JSObject ret = new JSObject();
+        ret.put("running", servicio.isRunning());
+        ret.put("pedidosNativos", servicio.hasNativeOrders());
+        call.resolve(ret);
+    }
 
     @PluginMethod
     public void startLocationService(PluginCall call) {
@@ -21,12 +205,20 @@ public class LocationServicePlugin extends Plugin {
         try {
             Intent serviceIntent = new Intent(getContext(), LocationForegroundService.class);
             
+            // ✅ Los push de pedidos solo despiertan al servicio si el tracking está activo
+            TrackingStateManager.setTrackingActive(getContext(), true);
+            sincronizarSesion();
+            TrackingStateManager.flush(getContext());
+            
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
                 getContext().startForegroundService(serviceIntent);
             } else {
                 getContext().startService(serviceIntent);
             }
             
+            // ✅ Enlace nuevo: el anterior pudo quedar muerto tras un stop
+            mainHandler.post(servicio::reconnect);
+            
             JSObject ret = new JSObject();
             ret.put("success", true);
             ret.put("message", "Location service started");
@@ -45,6 +237,8 @@ public class LocationServicePlugin extends Plugin {
         
         try {
             Intent serviceIntent = new Intent(getContext(), LocationForegroundService.class);
+            TrackingStateManager.clearTracking(getContext());
+            TrackingStateManager.flush(getContext());
             getContext().stopService(serviceIntent);
             
             // ✅ QUITAR NOTIFICACIÓN EXPLÍCITAMENTE
@@ -64,10 +258,74 @@ public class LocationServicePlugin extends Plugin {
         }
     }
 
+    /**
+     * Inyecta un mensaje de estado de pedido como si hubiera llegado por FCM.
+     * Solo en builds de depuración, para probar sin un servicio de push real:
+     * LocationService.injectOrderMessage({ pedidoId: 12, estado: 'camino a tu casa' })
+     */
+    @PluginMethod
+    public void injectOrderMessage(PluginCall call) {
+        if ((getContext().getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) == 0) {
+            call.reject("injectOrderMessage solo está disponible en builds de depuración");
+            return;
+        }
+        
+        Map<String, String> data = new HashMap<>();
+        data.put(OrderStateMessage.KEY_TYPE, OrderStateMessage.TYPE);
+        data.put(OrderStateMessage.KEY_PEDIDO_ID, String.valueOf(call.getInt("pedidoId", 0)));
+        data.put(OrderStateMessage.KEY_ESTADO, call.getString("estado", ""));
+        
+        JSObject ret = new JSObject();
+        ret.put("handled", OrderMessagingService.dispatch(getContext(), data));
+        call.resolve(ret);
+    }
+
+    /**
+     * Métricas del pipeline (fixes, subidas, latencias, bytes, bandeja, wake lock,
+     * notificaciones y memoria del proceso de tracking), pedidas al servicio.
+     * Con { dumpToFile: true } el servicio además agrega una foto por minuto a
+     * tracking_stats.jsonl en el almacenamiento interno; { dumpToFile: false } lo apaga.
+     * Si el servicio no corre devuelve { running: false }.
+     */
+    @PluginMethod
+    public void getStats(PluginCall call) {
+        Boolean dump = call.getBoolean("dumpToFile", null);
+        int pedido = dump == null ? TrackingIpc.DUMP_SIN_CAMBIO : dump ? TrackingIpc.DUMP_ON : TrackingIpc.DUMP_OFF;
+        mainHandler.post(() -> servicio.requestStats(pedido, new TrackingServiceClient.StatsCallback() {
+            @Override
+            public void onStats(Bundle data) {
+                try {
+                    JSObject ret = new JSObject(data.getString(TrackingIpc.KEY_JSON));
+                    ret.put("running", true);
+                    if (data.containsKey(TrackingIpc.KEY_DUMP_FILE)) {
+                        ret.put("dumpFile", data.getString(TrackingIpc.KEY_DUMP_FILE));
+                    }
+                    call.resolve(ret);
+                } catch (JSONException e) {
+                    call.reject("Error leyendo estadísticas: " + e.getMessage());
+                }
+            }
+            
+            @Override
+            public void onUnavailable() {
+                JSObject ret = new JSObject();
+                ret.put("running", false);
+                call.resolve(ret);
+            }
+        }));
+    }
+
+    /**
+     * { isRunning }: el servicio está enlazado y rastreando (ya no un true fijo);
+     * { trackingActive, pedidoActivo }: el estado guardado en el proceso de tracking
+     */
     @PluginMethod
     public void isServiceRunning(PluginCall call) {
+        TrackingState state = TrackingStateManager.snapshot(getContext());
         JSObject ret = new JSObject();
-        ret.put("isRunning", true);
+        ret.put("isRunning", servicio.isRunning());
+        ret.put("trackingActive", state.isTrackingActive());
+        ret.put("pedidoActivo", state.getPedidoActivo());
         call.resolve(ret);
     }
 }
\ No newline at end of file
@@ -39,12 +39,6 @@ public class MainActivity extends BridgeActivity {
         }
     }
 
-    @Override
-    public void onResume() {
-        super.onResume();
-        TrackingStateManager.restoreTrackingIfNeeded(this);
-    }
-
     @Override
     public void onDestroy() {
         // NO detener servicio aquí
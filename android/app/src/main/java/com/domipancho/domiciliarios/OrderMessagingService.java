@@ -0,0 +1,58 @@
+package com.domipancho.domiciliarios;
+
+import android.content.Context;
+import android.content.Intent;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import com.capacitorjs.plugins.pushnotifications.MessagingService;
+import com.google.firebase.messaging.RemoteMessage;
+import java.util.Map;
+
+/**
+ * Recibe los mensajes FCM antes que el plugin de PushNotifications.
+ *
+ * Todo mensaje sigue llegando a JavaScript (super), pero los cambios de estado
+ * de pedido ({@link OrderStateMessage}) se aplican de una vez en nativo: pedido
+ * activo en TrackingStateManager y aviso al servicio de ubicación, sin esperar
+ * al siguiente polling.
+ */
+public class OrderMessagingService extends MessagingService {
+    private static final String TAG = "OrderMessagingService";
+
+    @Override
+    public void onMessageReceived(@NonNull RemoteMessage remoteMessage) {
+        super.onMessageReceived(remoteMessage);
+        dispatch(this, remoteMessage.getData());
+    }
+
+    /**
+     * Aplica un mensaje de datos. Lo usa FCM y también la inyección local para pruebas
+     * (LocationServicePlugin.injectOrderMessage). Devuelve true si era un mensaje de pedido.
+     */
+    static boolean dispatch(Context context, Map<String, String> data) {
+        OrderStateMessage message = OrderStateMessage.parse(data);
+        if (message == null) {
+            return false;
+        }
+        Log.d(TAG, "📨 Estado de pedido recibido: " + message);
+
+        // Atómico en el proceso de tracking (dueño del estado): dos push seguidos no se pisan
+        TrackingState state = TrackingStateManager.applyOrderMessage(context, message);
+
+        // ✅ Solo se despierta al servicio si el domiciliario está disponible
+        if (!state.isTrackingActive()) {
+            return true;
+        }
+        Intent intent = new Intent(context, LocationForegroundService.class)
+            .setAction(LocationForegroundService.ACTION_PEDIDO_ESTADO)
+            .putExtra(LocationForegroundService.EXTRA_PEDIDO_ID, message.getPedidoId())
+            .putExtra(LocationForegroundService.EXTRA_ESTADO, message.getEstado());
+        try {
+            context.startService(intent);
+        } catch (IllegalStateException e) {
+            // App en segundo plano sin exención (mensaje de prioridad normal): queda el polling
+            Log.w(TAG, "⚠️ No se pudo avisar al servicio: " + e.getMessage());
+        }
+        return true;
+    }
+}
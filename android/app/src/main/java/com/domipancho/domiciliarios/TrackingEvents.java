@@ -0,0 +1,171 @@
+package com.domipancho.domiciliarios;
+
+import java.util.List;
+
+/**
+ * Eventos del servicio dentro del proceso de tracking: fixes aceptados por el
+ * filtro, cambios de estado (servicio corriendo, pedidos activos, perfil de muestreo,
+ * si el polling nativo de pedidos está autenticado) y eventos de la lista de pedidos. En sentido contrario, el plugin avisa si la
+ * WebView está mostrando los pedidos (el servicio ajusta su polling).
+ *
+ * Un solo oyente, {@link TrackingIpcServer}, que lo reenvía al plugin en el
+ * proceso de la WebView. Sin oyente, publicar cuesta una lectura volátil. El
+ * estado queda guardado para mandarlo de una vez a cada plugin que se enlaza.
+ */
+final class TrackingEvents {
+
+    interface Listener {
+        /** Desde el hilo de tracking */
+        void onFix(LocationFix fix);
+
+        /** {@code pedidosNativos}: el servidor aceptó la sesión del polling nativo (si no, los verifica JS) */
+        void onState(boolean running, boolean pedidosActivos, String perfil, boolean pedidosNativos);
+
+        /** Desde el pool de red */
+        void onOrderEvents(List<OrderBook.Event> events);
+    }
+
+    /**
+     * Lo registra el servicio mientras corre
+     */
+    interface Control {
+        void onOrdersWatched(boolean watched);
+    }
+
+    private static volatile Listener listener;
+    private static boolean running;
+    private static boolean pedidosActivos;
+    private static String perfil = "";
+    private static boolean pedidosNativos;
+    private static Control control;
+    private static boolean ordersWatched;
+
+    private TrackingEvents() {
+    }
+
+    static synchronized void setListener(Listener nuevo) {
+        listener = nuevo;
+    }
+
+    /**
+     * Quita al oyente solo si sigue siendo ese (un plugin nuevo pudo reemplazarlo)
+     */
+    static synchronized void removeListener(Listener viejo) {
+        if (listener == viejo) {
+            listener = null;
+        }
+    }
+
+    static void publishFix(LocationFix fix) {
+        Listener actual = listener;
+        if (actual != null) {
+            actual.onFix(fix);
+        }
+    }
+
+    static void publishOrderEvents(List<OrderBook.Event> events) {
+        Listener actual = listener;
+        if (actual != null) {
+            actual.onOrderEvents(events);
+        }
+    }
+
+    /**
+     * El servicio registra su control y recibe de una vez si la WebView ya estaba mirando
+     */
+    static void setControl(Control nuevo) {
+        boolean watched;
+        synchronized (TrackingEvents.class) {
+            control = nuevo;
+            watched = ordersWatched;
+        }
+        nuevo.onOrdersWatched(watched);
+    }
+
+    static synchronized void removeControl(Control viejo) {
+        if (control == viejo) {
+            control = null;
+        }
+    }
+
+    /**
+     * La WebView empezó o dejó de mostrar los pedidos
+     */
+    static void setOrdersWatched(boolean watched) {
+        Control actual;
+        synchronized (TrackingEvents.class) {
+            if (ordersWatched == watched) {
+                return;
+            }
+            ordersWatched = watched;
+            actual = control;
+        }
+        if (actual != null) {
+            actual.onOrdersWatched(watched);
+        }
+    }
+
+    static void publishRunning(boolean corriendo) {
+        synchronized (TrackingEvents.class) {
+            if (running == corriendo) {
+                return;
+            }
+            running = corriendo;
+        }
+        replayState();
+    }
+
+    static void publishPedidosActivos(boolean activos) {
+        synchronized (TrackingEvents.class) {
+            if (pedidosActivos == activos) {
+                return;
+            }
+            pedidosActivos = activos;
+        }
+        replayState();
+    }
+
+    static void publishPerfil(SamplingPolicy.Profile nuevo) {
+        synchronized (TrackingEvents.class) {
+            if (perfil.equals(nuevo.name())) {
+                return;
+            }
+            perfil = nuevo.name();
+        }
+        replayState();
+    }
+
+    /**
+     * El polling nativo de pedidos tiene (o perdió) una sesión que el servidor acepta
+     */
+    static void publishPedidosNativos(boolean autenticado) {
+        synchronized (TrackingEvents.class) {
+            if (pedidosNativos == autenticado) {
+                return;
+            }
+            pedidosNativos = autenticado;
+        }
+        replayState();
+    }
+
+    /**
+     * Manda el estado actual al oyente (si hay)
+     */
+    static void replayState() {
+        Listener actual;
+        boolean r;
+        boolean p;
+        String pf;
+        boolean n;
+        synchronized (TrackingEvents.class) {
+            actual = listener;
+            r = running;
+            p = pedidosActivos;
+            pf = perfil;
+            n = pedidosNativos;
+        }
+        if (actual != null) {
+            actual.onState(r, p, pf, n);
+        }
+    }
+}
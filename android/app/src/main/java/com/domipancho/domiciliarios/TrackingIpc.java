@@ -0,0 +1,230 @@
+package com.domipancho.domiciliarios;
+
+import android.os.Bundle;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Contrato entre la app (WebView y plugin, proceso principal) y el tracking
+ * (servicio, estado y red, proceso ":tracking").
+ *
+ * - Plugin ↔ servicio: mensajes por {@link android.os.Messenger}. El plugin se
+ *   enlaza sin BIND_AUTO_CREATE (no mantiene vivo al servicio ni lo arranca),
+ *   se registra con {@link #MSG_REGISTER} y desde ahí recibe estado, fixes y
+ *   eventos de pedidos. Si el proceso de la WebView muere, el servicio sigue.
+ * - Estado persistente: lo tiene un solo proceso (el de tracking, dueño de
+ *   {@link TrackingStateProvider}); el resto lo lee y modifica con
+ *   ContentResolver.call y los métodos {@code METHOD_*}.
+ * - Sesión: el proceso de tracking nunca crea una WebView, así que no puede leer
+ *   el CookieManager (y en Android 9+ dos procesos no pueden compartir el
+ *   directorio de datos de la WebView). El plugin lee la cookie del login y la
+ *   manda explícitamente con {@link #METHOD_SET_SESSION}.
+ *
+ * Todo viaja en Bundles con tipos simples; las conversiones están acá para que
+ * los dos lados no puedan desalinearse.
+ */
+final class TrackingIpc {
+
+    // ==================== Mensajes plugin → servicio ====================
+
+    /** replyTo: el Messenger del plugin. El servicio responde con {@link #MSG_STATE} */
+    static final int MSG_REGISTER = 1;
+    static final int MSG_UNREGISTER = 2;
+    /** arg1: 1 si la WebView muestra los pedidos, 0 si no */
+    static final int MSG_WATCH_ORDERS = 3;
+    /** arg1: {@link #DUMP_ON}, {@link #DUMP_OFF} o {@link #DUMP_SIN_CAMBIO}; arg2: id de la consulta */
+    static final int MSG_GET_STATS = 4;
+
+    // ==================== Mensajes servicio → plugin ====================
+
+    static final int MSG_STATE = 10;
+    static final int MSG_FIX = 11;
+    static final int MSG_ORDER_EVENTS = 12;
+    /** arg2: el id de la consulta; data: {@link #KEY_JSON} y, si hay volcado, {@link #KEY_DUMP_FILE} */
+    static final int MSG_STATS = 13;
+
+    static final int DUMP_SIN_CAMBIO = -1;
+    static final int DUMP_OFF = 0;
+    static final int DUMP_ON = 1;
+
+    // ==================== Estado persistente (ContentResolver.call) ====================
+
+    static final String AUTHORITY_SUFFIX = ".tracking";
+    static final String METHOD_SNAPSHOT = "snapshot";
+    /** arg: "true" / "false" */
+    static final String METHOD_SET_TRACKING_ACTIVE = "setTrackingActive";
+    /** arg: el id del pedido */
+    static final String METHOD_SET_PEDIDO_ACTIVO = "setPedidoActivo";
+    /** extras: {@link #KEY_PEDIDO_ID} y {@link #KEY_ESTADO} */
+    static final String METHOD_APPLY_ORDER_MESSAGE = "applyOrderMessage";
+    static final String METHOD_CLEAR = "clearTracking";
+    static final String METHOD_FLUSH = "flush";
+    /** arg: el header Cookie de la sesión ("" para borrarla) */
+    static final String METHOD_SET_SESSION = "setSession";
+
+    // ==================== Claves ====================
+
+    static final String KEY_RUNNING = "running";
+    static final String KEY_PEDIDOS_ACTIVOS = "pedidosActivos";
+    static final String KEY_PERFIL = "perfil";
+    static final String KEY_PEDIDOS_NATIVOS = "pedidosNativos";
+    static final String KEY_LAT = "lat";
+    static final String KEY_LON = "lon";
+    static final String KEY_TIME = "time";
+    static final String KEY_ACCURACY = "accuracy";
+    static final String KEY_PROVIDER = "provider";
+    static final String KEY_SPEED = "speed";
+    static final String KEY_TIPOS = "tipos";
+    static final String KEY_IDS = "ids";
+    static final String KEY_ESTADOS = "estados";
+    static final String KEY_ANTERIORES = "anteriores";
+    static final String KEY_PEDIDOS_JSON = "pedidos";
+    static final String KEY_DOMICILIARIOS = "domiciliarios";
+    static final String KEY_JSON = "json";
+    static final String KEY_DUMP_FILE = "dumpFile";
+    static final String KEY_TRACKING_ACTIVE = "trackingActive";
+    static final String KEY_PEDIDO_ID = "pedidoId";
+    static final String KEY_ESTADO = "estado";
+    static final String KEY_LAST_UPDATE = "lastUpdate";
+    static final String KEY_HAS_FIX = "hasFix";
+
+    private TrackingIpc() {
+    }
+
+    // ==================== Fix ====================
+
+    static Bundle fixToBundle(LocationFix fix) {
+        Bundle data = new Bundle();
+        data.putDouble(KEY_LAT, fix.getLatitude());
+        data.putDouble(KEY_LON, fix.getLongitude());
+        data.putLong(KEY_TIME, fix.getTimestamp());
+        data.putFloat(KEY_ACCURACY, fix.getAccuracy());
+        data.putString(KEY_PROVIDER, fix.getProvider());
+        if (fix.hasSpeed()) {
+            data.putFloat(KEY_SPEED, fix.getSpeed());
+        }
+        return data;
+    }
+
+    static LocationFix fixFromBundle(Bundle data) {
+        if (data.containsKey(KEY_SPEED)) {
+            return new LocationFix(data.getDouble(KEY_LAT), data.getDouble(KEY_LON), data.getLong(KEY_TIME),
+                data.getFloat(KEY_ACCURACY), data.getString(KEY_PROVIDER), data.getFloat(KEY_SPEED));
+        }
+        return new LocationFix(data.getDouble(KEY_LAT), data.getDouble(KEY_LON), data.getLong(KEY_TIME),
+            data.getFloat(KEY_ACCURACY), data.getString(KEY_PROVIDER));
+    }
+
+    // ==================== Estado del servicio ====================
+
+    static Bundle stateToBundle(boolean running, boolean pedidosActivos, String perfil, boolean pedidosNativos) {
+        Bundle data = new Bundle();
+        data.putBoolean(KEY_RUNNING, running);
+        data.putBoolean(KEY_PEDIDOS_ACTIVOS, pedidosActivos);
+        data.putString(KEY_PERFIL, perfil);
+        data.putBoolean(KEY_PEDIDOS_NATIVOS, pedidosNativos);
+        return data;
+    }
+
+    // ==================== Eventos de pedidos (arreglos paralelos) ====================
+
+    /**
+     * Tope del JSON de pedidos por mensaje. Una transacción del binder no pasa de ~1 MB
+     * (compartido por el proceso) y el texto viaja en UTF-16: el primer diff de una
+     * lista larga se parte en varios {@link #MSG_ORDER_EVENTS}.
+     */
+    static final int MAX_ORDER_EVENTS_CHARS = 128 * 1024;
+
+    /**
+     * Los eventos en uno o más Bundles de como mucho {@link #MAX_ORDER_EVENTS_CHARS}
+     * (un pedido más grande que el tope va solo), en el mismo orden
+     */
+    static List<Bundle> orderEventsToBundles(List<OrderBook.Event> events) {
+        List<Bundle> mensajes = new ArrayList<>();
+        int desde = 0;
+        int chars = 0;
+        for (int i = 0; i < events.size(); i++) {
+            String json = events.get(i).getOrder().getJson();
+            int largo = json != null ? json.length() : 0;
+            if (i > desde && chars + largo > MAX_ORDER_EVENTS_CHARS) {
+                mensajes.add(orderEventsToBundle(events.subList(desde, i)));
+                desde = i;
+                chars = 0;
+            }
+            chars += largo;
+        }
+        if (desde < events.size()) {
+            mensajes.add(orderEventsToBundle(events.subList(desde, events.size())));
+        }
+        return mensajes;
+    }
+
+    static Bundle orderEventsToBundle(List<OrderBook.Event> events) {
+        int n = events.size();
+        String[] tipos = new String[n];
+        int[] ids = new int[n];
+        String[] estados = new String[n];
+        String[] anteriores = new String[n];
+        int[] domiciliarios = new int[n];
+        String[] json = new String[n];
+        for (int i = 0; i < n; i++) {
+            OrderBook.Event event = events.get(i);
+            OrderBook.Order pedido = event.getOrder();
+            tipos[i] = event.getType().name();
+            ids[i] = pedido.getId();
+            estados[i] = pedido.getEstado();
+            anteriores[i] = event.getEstadoAnterior();
+            domiciliarios[i] = pedido.getDomiciliarioId();
+            json[i] = pedido.getJson();
+        }
+        Bundle data = new Bundle();
+        data.putStringArray(KEY_TIPOS, tipos);
+        data.putIntArray(KEY_IDS, ids);
+        data.putStringArray(KEY_ESTADOS, estados);
+        data.putStringArray(KEY_ANTERIORES, anteriores);
+        data.putIntArray(KEY_DOMICILIARIOS, domiciliarios);
+        data.putStringArray(KEY_PEDIDOS_JSON, json);
+        return data;
+    }
+
+    static List<OrderBook.Event> orderEventsFromBundle(Bundle data) {
+        String[] tipos = data.getStringArray(KEY_TIPOS);
+        int[] ids = data.getIntArray(KEY_IDS);
+        String[] estados = data.getStringArray(KEY_ESTADOS);
+        String[] anteriores = data.getStringArray(KEY_ANTERIORES);
+        int[] domiciliarios = data.getIntArray(KEY_DOMICILIARIOS);
+        String[] json = data.getStringArray(KEY_PEDIDOS_JSON);
+        List<OrderBook.Event> events = new ArrayList<>(tipos.length);
+        for (int i = 0; i < tipos.length; i++) {
+            OrderBook.Order pedido = new OrderBook.Order(ids[i], estados[i], domiciliarios[i], json[i]);
+            events.add(new OrderBook.Event(OrderBook.Type.valueOf(tipos[i]), pedido, anteriores[i]));
+        }
+        return events;
+    }
+
+    // ==================== Estado persistente ====================
+
+    static Bundle trackingStateToBundle(TrackingState state) {
+        Bundle data = new Bundle();
+        data.putBoolean(KEY_TRACKING_ACTIVE, state.isTrackingActive());
+        data.putInt(KEY_PEDIDO_ID, state.getPedidoActivo());
+        data.putBoolean(KEY_PEDIDOS_ACTIVOS, state.hasPedidosActivos());
+        data.putLong(KEY_LAST_UPDATE, state.getLastUpdate());
+        LocationFix fix = state.getLastFix();
+        data.putBoolean(KEY_HAS_FIX, fix != null);
+        if (fix != null) {
+            data.putAll(fixToBundle(fix));
+        }
+        return data;
+    }
+
+    static TrackingState trackingStateFromBundle(Bundle data) {
+        return new TrackingState(
+            data.getBoolean(KEY_TRACKING_ACTIVE),
+            data.getInt(KEY_PEDIDO_ID),
+            data.getBoolean(KEY_PEDIDOS_ACTIVOS),
+            data.getLong(KEY_LAST_UPDATE),
+            data.getBoolean(KEY_HAS_FIX) ? fixFromBundle(data) : null
+        );
+    }
+}
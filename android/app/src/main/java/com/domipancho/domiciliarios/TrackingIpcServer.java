@@ -0,0 +1,143 @@
+package com.domipancho.domiciliarios;
+
+import android.os.Bundle;
+import android.os.DeadObjectException;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.Message;
+import android.os.Messenger;
+import android.os.RemoteException;
+import android.util.Log;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * El lado del servicio del contrato {@link TrackingIpc}: es el oyente de
+ * {@link TrackingEvents} en el proceso de tracking y reenvía cada evento a los
+ * plugins enlazados (normalmente uno). Lo que llega del plugin (vigilancia de
+ * pedidos, estadísticas) se atiende en el hilo de tracking.
+ *
+ * Si el proceso de la WebView muere, su Messenger se quita solo (linkToDeath o
+ * DeadObjectException al enviar) y el polling de pedidos vuelve al respaldo.
+ */
+final class TrackingIpcServer implements TrackingEvents.Listener {
+    private static final String TAG = "TrackingIpc";
+
+    /**
+     * Las estadísticas que pidió el plugin (desde el hilo de tracking)
+     */
+    interface StatsSource {
+        /** {@code dump}: uno de TrackingIpc.DUMP_* */
+        Bundle getStats(int dump);
+    }
+
+    private final StatsSource stats;
+    private final Messenger messenger;
+    private final CopyOnWriteArrayList<Messenger> clientes = new CopyOnWriteArrayList<>();
+
+    TrackingIpcServer(Looper looper, StatsSource stats) {
+        this.stats = stats;
+        this.messenger = new Messenger(new Handler(looper, this::recibir));
+    }
+
+    /**
+     * Lo que devuelve onBind del servicio
+     */
+    IBinder getBinder() {
+        return messenger.getBinder();
+    }
+
+    private boolean recibir(Message msg) {
+        switch (msg.what) {
+            case TrackingIpc.MSG_REGISTER:
+                registrar(msg.replyTo);
+                return true;
+            case TrackingIpc.MSG_UNREGISTER:
+                quitar(msg.replyTo);
+                return true;
+            case TrackingIpc.MSG_WATCH_ORDERS:
+                TrackingEvents.setOrdersWatched(msg.arg1 == 1);
+                return true;
+            case TrackingIpc.MSG_GET_STATS:
+                Message respuesta = Message.obtain(null, TrackingIpc.MSG_STATS);
+                respuesta.arg2 = msg.arg2;
+                respuesta.setData(stats.getStats(msg.arg1));
+                enviar(msg.replyTo, respuesta);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private void registrar(Messenger cliente) {
+        if (cliente == null || clientes.contains(cliente)) {
+            return;
+        }
+        try {
+            cliente.getBinder().linkToDeath(() -> quitar(cliente), 0);
+        } catch (RemoteException e) {
+            return; // ya murió
+        }
+        clientes.add(cliente);
+        Log.d(TAG, "🔗 Plugin enlazado - Clientes: " + clientes.size());
+        TrackingEvents.replayState();
+    }
+
+    private void quitar(Messenger cliente) {
+        if (!clientes.remove(cliente)) {
+            return;
+        }
+        Log.d(TAG, "🔗 Plugin desenlazado - Clientes: " + clientes.size());
+        if (clientes.isEmpty()) {
+            TrackingEvents.setOrdersWatched(false); // sin WebView, polling de respaldo
+        }
+    }
+
+    private void enviarATodos(int what, Bundle data) {
+        for (Messenger cliente : clientes) {
+            Message msg = Message.obtain(null, what);
+            msg.setData(data);
+            enviar(cliente, msg);
+        }
+    }
+
+    private void enviar(Messenger cliente, Message msg) {
+        if (cliente == null) {
+            return;
+        }
+        try {
+            cliente.send(msg);
+        } catch (DeadObjectException e) {
+            quitar(cliente); // el proceso de la WebView ya no está
+        } catch (RemoteException e) {
+            // Otro fallo (p. ej. TransactionTooLargeException): se pierde este mensaje,
+            // no el cliente, que sigue recibiendo los siguientes
+            Log.e(TAG, "❌ Mensaje " + msg.what + " no entregado: " + e);
+        }
+    }
+
+    // ==================== TrackingEvents.Listener ====================
+
+    @Override
+    public void onFix(LocationFix fix) {
+        if (!clientes.isEmpty()) {
+            enviarATodos(TrackingIpc.MSG_FIX, TrackingIpc.fixToBundle(fix));
+        }
+    }
+
+    @Override
+    public void onState(boolean running, boolean pedidosActivos, String perfil, boolean pedidosNativos) {
+        enviarATodos(TrackingIpc.MSG_STATE,
+            TrackingIpc.stateToBundle(running, pedidosActivos, perfil, pedidosNativos));
+    }
+
+    @Override
+    public void onOrderEvents(List<OrderBook.Event> events) {
+        if (!clientes.isEmpty()) {
+            for (Bundle mensaje : TrackingIpc.orderEventsToBundles(events)) {
+                enviarATodos(TrackingIpc.MSG_ORDER_EVENTS, mensaje);
+            }
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package com.domipancho.domiciliarios;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.Message;
+import android.os.Messenger;
+import android.os.RemoteException;
+import android.util.Log;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * El lado del plugin del contrato {@link TrackingIpc}, en el proceso de la WebView.
+ *
+ * Se enlaza sin BIND_AUTO_CREATE: no arranca al servicio ni lo mantiene vivo, y
+ * se conecta solo cada vez que el servicio arranca. Lo que llega (estado, fixes,
+ * pedidos) sale al {@link TrackingEvents.Listener} en el hilo principal, igual
+ * que cuando servicio y plugin compartían proceso.
+ *
+ * El estado de conexión y del servicio se lee desde cualquier hilo; el resto
+ * corre en el hilo principal.
+ */
+final class TrackingServiceClient {
+    private static final String TAG = "TrackingIpc";
+
+    static final long STATS_TIMEOUT_MS = 2000;
+
+    interface StatsCallback {
+        /** {@code data}: TrackingIpc.KEY_JSON y, si hay volcado, TrackingIpc.KEY_DUMP_FILE */
+        void onStats(Bundle data);
+
+        /** El servicio no corre o no respondió a tiempo */
+        void onUnavailable();
+    }
+
+    private final Context context;
+    private final TrackingEvents.Listener listener;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Messenger entrada = new Messenger(new Handler(Looper.getMainLooper(), this::recibir));
+    private final Map<Integer, StatsCallback> consultas = new HashMap<>();
+
+    private Messenger servicio;
+    private boolean enlazado;
+    private boolean vigilados;
+    private int siguienteConsulta;
+    private volatile boolean conectado;
+    private volatile boolean running;
+    private volatile boolean pedidosActivos;
+    private volatile String perfil = "";
+    private volatile boolean pedidosNativos;
+
+    private final ServiceConnection conexion = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder binder) {
+            servicio = new Messenger(binder);
+            conectado = true;
+            Log.d(TAG, "🔗 Conectado al servicio de tracking");
+            Message registro = Message.obtain(null, TrackingIpc.MSG_REGISTER);
+            registro.replyTo = entrada;
+            enviar(registro);
+            enviarVigilancia();
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            // Proceso de tracking muerto o servicio detenido: vuelve a conectar cuando arranque
+            Log.w(TAG, "⚠️ Servicio de tracking desconectado");
+            perderServicio();
+        }
+
+        @Override
+        public void onBindingDied(ComponentName name) {
+            // El enlace ya no recibe más conexiones (p. ej. tras un stop): hay que rehacerlo
+            Log.w(TAG, "⚠️ Enlace al servicio de tracking muerto");
+            reconnect();
+        }
+
+        @Override
+        public void onNullBinding(ComponentName name) {
+            Log.w(TAG, "⚠️ El servicio de tracking no devolvió binder");
+            reconnect();
+        }
+    };
+
+    TrackingServiceClient(Context context, TrackingEvents.Listener listener) {
+        this.context = context.getApplicationContext();
+        this.listener = listener;
+    }
+
+    /**
+     * Enlaza (sin arrancar) al servicio
+     */
+    void connect() {
+        if (enlazado) {
+            return;
+        }
+        enlazado = context.bindService(new Intent(context, LocationForegroundService.class), conexion, 0);
+        Log.d(TAG, "🔗 Enlace al servicio de tracking: " + enlazado);
+    }
+
+    /**
+     * Descarta el enlace actual (aunque parezca vivo) y enlaza de nuevo
+     */
+    void reconnect() {
+        disconnect();
+        perderServicio();
+        connect();
+    }
+
+    void disconnect() {
+        if (!enlazado) {
+            return;
+        }
+        if (servicio != null) {
+            Message baja = Message.obtain(null, TrackingIpc.MSG_UNREGISTER);
+            baja.replyTo = entrada;
+            enviar(baja);
+        }
+        context.unbindService(conexion);
+        enlazado = false;
+        servicio = null;
+        conectado = false;
+        fallarConsultas();
+    }
+
+    /**
+     * Conectado y el servicio dijo que está rastreando
+     */
+    boolean isRunning() {
+        return conectado && running;
+    }
+
+    /**
+     * El servicio corre y su polling de pedidos está autenticado: los pedidos salen de ahí
+     */
+    boolean hasNativeOrders() {
+        return isRunning() && pedidosNativos;
+    }
+
+    boolean isConnected() {
+        return conectado;
+    }
+
+    /**
+     * La WebView muestra (o no) los pedidos; se vuelve a mandar en cada reconexión
+     */
+    void setOrdersWatched(boolean watched) {
+        vigilados = watched;
+        enviarVigilancia();
+    }
+
+    /**
+     * Manda al oyente el último estado conocido (al volver la WebView)
+     */
+    void replayState() {
+        listener.onState(isRunning(), pedidosActivos, perfil, hasNativeOrders());
+    }
+
+    /**
+     * Pide las métricas al servicio. {@code dump}: uno de TrackingIpc.DUMP_*
+     */
+    void requestStats(int dump, StatsCallback callback) {
+        if (servicio == null) {
+            callback.onUnavailable();
+            return;
+        }
+        int id = ++siguienteConsulta;
+        consultas.put(id, callback);
+        Message msg = Message.obtain(null, TrackingIpc.MSG_GET_STATS);
+        msg.arg1 = dump;
+        msg.arg2 = id;
+        msg.replyTo = entrada;
+        enviar(msg);
+        handler.postDelayed(() -> {
+            StatsCallback pendiente = consultas.remove(id);
+            if (pendiente != null) {
+                pendiente.onUnavailable();
+            }
+        }, STATS_TIMEOUT_MS);
+    }
+
+    private void enviarVigilancia() {
+        if (servicio != null) {
+            Message msg = Message.obtain(null, TrackingIpc.MSG_WATCH_ORDERS);
+            msg.arg1 = vigilados ? 1 : 0;
+            enviar(msg);
+        }
+    }
+
+    private void enviar(Message msg) {
+        try {
+            servicio.send(msg);
+        } catch (RemoteException e) {
+            Log.w(TAG, "⚠️ Servicio de tracking no disponible: " + e.getMessage());
+            perderServicio();
+        }
+    }
+
+    private void perderServicio() {
+        servicio = null;
+        conectado = false;
+        fallarConsultas();
+        if (running) {
+            running = false;
+            pedidosNativos = false;
+            listener.onState(false, pedidosActivos, perfil, false);
+        }
+    }
+
+    private void fallarConsultas() {
+        for (StatsCallback callback : consultas.values()) {
+            callback.onUnavailable();
+        }
+        consultas.clear();
+    }
+
+    private boolean recibir(Message msg) {
+        Bundle data = msg.getData();
+        switch (msg.what) {
+            case TrackingIpc.MSG_STATE:
+                running = data.getBoolean(TrackingIpc.KEY_RUNNING);
+                pedidosActivos = data.getBoolean(TrackingIpc.KEY_PEDIDOS_ACTIVOS);
+                perfil = data.getString(TrackingIpc.KEY_PERFIL);
+                pedidosNativos = data.getBoolean(TrackingIpc.KEY_PEDIDOS_NATIVOS);
+                listener.onState(running, pedidosActivos, perfil, pedidosNativos);
+                return true;
+            case TrackingIpc.MSG_FIX:
+                listener.onFix(TrackingIpc.fixFromBundle(data));
+                return true;
+            case TrackingIpc.MSG_ORDER_EVENTS:
+                listener.onOrderEvents(TrackingIpc.orderEventsFromBundle(data));
+                return true;
+            case TrackingIpc.MSG_STATS:
+                StatsCallback callback = consultas.remove(msg.arg2);
+                if (callback != null) {
+                    callback.onStats(data);
+                }
+                return true;
+            default:
+                return false;
+        }
+    }
+}
@@ -2,29 +2,144 @@ package com.domipancho.domiciliarios;
 
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.net.Uri;
+import android.os.Bundle;
 import android.util.Log;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Gestiona el estado del tracking para mantenerlo persistente
- * incluso cuando la app se cierra o reinicia
+ * incluso cuando la app se cierra o reinicia.
+ *
+ * Lo tiene en memoria un solo proceso, el de tracking ({@link TrackingStateProvider}):
+ * se carga de SharedPreferences una vez y se sirve desde memoria ({@link #snapshot});
+ * las escrituras se agrupan y salen en segundo plano {@link #FLUSH_DELAY_MS}
+ * después del primer cambio, o de inmediato con {@link #flush}. Desde el proceso
+ * de la WebView los mismos métodos llaman al provider.
+ *
+ * La sesión del domiciliario (el header Cookie del login) va aparte del estado:
+ * no viaja en las fotos hacia la WebView. La manda el plugin ({@link #setSession})
+ * y la lee el cliente HTTP del servicio ({@link #sessionStore}).
  */
 public class TrackingStateManager {
     private static final String PREFS_NAME = "DomiPanchoTracking";
     private static final String KEY_TRACKING_ACTIVE = "tracking_active";
     private static final String KEY_PEDIDO_ACTIVO = "pedido_activo_id";
+    private static final String KEY_PEDIDOS_ACTIVOS = "pedidos_en_camino";
     private static final String KEY_LAST_UPDATE = "last_update_timestamp";
+    private static final String KEY_FIX_LAT = "last_fix_lat";
+    private static final String KEY_FIX_LON = "last_fix_lon";
+    private static final String KEY_FIX_TIME = "last_fix_time";
+    private static final String KEY_FIX_ACCURACY = "last_fix_accuracy";
+    private static final String KEY_FIX_PROVIDER = "last_fix_provider";
+    private static final String KEY_SESSION = "session_cookie";
     private static final String TAG = "TrackingStateManager";
 
+    static final long FLUSH_DELAY_MS = 2000;
+
+    private static volatile TrackingStateStore store;
+    private static volatile boolean propietario; // el proceso de tracking (TrackingStateProvider)
+    private static volatile String sesion; // solo en el proceso dueño; null hasta leerla de prefs
+    private static ScheduledExecutorService flusher;
+
+    private static TrackingStateStore store(Context context) {
+        TrackingStateStore current = store;
+        if (current != null) {
+            return current;
+        }
+        synchronized (TrackingStateManager.class) {
+            if (store == null) {
+                SharedPreferences prefs = prefs(context);
+                flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "DomiPancho-Estado");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+                store = new TrackingStateStore(
+                    new PrefsPersistence(prefs),
+                    () -> flusher.schedule(TrackingStateManager::flushQuietly, FLUSH_DELAY_MS, TimeUnit.MILLISECONDS)
+                );
+                Log.d(TAG, "Estado cargado: " + store.snapshot());
+            }
+            return store;
+        }
+    }
+
+    private static void flushQuietly() {
+        try {
+            store.flush();
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Error guardando estado: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Este proceso es el dueño del estado (lo llama TrackingStateProvider.onCreate,
+     * antes que cualquier otro componente del proceso de tracking)
+     */
+    static void claimStore() {
+        propietario = true;
+    }
+
+    /**
+     * Fuera del proceso dueño todo pasa por el provider: una sola copia del estado
+     */
+    private static TrackingState remoto(Context context, String method, String arg, Bundle extras) {
+        Uri uri = Uri.parse("content://" + context.getPackageName() + TrackingIpc.AUTHORITY_SUFFIX);
+        try {
+            Bundle result = context.getContentResolver().call(uri, method, arg, extras);
+            if (result != null) {
+                return TrackingIpc.trackingStateFromBundle(result);
+            }
+        } catch (RuntimeException e) {
+            Log.e(TAG, "❌ Error llamando al estado (" + method + "): " + e.getMessage());
+        }
+        return TrackingState.EMPTY;
+    }
+
+    /**
+     * Foto actual del estado (desde memoria en el proceso de tracking)
+     */
+    public static TrackingState snapshot(Context context) {
+        if (!propietario) {
+            return remoto(context, TrackingIpc.METHOD_SNAPSHOT, null, null);
+        }
+        return store(context).snapshot();
+    }
+
+    /**
+     * Cambio atómico sobre la foto actual; se persiste en diferido. Solo en el proceso dueño.
+     */
+    private static TrackingState update(Context context, TrackingStateStore.Update update) {
+        return store(context).update(update);
+    }
+
+    /**
+     * Escribe ya lo pendiente (puntos de cierre: detener tracking, onDestroy del servicio)
+     */
+    public static void flush(Context context) {
+        if (!propietario) {
+            remoto(context, TrackingIpc.METHOD_FLUSH, null, null);
+            return;
+        }
+        store(context).flush();
+    }
+
     /**
      * Guarda que el tracking está activo
      */
     public static void setTrackingActive(Context context, boolean active) {
-        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        prefs.edit()
-            .putBoolean(KEY_TRACKING_ACTIVE, active)
-            .putLong(KEY_LAST_UPDATE, System.currentTimeMillis())
-            .apply();
-        
+        if (!propietario) {
+            remoto(context, TrackingIpc.METHOD_SET_TRACKING_ACTIVE, String.valueOf(active), null);
+            return;
+        }
+        update(context, state -> state.withTrackingActive(active, System.currentTimeMillis()));
         Log.d(TAG, "Tracking activo guardado: " + active);
     }
 
@@ -32,22 +147,18 @@ public class TrackingStateManager {
      * Verifica si el tracking debe estar activo
      */
     public static boolean isTrackingActive(Context context) {
-        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        boolean active = prefs.getBoolean(KEY_TRACKING_ACTIVE, false);
-        
-        Log.d(TAG, "Estado de tracking: " + active);
-        return active;
+        return snapshot(context).isTrackingActive();
     }
 
     /**
      * Guarda el ID del pedido activo
      */
     public static void setPedidoActivo(Context context, int pedidoId) {
-        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        prefs.edit()
-            .putInt(KEY_PEDIDO_ACTIVO, pedidoId)
-            .apply();
-        
+        if (!propietario) {
+            remoto(context, TrackingIpc.METHOD_SET_PEDIDO_ACTIVO, String.valueOf(pedidoId), null);
+            return;
+        }
+        update(context, state -> state.withPedidoActivo(pedidoId));
         Log.d(TAG, "Pedido activo guardado: " + pedidoId);
     }
 
@@ -55,40 +166,167 @@ public class TrackingStateManager {
      * Obtiene el ID del pedido activo (0 si no hay)
      */
     public static int getPedidoActivo(Context context) {
-        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        return prefs.getInt(KEY_PEDIDO_ACTIVO, 0);
+        return snapshot(context).getPedidoActivo();
+    }
+
+    /**
+     * Aplica un cambio de estado de pedido (push) sobre el pedido activo.
+     * Leer-modificar-escribir atómico: dos push seguidos no se pisan. Devuelve el estado nuevo.
+     */
+    public static TrackingState applyOrderMessage(Context context, OrderStateMessage message) {
+        if (!propietario) {
+            Bundle extras = new Bundle();
+            extras.putInt(TrackingIpc.KEY_PEDIDO_ID, message.getPedidoId());
+            extras.putString(TrackingIpc.KEY_ESTADO, message.getEstado());
+            return remoto(context, TrackingIpc.METHOD_APPLY_ORDER_MESSAGE, null, extras);
+        }
+        return update(context, current -> current.withPedidoActivo(message.applyTo(current.getPedidoActivo())));
+    }
+
+    /**
+     * Guarda el último fix aceptado para el re-arranque tibio (sin log: el motor lo pide
+     * cada TrackingEngine.WARM_FIX_SAVE_INTERVAL_MS).
+     * Solo desde el servicio, que corre en el proceso dueño.
+     */
+    public static void setLastFix(Context context, LocationFix fix) {
+        if (!propietario) {
+            return;
+        }
+        update(context, state -> state.withLastFix(fix));
+    }
+
+    /**
+     * Guarda si el polling encontró pedidos en camino (para el re-arranque).
+     * Solo desde el servicio, que corre en el proceso dueño.
+     */
+    public static void setPedidosActivos(Context context, boolean activos) {
+        if (!propietario) {
+            return;
+        }
+        update(context, state -> state.withPedidosActivos(activos));
     }
 
     /**
      * Limpia el estado del tracking
      */
     public static void clearTracking(Context context) {
-        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        prefs.edit()
-            .putBoolean(KEY_TRACKING_ACTIVE, false)
-            .putInt(KEY_PEDIDO_ACTIVO, 0)
-            .apply();
-        
+        if (!propietario) {
+            remoto(context, TrackingIpc.METHOD_CLEAR, null, null);
+            return;
+        }
+        update(context, state -> state
+            .withTrackingActive(false, System.currentTimeMillis())
+            .withPedidoActivo(0)
+            .withPedidosActivos(false));
         Log.d(TAG, "Estado de tracking limpiado");
     }
 
     /**
-     * Restaura el tracking si debe estar activo
-     * (llamado desde MainActivity.onResume)
+     * Obtiene el timestamp de la última actualización
+     */
+    public static long getLastUpdateTimestamp(Context context) {
+        return snapshot(context).getLastUpdate();
+    }
+
+    /**
+     * Guarda la sesión (header Cookie, "a=b; c=d") con la que el servicio se
+     * autentica; null o vacía la borra. Desde la WebView va por el provider.
+     */
+    public static void setSession(Context context, String cookieHeader) {
+        String nueva = cookieHeader != null ? cookieHeader.trim() : "";
+        if (!propietario) {
+            remoto(context, TrackingIpc.METHOD_SET_SESSION, nueva, null);
+            return;
+        }
+        if (nueva.equals(getSession(context))) {
+            return;
+        }
+        sesion = nueva;
+        prefs(context).edit().putString(KEY_SESSION, nueva).apply();
+        Log.d(TAG, nueva.isEmpty() ? "Sesión borrada" : "Sesión actualizada");
+    }
+
+    /**
+     * La sesión guardada ("" si no hay). Solo en el proceso dueño.
      */
-    public static void restoreTrackingIfNeeded(Context context) {
-        if (isTrackingActive(context)) {
-            int pedidoId = getPedidoActivo(context);
-            Log.d(TAG, "Restaurando tracking para pedido: " + pedidoId);
-            // El tracking se reiniciará desde JavaScript
+    static String getSession(Context context) {
+        String actual = sesion;
+        if (actual == null) {
+            actual = prefs(context).getString(KEY_SESSION, "");
+            sesion = actual;
         }
+        return actual;
     }
 
     /**
-     * Obtiene el timestamp de la última actualización
+     * La sesión para {@link SessionCookieJar}: se lee en cada petición y las
+     * renovaciones del servidor (Set-Cookie) se guardan. Solo en el proceso dueño.
      */
-    public static long getLastUpdateTimestamp(Context context) {
-        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        return prefs.getLong(KEY_LAST_UPDATE, 0);
+    static SessionCookieJar.Store sessionStore(Context context) {
+        Context app = context.getApplicationContext();
+        return new SessionCookieJar.Store() {
+            @Override
+            public String load() {
+                return getSession(app);
+            }
+
+            @Override
+            public void save(String cookieHeader) {
+                setSession(app, cookieHeader);
+            }
+        };
+    }
+
+    private static SharedPreferences prefs(Context context) {
+        return context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    private static final class PrefsPersistence implements TrackingStateStore.Persistence {
+        private final SharedPreferences prefs;
+
+        PrefsPersistence(SharedPreferences prefs) {
+            this.prefs = prefs;
+        }
+
+        @Override
+        public TrackingState load() {
+            LocationFix fix = null;
+            if (prefs.contains(KEY_FIX_TIME)) {
+                fix = new LocationFix(
+                    Double.longBitsToDouble(prefs.getLong(KEY_FIX_LAT, 0)),
+                    Double.longBitsToDouble(prefs.getLong(KEY_FIX_LON, 0)),
+                    prefs.getLong(KEY_FIX_TIME, 0),
+                    prefs.getFloat(KEY_FIX_ACCURACY, 0f),
+                    prefs.getString(KEY_FIX_PROVIDER, "")
+                );
+            }
+            return new TrackingState(
+                prefs.getBoolean(KEY_TRACKING_ACTIVE, false),
+                prefs.getInt(KEY_PEDIDO_ACTIVO, 0),
+                prefs.getBoolean(KEY_PEDIDOS_ACTIVOS, false),
+                prefs.getLong(KEY_LAST_UPDATE, 0),
+                fix
+            );
+        }
+
+        @Override
+        public void save(TrackingState state) {
+            SharedPreferences.Editor editor = prefs.edit()
+                .putBoolean(KEY_TRACKING_ACTIVE, state.isTrackingActive())
+                .putInt(KEY_PEDIDO_ACTIVO, state.getPedidoActivo())
+                .putBoolean(KEY_PEDIDOS_ACTIVOS, state.hasPedidosActivos())
+                .putLong(KEY_LAST_UPDATE, state.getLastUpdate());
+
+            LocationFix fix = state.getLastFix();
+            if (fix != null) {
+                editor.putLong(KEY_FIX_LAT, Double.doubleToRawLongBits(fix.getLatitude()))
+                    .putLong(KEY_FIX_LON, Double.doubleToRawLongBits(fix.getLongitude()))
+                    .putLong(KEY_FIX_TIME, fix.getTimestamp())
+                    .putFloat(KEY_FIX_ACCURACY, fix.getAccuracy())
+                    .putString(KEY_FIX_PROVIDER, fix.getProvider());
+            }
+            // commit: ya estamos en segundo plano (o en un cierre que debe quedar en disco)
+            editor.commit();
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,100 @@
+package com.domipancho.domiciliarios;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.util.Log;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Dueño del estado persistente del tracking, en el proceso ":tracking".
+ *
+ * Android crea los providers de un proceso antes que cualquier otro componente,
+ * así que al arrancar el servicio el estado ya es local ({@link TrackingStateManager#claimStore}).
+ * Desde el proceso de la WebView (plugin, push de pedidos) el estado se lee y se
+ * modifica con {@code call} ({@link TrackingIpc}.METHOD_*): un solo proceso escribe
+ * las SharedPreferences y nadie lee una copia vieja.
+ *
+ * No exportado: solo la propia app puede llamarlo. No tiene tablas.
+ */
+public class TrackingStateProvider extends ContentProvider {
+    private static final String TAG = "TrackingStateProvider";
+
+    @Override
+    public boolean onCreate() {
+        TrackingStateManager.claimStore();
+        return true;
+    }
+
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+        TrackingState state;
+        switch (method) {
+            case TrackingIpc.METHOD_SNAPSHOT:
+                state = TrackingStateManager.snapshot(getContext());
+                break;
+            case TrackingIpc.METHOD_SET_TRACKING_ACTIVE:
+                TrackingStateManager.setTrackingActive(getContext(), Boolean.parseBoolean(arg));
+                state = TrackingStateManager.snapshot(getContext());
+                break;
+            case TrackingIpc.METHOD_SET_PEDIDO_ACTIVO:
+                TrackingStateManager.setPedidoActivo(getContext(), Integer.parseInt(arg));
+                state = TrackingStateManager.snapshot(getContext());
+                break;
+            case TrackingIpc.METHOD_APPLY_ORDER_MESSAGE:
+                Map<String, String> data = new HashMap<>();
+                data.put(OrderStateMessage.KEY_TYPE, OrderStateMessage.TYPE);
+                data.put(OrderStateMessage.KEY_PEDIDO_ID, String.valueOf(extras.getInt(TrackingIpc.KEY_PEDIDO_ID)));
+                data.put(OrderStateMessage.KEY_ESTADO, extras.getString(TrackingIpc.KEY_ESTADO));
+                OrderStateMessage message = OrderStateMessage.parse(data);
+                state = message != null
+                    ? TrackingStateManager.applyOrderMessage(getContext(), message)
+                    : TrackingStateManager.snapshot(getContext());
+                break;
+            case TrackingIpc.METHOD_CLEAR:
+                TrackingStateManager.clearTracking(getContext());
+                state = TrackingStateManager.snapshot(getContext());
+                break;
+            case TrackingIpc.METHOD_SET_SESSION:
+                TrackingStateManager.setSession(getContext(), arg);
+                state = TrackingStateManager.snapshot(getContext());
+                break;
+            case TrackingIpc.METHOD_FLUSH:
+                TrackingStateManager.flush(getContext());
+                state = TrackingStateManager.snapshot(getContext());
+                break;
+            default:
+                Log.w(TAG, "⚠️ Método desconocido: " + method);
+                return null;
+        }
+        return TrackingIpc.trackingStateToBundle(state);
+    }
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+        return null;
+    }
+
+    @Override
+    public String getType(Uri uri) {
+        return null;
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+        return null;
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+        return 0;
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        return 0;
+    }
+}
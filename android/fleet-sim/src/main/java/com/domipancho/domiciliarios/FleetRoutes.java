@@ -0,0 +1,95 @@
+package com.domipancho.domiciliarios;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Recorridos para la flota: sintéticos (moto en ciudad) o grabados en CSV con el
+ * mismo formato de las trazas de prueba (timestamp,latitud,longitud,accuracy,provider,speed).
+ */
+final class FleetRoutes {
+
+    private FleetRoutes() {
+    }
+
+    static LocationFix[] load(File csv) throws IOException {
+        List<LocationFix> fixes = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(csv), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] parts = line.split(",", -1);
+                fixes.add(new LocationFix(
+                    Double.parseDouble(parts[1]),
+                    Double.parseDouble(parts[2]),
+                    Long.parseLong(parts[0]),
+                    Float.parseFloat(parts[3]),
+                    parts[4],
+                    parts[5].isEmpty() ? -1f : Float.parseFloat(parts[5])
+                ));
+            }
+        }
+        if (fixes.size() < 2) {
+            throw new IOException("Recorrido sin fixes suficientes: " + csv);
+        }
+        return fixes.toArray(new LocationFix[0]);
+    }
+
+    /**
+     * Moto en ciudad: ~30 km/h, giros en esquinas, semáforos y entregas, un fix GPS
+     * por segundo y un fix de red cada 20 s, con ruido según la precisión.
+     */
+    static LocationFix[] synthetic(int seconds, long seed) {
+        Random random = new Random(seed);
+        List<LocationFix> fixes = new ArrayList<>(seconds + seconds / 20);
+        double metersPerDegree = Math.toRadians(1) * LocationFix.EARTH_RADIUS_M;
+
+        double lat = 4.6097 + (random.nextDouble() - 0.5) * 0.1;
+        double lon = -74.0817 + (random.nextDouble() - 0.5) * 0.1;
+        double heading = random.nextDouble() * 2 * Math.PI;
+        long time = 0;
+        int stopLeft = 0;
+
+        for (int i = 0; i < seconds; i++) {
+            time += 1000;
+            double speed;
+            if (stopLeft > 0) {
+                stopLeft--;
+                speed = 0;
+            } else {
+                if (random.nextInt(120) == 0) {
+                    stopLeft = 20 + random.nextInt(120); // semáforo o entrega
+                }
+                if (random.nextInt(45) == 0) {
+                    heading += (random.nextBoolean() ? 1 : -1) * Math.PI / 2;
+                }
+                speed = 6 + random.nextDouble() * 5;
+            }
+            lat += speed * Math.cos(heading) / metersPerDegree;
+            lon += speed * Math.sin(heading) / (metersPerDegree * Math.cos(Math.toRadians(lat)));
+
+            float accuracy = 3 + random.nextFloat() * 8;
+            double noise = accuracy / 3 / metersPerDegree;
+            fixes.add(new LocationFix(lat + random.nextGaussian() * noise, lon + random.nextGaussian() * noise,
+                time, accuracy, "gps", (float) speed));
+
+            if (i % 20 == 0) {
+                float netAccuracy = 25 + random.nextFloat() * 40;
+                double netNoise = netAccuracy / 3 / metersPerDegree;
+                fixes.add(new LocationFix(lat + random.nextGaussian() * netNoise, lon + random.nextGaussian() * netNoise,
+                    time, netAccuracy, "network", -1f));
+            }
+        }
+        return fixes.toArray(new LocationFix[0]);
+    }
+}
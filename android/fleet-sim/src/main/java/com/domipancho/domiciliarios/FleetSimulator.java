@@ -0,0 +1,198 @@
+package com.domipancho.domiciliarios;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Simulador de carga de la flota: N domiciliarios virtuales (un hilo virtual cada uno)
+ * recorren rutas sintéticas o grabadas y mandan exactamente las peticiones del servicio
+ * contra un servidor local (o uno externo con --url). Al final reporta peticiones por
+ * segundo, bytes de payload y latencias de cola por endpoint.
+ *
+ * <pre>
+ *   ./gradlew :fleet-sim:run --args="--couriers 2000 --minutes 30 --speed 10"
+ *
+ *   --couriers N          domiciliarios virtuales (200)
+ *   --minutes M           minutos simulados (30)
+ *   --speed S             reloj simulado S veces más rápido que el real (10)
+ *   --route archivo.csv   recorrido grabado (formato de las trazas); si no, sintético
+ *   --active-ratio R      fracción con pedido en camino (0.3)
+ *   --server-latency-ms L latencia artificial del servidor local (0)
+ *   --url URL             apuntar a otro servidor en vez del local
+ *   --seed X              semilla de rutas y arranques (1)
+ * </pre>
+ *
+ * Las tasas se dan "a 1x": lo medido dividido por la velocidad del reloj, es decir,
+ * lo que vería el backend con la flota real. Con speed alto el servidor recibe S veces
+ * esa carga; bajar speed si la latencia medida crece por saturación local.
+ */
+public final class FleetSimulator {
+
+    private int couriers = 200;
+    private int minutes = 30;
+    private double speed = 10;
+    private File routeFile;
+    private double activeRatio = 0.3;
+    private long serverLatencyMs;
+    private String url;
+    private long seed = 1;
+
+    public static void main(String[] args) throws Exception {
+        FleetSimulator simulator = new FleetSimulator();
+        simulator.parse(args);
+        System.out.println(simulator.run().report());
+    }
+
+    void parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String value = i + 1 < args.length ? args[i + 1] : null;
+            switch (args[i]) {
+                case "--couriers": couriers = Integer.parseInt(value); i++; break;
+                case "--minutes": minutes = Integer.parseInt(value); i++; break;
+                case "--speed": speed = Double.parseDouble(value); i++; break;
+                case "--route": routeFile = new File(value); i++; break;
+                case "--active-ratio": activeRatio = Double.parseDouble(value); i++; break;
+                case "--server-latency-ms": serverLatencyMs = Long.parseLong(value); i++; break;
+                case "--url": url = value; i++; break;
+                case "--seed": seed = Long.parseLong(value); i++; break;
+                default: throw new IllegalArgumentException("Opción desconocida: " + args[i]);
+            }
+        }
+        if (couriers <= 0 || minutes <= 0) {
+            throw new IllegalArgumentException("--couriers y --minutes deben ser > 0");
+        }
+    }
+
+    /**
+     * Resultado de una corrida: contadores del cliente y, con servidor local, los del servidor
+     */
+    final class Result {
+        final FleetStats stats;
+        final StandInServer server;
+        final double wallSeconds;
+        final long bytesSent;
+
+        Result(FleetStats stats, StandInServer server, double wallSeconds, long bytesSent) {
+            this.stats = stats;
+            this.server = server;
+            this.wallSeconds = wallSeconds;
+            this.bytesSent = bytesSent;
+        }
+
+        String report() {
+            return FleetSimulator.this.report(stats, server, wallSeconds, bytesSent);
+        }
+    }
+
+    /**
+     * Corre la simulación completa
+     */
+    Result run() throws Exception {
+        Random random = new Random(seed);
+        LocationFix[] sharedRoute = routeFile != null ? FleetRoutes.load(routeFile) : null;
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            StandInServer server = null;
+            String baseUrl = url;
+            if (baseUrl == null) {
+                server = new StandInServer(executor, serverLatencyMs);
+                server.start();
+                baseUrl = server.getBaseUrl();
+            }
+
+            FleetStats stats = new FleetStats();
+            SimClock clock = new SimClock(System.currentTimeMillis(), speed);
+            long startSim = clock.now();
+            long endSim = startSim + minutes * 60000L;
+            long startNanos = System.nanoTime();
+
+            List<ServiceHttpClient> clients = new ArrayList<>(couriers);
+            List<Future<?>> running = new ArrayList<>(couriers);
+            for (int i = 0; i < couriers; i++) {
+                LocationFix[] route = sharedRoute != null
+                    ? sharedRoute
+                    : FleetRoutes.synthetic(minutes * 60 + 600, random.nextLong());
+                int startIndex = random.nextInt(route.length);
+                boolean activeOrders = random.nextDouble() < activeRatio;
+                // Cada uno arranca en algún momento del primer minuto, como una flota real
+                long arranque = startSim + random.nextInt(60000);
+                ServiceHttpClient client = new ServiceHttpClient(baseUrl);
+                clients.add(client);
+
+                running.add(executor.submit(() -> {
+                    try {
+                        clock.sleepUntil(arranque);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    new VirtualCourier(route, startIndex, activeOrders, client, clock, stats, endSim).run();
+                }));
+            }
+
+            for (Future<?> courier : running) {
+                courier.get();
+            }
+            double wallSeconds = (System.nanoTime() - startNanos) / 1e9;
+
+            long bytesSent = 0;
+            for (ServiceHttpClient client : clients) {
+                bytesSent += client.getBytesSent();
+                client.close();
+            }
+            if (server != null) {
+                server.stop();
+            }
+            executor.shutdownNow();
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+            return new Result(stats, server, wallSeconds, bytesSent);
+        }
+    }
+
+    private String report(FleetStats stats, StandInServer server, double wallSeconds, long bytesSent) {
+        double courierHours = couriers * minutes / 60.0;
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ROOT,
+            "🚚 Flota: %d domiciliarios - %d min simulados a %.0fx (%.1f s reales) - %.0f%% con pedido%n",
+            couriers, minutes, speed, wallSeconds, activeRatio * 100));
+        sb.append(String.format(Locale.ROOT, "📍 Fixes entregados: %d - Descartados por el filtro: %d%n",
+            stats.fixesDelivered.get(), stats.fixesFiltered.get()));
+        sb.append(String.format(Locale.ROOT, "%-32s %9s %9s %8s %6s %6s %10s %7s %7s %7s %7s%n",
+            "Endpoint", "Peticiones", "req/s@1x", "req/h/dom", "Fallas", "304", "Payload KB", "p50 ms", "p90 ms", "p99 ms", "max ms"));
+
+        for (FleetStats.Endpoint endpoint : FleetStats.Endpoint.values()) {
+            FleetStats.EndpointStats e = stats.get(endpoint);
+            long requests = e.requests.get();
+            sb.append(String.format(Locale.ROOT, "%-32s %9d %9.1f %8.1f %6d %6d %10.1f %7d %7d %7d %7d%n",
+                endpoint.path,
+                requests,
+                requests / wallSeconds / speed,
+                requests / courierHours,
+                e.failures.get(),
+                e.notModified.get(),
+                e.payloadBytes.get() / 1024.0,
+                e.latency.percentile(0.50),
+                e.latency.percentile(0.90),
+                e.latency.percentile(0.99),
+                e.latency.getMax()));
+        }
+
+        long total = stats.totalRequests();
+        sb.append(String.format(Locale.ROOT, "📊 Total: %d peticiones - %.1f req/s a 1x (%.1f medidas) - %.1f por domiciliario-hora%n",
+            total, total / wallSeconds / speed, total / wallSeconds, total / courierHours));
+        sb.append(String.format(Locale.ROOT, "📦 Bytes enviados (headers + cuerpo): %.1f KB - %.1f KB por domiciliario-hora%n",
+            bytesSent / 1024.0, bytesSent / 1024.0 / courierHours));
+        if (server != null) {
+            sb.append(String.format(Locale.ROOT, "🖥️ Servidor: %d peticiones - %d puntos - %.1f KB de cuerpos - %d inválidas%n",
+                server.requests.get(), server.pointsReceived.get(), server.bytesReceived.get() / 1024.0,
+                server.badRequests.get()));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,75 @@
+package com.domipancho.domiciliarios;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Contadores de la flota por endpoint, vistos desde el cliente (lo que manda el servicio)
+ */
+final class FleetStats {
+
+    enum Endpoint {
+        UBICACION("/api/domiciliario/ubicacion"),
+        UBICACIONES("/api/domiciliario/ubicaciones"),
+        HEARTBEAT("/api/domiciliario-heartbeat"),
+        PEDIDOS("/api/pedidos-domiciliario");
+
+        final String path;
+
+        Endpoint(String path) {
+            this.path = path;
+        }
+    }
+
+    static final class EndpointStats {
+        final AtomicLong requests = new AtomicLong();
+        final AtomicLong failures = new AtomicLong();
+        final AtomicLong notModified = new AtomicLong();
+        final AtomicLong payloadBytes = new AtomicLong();
+        final AtomicLong points = new AtomicLong();
+        final TrackingMetrics.LatencyHistogram latency = new TrackingMetrics.LatencyHistogram();
+    }
+
+    private final EndpointStats[] endpoints = new EndpointStats[Endpoint.values().length];
+    final AtomicLong fixesDelivered = new AtomicLong();
+    final AtomicLong fixesFiltered = new AtomicLong();
+
+    FleetStats() {
+        for (int i = 0; i < endpoints.length; i++) {
+            endpoints[i] = new EndpointStats();
+        }
+    }
+
+    EndpointStats get(Endpoint endpoint) {
+        return endpoints[endpoint.ordinal()];
+    }
+
+    void record(Endpoint endpoint, long startNanos, int code, long payloadBytes, int points) {
+        EndpointStats stats = get(endpoint);
+        stats.requests.incrementAndGet();
+        stats.latency.record((System.nanoTime() - startNanos) / 1000000);
+        stats.payloadBytes.addAndGet(payloadBytes);
+        if (code == 304) {
+            stats.notModified.incrementAndGet();
+        } else if (code != 200) {
+            stats.failures.incrementAndGet();
+        } else {
+            stats.points.addAndGet(points);
+        }
+    }
+
+    void recordFailure(Endpoint endpoint, long startNanos, long payloadBytes) {
+        EndpointStats stats = get(endpoint);
+        stats.requests.incrementAndGet();
+        stats.failures.incrementAndGet();
+        stats.latency.record((System.nanoTime() - startNanos) / 1000000);
+        stats.payloadBytes.addAndGet(payloadBytes);
+    }
+
+    long totalRequests() {
+        long total = 0;
+        for (EndpointStats stats : endpoints) {
+            total += stats.requests.get();
+        }
+        return total;
+    }
+}
@@ -0,0 +1,38 @@
+package com.domipancho.domiciliarios;
+
+/**
+ * Reloj simulado compartido por toda la flota: corre {@code speed} veces más rápido que el real.
+ * Con speed 10, un minuto de pared son diez minutos de recorrido (y diez minutos de peticiones).
+ */
+final class SimClock {
+    private final long startSim;
+    private final long startNanos;
+    private final double speed;
+
+    SimClock(long startSim, double speed) {
+        if (speed <= 0) {
+            throw new IllegalArgumentException("speed debe ser > 0: " + speed);
+        }
+        this.startSim = startSim;
+        this.startNanos = System.nanoTime();
+        this.speed = speed;
+    }
+
+    long now() {
+        return startSim + (long) ((System.nanoTime() - startNanos) / 1e6 * speed);
+    }
+
+    double getSpeed() {
+        return speed;
+    }
+
+    /**
+     * Duerme (en tiempo de pared) hasta el instante simulado {@code simTime}
+     */
+    void sleepUntil(long simTime) throws InterruptedException {
+        long wallMs = (long) ((simTime - now()) / speed);
+        if (wallMs > 0) {
+            Thread.sleep(wallMs);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.domipancho.domiciliarios;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Servidor local que hace de backend para la flota: acepta los mismos endpoints
+ * y responde como el real (200 con JSON, 304 para pedidos sin cambios), con una
+ * latencia artificial opcional. Valida los lotes compactos decodificándolos.
+ */
+final class StandInServer {
+
+    private static final byte[] OK = "{\"success\":true}".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] PEDIDOS = "[]".getBytes(StandardCharsets.UTF_8);
+    private static final String PEDIDOS_ETAG = "\"pedidos-v1\"";
+
+    private final HttpServer server;
+    private final long latencyMs;
+
+    final AtomicLong requests = new AtomicLong();
+    final AtomicLong bytesReceived = new AtomicLong();
+    final AtomicLong pointsReceived = new AtomicLong();
+    final AtomicLong badRequests = new AtomicLong();
+
+    static {
+        // Sin esto el HttpServer del JDK deja Nagle activo y cada respuesta corta
+        // espera el ACK retrasado (~40 ms), que se confundiría con latencia real
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    StandInServer(ExecutorService executor, long latencyMs) throws IOException {
+        this.latencyMs = latencyMs;
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 4096);
+        server.setExecutor(executor);
+        server.createContext(FleetStats.Endpoint.UBICACION.path, exchange -> handle(exchange, false));
+        server.createContext(FleetStats.Endpoint.UBICACIONES.path, exchange -> handle(exchange, true));
+        server.createContext(FleetStats.Endpoint.HEARTBEAT.path, exchange -> handle(exchange, false));
+        server.createContext(FleetStats.Endpoint.PEDIDOS.path, this::handlePedidos);
+    }
+
+    void start() {
+        server.start();
+    }
+
+    void stop() {
+        server.stop(0);
+    }
+
+    String getBaseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange, boolean batch) throws IOException {
+        try {
+            byte[] body = readBody(exchange);
+            simulateLatency();
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                badRequests.incrementAndGet();
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            if (batch) {
+                try {
+                    pointsReceived.addAndGet(LocationBatchCodec.decode(body).size());
+                } catch (IOException e) {
+                    badRequests.incrementAndGet();
+                    exchange.sendResponseHeaders(400, -1);
+                    return;
+                }
+            } else if (exchange.getRequestURI().getPath().equals(FleetStats.Endpoint.UBICACION.path)) {
+                pointsReceived.incrementAndGet();
+            }
+            respond(exchange, 200, OK);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handlePedidos(HttpExchange exchange) throws IOException {
+        try {
+            readBody(exchange);
+            simulateLatency();
+            if (PEDIDOS_ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.getResponseHeaders().set("ETag", PEDIDOS_ETAG);
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+            exchange.getResponseHeaders().set("ETag", PEDIDOS_ETAG);
+            respond(exchange, 200, PEDIDOS);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private byte[] readBody(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        }
+        bytesReceived.addAndGet(out.size());
+        return out.toByteArray();
+    }
+
+    private void simulateLatency() {
+        if (latencyMs <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(latencyMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int code, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(code, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.domipancho.domiciliarios;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Un domiciliario virtual: recorre una ruta y corre {@link TrackingEngine}, el mismo
+ * código que LocationForegroundService usa con cada fix y en cada tick:
+ * - fixes entregados según el intervalo y la distancia mínima del perfil, por provider;
+ * - ubicación con el heartbeat a cuestas, un punto por JSON o varios en lote compacto;
+ * - pedidos con GET condicional cada 2 min, heartbeat suelto solo sin ubicaciones.
+ * Corre en su propio hilo (virtual) con el reloj simulado de la flota; la red es
+ * bloqueante en ese hilo (en el servicio va al pool de red).
+ */
+final class VirtualCourier implements Runnable, TrackingEngine.Actions {
+
+    private final LocationFix[] route;
+    private final ServiceHttpClient client;
+    private final SimClock clock;
+    private final FleetStats stats;
+    private final long endSim;
+
+    private final TrackingEngine engine;
+    private final List<LocationFix> pendientes = new ArrayList<>(); // si falla la subida, se reintentan
+    private String pedidosEtag;
+    private String pedidosLastModified;
+    private long nextTick = Long.MAX_VALUE;
+    private SamplingPolicy.Profile perfil; // lo registrado en el "LocationManager"
+
+    // Cursor de la ruta: ida y vuelta para que las vueltas sean continuas
+    private int index;
+    private int direction = 1;
+    private long routeTime;
+    private LocationFix lastGps;
+    private LocationFix lastNetwork;
+
+    VirtualCourier(LocationFix[] route, int startIndex, boolean activeOrders, ServiceHttpClient client,
+                   SimClock clock, FleetStats stats, long endSim) {
+        this.route = route;
+        this.client = client;
+        this.clock = clock;
+        this.stats = stats;
+        this.endSim = endSim;
+        this.index = startIndex % route.length;
+        this.routeTime = clock.now();
+
+        long now = clock.now();
+        engine = new TrackingEngine(this, (title, text) -> { }, now);
+        engine.setActiveOrders(activeOrders, now);
+    }
+
+    @Override
+    public void run() {
+        try {
+            engine.start(clock.now());
+            LocationFix nextFix = nextRouteFix();
+            while (!Thread.currentThread().isInterrupted()) {
+                long wakeAt = Math.min(nextFix.getTimestamp(), nextTick);
+                if (wakeAt >= endSim) {
+                    return;
+                }
+                clock.sleepUntil(wakeAt);
+
+                if (nextFix.getTimestamp() <= nextTick) {
+                    if (shouldDeliver(nextFix)) {
+                        stats.fixesDelivered.incrementAndGet();
+                        if (engine.onFix(nextFix, clock.now()) == null) {
+                            stats.fixesFiltered.incrementAndGet();
+                        }
+                    }
+                    nextFix = nextRouteFix();
+                } else {
+                    nextTick = Long.MAX_VALUE;
+                    engine.tick(clock.now());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Siguiente fix de la ruta con la hora ya pasada al reloj simulado
+     */
+    private LocationFix nextRouteFix() {
+        int next = index + direction;
+        if (next < 0 || next >= route.length) {
+            direction = -direction;
+            next = index + direction;
+        }
+        routeTime += Math.abs(route[next].getTimestamp() - route[index].getTimestamp());
+        index = next;
+        LocationFix fix = route[index];
+        return new LocationFix(fix.getLatitude(), fix.getLongitude(), routeTime,
+            fix.getAccuracy(), fix.getProvider(), fix.hasSpeed() ? fix.getSpeed() : -1f);
+    }
+
+    /**
+     * Lo que haría requestLocationUpdates(minTime, minDistance) con el perfil registrado
+     */
+    private boolean shouldDeliver(LocationFix fix) {
+        if (perfil == null) {
+            return false;
+        }
+        boolean gps = "gps".equals(fix.getProvider());
+        LocationFix last = gps ? lastGps : lastNetwork;
+        long minTime = gps ? perfil.getGpsIntervalMs() : perfil.getNetworkIntervalMs();
+        float minDistance = gps ? perfil.getGpsMinDistanceM() : perfil.getNetworkMinDistanceM();
+        if (last != null && (fix.getTimestamp() - last.getTimestamp() < minTime || fix.distanceTo(last) < minDistance)) {
+            return false;
+        }
+        if (gps) {
+            lastGps = fix;
+        } else {
+            lastNetwork = fix;
+        }
+        return true;
+    }
+
+    // ==================== TrackingEngine.Actions ====================
+
+    @Override
+    public void registerProfile(SamplingPolicy.Profile profile) {
+        perfil = profile;
+    }
+
+    @Override
+    public void scheduleTick(long delayMs) {
+        nextTick = clock.now() + delayMs;
+    }
+
+    @Override
+    public void sendPoints(List<LocationFix> points, UploadLanes.Lane lane) {
+        pendientes.addAll(points);
+        long now = clock.now();
+        boolean ok = pendientes.size() == 1
+            ? enviarUno(pendientes.get(0), now)
+            : enviarLote(pendientes);
+        if (ok) {
+            pendientes.clear(); // si falla, quedan para el próximo envío (como la bandeja)
+        }
+    }
+
+    @Override
+    public void checkOrders() {
+        verificarPedidos();
+    }
+
+    @Override
+    public void refreshStats(long now) {
+    }
+
+    @Override
+    public void persistFix(LocationFix fix) {
+    }
+
+    private boolean enviarUno(LocationFix fix, long now) {
+        String json = LocationBatchCodec.toJson(fix, now);
+        long bytes = json.getBytes(java.nio.charset.StandardCharsets.UTF_8).length;
+        long start = System.nanoTime();
+        try {
+            int code = client.postJsonWithHeartbeat(FleetStats.Endpoint.UBICACION.path, json).getCode();
+            stats.record(FleetStats.Endpoint.UBICACION, start, code, bytes, 1);
+            return code == 200;
+        } catch (IOException e) {
+            stats.recordFailure(FleetStats.Endpoint.UBICACION, start, bytes);
+            return false;
+        }
+    }
+
+    private boolean enviarLote(List<LocationFix> puntos) {
+        byte[] body = LocationBatchCodec.encodeSmallest(puntos);
+        long start = System.nanoTime();
+        try {
+            int code = client.postBytesWithHeartbeat(FleetStats.Endpoint.UBICACIONES.path, body,
+                LocationBatchCodec.CONTENT_TYPE).getCode();
+            stats.record(FleetStats.Endpoint.UBICACIONES, start, code, body.length, puntos.size());
+            return code == 200;
+        } catch (IOException e) {
+            stats.recordFailure(FleetStats.Endpoint.UBICACIONES, start, body.length);
+            return false;
+        }
+    }
+
+    private void verificarPedidos() {
+        long start = System.nanoTime();
+        try {
+            ServiceHttpClient.ConditionalResponse<Integer> response = client.getConditional(
+                FleetStats.Endpoint.PEDIDOS.path, pedidosEtag, pedidosLastModified,
+                body -> EstadoPedidosScanner.countByEstado(body, OrderStateMessage.ESTADO_EN_CAMINO));
+            stats.record(FleetStats.Endpoint.PEDIDOS, start, response.getCode(), 0, 0);
+            if (response.isOk()) {
+                pedidosEtag = response.getEtag();
+                pedidosLastModified = response.getLastModified();
+            }
+        } catch (IOException e) {
+            stats.recordFailure(FleetStats.Endpoint.PEDIDOS, start, 0);
+        }
+    }
+
+    @Override
+    public void sendHeartbeat() {
+        long start = System.nanoTime();
+        try {
+            int code = client.postJson(FleetStats.Endpoint.HEARTBEAT.path, "{}").getCode();
+            stats.record(FleetStats.Endpoint.HEARTBEAT, start, code, 2, 0);
+        } catch (IOException e) {
+            stats.recordFailure(FleetStats.Endpoint.HEARTBEAT, start, 2);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.domipancho.domiciliarios;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class FleetSimulatorTest {
+
+    @Test
+    public void flotaPequenaCuadraClienteYServidor() throws Exception {
+        FleetSimulator simulator = new FleetSimulator();
+        simulator.parse(new String[] {"--couriers", "20", "--minutes", "6", "--speed", "60", "--active-ratio", "0.5"});
+
+        FleetSimulator.Result result = simulator.run();
+        FleetStats stats = result.stats;
+
+        long failures = 0;
+        for (FleetStats.Endpoint endpoint : FleetStats.Endpoint.values()) {
+            failures += stats.get(endpoint).failures.get();
+        }
+        assertEquals(0, failures);
+        assertEquals(0, result.server.badRequests.get());
+        assertEquals(stats.totalRequests(), result.server.requests.get());
+
+        // Todo punto que salió del cliente llegó al servidor
+        long points = stats.get(FleetStats.Endpoint.UBICACION).points.get()
+            + stats.get(FleetStats.Endpoint.UBICACIONES).points.get();
+        assertEquals(points, result.server.pointsReceived.get());
+        assertTrue(points > 0);
+
+        // Pedidos cada 2 min: unas 3 consultas por domiciliario en 6 min, casi todas 304
+        // (con speed alto la latencia real corre el reloj simulado, de ahí el margen)
+        FleetStats.EndpointStats pedidos = stats.get(FleetStats.Endpoint.PEDIDOS);
+        assertTrue("pedidos: " + pedidos.requests.get(),
+            pedidos.requests.get() >= 20 * 2 && pedidos.requests.get() <= 20 * 4);
+        assertTrue(pedidos.notModified.get() >= pedidos.requests.get() - 20);
+    }
+}
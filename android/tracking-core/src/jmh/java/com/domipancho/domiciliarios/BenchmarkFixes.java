@@ -0,0 +1,58 @@
+package com.domipancho.domiciliarios;
+
+import java.util.Random;
+
+/**
+ * Recorrido sintético y determinista para los benchmarks: moto en ciudad a ~30 km/h,
+ * giros cada tanto, semáforos, ruido de GPS y algún fix de red impreciso intercalado.
+ */
+final class BenchmarkFixes {
+    static final long START_TIME = 1700000000000L;
+
+    private BenchmarkFixes() {
+    }
+
+    static LocationFix[] route(int count, long seed) {
+        Random random = new Random(seed);
+        LocationFix[] fixes = new LocationFix[count];
+
+        double lat = 4.6097;
+        double lon = -74.0817;
+        double heading = random.nextDouble() * 2 * Math.PI;
+        long time = START_TIME;
+        int stopLeft = 0;
+
+        for (int i = 0; i < count; i++) {
+            time += 1000;
+            double speed;
+            if (stopLeft > 0) {
+                stopLeft--;
+                speed = 0;
+            } else {
+                if (random.nextInt(90) == 0) {
+                    stopLeft = 20 + random.nextInt(40); // semáforo o entrega
+                }
+                if (random.nextInt(40) == 0) {
+                    heading += (random.nextBoolean() ? 1 : -1) * Math.PI / 2; // giro en una esquina
+                }
+                speed = 6 + random.nextDouble() * 5;
+            }
+            double metersPerDegree = Math.toRadians(1) * LocationFix.EARTH_RADIUS_M;
+            lat += speed * Math.cos(heading) / metersPerDegree;
+            lon += speed * Math.sin(heading) / (metersPerDegree * Math.cos(Math.toRadians(lat)));
+
+            boolean network = random.nextInt(10) == 0;
+            float accuracy = network ? 25 + random.nextFloat() * 40 : 3 + random.nextFloat() * 8;
+            double noise = accuracy / 3 / metersPerDegree;
+            fixes[i] = new LocationFix(
+                lat + random.nextGaussian() * noise,
+                lon + random.nextGaussian() * noise,
+                time,
+                accuracy,
+                network ? "network" : "gps",
+                network ? -1f : (float) speed
+            );
+        }
+        return fixes;
+    }
+}
@@ -0,0 +1,48 @@
+package com.domipancho.domiciliarios;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Conteo en streaming de pedidos "camino a tu casa" sobre respuestas de distinto tamaño
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EstadoPedidosScannerBenchmark {
+
+    @Param({"5", "200"})
+    public int pedidos;
+
+    private String body;
+
+    @Setup
+    public void setUp() {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < pedidos; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"id\":").append(i)
+                .append(",\"estado\":\"").append(i % 7 == 0 ? "camino a tu casa" : "entregado").append('"')
+                .append(",\"direccion\":\"Calle ").append(i).append(" # 10-20, Bogotá\"")
+                .append(",\"productos\":[{\"nombre\":\"Pancho especial\",\"cantidad\":2,\"extras\":[\"queso\",\"tocineta\"]}]")
+                .append(",\"cliente\":{\"nombre\":\"Cliente ").append(i).append("\",\"estado\":\"activo\"}}");
+        }
+        body = sb.append(']').toString();
+    }
+
+    @Benchmark
+    public int contar() throws IOException {
+        return EstadoPedidosScanner.countByEstado(new StringReader(body), OrderStateMessage.ESTADO_EN_CAMINO);
+    }
+}
@@ -0,0 +1,83 @@
+package com.domipancho.domiciliarios;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Costo por fix de lo que corre en el hilo de tracking en cada onLocationChanged:
+ * filtro de calidad, política de muestreo, simplificador y decisión de notificación.
+ * Con -prof gc (activado en build.gradle) también da los bytes asignados por fix.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FixPipelineBenchmark {
+
+    // ~5.5 h de recorrido: al dar la vuelta se reinicia el pipeline (los timestamps no pueden retroceder)
+    private static final int ROUTE_FIXES = 20000;
+
+    private LocationFix[] route;
+    private int next;
+
+    private FixFilter filter;
+    private SamplingPolicy policy;
+    private TrajectorySimplifier simplifier;
+    private NotificationRenderer renderer;
+
+    @Setup(Level.Trial)
+    public void loadRoute() {
+        route = BenchmarkFixes.route(ROUTE_FIXES, 42);
+    }
+
+    @Setup(Level.Iteration)
+    public void newPipeline() {
+        filter = new FixFilter();
+        policy = new SamplingPolicy();
+        simplifier = new TrajectorySimplifier();
+        renderer = new NotificationRenderer((title, text) -> { });
+        next = 0;
+    }
+
+    private LocationFix nextFix() {
+        if (next == route.length) {
+            newPipeline();
+        }
+        return route[next++];
+    }
+
+    /**
+     * El camino completo de procesarFix + onLocationChanged
+     */
+    @Benchmark
+    public Object pipeline() {
+        LocationFix raw = nextFix();
+        LocationFix fix = filter.process(raw);
+        if (fix == null) {
+            return null;
+        }
+        policy.onFix(fix, fix.getTimestamp());
+        LocationFix punto = simplifier.process(fix);
+        renderer.render(true, fix, fix.getTimestamp());
+        return punto;
+    }
+
+    @Benchmark
+    public Object filtro() {
+        return filter.process(nextFix());
+    }
+
+    /**
+     * Sin el filtro delante: peor caso del simplificador (todo el ruido entra a la ventana)
+     */
+    @Benchmark
+    public Object simplificador() {
+        return simplifier.process(nextFix());
+    }
+}
@@ -0,0 +1,64 @@
+package com.domipancho.domiciliarios;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Throughput de la codificación de lotes: formato compacto (con y sin gzip)
+ * contra el JSON de un fix por petición que reemplaza.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LocationBatchCodecBenchmark {
+
+    @Param({"1", "50", "500"})
+    public int fixes;
+
+    private List<LocationFix> batch;
+    private byte[] encoded;
+
+    @Setup
+    public void setUp() {
+        batch = Arrays.asList(BenchmarkFixes.route(fixes, 7));
+        encoded = LocationBatchCodec.encode(batch, false);
+    }
+
+    @Benchmark
+    public byte[] compacto() {
+        return LocationBatchCodec.encode(batch, false);
+    }
+
+    /**
+     * Lo que usa el drenado: prueba con y sin gzip y se queda con el más chico
+     */
+    @Benchmark
+    public byte[] masChico() {
+        return LocationBatchCodec.encodeSmallest(batch);
+    }
+
+    @Benchmark
+    public int json() {
+        int bytes = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            LocationFix fix = batch.get(i);
+            bytes += LocationBatchCodec.toJson(fix, fix.getTimestamp()).length();
+        }
+        return bytes;
+    }
+
+    @Benchmark
+    public List<LocationFix> decodificar() throws IOException {
+        return LocationBatchCodec.decode(encoded);
+    }
+}
@@ -0,0 +1,399 @@
+package com.domipancho.domiciliarios;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lector en streaming de la respuesta de /api/pedidos-domiciliario.
+ *
+ * Recorre el arreglo de pedidos caracter por caracter y solo compara el campo
+ * {@code estado} de cada pedido; el resto del documento (direcciones, productos,
+ * objetos anidados) se salta sin crear Strings ni objetos JSON. Con listas
+ * largas no hay picos de memoria que disparen el GC en teléfonos viejos.
+ *
+ * {@link #readPedidos} lee además id, estado y domiciliario de cada pedido y
+ * guarda su texto JSON tal cual (para reenviarlo a la WebView sin re-serializar).
+ */
+public final class EstadoPedidosScanner {
+    private static final String CAMPO_ESTADO = "estado";
+    private static final String CAMPO_ID = "id";
+    private static final String CAMPO_DOMICILIARIO = "domiciliario_id";
+
+    private final Reader in;
+    private final char[] buffer = new char[1024];
+    private int pos;
+    private int len;
+    private StringBuilder capture; // texto del pedido en curso (solo en readPedidos)
+    private final StringBuilder token = new StringBuilder();
+    private String lastEstado;
+
+    private EstadoPedidosScanner(Reader in) {
+        this.in = in;
+    }
+
+    /**
+     * Cuenta los pedidos del arreglo cuyo {@code estado} (de primer nivel) es igual a {@code estado}
+     */
+    public static int countByEstado(Reader reader, String estado) throws IOException {
+        return new EstadoPedidosScanner(reader).scanArray(estado);
+    }
+
+    /**
+     * Lee los pedidos del arreglo (id, estado, domiciliario_id y el JSON del pedido)
+     */
+    public static List<OrderBook.Order> readPedidos(Reader reader) throws IOException {
+        return new EstadoPedidosScanner(reader).readArray();
+    }
+
+    /**
+     * Lee el {@code id} de primer nivel de un objeto (la respuesta de /api/usuario-actual); 0 si no viene
+     */
+    public static int readId(Reader reader) throws IOException {
+        EstadoPedidosScanner scanner = new EstadoPedidosScanner(reader);
+        scanner.expect('{');
+        int[] campos = scanner.readCampos();
+        return campos[0];
+    }
+
+    private List<OrderBook.Order> readArray() throws IOException {
+        expect('[');
+        List<OrderBook.Order> pedidos = new ArrayList<>();
+        if (peekNonWhitespace() == ']') {
+            pos++;
+            return pedidos;
+        }
+        while (true) {
+            if (peekNonWhitespace() == '{') {
+                pos++;
+                capture = new StringBuilder(256).append('{');
+                int[] campos = readCampos();
+                String json = capture.toString();
+                capture = null;
+                pedidos.add(new OrderBook.Order(campos[0], lastEstado, campos[1], json));
+                lastEstado = null;
+            } else {
+                skipValue();
+            }
+            char c = nextNonWhitespace();
+            if (c == ']') {
+                return pedidos;
+            }
+            if (c != ',') {
+                throw syntaxError(c);
+            }
+        }
+    }
+
+    /**
+     * Recorre un objeto (ya consumida la '{'): devuelve {id, domiciliario_id} y deja el estado en lastEstado
+     */
+    private int[] readCampos() throws IOException {
+        int[] campos = new int[2];
+        if (peekNonWhitespace() == '}') {
+            consumePeeked();
+            return campos;
+        }
+        while (true) {
+            expect('"');
+            readString();
+            String campo = token.toString();
+            expect(':');
+            if (CAMPO_ID.equals(campo)) {
+                campos[0] = readInt();
+            } else if (CAMPO_DOMICILIARIO.equals(campo)) {
+                campos[1] = readInt();
+            } else if (CAMPO_ESTADO.equals(campo) && peekNonWhitespace() == '"') {
+                consumePeeked();
+                readString();
+                lastEstado = token.toString();
+            } else {
+                skipValue();
+            }
+            char c = nextNonWhitespace();
+            if (c == '}') {
+                return campos;
+            }
+            if (c != ',') {
+                throw syntaxError(c);
+            }
+        }
+    }
+
+    /**
+     * Consume un string (ya consumida la comilla inicial) dejándolo en {@link #token}
+     */
+    private void readString() throws IOException {
+        token.setLength(0);
+        while (true) {
+            char c = next();
+            if (c == '"') {
+                return;
+            }
+            if (c == '\\') {
+                c = readEscape();
+            }
+            token.append(c);
+        }
+    }
+
+    /**
+     * Un entero (o un string con un entero); null y lo que no sea número cuentan como 0
+     */
+    private int readInt() throws IOException {
+        char c = peekNonWhitespace();
+        if (c == '"') {
+            consumePeeked();
+            readString();
+        } else {
+            token.setLength(0);
+            while (true) {
+                if (pos == len && !fill()) {
+                    break;
+                }
+                char d = buffer[pos];
+                if (d == ',' || d == '}' || d == ']' || isWhitespace(d)) {
+                    break;
+                }
+                token.append(d);
+                pos++;
+                if (capture != null) {
+                    capture.append(d);
+                }
+            }
+        }
+        try {
+            return Integer.parseInt(token.toString());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private int scanArray(String estado) throws IOException {
+        expect('[');
+        int count = 0;
+        if (peekNonWhitespace() == ']') {
+            pos++;
+            return count;
+        }
+        while (true) {
+            if (peekNonWhitespace() == '{') {
+                pos++;
+                if (scanPedido(estado)) {
+                    count++;
+                }
+            } else {
+                skipValue();
+            }
+            char c = nextNonWhitespace();
+            if (c == ']') {
+                return count;
+            }
+            if (c != ',') {
+                throw syntaxError(c);
+            }
+        }
+    }
+
+    /**
+     * Recorre un pedido (ya consumida la '{'). Devuelve true si su estado coincide.
+     */
+    private boolean scanPedido(String estado) throws IOException {
+        boolean matches = false;
+        if (peekNonWhitespace() == '}') {
+            pos++;
+            return false;
+        }
+        while (true) {
+            expect('"');
+            boolean isEstado = matchString(CAMPO_ESTADO);
+            expect(':');
+            if (isEstado && peekNonWhitespace() == '"') {
+                pos++;
+                matches = matchString(estado);
+            } else {
+                skipValue();
+            }
+            char c = nextNonWhitespace();
+            if (c == '}') {
+                return matches;
+            }
+            if (c != ',') {
+                throw syntaxError(c);
+            }
+        }
+    }
+
+    /**
+     * Consume un string (ya consumida la comilla inicial) y lo compara con {@code target} sin crear el String
+     */
+    private boolean matchString(String target) throws IOException {
+        int i = 0;
+        boolean equal = true;
+        while (true) {
+            char c = next();
+            if (c == '"') {
+                return equal && i == target.length();
+            }
+            if (c == '\\') {
+                c = readEscape();
+            }
+            if (equal) {
+                equal = i < target.length() && target.charAt(i) == c;
+                i++;
+            }
+        }
+    }
+
+    private char readEscape() throws IOException {
+        char c = next();
+        switch (c) {
+            case 'n':
+                return '\n';
+            case 't':
+                return '\t';
+            case 'r':
+                return '\r';
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'u':
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(next(), 16);
+                    if (digit < 0) {
+                        throw new IOException("Escape \\u inválido en JSON de pedidos");
+                    }
+                    value = value * 16 + digit;
+                }
+                return (char) value;
+            default:
+                return c; // \" \\ \/
+        }
+    }
+
+    private void skipValue() throws IOException {
+        char c = nextNonWhitespace();
+        switch (c) {
+            case '"':
+                skipString();
+                break;
+            case '{':
+            case '[':
+                skipContainer();
+                break;
+            default:
+                // número, true, false, null: hasta el siguiente delimitador
+                while (true) {
+                    if (pos == len && !fill()) {
+                        return;
+                    }
+                    char d = buffer[pos];
+                    if (d == ',' || d == '}' || d == ']' || isWhitespace(d)) {
+                        return;
+                    }
+                    pos++;
+                    if (capture != null) {
+                        capture.append(d);
+                    }
+                }
+        }
+    }
+
+    private void skipString() throws IOException {
+        while (true) {
+            char c = next();
+            if (c == '"') {
+                return;
+            }
+            if (c == '\\') {
+                next();
+            }
+        }
+    }
+
+    /**
+     * Salta un objeto o arreglo completo (ya consumido el primer caracter) contando anidamiento
+     */
+    private void skipContainer() throws IOException {
+        int depth = 1;
+        while (depth > 0) {
+            char c = next();
+            if (c == '"') {
+                skipString();
+            } else if (c == '{' || c == '[') {
+                depth++;
+            } else if (c == '}' || c == ']') {
+                depth--;
+            }
+        }
+    }
+
+    // ==================== Lectura ====================
+
+    private boolean fill() throws IOException {
+        len = in.read(buffer, 0, buffer.length);
+        pos = 0;
+        if (len < 0) {
+            len = 0;
+            return false;
+        }
+        return true;
+    }
+
+    private char next() throws IOException {
+        if (pos == len && !fill()) {
+            throw new IOException("JSON de pedidos truncado");
+        }
+        char c = buffer[pos++];
+        if (capture != null) {
+            capture.append(c);
+        }
+        return c;
+    }
+
+    private char peekNonWhitespace() throws IOException {
+        char c = nextNonWhitespace();
+        pos--;
+        if (capture != null) {
+            capture.setLength(capture.length() - 1);
+        }
+        return c;
+    }
+
+    /**
+     * Consume el caracter que acaba de devolver {@link #peekNonWhitespace()}
+     */
+    private void consumePeeked() {
+        if (capture != null) {
+            capture.append(buffer[pos]);
+        }
+        pos++;
+    }
+
+    private char nextNonWhitespace() throws IOException {
+        while (true) {
+            char c = next();
+            if (!isWhitespace(c)) {
+                return c;
+            }
+        }
+    }
+
+    private void expect(char expected) throws IOException {
+        char c = nextNonWhitespace();
+        if (c != expected) {
+            throw syntaxError(c);
+        }
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+    }
+
+    private static IOException syntaxError(char found) {
+        return new IOException("JSON de pedidos inválido cerca de '" + found + "'");
+    }
+}
@@ -0,0 +1,188 @@
+package com.domipancho.domiciliarios;
+
+/**
+ * Entrega los fixes nativos a la WebView sin inundarla.
+ *
+ * - Como mucho un fix cada {@code minIntervalMs}; los que llegan antes se
+ *   juntan y sale solo el más nuevo (al cumplirse el intervalo, con el {@link Timer}).
+ * - Con la WebView en segundo plano no se entrega ni se guarda nada: cruzar el
+ *   puente con la app oculta solo gasta CPU. Al volver se entrega de inmediato
+ *   el último fix conocido, no la cola de lo que pasó mientras tanto.
+ *
+ * Independiente de Android: entregar es cosa del {@link Sink} y el temporizador
+ * lo pone quien lo usa (un Handler en el plugin). Thread-safe: los fixes llegan
+ * del hilo de tracking y los cambios de primer plano del hilo principal; el
+ * {@link Sink} se llama fuera del lock.
+ */
+public final class FixCoalescer {
+
+    public interface Sink {
+        void deliver(LocationFix fix);
+    }
+
+    /**
+     * Programa una llamada a {@link #flush(long)} dentro de {@code delayMs}
+     */
+    public interface Timer {
+        void schedule(long delayMs);
+    }
+
+    public static final long DEFAULT_MIN_INTERVAL_MS = 2000;
+
+    private final Sink sink;
+    private final Timer timer;
+    private final long minIntervalMs;
+
+    private boolean foreground = true;
+    private LocationFix pending;
+    private LocationFix latest;
+    private long lastDelivery = Long.MIN_VALUE / 2;
+    private boolean flushScheduled;
+
+    private long offered;
+    private long delivered;
+    private long coalesced;
+    private long dropped;
+
+    public FixCoalescer(Sink sink, Timer timer) {
+        this(sink, timer, DEFAULT_MIN_INTERVAL_MS);
+    }
+
+    public FixCoalescer(Sink sink, Timer timer, long minIntervalMs) {
+        if (minIntervalMs < 0) {
+            throw new IllegalArgumentException("minIntervalMs debe ser >= 0: " + minIntervalMs);
+        }
+        this.sink = sink;
+        this.timer = timer;
+        this.minIntervalMs = minIntervalMs;
+    }
+
+    /**
+     * Llega un fix nuevo del servicio
+     */
+    public void offer(LocationFix fix, long now) {
+        LocationFix entregar = null;
+        long esperar = -1;
+        synchronized (this) {
+            offered++;
+            latest = fix;
+            if (!foreground) {
+                dropped++;
+                return;
+            }
+            if (pending != null) {
+                coalesced++;
+            }
+            pending = fix;
+
+            long wait = lastDelivery + minIntervalMs - now;
+            if (wait <= 0) {
+                entregar = take(now);
+            } else if (!flushScheduled) {
+                flushScheduled = true;
+                esperar = wait;
+            }
+        }
+        if (entregar != null) {
+            sink.deliver(entregar);
+        } else if (esperar >= 0) {
+            timer.schedule(esperar);
+        }
+    }
+
+    /**
+     * Vence el temporizador: sale lo pendiente si ya se cumplió el intervalo
+     */
+    public void flush(long now) {
+        LocationFix entregar = null;
+        long esperar = -1;
+        synchronized (this) {
+            flushScheduled = false;
+            if (!foreground || pending == null) {
+                return;
+            }
+            long wait = lastDelivery + minIntervalMs - now;
+            if (wait <= 0) {
+                entregar = take(now);
+            } else {
+                flushScheduled = true;
+                esperar = wait;
+            }
+        }
+        if (entregar != null) {
+            sink.deliver(entregar);
+        } else {
+            timer.schedule(esperar);
+        }
+    }
+
+    /**
+     * La WebView pasó a primer o segundo plano
+     */
+    public void setForeground(boolean visible, long now) {
+        LocationFix entregar = null;
+        synchronized (this) {
+            if (foreground == visible) {
+                return;
+            }
+            foreground = visible;
+            if (!visible) {
+                if (pending != null) {
+                    dropped++;
+                    pending = null;
+                }
+                return;
+            }
+            if (latest != null) {
+                pending = latest;
+                entregar = take(now);
+            }
+        }
+        if (entregar != null) {
+            sink.deliver(entregar);
+        }
+    }
+
+    private LocationFix take(long now) {
+        LocationFix fix = pending;
+        pending = null;
+        lastDelivery = now;
+        delivered++;
+        return fix;
+    }
+
+    public synchronized boolean isForeground() {
+        return foreground;
+    }
+
+    /**
+     * Último fix recibido (entregado o no)
+     */
+    public synchronized LocationFix getLatest() {
+        return latest;
+    }
+
+    public synchronized long getOfferedCount() {
+        return offered;
+    }
+
+    public synchronized long getDeliveredCount() {
+        return delivered;
+    }
+
+    public synchronized long getCoalescedCount() {
+        return coalesced;
+    }
+
+    public synchronized long getDroppedCount() {
+        return dropped;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "Recibidos: " + offered
+            + " - Entregados: " + delivered
+            + " - Juntados: " + coalesced
+            + " - Descartados en segundo plano: " + dropped;
+    }
+}
@@ -0,0 +1,155 @@
+package com.domipancho.domiciliarios;
+
+/**
+ * Etapa de calidad entre el LocationListener y el envío.
+ *
+ * 1. Descarta fixes viejos o repetidos (timestamp no posterior al último aceptado).
+ * 2. Prefiere el provider más fresco y preciso: un fix de red de 1500m no reemplaza
+ *    a uno GPS de 5m de hace un segundo. La incertidumbre del último fix aceptado
+ *    crece con su edad, así que un fix impreciso vuelve a servir si el GPS se calla.
+ * 3. Descarta saltos que implican una velocidad imposible para una moto. Si varios
+ *    fixes seguidos lo "contradicen", el equivocado era el último aceptado: se reinicia.
+ * 4. Suaviza el ruido con un Kalman simple (posición constante, varianza en m²). El
+ *    ruido de proceso sale de la velocidad del fix o, si no la trae, de cuánto se aleja
+ *    el fix del punto suavizado.
+ *
+ * Lo que devuelve null nunca debe llegar a la red. Determinista: solo usa los
+ * timestamps de los fixes, nunca el reloj del sistema.
+ */
+public class FixFilter {
+    static final float MAX_SPEED_MPS = 45f;            // ~160 km/h
+    static final float MAX_ACCURACY_M = 200f;
+    static final long ACCEPT_ANY_AFTER_MS = 120000;    // sin fixes buenos por 2 min: aceptar lo que haya
+    static final float UNCERTAINTY_GROWTH_MPS = 4f;    // cuánto "envejece" la precisión del último fix
+    static final float MIN_PROCESS_NOISE_MPS = 3f;
+    static final int MAX_CONSECUTIVE_SPEED_DROPS = 3;
+
+    private LocationFix lastAccepted;
+    private double filteredLat;
+    private double filteredLon;
+    private double variance = -1; // m², negativa = sin estado
+    private int consecutiveSpeedDrops;
+
+    private long accepted;
+    private long droppedStale;
+    private long droppedAccuracy;
+    private long droppedSpeed;
+
+    /**
+     * Devuelve el fix suavizado, o null si se descarta
+     */
+    public LocationFix process(LocationFix fix) {
+        if (lastAccepted == null) {
+            return accept(fix);
+        }
+
+        long dtMs = fix.getTimestamp() - lastAccepted.getTimestamp();
+        if (dtMs <= 0) {
+            droppedStale++;
+            return null;
+        }
+
+        boolean starving = dtMs >= ACCEPT_ANY_AFTER_MS;
+        if (!starving) {
+            if (fix.getAccuracy() > MAX_ACCURACY_M) {
+                droppedAccuracy++;
+                return null;
+            }
+            float agedAccuracy = lastAccepted.getAccuracy() + UNCERTAINTY_GROWTH_MPS * dtMs / 1000f;
+            if (fix.getAccuracy() > agedAccuracy) {
+                droppedAccuracy++;
+                return null;
+            }
+        }
+
+        // La distancia que no explican las precisiones de ambos fixes tiene que ser recorrible
+        double distance = fix.distanceTo(lastAccepted);
+        double unexplained = distance - fix.getAccuracy() - lastAccepted.getAccuracy();
+        if (unexplained > 0 && unexplained * 1000.0 / dtMs > MAX_SPEED_MPS) {
+            if (++consecutiveSpeedDrops <= MAX_CONSECUTIVE_SPEED_DROPS) {
+                droppedSpeed++;
+                return null;
+            }
+            variance = -1; // El ancla era el salto: empezar de nuevo desde este fix
+        }
+
+        consecutiveSpeedDrops = 0;
+        return accept(fix);
+    }
+
+    private LocationFix accept(LocationFix fix) {
+        float accuracy = Math.max(fix.getAccuracy(), 1f);
+        double measurementVariance = (double) accuracy * accuracy;
+
+        if (variance < 0 || lastAccepted == null) {
+            filteredLat = fix.getLatitude();
+            filteredLon = fix.getLongitude();
+            variance = measurementVariance;
+        } else {
+            double dt = (fix.getTimestamp() - lastAccepted.getTimestamp()) / 1000.0;
+            if (fix.hasSpeed()) {
+                float q = Math.max(MIN_PROCESS_NOISE_MPS, fix.getSpeed());
+                variance += dt * q * q;
+            } else {
+                // Sin velocidad (red y muchos fusionados): lo que el fix se aleja del punto
+                // suavizado más allá de lo que explican su precisión y la del estado (el ruido
+                // de un fix quieto no cuenta). Con q fijo, a 30-50 m cada 10 s la ganancia caía
+                // a 0.2-0.3 y el punto de una moto en marcha quedaba cientos de metros atrás
+                LocationFix estimado = new LocationFix(filteredLat, filteredLon, 0, 0f, "");
+                double moved = Math.max(0, fix.distanceTo(estimado) - fix.getAccuracy() - Math.sqrt(variance));
+                variance += Math.max(dt * MIN_PROCESS_NOISE_MPS * MIN_PROCESS_NOISE_MPS, moved * moved);
+            }
+
+            double gain = variance / (variance + measurementVariance);
+            filteredLat += gain * (fix.getLatitude() - filteredLat);
+            filteredLon += gain * (fix.getLongitude() - filteredLon);
+            variance = (1 - gain) * variance;
+        }
+
+        accepted++;
+        lastAccepted = fix;
+        return new LocationFix(
+            filteredLat,
+            filteredLon,
+            fix.getTimestamp(),
+            (float) Math.sqrt(variance),
+            fix.getProvider(),
+            fix.getSpeed()
+        );
+    }
+
+    public void reset() {
+        lastAccepted = null;
+        variance = -1;
+        consecutiveSpeedDrops = 0;
+    }
+
+    // ==================== Métricas ====================
+
+    public long getAcceptedCount() {
+        return accepted;
+    }
+
+    public long getDroppedCount() {
+        return droppedStale + droppedAccuracy + droppedSpeed;
+    }
+
+    public long getDroppedStaleCount() {
+        return droppedStale;
+    }
+
+    public long getDroppedAccuracyCount() {
+        return droppedAccuracy;
+    }
+
+    public long getDroppedSpeedCount() {
+        return droppedSpeed;
+    }
+
+    @Override
+    public String toString() {
+        return "Aceptados: " + accepted
+            + " - Descartados: " + getDroppedCount()
+            + " (viejos " + droppedStale + ", precisión " + droppedAccuracy + ", velocidad " + droppedSpeed + ")";
+    }
+}
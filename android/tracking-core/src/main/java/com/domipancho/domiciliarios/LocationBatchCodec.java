@@ -0,0 +1,245 @@
+package com.domipancho.domiciliarios;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Codificador compacto para subir lotes de ubicaciones a /api/domiciliario/ubicaciones.
+ *
+ * Formato binario (version 1):
+ * <pre>
+ *   'D' 'P' version flags                 cabecera sin comprimir (4 bytes)
+ *   varint count                          resto, comprimido con gzip si flags & FLAG_GZIP
+ *   varint providers, [varint len, utf8]* diccionario de providers
+ *   por punto:
+ *     varint provider                     índice en el diccionario
+ *     zigzag dLat, dLon                   grados * 1e6, delta contra el punto anterior
+ *     zigzag dTime                        ms, delta contra el punto anterior
+ *     zigzag dAccuracy                    decímetros, delta contra el punto anterior
+ * </pre>
+ * El primer punto se codifica como delta contra cero.
+ *
+ * También genera el JSON de siempre para /api/domiciliario/ubicacion (fallback).
+ */
+public final class LocationBatchCodec {
+    public static final String CONTENT_TYPE = "application/x-domipancho-ubicaciones";
+    public static final int VERSION = 1;
+    public static final int FLAG_GZIP = 1;
+
+    private static final double COORD_SCALE = 1e6;
+    private static final float ACCURACY_SCALE = 10f;
+
+    private LocationBatchCodec() {
+    }
+
+    /**
+     * Codifica el lote y usa gzip solo si el resultado queda más pequeño
+     */
+    public static byte[] encodeSmallest(List<LocationFix> fixes) {
+        byte[] plain = encode(fixes, false);
+        byte[] gzip = encode(fixes, true);
+        return gzip.length < plain.length ? gzip : plain;
+    }
+
+    public static byte[] encode(List<LocationFix> fixes, boolean gzip) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(16 + fixes.size() * 12);
+        out.write('D');
+        out.write('P');
+        out.write(VERSION);
+        out.write(gzip ? FLAG_GZIP : 0);
+
+        byte[] body = encodeBody(fixes);
+        try {
+            if (gzip) {
+                GZIPOutputStream zip = new GZIPOutputStream(out);
+                zip.write(body);
+                zip.finish();
+            } else {
+                out.write(body);
+            }
+        } catch (IOException e) {
+            // ByteArrayOutputStream no lanza IOException
+            throw new IllegalStateException(e);
+        }
+        return out.toByteArray();
+    }
+
+    public static List<LocationFix> decode(byte[] data) throws IOException {
+        if (data.length < 4 || data[0] != 'D' || data[1] != 'P') {
+            throw new IOException("Lote de ubicaciones inválido");
+        }
+        if (data[2] != VERSION) {
+            throw new IOException("Versión de lote no soportada: " + data[2]);
+        }
+
+        InputStream in = new ByteArrayInputStream(data, 4, data.length - 4);
+        if ((data[3] & FLAG_GZIP) != 0) {
+            in = new GZIPInputStream(in);
+        }
+
+        int count = (int) readVarint(in);
+        int providerCount = (int) readVarint(in);
+        String[] providers = new String[providerCount];
+        for (int i = 0; i < providerCount; i++) {
+            byte[] name = new byte[(int) readVarint(in)];
+            readFully(in, name);
+            providers[i] = new String(name, StandardCharsets.UTF_8);
+        }
+
+        List<LocationFix> fixes = new ArrayList<>(count);
+        long lat = 0;
+        long lon = 0;
+        long time = 0;
+        long accuracy = 0;
+        for (int i = 0; i < count; i++) {
+            int provider = (int) readVarint(in);
+            if (provider >= providerCount) {
+                throw new IOException("Provider fuera del diccionario: " + provider);
+            }
+            lat += readZigzag(in);
+            lon += readZigzag(in);
+            time += readZigzag(in);
+            accuracy += readZigzag(in);
+            fixes.add(new LocationFix(
+                lat / COORD_SCALE,
+                lon / COORD_SCALE,
+                time,
+                accuracy / ACCURACY_SCALE,
+                providers[provider]
+            ));
+        }
+        return fixes;
+    }
+
+    // ==================== JSON (endpoint actual) ====================
+
+    /**
+     * Cuerpo de /api/domiciliario/ubicacion para un solo fix
+     */
+    public static String toJson(LocationFix fix, long timestamp) {
+        return "{\"latitud\":" + fix.getLatitude()
+            + ",\"longitud\":" + fix.getLongitude()
+            + ",\"timestamp\":" + timestamp
+            + ",\"accuracy\":" + fix.getAccuracy()
+            + ",\"provider\":\"" + escape(fix.getProvider()) + "\"}";
+    }
+
+    private static String escape(String value) {
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    // ==================== Cuerpo binario ====================
+
+    private static byte[] encodeBody(List<LocationFix> fixes) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(8 + fixes.size() * 12);
+        writeVarint(out, fixes.size());
+
+        List<String> providers = new ArrayList<>();
+        int[] providerIndex = new int[fixes.size()];
+        for (int i = 0; i < fixes.size(); i++) {
+            String provider = fixes.get(i).getProvider();
+            int index = providers.indexOf(provider);
+            if (index < 0) {
+                index = providers.size();
+                providers.add(provider);
+            }
+            providerIndex[i] = index;
+        }
+        writeVarint(out, providers.size());
+        for (String provider : providers) {
+            byte[] name = provider.getBytes(StandardCharsets.UTF_8);
+            writeVarint(out, name.length);
+            out.write(name, 0, name.length);
+        }
+
+        long lat = 0;
+        long lon = 0;
+        long time = 0;
+        long accuracy = 0;
+        for (int i = 0; i < fixes.size(); i++) {
+            LocationFix fix = fixes.get(i);
+            long fixLat = Math.round(fix.getLatitude() * COORD_SCALE);
+            long fixLon = Math.round(fix.getLongitude() * COORD_SCALE);
+            long fixAccuracy = Math.round(fix.getAccuracy() * ACCURACY_SCALE);
+
+            writeVarint(out, providerIndex[i]);
+            writeZigzag(out, fixLat - lat);
+            writeZigzag(out, fixLon - lon);
+            writeZigzag(out, fix.getTimestamp() - time);
+            writeZigzag(out, fixAccuracy - accuracy);
+
+            lat = fixLat;
+            lon = fixLon;
+            time = fix.getTimestamp();
+            accuracy = fixAccuracy;
+        }
+        return out.toByteArray();
+    }
+
+    static void writeVarint(OutputStream out, long value) {
+        try {
+            while ((value & ~0x7FL) != 0) {
+                out.write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            out.write((int) value);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static void writeZigzag(OutputStream out, long value) {
+        writeVarint(out, (value << 1) ^ (value >> 63));
+    }
+
+    static long readVarint(InputStream in) throws IOException {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new IOException("Lote de ubicaciones truncado");
+            }
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IOException("Varint demasiado largo");
+    }
+
+    static long readZigzag(InputStream in) throws IOException {
+        long value = readVarint(in);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void readFully(InputStream in, byte[] buffer) throws IOException {
+        int read = 0;
+        while (read < buffer.length) {
+            int n = in.read(buffer, read, buffer.length - read);
+            if (n < 0) {
+                throw new IOException("Lote de ubicaciones truncado");
+            }
+            read += n;
+        }
+    }
+}
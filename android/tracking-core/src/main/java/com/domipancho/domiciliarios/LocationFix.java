@@ -0,0 +1,81 @@
+package com.domipancho.domiciliarios;
+
+/**
+ * Fix de ubicación aceptado por el servicio.
+ * Independiente de android.location para poder guardarlo en disco y enviarlo en lotes.
+ */
+public final class LocationFix {
+    static final double EARTH_RADIUS_M = 6371008.8;
+
+    private final double latitude;
+    private final double longitude;
+    private final long timestamp;
+    private final float accuracy;
+    private final String provider;
+    private final float speed;
+
+    public LocationFix(double latitude, double longitude, long timestamp, float accuracy, String provider) {
+        this(latitude, longitude, timestamp, accuracy, provider, -1f);
+    }
+
+    /**
+     * @param speed velocidad reportada por el provider en m/s, o negativa si no la reporta
+     */
+    public LocationFix(double latitude, double longitude, long timestamp, float accuracy, String provider, float speed) {
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.timestamp = timestamp;
+        this.accuracy = accuracy;
+        this.provider = provider != null ? provider : "";
+        this.speed = speed;
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    /**
+     * Momento del fix en milisegundos (epoch)
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public float getAccuracy() {
+        return accuracy;
+    }
+
+    public String getProvider() {
+        return provider;
+    }
+
+    public boolean hasSpeed() {
+        return speed >= 0;
+    }
+
+    public float getSpeed() {
+        return speed;
+    }
+
+    /**
+     * Distancia en metros a otro fix (haversine)
+     */
+    public double distanceTo(LocationFix other) {
+        double dLat = Math.toRadians(other.latitude - latitude);
+        double dLon = Math.toRadians(other.longitude - longitude);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+            + Math.cos(Math.toRadians(latitude)) * Math.cos(Math.toRadians(other.latitude))
+            * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS_M * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+    }
+
+    @Override
+    public String toString() {
+        return "LocationFix{" + latitude + ", " + longitude + " @" + timestamp
+            + " ±" + accuracy + "m " + provider + "}";
+    }
+}
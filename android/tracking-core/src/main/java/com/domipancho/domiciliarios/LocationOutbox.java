@@ -0,0 +1,400 @@
+package com.domipancho.domiciliarios;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Bandeja de salida persistente (append-only) para los fixes de ubicación.
+ *
+ * Cada fix aceptado se escribe como una línea en un segmento dentro de la carpeta
+ * de la app. Los fixes solo se eliminan cuando el servidor confirma el lote
+ * ({@link #commit(Batch)}), así el historial sobrevive a zonas sin señal,
+ * a la muerte del proceso y a los reinicios de ServiceRestarter.
+ *
+ * Formato de línea: timestamp,latitud,longitud,accuracy,provider\n
+ * Una línea sin salto final (escritura interrumpida) se ignora.
+ */
+public class LocationOutbox {
+    private static final String SEGMENT_PREFIX = "seg-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String CURSOR_FILE = "cursor";
+    private static final long MAX_SEGMENT_BYTES = 64 * 1024;
+
+    private final File dir;
+    private final int maxPending;
+
+    // Posición confirmada por el servidor: segmento + offset dentro del segmento
+    private long cursorSegment;
+    private long cursorOffset;
+
+    private long writeSegment;
+    private long writeOffset;
+    private int pendingCount;
+    private long lastAppendedTimestamp;
+
+    /**
+     * Lote leído de la bandeja. Se confirma con {@link LocationOutbox#commit(Batch)}.
+     */
+    public static final class Batch {
+        private final List<LocationFix> fixes;
+        private final long endSegment;
+        private final long endOffset;
+        // Dónde termina la línea de cada fix, para confirmar solo una parte del lote
+        private final List<Long> fixSegments;
+        private final List<Long> fixOffsets;
+
+        Batch(List<LocationFix> fixes, long endSegment, long endOffset,
+              List<Long> fixSegments, List<Long> fixOffsets) {
+            this.fixes = Collections.unmodifiableList(fixes);
+            this.endSegment = endSegment;
+            this.endOffset = endOffset;
+            this.fixSegments = fixSegments;
+            this.fixOffsets = fixOffsets;
+        }
+
+        public List<LocationFix> getFixes() {
+            return fixes;
+        }
+
+        public boolean isEmpty() {
+            return fixes.isEmpty();
+        }
+
+        public int size() {
+            return fixes.size();
+        }
+    }
+
+    /**
+     * @param dir carpeta propia de la bandeja (se crea si no existe)
+     * @param maxPending máximo de fixes pendientes; al superarlo se descarta el segmento más antiguo
+     */
+    public LocationOutbox(File dir, int maxPending) throws IOException {
+        this.dir = dir;
+        this.maxPending = maxPending;
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("No se pudo crear la bandeja: " + dir);
+        }
+        load();
+    }
+
+    /**
+     * Agrega un fix al final de la bandeja
+     */
+    public synchronized void append(LocationFix fix) throws IOException {
+        if (writeOffset >= MAX_SEGMENT_BYTES) {
+            writeSegment++;
+            writeOffset = 0;
+        }
+
+        byte[] line = encode(fix);
+        try (FileOutputStream out = new FileOutputStream(segmentFile(writeSegment), true)) {
+            out.write(line);
+            out.getFD().sync();
+        }
+        writeOffset += line.length;
+        pendingCount++;
+        lastAppendedTimestamp = fix.getTimestamp();
+
+        if (pendingCount > maxPending) {
+            dropOldestSegment();
+        }
+    }
+
+    /**
+     * Lee hasta maxFixes fixes pendientes, empezando por los más antiguos.
+     * No elimina nada: hay que llamar a {@link #commit(Batch)} tras el ACK del servidor.
+     */
+    public synchronized Batch peek(int maxFixes) throws IOException {
+        List<LocationFix> fixes = new ArrayList<>();
+        List<Long> fixSegments = new ArrayList<>();
+        List<Long> fixOffsets = new ArrayList<>();
+        long segment = cursorSegment;
+        long offset = cursorOffset;
+
+        while (fixes.size() < maxFixes && segment <= writeSegment) {
+            File file = segmentFile(segment);
+            if (file.exists()) {
+                offset = readLines(file, offset, maxFixes - fixes.size(), fixes, fixOffsets);
+                while (fixSegments.size() < fixOffsets.size()) {
+                    fixSegments.add(segment);
+                }
+                if (fixes.size() >= maxFixes || segment == writeSegment) {
+                    break;
+                }
+            }
+            segment++;
+            offset = 0;
+        }
+
+        return new Batch(fixes, segment, offset, fixSegments, fixOffsets);
+    }
+
+    /**
+     * Confirma un lote enviado: avanza el cursor y borra los segmentos consumidos
+     */
+    public synchronized void commit(Batch batch) throws IOException {
+        commit(batch, batch.size());
+    }
+
+    /**
+     * Confirma solo los primeros {@code count} fixes del lote (los que el servidor ya
+     * aceptó cuando se envían de a uno): el resto sigue pendiente y sale en el próximo peek
+     */
+    public synchronized void commit(Batch batch, int count) throws IOException {
+        int n = Math.min(count, batch.size());
+        if (n <= 0) {
+            return;
+        }
+        boolean todo = n == batch.size();
+        long segment = todo ? batch.endSegment : batch.fixSegments.get(n - 1);
+        long offset = todo ? batch.endOffset : batch.fixOffsets.get(n - 1);
+        if (!isAfterCursor(segment, offset)) {
+            return; // Ya confirmado (p. ej. el segmento fue descartado por tamaño)
+        }
+        // Lo que ya quedó atrás del cursor (commit parcial previo o descarte) ya se descontó
+        int yaConfirmados = 0;
+        while (yaConfirmados < n
+            && !isAfterCursor(batch.fixSegments.get(yaConfirmados), batch.fixOffsets.get(yaConfirmados))) {
+            yaConfirmados++;
+        }
+        cursorSegment = segment;
+        cursorOffset = offset;
+        pendingCount = Math.max(0, pendingCount - (n - yaConfirmados));
+        writeCursor();
+        deleteSegmentsBefore(cursorSegment);
+    }
+
+    private boolean isAfterCursor(long segment, long offset) {
+        return segment > cursorSegment || (segment == cursorSegment && offset > cursorOffset);
+    }
+
+    /**
+     * Confirma el último fix agregado si es el único pendiente.
+     * Lo usa el envío directo: si el fix fresco llegó y no hay atraso, no hace falta drenar.
+     */
+    public synchronized boolean acknowledgeIfOnlyPending(long timestamp) throws IOException {
+        if (pendingCount != 1 || lastAppendedTimestamp != timestamp) {
+            return false;
+        }
+        cursorSegment = writeSegment;
+        cursorOffset = writeOffset;
+        pendingCount = 0;
+        writeCursor();
+        deleteSegmentsBefore(cursorSegment);
+        return true;
+    }
+
+    public synchronized int pendingCount() {
+        return pendingCount;
+    }
+
+    public synchronized long getLastAppendedTimestamp() {
+        return lastAppendedTimestamp;
+    }
+
+    // ==================== Persistencia ====================
+
+    private void load() throws IOException {
+        readCursor();
+
+        long[] segments = listSegments();
+        if (segments.length == 0) {
+            writeSegment = cursorSegment;
+            writeOffset = cursorOffset;
+            pendingCount = 0;
+            return;
+        }
+
+        // Si el cursor apunta a un segmento borrado, empezar en el más antiguo disponible
+        if (segments[0] > cursorSegment) {
+            cursorSegment = segments[0];
+            cursorOffset = 0;
+        }
+        deleteSegmentsBefore(cursorSegment);
+
+        writeSegment = Math.max(segments[segments.length - 1], cursorSegment);
+        File last = segmentFile(writeSegment);
+        writeOffset = last.exists() ? validLength(last) : 0;
+        if (last.exists() && writeOffset < last.length()) {
+            // Recortar la última línea incompleta para que los próximos appends queden alineados
+            try (RandomAccessFile raf = new RandomAccessFile(last, "rw")) {
+                raf.setLength(writeOffset);
+            }
+        }
+
+        pendingCount = 0;
+        for (long segment = cursorSegment; segment <= writeSegment; segment++) {
+            File file = segmentFile(segment);
+            if (file.exists()) {
+                List<LocationFix> fixes = new ArrayList<>();
+                readLines(file, segment == cursorSegment ? cursorOffset : 0, Integer.MAX_VALUE, fixes, null);
+                pendingCount += fixes.size();
+                if (!fixes.isEmpty()) {
+                    lastAppendedTimestamp = fixes.get(fixes.size() - 1).getTimestamp();
+                }
+            }
+        }
+    }
+
+    /**
+     * Lee líneas completas desde offset. Devuelve el offset siguiente a la última línea leída.
+     * Si {@code ends} no es null, agrega dónde termina la línea de cada fix leído.
+     */
+    private long readLines(File file, long offset, int max, List<LocationFix> out, List<Long> ends) throws IOException {
+        byte[] data;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            long length = raf.length();
+            if (offset >= length) {
+                return offset;
+            }
+            data = new byte[(int) (length - offset)];
+            raf.seek(offset);
+            raf.readFully(data);
+        }
+
+        int start = 0;
+        int read = 0;
+        for (int i = 0; i < data.length && read < max; i++) {
+            if (data[i] == '\n') {
+                LocationFix fix = decode(new String(data, start, i - start, StandardCharsets.UTF_8));
+                if (fix != null) {
+                    out.add(fix);
+                    if (ends != null) {
+                        ends.add(offset + i + 1);
+                    }
+                    read++;
+                }
+                start = i + 1;
+            }
+        }
+        return offset + start;
+    }
+
+    private long validLength(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            long pos = raf.length();
+            while (pos > 0) {
+                raf.seek(pos - 1);
+                if (raf.read() == '\n') {
+                    return pos;
+                }
+                pos--;
+            }
+            return 0;
+        }
+    }
+
+    private void dropOldestSegment() throws IOException {
+        if (cursorSegment >= writeSegment) {
+            return; // Nunca descartar el segmento en escritura
+        }
+        List<LocationFix> dropped = new ArrayList<>();
+        readLines(segmentFile(cursorSegment), cursorOffset, Integer.MAX_VALUE, dropped, null);
+        pendingCount = Math.max(0, pendingCount - dropped.size());
+        cursorSegment++;
+        cursorOffset = 0;
+        writeCursor();
+        deleteSegmentsBefore(cursorSegment);
+    }
+
+    private void deleteSegmentsBefore(long segment) {
+        for (long seq : listSegments()) {
+            if (seq < segment) {
+                segmentFile(seq).delete();
+            }
+        }
+    }
+
+    private long[] listSegments() {
+        String[] names = dir.list();
+        if (names == null) {
+            return new long[0];
+        }
+        long[] result = new long[names.length];
+        int count = 0;
+        for (String name : names) {
+            if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                try {
+                    result[count++] = Long.parseLong(
+                        name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+                } catch (NumberFormatException ignored) {
+                    // Archivo ajeno a la bandeja
+                }
+            }
+        }
+        long[] segments = Arrays.copyOf(result, count);
+        Arrays.sort(segments);
+        return segments;
+    }
+
+    private File segmentFile(long segment) {
+        return new File(dir, SEGMENT_PREFIX + String.format(Locale.ROOT, "%010d", segment) + SEGMENT_SUFFIX);
+    }
+
+    private void readCursor() {
+        File file = new File(dir, CURSOR_FILE);
+        cursorSegment = 0;
+        cursorOffset = 0;
+        if (!file.exists()) {
+            return;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            String[] parts = raf.readLine().trim().split(" ");
+            cursorSegment = Long.parseLong(parts[0]);
+            cursorOffset = Long.parseLong(parts[1]);
+        } catch (Exception e) {
+            // Cursor corrupto: reenviar desde el inicio es preferible a perder fixes
+            cursorSegment = 0;
+            cursorOffset = 0;
+        }
+    }
+
+    private void writeCursor() throws IOException {
+        File tmp = new File(dir, CURSOR_FILE + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp, false)) {
+            out.write((cursorSegment + " " + cursorOffset + "\n").getBytes(StandardCharsets.UTF_8));
+            out.getFD().sync();
+        }
+        if (!tmp.renameTo(new File(dir, CURSOR_FILE))) {
+            throw new IOException("No se pudo actualizar el cursor de la bandeja");
+        }
+    }
+
+    // ==================== Formato de línea ====================
+
+    private static byte[] encode(LocationFix fix) {
+        String line = fix.getTimestamp() + ","
+            + fix.getLatitude() + ","
+            + fix.getLongitude() + ","
+            + fix.getAccuracy() + ","
+            + fix.getProvider().replace(',', '_').replace('\n', '_') + "\n";
+        return line.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static LocationFix decode(String line) {
+        String[] parts = line.split(",", -1);
+        if (parts.length != 5) {
+            return null;
+        }
+        try {
+            return new LocationFix(
+                Double.parseDouble(parts[1]),
+                Double.parseDouble(parts[2]),
+                Long.parseLong(parts[0]),
+                Float.parseFloat(parts[3]),
+                parts[4]
+            );
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
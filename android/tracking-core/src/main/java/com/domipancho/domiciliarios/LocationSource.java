@@ -0,0 +1,44 @@
+package com.domipancho.domiciliarios;
+
+import java.util.List;
+
+/**
+ * De dónde salen los fixes del servicio.
+ *
+ * - LocationManager (GPS y red por separado, un fix por despertada): siempre está.
+ * - Proveedor fusionado de Play services: con {@link SamplingPolicy.Profile#getMaxUpdateDelayMs()}
+ *   el chip junta los fixes y los entrega en lote, así la CPU despierta una vez
+ *   por subida en vez de una por fix.
+ * - En las pruebas, una fuente falsa que reproduce una traza.
+ *
+ * El servicio elige la implementación al arrancar y le pasa el perfil cada vez
+ * que el motor lo cambia. Los fixes llegan al {@link Listener} en el hilo de tracking.
+ */
+public interface LocationSource {
+
+    interface Listener {
+        /** Uno o varios fixes en orden (varios si la fuente los entregó en lote) */
+        void onLocations(List<LocationFix> fixes);
+
+        /**
+         * Las últimas ubicaciones que tenía el sistema al arrancar, en orden de
+         * preferencia (pueden ser viejas): sirve la primera que pase el filtro
+         */
+        void onLastKnown(List<LocationFix> candidates);
+    }
+
+    /**
+     * Registra (o re-registra) con los intervalos del perfil. False si no se pudo (sin permisos).
+     */
+    boolean request(SamplingPolicy.Profile profile);
+
+    /**
+     * Pide la última ubicación conocida; si hay, llega a {@link Listener#onLastKnown}
+     */
+    void requestLastKnown();
+
+    void stop();
+
+    /** Para logs y métricas */
+    String getName();
+}
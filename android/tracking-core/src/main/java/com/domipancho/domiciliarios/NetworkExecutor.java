@@ -0,0 +1,235 @@
+package com.domipancho.domiciliarios;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool acotado para todo el trabajo de red del servicio.
+ *
+ * Reemplaza los new Thread(...).start() por tick: con red lenta los timeouts
+ * ya no acumulan hilos, las tareas esperan en una cola fija y lo que no cabe
+ * se descarta (y se cuenta).
+ *
+ * Políticas:
+ * - {@link #submitLatest}: coalesce por clave, el valor más nuevo gana (ubicaciones)
+ * - {@link #submitOnce}: si ya hay una tarea con la misma clave en cola, se descarta la nueva
+ *
+ * Con un {@link Guard} cada tarea aceptada queda cubierta desde que entra a la cola
+ * hasta que termina (o se descarta al apagar el pool).
+ */
+public class NetworkExecutor {
+
+    public interface Sender<T> {
+        void send(T value);
+    }
+
+    /**
+     * Se avisa al aceptar cada tarea y al terminarla (p. ej. para retener la CPU)
+     */
+    public interface Guard {
+        void enter();
+
+        void exit();
+    }
+
+    private static final Guard NO_GUARD = new Guard() {
+        @Override
+        public void enter() {
+        }
+
+        @Override
+        public void exit() {
+        }
+    };
+
+    private final ThreadPoolExecutor executor;
+    private final int queueCapacity;
+    private final ConcurrentHashMap<String, Object> latest = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Boolean> queued = new ConcurrentHashMap<>();
+
+    private volatile Guard guard = NO_GUARD;
+
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    public NetworkExecutor(String name, int threads, int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+        this.executor = new ThreadPoolExecutor(
+            threads,
+            threads,
+            30, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(queueCapacity),
+            new NamedThreadFactory(name),
+            new ThreadPoolExecutor.AbortPolicy()
+        );
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Encola un envío coalescido: si ya hay uno pendiente con la misma clave,
+     * solo se reemplaza el valor y se envía el más reciente.
+     */
+    public <T> void submitLatest(String key, T value, Sender<T> sender) {
+        if (latest.put(key, value) != null) {
+            coalesced.incrementAndGet();
+            return; // La tarea ya encolada tomará este valor
+        }
+
+        Runnable task = () -> {
+            @SuppressWarnings("unchecked")
+            T newest = (T) latest.remove(key);
+            if (newest != null) {
+                sender.send(newest);
+            }
+        };
+        Object pending = value;
+        while (!execute(task)) {
+            // Rechazada: soltar solo nuestro valor. Si otro lo coalesció mientras tanto,
+            // contaba con esta tarea; se reintenta por el suyo en vez de perderlo
+            if (latest.remove(key, pending)) {
+                return;
+            }
+            pending = latest.get(key);
+            if (pending == null) {
+                return; // shutdown lo limpió
+            }
+        }
+    }
+
+    /**
+     * Encola una tarea única por clave: si ya hay una igual esperando, se descarta.
+     */
+    public boolean submitOnce(String key, Runnable task) {
+        if (queued.putIfAbsent(key, Boolean.TRUE) != null) {
+            dropped.incrementAndGet();
+            return false;
+        }
+
+        boolean accepted = execute(() -> {
+            queued.remove(key);
+            task.run();
+        });
+        if (!accepted) {
+            queued.remove(key);
+        }
+        return accepted;
+    }
+
+    public void setGuard(Guard guard) {
+        this.guard = guard != null ? guard : NO_GUARD;
+    }
+
+    private boolean execute(Runnable task) {
+        Guard current = guard;
+        current.enter();
+        try {
+            executor.execute(new Guarded(task, current));
+            return true;
+        } catch (RejectedExecutionException e) {
+            current.exit();
+            rejected.incrementAndGet();
+            return false;
+        }
+    }
+
+    /**
+     * Detiene el pool: descarta lo encolado y espera un momento a las tareas en curso
+     */
+    public void shutdown(long timeoutMs) {
+        executor.shutdown();
+        List<Runnable> pendientes = new ArrayList<>();
+        executor.getQueue().drainTo(pendientes);
+        for (Runnable pendiente : pendientes) {
+            ((Guarded) pendiente).guard.exit();
+        }
+        latest.clear();
+        queued.clear();
+        try {
+            if (!executor.awaitTermination(timeoutMs, TimeUnit.MILLISECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // ==================== Métricas de contrapresión ====================
+
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    @Override
+    public String toString() {
+        return "Cola: " + getQueueDepth() + "/" + queueCapacity
+            + " - Activas: " + getActiveCount()
+            + " - Rechazadas: " + getRejectedCount()
+            + " - Coalescidas: " + getCoalescedCount()
+            + " - Duplicadas: " + getDroppedCount();
+    }
+
+    private static final class Guarded implements Runnable {
+        private final Runnable task;
+        private final Guard guard;
+
+        Guarded(Runnable task, Guard guard) {
+            this.task = task;
+            this.guard = guard;
+        }
+
+        @Override
+        public void run() {
+            try {
+                task.run();
+            } finally {
+                guard.exit();
+            }
+        }
+    }
+
+    private static final class NamedThreadFactory implements ThreadFactory {
+        private final String name;
+        private final AtomicInteger count = new AtomicInteger();
+
+        NamedThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
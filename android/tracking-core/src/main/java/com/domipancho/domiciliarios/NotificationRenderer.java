@@ -0,0 +1,207 @@
+package com.domipancho.domiciliarios;
+
+/**
+ * Decide cuándo vale la pena volver a publicar la notificación del servicio.
+ *
+ * Cada fix pedía un notify (una llamada binder) aunque el texto visible fuera
+ * el mismo. Aquí:
+ * - el estado visible se compara como números (coordenadas a 5 decimales y
+ *   precisión por tramos) antes de armar ningún String;
+ * - si no cambió nada visible, no se publica;
+ * - entre dos publicaciones pasa al menos {@code minRepostMs}: lo que cambie
+ *   antes queda pendiente y sale con {@link #flush} (lo llama el tick);
+ * - el cambio de título (entrega activa o no) se publica de inmediato.
+ *
+ * Independiente de Android: publicar es cosa del {@link Sink}. No es thread-safe,
+ * se usa solo desde el hilo del handler.
+ */
+public final class NotificationRenderer {
+
+    public interface Sink {
+        void post(String title, String text);
+    }
+
+    public static final long DEFAULT_MIN_REPOST_MS = 10000;
+
+    static final String TITULO_ENTREGA = "DomiPancho - Entrega Activa";
+    static final String TITULO_RASTREO = "DomiPancho - Rastreando Ubicación";
+
+    private final Sink sink;
+    private final long minRepostMs;
+
+    // Estado deseado (lo último que se pidió mostrar)
+    private boolean activa;
+    private boolean conFix;
+    private long latE5;
+    private long lonE5;
+    private int precisionM;
+
+    // Estado publicado
+    private boolean publicado;
+    private boolean pubActiva;
+    private boolean pubConFix;
+    private long pubLatE5;
+    private long pubLonE5;
+    private int pubPrecisionM;
+    private long lastPostTime;
+    private boolean pendiente;
+
+    private long renders;
+    private long posts;
+    private long deferred;
+
+    public NotificationRenderer(Sink sink) {
+        this(sink, DEFAULT_MIN_REPOST_MS);
+    }
+
+    public NotificationRenderer(Sink sink, long minRepostMs) {
+        this.sink = sink;
+        this.minRepostMs = minRepostMs;
+    }
+
+    /**
+     * Pide mostrar este estado. Devuelve true si se publicó ahora.
+     */
+    public boolean render(boolean entregaActiva, LocationFix fix, long now) {
+        renders++;
+        setDeseado(entregaActiva, fix);
+
+        if (publicado && mismoQuePublicado()) {
+            pendiente = false;
+            return false;
+        }
+        if (!publicado || activa != pubActiva || now - lastPostTime >= minRepostMs) {
+            post(now);
+            return true;
+        }
+        if (!pendiente) {
+            pendiente = true;
+            deferred++;
+        }
+        return false;
+    }
+
+    /**
+     * Publica este estado sin importar el intervalo ni si cambió
+     * (p. ej. para startForeground, que siempre necesita una notificación)
+     */
+    public void renderNow(boolean entregaActiva, LocationFix fix, long now) {
+        renders++;
+        setDeseado(entregaActiva, fix);
+        post(now);
+    }
+
+    /**
+     * Publica lo pendiente si ya se cumplió el intervalo mínimo. Devuelve true si publicó.
+     */
+    public boolean flush(long now) {
+        if (pendiente && now - lastPostTime >= minRepostMs) {
+            post(now);
+            return true;
+        }
+        return false;
+    }
+
+    private void setDeseado(boolean entregaActiva, LocationFix fix) {
+        activa = entregaActiva;
+        conFix = fix != null;
+        if (fix == null) {
+            latE5 = 0;
+            lonE5 = 0;
+            precisionM = 0;
+            return;
+        }
+        // Sin entrega activa las coordenadas no se muestran: no cuentan como cambio
+        latE5 = entregaActiva ? Math.round(fix.getLatitude() * 1e5) : 0;
+        lonE5 = entregaActiva ? Math.round(fix.getLongitude() * 1e5) : 0;
+        precisionM = bucketPrecision(fix.getAccuracy());
+    }
+
+    private boolean mismoQuePublicado() {
+        return activa == pubActiva
+            && conFix == pubConFix
+            && latE5 == pubLatE5
+            && lonE5 == pubLonE5
+            && precisionM == pubPrecisionM;
+    }
+
+    private void post(long now) {
+        publicado = true;
+        pubActiva = activa;
+        pubConFix = conFix;
+        pubLatE5 = latE5;
+        pubLonE5 = lonE5;
+        pubPrecisionM = precisionM;
+        lastPostTime = now;
+        pendiente = false;
+        posts++;
+        sink.post(getTitle(), getText());
+    }
+
+    /**
+     * Precisión por tramos: de 5 en 5 m hasta 20, de 25 en 25 hasta 100, luego de 100 en 100.
+     * Así el ruido normal del GPS (8, 9, 11 m...) no cambia el texto.
+     */
+    static int bucketPrecision(float accuracyM) {
+        int step = accuracyM <= 20 ? 5 : accuracyM <= 100 ? 25 : 100;
+        int bucket = Math.round(accuracyM / step) * step;
+        return Math.max(step, bucket);
+    }
+
+    public String getTitle() {
+        return activa ? TITULO_ENTREGA : TITULO_RASTREO;
+    }
+
+    public String getText() {
+        if (!conFix) {
+            return activa ? "Realizando entrega" : "Buscando pedidos cercanos";
+        }
+        StringBuilder sb = new StringBuilder(64);
+        if (activa) {
+            sb.append("Última ubicación: ");
+            appendE5(sb, latE5);
+            sb.append(", ");
+            appendE5(sb, lonE5);
+            sb.append(" (").append(precisionM).append("m)");
+        } else {
+            sb.append("Buscando pedidos cercanos (").append(precisionM).append("m precisión)");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Escribe un valor en cienmilésimas con 5 decimales y punto decimal
+     * (String.format usaría la coma del locale del teléfono)
+     */
+    private static void appendE5(StringBuilder sb, long valueE5) {
+        if (valueE5 < 0) {
+            sb.append('-');
+            valueE5 = -valueE5;
+        }
+        sb.append(valueE5 / 100000).append('.');
+        String decimales = Long.toString(valueE5 % 100000);
+        for (int i = decimales.length(); i < 5; i++) {
+            sb.append('0');
+        }
+        sb.append(decimales);
+    }
+
+    // ==================== Métricas ====================
+
+    public long getRenderCount() {
+        return renders;
+    }
+
+    public long getPostCount() {
+        return posts;
+    }
+
+    public long getDeferredCount() {
+        return deferred;
+    }
+
+    @Override
+    public String toString() {
+        return "Pedidas: " + renders + " - Publicadas: " + posts + " - Diferidas: " + deferred;
+    }
+}
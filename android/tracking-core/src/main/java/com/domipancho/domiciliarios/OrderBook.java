@@ -0,0 +1,197 @@
+package com.domipancho.domiciliarios;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * La lista de pedidos que ve el domiciliario, indexada por id.
+ *
+ * Cada respuesta del polling se compara con la anterior en O(n) (un mapa por id
+ * en vez de buscar cada pedido en la lista vieja) y sale como eventos:
+ * - {@link Type#NEW}: un pedido pasó a "esperando repartidor" (disponible para tomar);
+ * - {@link Type#CHANGED}: cambió el estado de un pedido que ya estaba;
+ * - {@link Type#REMOVED}: desapareció, lo tomó otro domiciliario o terminó
+ *   (entregado/cancelado; se avisa una sola vez).
+ * La primera respuesta solo llena la lista (no hay contra qué comparar).
+ *
+ * No es thread-safe; el poller la usa bajo su propio lock.
+ */
+public final class OrderBook {
+
+    public static final String ESTADO_ESPERANDO = "esperando repartidor";
+    public static final String ESTADO_ENTREGADO = "entregado";
+    public static final String ESTADO_CANCELADO = "cancelado";
+
+    public static final class Order {
+        private final int id;
+        private final String estado;
+        private final int domiciliarioId;
+        private final String json;
+
+        public Order(int id, String estado, int domiciliarioId, String json) {
+            this.id = id;
+            this.estado = estado != null ? estado : "";
+            this.domiciliarioId = domiciliarioId;
+            this.json = json;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public String getEstado() {
+            return estado;
+        }
+
+        /**
+         * 0 si no tiene domiciliario asignado
+         */
+        public int getDomiciliarioId() {
+            return domiciliarioId;
+        }
+
+        /**
+         * El pedido tal como vino del servidor
+         */
+        public String getJson() {
+            return json;
+        }
+
+        boolean isFinal() {
+            return ESTADO_ENTREGADO.equals(estado) || ESTADO_CANCELADO.equals(estado);
+        }
+    }
+
+    public enum Type {
+        NEW,
+        CHANGED,
+        REMOVED
+    }
+
+    public static final class Event {
+        private final Type type;
+        private final Order order;
+        private final String estadoAnterior;
+
+        /**
+         * Los arma {@link OrderBook#update}; también el otro lado del IPC al recibirlos
+         */
+        public Event(Type type, Order order, String estadoAnterior) {
+            this.type = type;
+            this.order = order;
+            this.estadoAnterior = estadoAnterior;
+        }
+
+        public Type getType() {
+            return type;
+        }
+
+        /**
+         * El pedido como está ahora (el último conocido si se fue de la lista)
+         */
+        public Order getOrder() {
+            return order;
+        }
+
+        /**
+         * Estado antes del cambio (null en NEW)
+         */
+        public String getEstadoAnterior() {
+            return estadoAnterior;
+        }
+
+        @Override
+        public String toString() {
+            return type + " " + order.getId() + (estadoAnterior != null
+                ? " (" + estadoAnterior + " -> " + order.getEstado() + ")" : " (" + order.getEstado() + ")");
+        }
+    }
+
+    private Map<Integer, Order> orders = new HashMap<>();
+    private boolean initialized;
+
+    /**
+     * Reemplaza la lista por la nueva respuesta y devuelve lo que cambió.
+     * {@code usuarioId} decide si un pedido que dejó de estar disponible es mío (se queda) o de otro (se quita).
+     */
+    public List<Event> update(List<Order> nuevas, int usuarioId) {
+        Map<Integer, Order> nuevo = new HashMap<>(nuevas.size() * 2);
+        for (Order order : nuevas) {
+            nuevo.put(order.getId(), order);
+        }
+        if (!initialized) {
+            initialized = true;
+            orders = nuevo;
+            return Collections.emptyList();
+        }
+
+        List<Event> cambios = new ArrayList<>();
+        List<Event> nuevos = new ArrayList<>();
+        List<Event> removidos = new ArrayList<>();
+        for (Order order : nuevas) {
+            Order viejo = orders.get(order.getId());
+            boolean esperando = ESTADO_ESPERANDO.equals(order.getEstado());
+            if (viejo == null) {
+                if (esperando) {
+                    nuevos.add(new Event(Type.NEW, order, null));
+                }
+                continue;
+            }
+            if (viejo.getEstado().equals(order.getEstado())) {
+                continue;
+            }
+
+            cambios.add(new Event(Type.CHANGED, order, viejo.getEstado()));
+            if (esperando) {
+                nuevos.add(new Event(Type.NEW, order, null));
+            } else if (order.isFinal() && !viejo.isFinal()) {
+                removidos.add(new Event(Type.REMOVED, order, viejo.getEstado()));
+            } else if (ESTADO_ESPERANDO.equals(viejo.getEstado()) && order.getDomiciliarioId() != usuarioId) {
+                removidos.add(new Event(Type.REMOVED, order, viejo.getEstado())); // lo tomó otro
+            }
+        }
+        for (Order viejo : orders.values()) {
+            if (!nuevo.containsKey(viejo.getId())) {
+                removidos.add(new Event(Type.REMOVED, viejo, viejo.getEstado()));
+            }
+        }
+        orders = nuevo;
+
+        cambios.addAll(nuevos);
+        cambios.addAll(removidos);
+        return cambios;
+    }
+
+    /**
+     * Pedidos en {@code estado} asignados a {@code usuarioId} (o sin domiciliario en la respuesta)
+     */
+    public int countMine(String estado, int usuarioId) {
+        int count = 0;
+        for (Order order : orders.values()) {
+            if (estado.equals(order.getEstado())
+                && (order.getDomiciliarioId() == usuarioId || order.getDomiciliarioId() == 0)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public Order get(int id) {
+        return orders.get(id);
+    }
+
+    public int size() {
+        return orders.size();
+    }
+
+    /**
+     * Olvida la lista (cambio de sesión): la próxima respuesta vuelve a ser la primera
+     */
+    public void clear() {
+        orders = new HashMap<>();
+        initialized = false;
+    }
+}
@@ -0,0 +1,114 @@
+package com.domipancho.domiciliarios;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * El polling nativo de pedidos. Reemplaza al del socket mock de JS solo cuando
+ * sus peticiones llevan la sesión ({@link SessionCookieJar}) y el servidor la acepta;
+ * hasta entonces JS sigue siendo la fuente.
+ *
+ * Cada ronda es un GET condicional de la lista con distancias; con un 304 no se
+ * lee nada. El usuario actual se pide una vez y queda en memoria (se vuelve a
+ * pedir si el servidor rechaza la sesión). La lista vive en un {@link OrderBook}
+ * y lo que cambió sale al {@link Listener}: los eventos para la WebView y si hay
+ * pedidos en camino para el servicio (título de la notificación y muestreo).
+ *
+ * Thread-safe: una ronda a la vez (corre en el pool de red).
+ */
+public final class OrderPoller {
+
+    public interface Listener {
+        void onOrderEvents(List<OrderBook.Event> events);
+
+        void onActiveOrders(boolean enCamino);
+    }
+
+    public static final String PATH_USUARIO = "/api/usuario-actual";
+    public static final String PATH_PEDIDOS = "/api/pedidos-domiciliario-con-distancias";
+
+    private final ServiceHttpClient client;
+    private final Listener listener;
+    private final OrderBook book = new OrderBook();
+
+    private int usuarioId;
+    private String etag;
+    private String lastModified;
+
+    private long rounds;
+    private long notModified;
+    private long userFetches;
+    private long events;
+
+    public OrderPoller(ServiceHttpClient client, Listener listener) {
+        this.client = client;
+        this.listener = listener;
+    }
+
+    /**
+     * Una ronda: usuario (si hace falta) y lista de pedidos. Devuelve el código HTTP de la lista.
+     */
+    public synchronized int poll() throws IOException {
+        rounds++;
+        if (usuarioId == 0) {
+            ServiceHttpClient.ConditionalResponse<Integer> usuario =
+                client.getConditional(PATH_USUARIO, null, null, EstadoPedidosScanner::readId);
+            userFetches++;
+            if (!usuario.isOk() || usuario.getValue() == 0) {
+                return usuario.getCode();
+            }
+            usuarioId = usuario.getValue();
+        }
+
+        ServiceHttpClient.ConditionalResponse<List<OrderBook.Order>> response =
+            client.getConditional(PATH_PEDIDOS, etag, lastModified, EstadoPedidosScanner::readPedidos);
+        if (response.isNotModified()) {
+            notModified++;
+            return response.getCode();
+        }
+        if (response.getCode() == 401 || response.getCode() == 403) {
+            invalidate(); // otra sesión: usuario y lista de nuevo
+            return response.getCode();
+        }
+        if (!response.isOk()) {
+            return response.getCode();
+        }
+
+        etag = response.getEtag();
+        lastModified = response.getLastModified();
+        List<OrderBook.Event> cambios = book.update(response.getValue(), usuarioId);
+        if (!cambios.isEmpty()) {
+            events += cambios.size();
+            listener.onOrderEvents(cambios);
+        }
+        listener.onActiveOrders(book.countMine(OrderStateMessage.ESTADO_EN_CAMINO, usuarioId) > 0);
+        return response.getCode();
+    }
+
+    /**
+     * Olvida usuario, validadores y lista
+     */
+    public synchronized void invalidate() {
+        usuarioId = 0;
+        etag = null;
+        lastModified = null;
+        book.clear();
+    }
+
+    public synchronized int getUsuarioId() {
+        return usuarioId;
+    }
+
+    public synchronized int getOrderCount() {
+        return book.size();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "Rondas: " + rounds
+            + " - 304: " + notModified
+            + " - Usuario pedido: " + userFetches + " veces"
+            + " - Pedidos: " + book.size()
+            + " - Eventos: " + events;
+    }
+}
@@ -0,0 +1,86 @@
+package com.domipancho.domiciliarios;
+
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Mensaje de datos FCM con el cambio de estado de un pedido.
+ *
+ * El servidor lo manda como data message:
+ * <pre>
+ *   type     = "pedido_estado"
+ *   pedidoId = "123"
+ *   estado   = "camino a tu casa" | "entregado" | ...
+ * </pre>
+ * Independiente de Firebase: se construye desde el mapa de datos, así se puede
+ * probar (o inyectar a mano) sin un servicio de push real.
+ */
+public final class OrderStateMessage {
+    public static final String TYPE = "pedido_estado";
+    public static final String ESTADO_EN_CAMINO = "camino a tu casa";
+
+    public static final String KEY_TYPE = "type";
+    public static final String KEY_PEDIDO_ID = "pedidoId";
+    public static final String KEY_ESTADO = "estado";
+
+    private final int pedidoId;
+    private final String estado;
+
+    OrderStateMessage(int pedidoId, String estado) {
+        this.pedidoId = pedidoId;
+        this.estado = estado;
+    }
+
+    /**
+     * Devuelve el mensaje, o null si los datos no son un cambio de estado de pedido válido
+     */
+    public static OrderStateMessage parse(Map<String, String> data) {
+        if (data == null || !TYPE.equals(data.get(KEY_TYPE))) {
+            return null;
+        }
+        String estado = data.get(KEY_ESTADO);
+        String id = data.get(KEY_PEDIDO_ID);
+        if (estado == null || id == null) {
+            return null;
+        }
+        try {
+            int pedidoId = Integer.parseInt(id.trim());
+            if (pedidoId <= 0) {
+                return null;
+            }
+            return new OrderStateMessage(pedidoId, estado.trim().toLowerCase(Locale.ROOT));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    public int getPedidoId() {
+        return pedidoId;
+    }
+
+    public String getEstado() {
+        return estado;
+    }
+
+    /**
+     * El pedido quedó en camino: el domiciliario tiene una entrega activa
+     */
+    public boolean isEnCamino() {
+        return ESTADO_EN_CAMINO.equals(estado);
+    }
+
+    /**
+     * Pedido activo después de aplicar este mensaje (0 si ya no hay)
+     */
+    public int applyTo(int pedidoActivo) {
+        if (isEnCamino()) {
+            return pedidoId;
+        }
+        return pedidoId == pedidoActivo ? 0 : pedidoActivo;
+    }
+
+    @Override
+    public String toString() {
+        return "Pedido " + pedidoId + " - " + estado;
+    }
+}
@@ -0,0 +1,199 @@
+package com.domipancho.domiciliarios;
+
+/**
+ * Decide cada cuánto pedir GPS/red y cada cuánto subir la ubicación.
+ *
+ * Entradas: velocidad medida, detección de parada, precisión del fix y si hay
+ * pedidos activos. Quieto en un restaurante sin pedido el servicio casi no
+ * despierta el GPS; en una entrega a 50 km/h pide puntos más densos.
+ *
+ * El perfil solo cambia cuando el candidato se mantiene {@link #MIN_DWELL_MS}
+ * (histéresis), salvo al arrancar a moverse o al cambiar los pedidos activos,
+ * que se aplican de inmediato. Así el servicio re-registra listeners solo
+ * cuando de verdad cambia algo.
+ */
+public class SamplingPolicy {
+
+    public enum Profile {
+        //             gpsMs  gpsM  netMs  netM  uploadMs
+        PARKED(        30000,  25,  60000,  50,  60000),
+        IDLE(          10000,  15,  30000,  25,  30000),
+        DELIVERY_STOPPED(10000, 10, 30000,  25,  20000),
+        DELIVERY(       5000,   5,  15000,  10,  10000),
+        DELIVERY_FAST(  2000,  10,  15000,  20,   5000);
+
+        private final long gpsIntervalMs;
+        private final float gpsMinDistanceM;
+        private final long networkIntervalMs;
+        private final float networkMinDistanceM;
+        private final long uploadIntervalMs;
+
+        Profile(long gpsIntervalMs, float gpsMinDistanceM, long networkIntervalMs,
+                float networkMinDistanceM, long uploadIntervalMs) {
+            this.gpsIntervalMs = gpsIntervalMs;
+            this.gpsMinDistanceM = gpsMinDistanceM;
+            this.networkIntervalMs = networkIntervalMs;
+            this.networkMinDistanceM = networkMinDistanceM;
+            this.uploadIntervalMs = uploadIntervalMs;
+        }
+
+        public long getGpsIntervalMs() {
+            return gpsIntervalMs;
+        }
+
+        public float getGpsMinDistanceM() {
+            return gpsMinDistanceM;
+        }
+
+        public long getNetworkIntervalMs() {
+            return networkIntervalMs;
+        }
+
+        public float getNetworkMinDistanceM() {
+            return networkMinDistanceM;
+        }
+
+        public long getUploadIntervalMs() {
+            return uploadIntervalMs;
+        }
+
+        /**
+         * Cuánto puede retener la fuente los fixes para entregarlos en lote.
+         * En entrega, 0: el carril exprés sube cada fix apenas llega. Fuera de
+         * entrega, el intervalo de subida: el lote llega justo cuando toca subir.
+         */
+        public long getMaxUpdateDelayMs() {
+            return isDelivery(this) ? 0 : uploadIntervalMs;
+        }
+    }
+
+    static final long MIN_DWELL_MS = 30000;
+    static final long STATIONARY_AFTER_MS = 120000;
+    static final float STATIONARY_RADIUS_M = 30f;
+    static final float MOVING_SPEED_MPS = 1.5f;    // ~5 km/h
+    static final float FAST_SPEED_MPS = 8.3f;      // ~30 km/h
+    static final float MAX_USEFUL_ACCURACY_M = 100f;
+    private static final float SPEED_SMOOTHING = 0.4f;
+
+    private Profile profile = Profile.IDLE;
+    private Profile candidate = Profile.IDLE;
+    private long candidateSince;
+
+    private boolean activeOrders;
+    private LocationFix anchor;
+    private LocationFix previous;
+    private long lastMovementTime;
+    private float speed = -1f;
+
+    /**
+     * Procesa un fix nuevo. Devuelve true si el perfil cambió.
+     */
+    public boolean onFix(LocationFix fix, long now) {
+        if (fix.getAccuracy() <= MAX_USEFUL_ACCURACY_M) {
+            updateMovement(fix, now);
+        }
+        // Fixes muy imprecisos (red) no sirven para decidir si se mueve
+        return evaluate(now);
+    }
+
+    /**
+     * Actualiza si hay pedidos activos. Devuelve true si el perfil cambió.
+     */
+    public boolean setActiveOrders(boolean active, long now) {
+        if (activeOrders == active) {
+            return false;
+        }
+        activeOrders = active;
+        return evaluate(now);
+    }
+
+    /**
+     * Re-evalúa sin fix nuevo (el GPS no entrega fixes si no se supera la distancia mínima,
+     * así que la parada se detecta por tiempo). Devuelve true si el perfil cambió.
+     */
+    public boolean refresh(long now) {
+        return evaluate(now);
+    }
+
+    public Profile getProfile() {
+        return profile;
+    }
+
+    public boolean isStationary(long now) {
+        return anchor != null && now - lastMovementTime >= STATIONARY_AFTER_MS;
+    }
+
+    /**
+     * Velocidad suavizada en m/s, o negativa si aún no se conoce
+     */
+    public float getSpeed() {
+        return speed;
+    }
+
+    private void updateMovement(LocationFix fix, long now) {
+        float measured = -1f;
+        if (fix.hasSpeed()) {
+            measured = fix.getSpeed();
+        } else if (previous != null && fix.getTimestamp() > previous.getTimestamp()) {
+            measured = (float) (fix.distanceTo(previous) * 1000.0 / (fix.getTimestamp() - previous.getTimestamp()));
+        }
+        if (measured >= 0) {
+            speed = speed < 0 ? measured : speed + SPEED_SMOOTHING * (measured - speed);
+        }
+        previous = fix;
+
+        if (anchor == null) {
+            anchor = fix;
+            lastMovementTime = now;
+            return;
+        }
+
+        float radius = Math.max(STATIONARY_RADIUS_M, fix.getAccuracy());
+        if (fix.distanceTo(anchor) > radius || (measured >= 0 && measured > MOVING_SPEED_MPS)) {
+            anchor = fix;
+            lastMovementTime = now;
+        }
+    }
+
+    private boolean evaluate(long now) {
+        Profile next = select(now);
+        if (next != candidate) {
+            candidate = next;
+            candidateSince = now;
+        }
+        if (candidate == profile) {
+            return false;
+        }
+
+        boolean immediate = activeOrders != isDelivery(profile) || rank(candidate) > rank(profile);
+        if (immediate || now - candidateSince >= MIN_DWELL_MS) {
+            profile = candidate;
+            return true;
+        }
+        return false;
+    }
+
+    private Profile select(long now) {
+        boolean stationary = isStationary(now);
+        if (!activeOrders) {
+            return stationary ? Profile.PARKED : Profile.IDLE;
+        }
+        if (stationary) {
+            return Profile.DELIVERY_STOPPED;
+        }
+        return speed > FAST_SPEED_MPS ? Profile.DELIVERY_FAST : Profile.DELIVERY;
+    }
+
+    private static boolean isDelivery(Profile profile) {
+        return profile == Profile.DELIVERY_STOPPED
+            || profile == Profile.DELIVERY
+            || profile == Profile.DELIVERY_FAST;
+    }
+
+    /**
+     * Más alto = más denso. Subir de densidad es inmediato; bajar espera MIN_DWELL_MS.
+     */
+    private static int rank(Profile profile) {
+        return profile.ordinal();
+    }
+}
@@ -0,0 +1,324 @@
+package com.domipancho.domiciliarios;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import okhttp3.Call;
+import okhttp3.ConnectionPool;
+import okhttp3.CookieJar;
+import okhttp3.EventListener;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Cliente HTTP único del servicio de ubicación.
+ *
+ * Mantiene la conexión viva entre envíos (keep-alive + reanudación de sesión TLS)
+ * y usa HTTP/2 cuando el servidor lo negocia, así ubicación, heartbeat y
+ * verificación de pedidos comparten una sola conexión caliente en vez de
+ * un handshake TCP+TLS nuevo cada 10 segundos.
+ *
+ * El servidor exige la sesión del domiciliario: el servicio pasa un
+ * {@link SessionCookieJar} con la cookie del login de la WebView. Sin jar
+ * (simulador de flota, pruebas) las peticiones salen sin cookies.
+ */
+public class ServiceHttpClient {
+    /**
+     * Marca un envío de ubicación como heartbeat: el servidor lo cuenta como actividad
+     * y el servicio se ahorra la petición aparte a /api/domiciliario-heartbeat.
+     */
+    public static final String HEADER_HEARTBEAT = "X-Domiciliario-Heartbeat";
+
+    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+    private static final long TIMEOUT_MS = 15000;
+    private static final long KEEP_ALIVE_MINUTES = 5;
+
+    private final String baseUrl;
+    private final OkHttpClient client;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong connections = new AtomicLong();
+    private final AtomicLong handshakes = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+
+    /**
+     * Respuesta ya leída completa (necesario para devolver la conexión al pool)
+     */
+    public static final class HttpResponse {
+        private final int code;
+        private final String body;
+
+        HttpResponse(int code, String body) {
+            this.code = code;
+            this.body = body;
+        }
+
+        public int getCode() {
+            return code;
+        }
+
+        public String getBody() {
+            return body;
+        }
+
+        public boolean isOk() {
+            return code == 200;
+        }
+    }
+
+    /**
+     * Lee el cuerpo directo del stream, sin pasarlo a String
+     */
+    public interface BodyParser<T> {
+        T parse(Reader body) throws IOException;
+    }
+
+    /**
+     * Respuesta de un GET condicional. En 304 no hay cuerpo ni valor: lo anterior sigue vigente.
+     */
+    public static final class ConditionalResponse<T> {
+        private final int code;
+        private final String etag;
+        private final String lastModified;
+        private final T value;
+
+        ConditionalResponse(int code, String etag, String lastModified, T value) {
+            this.code = code;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.value = value;
+        }
+
+        public int getCode() {
+            return code;
+        }
+
+        public boolean isOk() {
+            return code == 200;
+        }
+
+        public boolean isNotModified() {
+            return code == 304;
+        }
+
+        /**
+         * Validador a guardar para la próxima petición (null si el servidor no mandó ninguno)
+         */
+        public String getEtag() {
+            return etag;
+        }
+
+        public String getLastModified() {
+            return lastModified;
+        }
+
+        /**
+         * Resultado del parser (solo en 200)
+         */
+        public T getValue() {
+            return value;
+        }
+    }
+
+    /**
+     * Sin sesión: solo para herramientas contra un servidor local
+     */
+    public ServiceHttpClient(String baseUrl) {
+        this(baseUrl, defaultBuilder());
+    }
+
+    /**
+     * Con la sesión de {@code cookies} en cada petición (y sus renovaciones de vuelta)
+     */
+    public ServiceHttpClient(String baseUrl, CookieJar cookies) {
+        this(baseUrl, defaultBuilder().cookieJar(cookies));
+    }
+
+    ServiceHttpClient(String baseUrl, OkHttpClient.Builder builder) {
+        this.baseUrl = baseUrl;
+        this.client = builder
+            .eventListener(new EventListener() {
+                @Override
+                public void connectStart(Call call, InetSocketAddress address, Proxy proxy) {
+                    connections.incrementAndGet();
+                }
+
+                @Override
+                public void secureConnectStart(Call call) {
+                    handshakes.incrementAndGet();
+                }
+
+                @Override
+                public void requestHeadersEnd(Call call, Request request) {
+                    bytesSent.addAndGet(request.headers().byteCount());
+                }
+
+                @Override
+                public void requestBodyEnd(Call call, long byteCount) {
+                    bytesSent.addAndGet(byteCount);
+                }
+
+                @Override
+                public void responseBodyEnd(Call call, long byteCount) {
+                    bytesReceived.addAndGet(byteCount);
+                }
+            })
+            .addInterceptor(chain -> chain.proceed(
+                chain.request().newBuilder()
+                    .header("X-Requested-With", "XMLHttpRequest")
+                    .build()))
+            .build();
+    }
+
+    static OkHttpClient.Builder defaultBuilder() {
+        return new OkHttpClient.Builder()
+            .connectionPool(new ConnectionPool(2, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+            .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+            .connectTimeout(TIMEOUT_MS, TimeUnit.MILLISECONDS)
+            .readTimeout(TIMEOUT_MS, TimeUnit.MILLISECONDS)
+            .writeTimeout(TIMEOUT_MS, TimeUnit.MILLISECONDS)
+            .retryOnConnectionFailure(true);
+    }
+
+    public HttpResponse postJson(String path, String json) throws IOException {
+        return execute(post(path, RequestBody.create(json, JSON), false));
+    }
+
+    public HttpResponse postBytes(String path, byte[] body, String contentType) throws IOException {
+        return execute(post(path, RequestBody.create(body, MediaType.get(contentType)), false));
+    }
+
+    /**
+     * Como {@link #postJson}, con el heartbeat a cuestas ({@link #HEADER_HEARTBEAT})
+     */
+    public HttpResponse postJsonWithHeartbeat(String path, String json) throws IOException {
+        return execute(post(path, RequestBody.create(json, JSON), true));
+    }
+
+    /**
+     * Como {@link #postBytes}, con el heartbeat a cuestas ({@link #HEADER_HEARTBEAT})
+     */
+    public HttpResponse postBytesWithHeartbeat(String path, byte[] body, String contentType) throws IOException {
+        return execute(post(path, RequestBody.create(body, MediaType.get(contentType)), true));
+    }
+
+    private Request post(String path, RequestBody body, boolean heartbeat) {
+        Request.Builder builder = new Request.Builder()
+            .url(baseUrl + path)
+            .post(body);
+        if (heartbeat) {
+            builder.header(HEADER_HEARTBEAT, "1");
+        }
+        return builder.build();
+    }
+
+    public HttpResponse get(String path) throws IOException {
+        Request request = new Request.Builder()
+            .url(baseUrl + path)
+            .header("Content-Type", "application/json")
+            .get()
+            .build();
+        return execute(request);
+    }
+
+    /**
+     * GET condicional: manda If-None-Match / If-Modified-Since con los validadores de la
+     * respuesta anterior. Un 304 no trae cuerpo; un 200 se parsea en streaming con {@code parser}.
+     */
+    public <T> ConditionalResponse<T> getConditional(String path, String etag, String lastModified,
+                                                      BodyParser<T> parser) throws IOException {
+        Request.Builder builder = new Request.Builder()
+            .url(baseUrl + path)
+            .header("Content-Type", "application/json")
+            .get();
+        if (etag != null) {
+            builder.header("If-None-Match", etag);
+        }
+        if (lastModified != null) {
+            builder.header("If-Modified-Since", lastModified);
+        }
+
+        requests.incrementAndGet();
+        try (Response response = client.newCall(builder.build()).execute()) {
+            T value = null;
+            ResponseBody body = response.body();
+            if (response.code() == 200 && body != null) {
+                value = parser.parse(body.charStream());
+            }
+            return new ConditionalResponse<>(
+                response.code(),
+                response.header("ETag"),
+                response.header("Last-Modified"),
+                value
+            );
+        }
+    }
+
+    private HttpResponse execute(Request request) throws IOException {
+        requests.incrementAndGet();
+        try (Response response = client.newCall(request).execute()) {
+            ResponseBody body = response.body();
+            return new HttpResponse(response.code(), body != null ? body.string() : "");
+        }
+    }
+
+    /**
+     * Cierra las conexiones del pool (llamar en onDestroy)
+     */
+    public void close() {
+        client.dispatcher().executorService().shutdown();
+        client.connectionPool().evictAll();
+    }
+
+    // ==================== Métricas ====================
+
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    /**
+     * Conexiones TCP abiertas desde que se creó el cliente
+     */
+    public long getConnectionCount() {
+        return connections.get();
+    }
+
+    /**
+     * Handshakes TLS iniciados (completos o reanudados) desde que se creó el cliente
+     */
+    public long getHandshakeCount() {
+        return handshakes.get();
+    }
+
+    /**
+     * Bytes escritos en peticiones (headers y cuerpo, antes de TLS y compresión HTTP/2)
+     */
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    /**
+     * Bytes de cuerpos de respuesta leídos
+     */
+    public long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    @Override
+    public String toString() {
+        return "Peticiones: " + getRequestCount()
+            + " - Conexiones: " + getConnectionCount()
+            + " - Handshakes TLS: " + getHandshakeCount()
+            + " - Bytes enviados: " + getBytesSent();
+    }
+}
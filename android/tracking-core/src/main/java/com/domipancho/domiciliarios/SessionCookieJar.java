@@ -0,0 +1,130 @@
+package com.domipancho.domiciliarios;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import okhttp3.Cookie;
+import okhttp3.CookieJar;
+import okhttp3.HttpUrl;
+
+/**
+ * La sesión del domiciliario para las peticiones nativas.
+ *
+ * El login lo hace la WebView y la cookie de sesión vive en su CookieManager;
+ * sin esto OkHttp usa CookieJar.NO_COOKIES y ubicación, heartbeat y pedidos salen
+ * sin autenticar. La sesión se guarda como el header Cookie ("a=b; c=d", lo que
+ * devuelve CookieManager.getCookie) en un {@link Store} que la app alimenta, y
+ * se lee en cada petición: una sesión nueva (re-login) aplica desde la siguiente.
+ *
+ * Solo se manda al host del servidor. Si el servidor renueva o borra una cookie
+ * (Set-Cookie), el cambio vuelve al Store.
+ */
+public final class SessionCookieJar implements CookieJar {
+
+    /**
+     * Dónde vive el header Cookie de la sesión (null o vacío si no hay)
+     */
+    public interface Store {
+        String load();
+
+        void save(String cookieHeader);
+    }
+
+    private final String host;
+    private final Store store;
+
+    public SessionCookieJar(String baseUrl, Store store) {
+        HttpUrl url = HttpUrl.parse(baseUrl);
+        if (url == null) {
+            throw new IllegalArgumentException("URL inválida: " + baseUrl);
+        }
+        this.host = url.host();
+        this.store = store;
+    }
+
+    /**
+     * ¿Hay sesión para mandar? Sin ella el servidor responde 401/403.
+     */
+    public boolean hasSession() {
+        String header = store.load();
+        return header != null && !header.trim().isEmpty();
+    }
+
+    @Override
+    public List<Cookie> loadForRequest(HttpUrl url) {
+        if (!host.equals(url.host())) {
+            return Collections.emptyList();
+        }
+        Map<String, String> cookies = parse(store.load());
+        if (cookies.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Cookie> result = new ArrayList<>(cookies.size());
+        for (Map.Entry<String, String> cookie : cookies.entrySet()) {
+            try {
+                result.add(new Cookie.Builder()
+                    .name(cookie.getKey())
+                    .value(cookie.getValue())
+                    .hostOnlyDomain(host)
+                    .build());
+            } catch (IllegalArgumentException e) {
+                // Nombre o valor que OkHttp no acepta: mejor sin esa cookie que sin petición
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void saveFromResponse(HttpUrl url, List<Cookie> cookies) {
+        if (!host.equals(url.host()) || cookies.isEmpty()) {
+            return;
+        }
+        synchronized (this) {
+            String before = store.load();
+            Map<String, String> current = parse(before);
+            long now = System.currentTimeMillis();
+            for (Cookie cookie : cookies) {
+                if (cookie.expiresAt() <= now) {
+                    current.remove(cookie.name()); // el servidor la borró (logout)
+                } else {
+                    current.put(cookie.name(), cookie.value());
+                }
+            }
+            String after = format(current);
+            if (!after.equals(before == null ? "" : before)) {
+                store.save(after);
+            }
+        }
+    }
+
+    /**
+     * "a=b; c=d" → {a=b, c=d} en orden
+     */
+    static Map<String, String> parse(String header) {
+        Map<String, String> cookies = new LinkedHashMap<>();
+        if (header == null) {
+            return cookies;
+        }
+        for (String part : header.split(";")) {
+            String pair = part.trim();
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                cookies.put(pair.substring(0, eq).trim(), pair.substring(eq + 1).trim());
+            }
+        }
+        return cookies;
+    }
+
+    static String format(Map<String, String> cookies) {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, String> cookie : cookies.entrySet()) {
+            if (sb.length() > 0) {
+                sb.append("; ");
+            }
+            sb.append(cookie.getKey()).append('=').append(cookie.getValue());
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,149 @@
+package com.domipancho.domiciliarios;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Un solo tick para todas las tareas periódicas del servicio.
+ *
+ * Cada tarea tiene un intervalo y una ventana flexible: vence en
+ * {@code último + intervalo}, pero puede adelantarse hasta {@code flex} ms
+ * si otra tarea ya despertó al radio. Así ubicación, heartbeat y pedidos
+ * salen juntos en una sola despertada en vez de en tres timers desfasados.
+ *
+ * {@link #markRun(String, long)} también sirve para dar por hecha una tarea
+ * que se resolvió "a cuestas" de otra (el heartbeat va con la ubicación).
+ *
+ * No es thread-safe; el servicio lo usa solo desde su Handler.
+ */
+public class TickScheduler {
+    static final long DUE_SLACK_MS = 500; // un postDelayed puede llegar un poco antes
+
+    private static final class Task {
+        final String name;
+        long intervalMs;
+        long flexMs;
+        long lastRun;
+
+        Task(String name, long intervalMs, long flexMs, long lastRun) {
+            this.name = name;
+            this.intervalMs = intervalMs;
+            this.flexMs = flexMs;
+            this.lastRun = lastRun;
+        }
+
+        long dueAt() {
+            return lastRun + intervalMs;
+        }
+    }
+
+    private final List<Task> tasks = new ArrayList<>();
+
+    private long wakeups;
+    private long runs;
+    private long alignedRuns;
+
+    /**
+     * Registra una tarea (o cambia su intervalo). Una tarea nueva vence de inmediato.
+     */
+    public void schedule(String name, long intervalMs, long flexMs, long now) {
+        if (intervalMs <= 0 || flexMs < 0 || flexMs > intervalMs) {
+            throw new IllegalArgumentException("Intervalo/flex inválidos para " + name);
+        }
+        Task task = find(name);
+        if (task == null) {
+            tasks.add(new Task(name, intervalMs, flexMs, now - intervalMs));
+        } else {
+            task.intervalMs = intervalMs;
+            task.flexMs = flexMs;
+        }
+    }
+
+    /**
+     * ¿Alguna tarea está vencida? Si no, el tick no debe hacer nada (ni red ni radio).
+     */
+    public boolean isWakeup(long now) {
+        for (Task task : tasks) {
+            if (now >= task.dueAt() - DUE_SLACK_MS) {
+                wakeups++;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * ¿La tarea está vencida o dentro de su ventana flexible? Solo tiene sentido
+     * en una despertada (ver {@link #isWakeup(long)}).
+     */
+    public boolean isEligible(String name, long now) {
+        Task task = require(name);
+        return now >= task.dueAt() - Math.max(task.flexMs, DUE_SLACK_MS);
+    }
+
+    public void markRun(String name, long now) {
+        Task task = require(name);
+        if (now < task.dueAt() - DUE_SLACK_MS) {
+            alignedRuns++;
+        }
+        runs++;
+        task.lastRun = now;
+    }
+
+    /**
+     * Momento de la próxima despertada (la tarea que vence primero)
+     */
+    public long nextWakeup() {
+        long next = Long.MAX_VALUE;
+        for (Task task : tasks) {
+            next = Math.min(next, task.dueAt());
+        }
+        return next;
+    }
+
+    /**
+     * Espera hasta la próxima despertada, para Handler.postDelayed
+     */
+    public long delayUntilNext(long now) {
+        return Math.max(0, nextWakeup() - now);
+    }
+
+    private Task find(String name) {
+        for (Task task : tasks) {
+            if (task.name.equals(name)) {
+                return task;
+            }
+        }
+        return null;
+    }
+
+    private Task require(String name) {
+        Task task = find(name);
+        if (task == null) {
+            throw new IllegalArgumentException("Tarea no registrada: " + name);
+        }
+        return task;
+    }
+
+    // ==================== Métricas ====================
+
+    public long getWakeupCount() {
+        return wakeups;
+    }
+
+    public long getRunCount() {
+        return runs;
+    }
+
+    /**
+     * Ejecuciones adelantadas para compartir despertada, o resueltas a cuestas de otra tarea
+     */
+    public long getAlignedRunCount() {
+        return alignedRuns;
+    }
+
+    @Override
+    public String toString() {
+        return "Despertadas: " + wakeups + " - Tareas: " + runs + " (alineadas " + alignedRuns + ")";
+    }
+}
@@ -0,0 +1,354 @@
+package com.domipancho.domiciliarios;
+
+import java.util.List;
+
+/**
+ * Las decisiones del servicio de ubicación, sin Android: qué hacer con cada fix
+ * y qué tareas corren en cada tick.
+ *
+ * Junta filtro, simplificador, muestreo, scheduler y notificación; lo que toca
+ * el sistema (registrar listeners, red, alarmas) lo hace el {@link Actions}.
+ * LocationForegroundService es la capa Android encima de esto, y los arneses de
+ * prueba (reproducción de trazas, simulador de flota) corren exactamente este
+ * mismo código con un reloj virtual.
+ *
+ * No es thread-safe; el servicio lo usa solo desde el hilo del handler.
+ */
+public class TrackingEngine {
+
+    /**
+     * Lo que el motor le pide al servicio
+     */
+    public interface Actions {
+        /** Registrar los listeners con los intervalos del perfil (si cambió) */
+        void registerProfile(SamplingPolicy.Profile profile);
+
+        /** Próximo tick dentro de {@code delayMs} (reemplaza al programado) */
+        void scheduleTick(long delayMs);
+
+        /** Subir estos puntos, que salieron por el carril {@code lane} */
+        void sendPoints(List<LocationFix> points, UploadLanes.Lane lane);
+
+        void checkOrders();
+
+        void sendHeartbeat();
+
+        void refreshStats(long now);
+
+        /** Guardar el último fix aceptado para un re-arranque tibio (en diferido, sin bloquear) */
+        void persistFix(LocationFix fix);
+    }
+
+    public static final long HEARTBEAT_INTERVAL_MS = 30000;
+    public static final long PEDIDOS_INTERVAL_MS = 120000; // respaldo: los cambios llegan por push
+    public static final long ESTADISTICAS_INTERVAL_MS = 60000;
+
+    // Re-arranque tibio: el fix guardado sirve si no tiene más de esto; se guarda a lo sumo así de seguido
+    public static final long WARM_FIX_MAX_AGE_MS = 120000;
+    public static final long WARM_FIX_SAVE_INTERVAL_MS = 15000;
+
+    public static final String TASK_UBICACION = "ubicacion";
+    public static final String TASK_HEARTBEAT = "heartbeat";
+    public static final String TASK_PEDIDOS = "pedidos";
+    public static final String TASK_ESTADISTICAS = "estadisticas";
+
+    private final Actions actions;
+    private final TickScheduler scheduler = new TickScheduler();
+    private final SamplingPolicy samplingPolicy = new SamplingPolicy();
+    private final FixFilter fixFilter = new FixFilter();
+    private final TrajectorySimplifier simplifier = new TrajectorySimplifier();
+    private final NotificationRenderer notificationRenderer;
+    private final UploadLanes lanes = new UploadLanes();
+
+    private LocationFix lastLocation; // último fix que pasó el filtro (ya suavizado)
+    private boolean tienePedidosActivos;
+    private int pedidoActivo;
+    private boolean primerFixVivo; // desde start(): el primer fix aceptado sale sin esperar
+    private long fixGuardadoEn = Long.MIN_VALUE; // hora del último fix guardado (persistFix)
+
+    public TrackingEngine(Actions actions, NotificationRenderer.Sink notificationSink, long now) {
+        this.actions = actions;
+        this.notificationRenderer = new NotificationRenderer(notificationSink);
+
+        long uploadInterval = samplingPolicy.getProfile().getUploadIntervalMs();
+        scheduler.schedule(TASK_UBICACION, uploadInterval, uploadInterval / 2, now);
+        // Pedidos y heartbeat nunca se adelantan (acortarían su periodo); la ubicación sí
+        // se adelanta hasta medio intervalo para salir en la misma despertada que ellos.
+        // El heartbeat suelto sale lo más tarde posible: cualquier ubicación lo reinicia.
+        scheduler.schedule(TASK_PEDIDOS, PEDIDOS_INTERVAL_MS, 0, now);
+        scheduler.schedule(TASK_HEARTBEAT, HEARTBEAT_INTERVAL_MS, 0, now);
+        // Sin red: se adelanta hasta medio intervalo para no despertar la CPU solo por esto
+        scheduler.schedule(TASK_ESTADISTICAS, ESTADISTICAS_INTERVAL_MS, ESTADISTICAS_INTERVAL_MS / 2, now);
+    }
+
+    /**
+     * Arranque (o re-arranque) del tracking: publica la notificación ya, registra
+     * listeners y corre el primer tick de inmediato (todas las tareas arrancan vencidas)
+     */
+    public void start(long now) {
+        primerFixVivo = true;
+        notificationRenderer.renderNow(tienePedidosActivos, lastLocation, now);
+        actions.registerProfile(samplingPolicy.getProfile());
+        actions.scheduleTick(0);
+    }
+
+    /**
+     * Re-arranque (el sistema mató el proceso, redelivery, alarma de onTaskRemoved),
+     * antes de {@link #start}: pedidos y carril quedan como estaban guardados, así que
+     * la notificación sale bien de entrada. Si el último fix aceptado no tiene más de
+     * {@link #WARM_FIX_MAX_AGE_MS} el arranque es tibio: el fix se sube en el primer
+     * tick (después lo reemplaza el primer fix vivo) y la verificación de pedidos por
+     * red espera su intervalo, porque el estado guardado está al día.
+     * Devuelve true si fue tibio.
+     */
+    public boolean restore(TrackingState saved, long now) {
+        setPedidoActivo(saved.getPedidoActivo(), now);
+        setActiveOrders(saved.hasPedidosActivos() || saved.getPedidoActivo() > 0, now);
+
+        LocationFix fix = saved.getLastFix();
+        long edad = fix != null ? now - fix.getTimestamp() : -1;
+        if (edad < 0 || edad > WARM_FIX_MAX_AGE_MS) {
+            return false;
+        }
+        lastLocation = fix;
+        fixGuardadoEn = fix.getTimestamp();
+        lanes.add(fix);
+        scheduler.markRun(TASK_PEDIDOS, now);
+        return true;
+    }
+
+    /**
+     * Pasa el fix por el filtro de calidad y el simplificador. Devuelve el fix suavizado
+     * (y lo deja como última ubicación) o null si se descartó. Los puntos que cambian
+     * la forma del recorrido quedan pendientes para el próximo envío.
+     */
+    public LocationFix process(LocationFix raw) {
+        LocationFix filtrado = fixFilter.process(raw);
+        if (filtrado == null) {
+            return null;
+        }
+        lastLocation = filtrado;
+
+        LocationFix punto = simplifier.process(filtrado);
+        if (punto != null) {
+            lanes.add(punto);
+        }
+        return filtrado;
+    }
+
+    /**
+     * Un fix de la fuente: filtro, muestreo y notificación.
+     * Devuelve el fix suavizado o null si se descartó.
+     */
+    public LocationFix onFix(LocationFix raw, long now) {
+        LocationFix fix = process(raw);
+        if (fix == null) {
+            return null;
+        }
+
+        if (samplingPolicy.onFix(fix, now)) {
+            aplicarPerfil(now);
+        }
+        if (primerFixVivo) {
+            // Recién arrancado: el servidor tiene una posición vieja (o la guardada), sale ya
+            primerFixVivo = false;
+            lanes.add(fix);
+            enviarPuntos(now);
+            reprogramar(now);
+        } else {
+            // Entrega en curso: el punto nuevo no espera al intervalo de subida
+            lanes.offerFresh(fix);
+            if (lanes.arm(now)) {
+                reprogramar(now);
+            }
+        }
+        if (fixGuardadoEn == Long.MIN_VALUE || fix.getTimestamp() - fixGuardadoEn >= WARM_FIX_SAVE_INTERVAL_MS) {
+            fixGuardadoEn = fix.getTimestamp();
+            actions.persistFix(fix);
+        }
+
+        // Actualizar notificación (solo si cambió lo que se ve)
+        notificationRenderer.render(tienePedidosActivos, fix, now);
+        return fix;
+    }
+
+    /**
+     * Lo que entregó la {@link LocationSource} en una despertada: uno o varios fixes
+     * en orden. Un lote no adelanta la subida (correrla acá desfasa el tick y los
+     * pedidos de respaldo pasan a despertar solos): sus puntos esperan al tick de
+     * ubicación, que ya llega cada un retraso máximo del lote. Devuelve el último fix
+     * aceptado (suavizado) o null si se descartaron todos.
+     */
+    public LocationFix onFixes(List<LocationFix> raw, long now) {
+        LocationFix ultimo = null;
+        for (LocationFix fix : raw) {
+            LocationFix aceptado = onFix(fix, now);
+            if (aceptado != null) {
+                ultimo = aceptado;
+            }
+        }
+        return ultimo;
+    }
+
+    /**
+     * Corre lo vencido (y lo que está por vencer) en la misma despertada y programa el siguiente
+     */
+    public void tick(long now) {
+        if (lanes.isDue(now)) {
+            enviarPuntos(now);
+        }
+        if (samplingPolicy.refresh(now)) {
+            aplicarPerfil(now);
+            return; // aplicarPerfil reprograma el tick
+        }
+
+        if (scheduler.isWakeup(now)) {
+            if (scheduler.isEligible(TASK_UBICACION, now)) {
+                enviarUbicacionSiHay(now);
+                scheduler.markRun(TASK_UBICACION, now);
+            }
+            if (scheduler.isEligible(TASK_PEDIDOS, now)) {
+                actions.checkOrders();
+                scheduler.markRun(TASK_PEDIDOS, now);
+            }
+            // Heartbeat suelto solo si ninguna ubicación salió en la ventana
+            if (scheduler.isEligible(TASK_HEARTBEAT, now)) {
+                actions.sendHeartbeat();
+                scheduler.markRun(TASK_HEARTBEAT, now);
+            }
+            if (scheduler.isEligible(TASK_ESTADISTICAS, now)) {
+                actions.refreshStats(now);
+                scheduler.markRun(TASK_ESTADISTICAS, now);
+            }
+        }
+        notificationRenderer.flush(now);
+        reprogramar(now);
+    }
+
+    /**
+     * Cambio de pedidos activos (polling o push). Devuelve true si cambió algo.
+     */
+    public boolean setActiveOrders(boolean activos, long now) {
+        if (tienePedidosActivos == activos) {
+            return false;
+        }
+        tienePedidosActivos = activos;
+        actualizarCarril(now);
+
+        if (samplingPolicy.setActiveOrders(activos, now)) {
+            aplicarPerfil(now);
+        }
+
+        // Actualizar notificación: el cambio de título sale de inmediato
+        notificationRenderer.render(activos, lastLocation, now);
+        return true;
+    }
+
+    /**
+     * El pedido activo guardado (0 si ninguno). Con pedido activo los puntos van
+     * por el carril expreso aunque el polling todavía no lo haya confirmado.
+     */
+    public void setPedidoActivo(int pedidoId, long now) {
+        pedidoActivo = pedidoId;
+        actualizarCarril(now);
+    }
+
+    private void actualizarCarril(long now) {
+        UploadLanes.Lane lane = tienePedidosActivos || pedidoActivo > 0
+            ? UploadLanes.Lane.EXPRESS : UploadLanes.Lane.IDLE;
+        if (lanes.setLane(lane) && lanes.arm(now)) {
+            reprogramar(now);
+        }
+    }
+
+    /**
+     * El próximo tick: lo que venza primero entre las tareas y el plazo del carril expreso
+     */
+    private void reprogramar(long now) {
+        actions.scheduleTick(Math.min(scheduler.delayUntilNext(now), lanes.delayUntilDue(now)));
+    }
+
+    /**
+     * Los pedidos se verificaron por fuera del tick (push): el polling de respaldo vuelve a esperar completo
+     */
+    public void markOrdersChecked(long now) {
+        scheduler.markRun(TASK_PEDIDOS, now);
+    }
+
+    /**
+     * Cada cuánto se verifican los pedidos: seguido mientras la WebView los muestra,
+     * {@link #PEDIDOS_INTERVAL_MS} de respaldo el resto del tiempo
+     */
+    public void setOrdersPollInterval(long intervalMs, long now) {
+        scheduler.schedule(TASK_PEDIDOS, intervalMs, 0, now);
+        reprogramar(now);
+    }
+
+    /**
+     * Aplica un cambio de perfil: re-registra listeners y adelanta/atrasa el próximo envío
+     */
+    private void aplicarPerfil(long now) {
+        actions.registerProfile(samplingPolicy.getProfile());
+
+        long interval = samplingPolicy.getProfile().getUploadIntervalMs();
+        scheduler.schedule(TASK_UBICACION, interval, interval / 2, now);
+        reprogramar(now);
+    }
+
+    /**
+     * Sin puntos nuevos (recta o quieto) solo se envía al cumplir el silencio máximo.
+     */
+    private void enviarUbicacionSiHay(long now) {
+        LocationFix vivo = simplifier.poll(now);
+        if (vivo != null) {
+            lanes.add(vivo);
+        }
+        if (!lanes.isEmpty()) {
+            enviarPuntos(now);
+        }
+    }
+
+    /**
+     * Todo envío de ubicación lleva el heartbeat a cuestas y reinicia el intervalo de subida
+     */
+    private void enviarPuntos(long now) {
+        UploadLanes.Lane lane = lanes.getLane();
+        actions.sendPoints(lanes.take(), lane);
+        scheduler.markRun(TASK_UBICACION, now);
+        scheduler.markRun(TASK_HEARTBEAT, now);
+    }
+
+    // ==================== Estado ====================
+
+    public SamplingPolicy.Profile getProfile() {
+        return samplingPolicy.getProfile();
+    }
+
+    public boolean hasActiveOrders() {
+        return tienePedidosActivos;
+    }
+
+    public UploadLanes getUploadLanes() {
+        return lanes;
+    }
+
+    public LocationFix getLastLocation() {
+        return lastLocation;
+    }
+
+    public TickScheduler getScheduler() {
+        return scheduler;
+    }
+
+    public FixFilter getFixFilter() {
+        return fixFilter;
+    }
+
+    public TrajectorySimplifier getSimplifier() {
+        return simplifier;
+    }
+
+    public NotificationRenderer getNotificationRenderer() {
+        return notificationRenderer;
+    }
+}
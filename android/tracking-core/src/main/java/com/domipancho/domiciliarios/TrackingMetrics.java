@@ -0,0 +1,364 @@
+package com.domipancho.domiciliarios;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Métricas del pipeline de tracking, compartidas por el servicio y el plugin.
+ *
+ * Todo es sin locks (AtomicLong / AtomicLongArray): se puede contar desde el hilo
+ * de tracking y desde el pool de red sin frenar a nadie. Los contadores los suben
+ * los puntos del pipeline; los valores de estado (bandeja, wake lock, bytes) los
+ * refresca el servicio en cada tick de estadísticas, así que pueden tener hasta
+ * un minuto de atraso.
+ *
+ * {@link #toJson} arma la foto que devuelve getStats y que se vuelca a archivo.
+ */
+public final class TrackingMetrics {
+
+    public static final String DUMP_FILE_NAME = "tracking_stats.jsonl";
+    static final long MAX_DUMP_BYTES = 256 * 1024;
+
+    private static final TrackingMetrics INSTANCE = new TrackingMetrics(System.currentTimeMillis());
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Instancia del proceso
+     */
+    public static TrackingMetrics get() {
+        return INSTANCE;
+    }
+
+    private final long startTime;
+
+    // Fixes
+    private final AtomicLong fixesGps = new AtomicLong();
+    private final AtomicLong fixesNetwork = new AtomicLong();
+    private final AtomicLong fixesOtros = new AtomicLong();
+    private final AtomicLong fixesDescartados = new AtomicLong();
+
+    // Subidas de ubicación (cada petición HTTP cuenta una)
+    private final AtomicLong subidasIntentadas = new AtomicLong();
+    private final AtomicLong subidasOk = new AtomicLong();
+    private final AtomicLong subidasFallidas = new AtomicLong();
+    private final AtomicLong puntosSubidos = new AtomicLong();
+    private final LatencyHistogram latenciaSubida = new LatencyHistogram();
+
+    // Edad del punto más nuevo de cada subida al confirmarla el servidor, por carril:
+    // lo que el cliente ve de atraso en el mapa (incluye la espera en la bandeja sin red)
+    private final LatencyHistogram edadExpreso = new LatencyHistogram();
+    private final LatencyHistogram edadEnEspera = new LatencyHistogram();
+
+    private final AtomicLong notificaciones = new AtomicLong();
+
+    // Del arranque del servicio a la primera ubicación confirmada por el servidor
+    private final LatencyHistogram primeraSubidaTibio = new LatencyHistogram();
+    private final LatencyHistogram primeraSubidaFrio = new LatencyHistogram();
+    private final AtomicLong arranqueEn = new AtomicLong(-1); // -1: nada que medir
+    private volatile boolean arranqueTibio;
+
+    // Valores de estado, refrescados por el servicio
+    private final AtomicLong bandejaPendientes = new AtomicLong();
+    private final AtomicLong wakeLockHoraMs = new AtomicLong();
+    private final AtomicLong wakeLockTotalMs = new AtomicLong();
+    private final AtomicLong bytesEnviados = new AtomicLong();
+    private final AtomicLong bytesRecibidos = new AtomicLong();
+    private final AtomicLong memoriaPssKb = new AtomicLong(); // del proceso del servicio
+
+    private volatile boolean dumpEnabled;
+
+    TrackingMetrics(long startTime) {
+        this.startTime = startTime;
+    }
+
+    // ==================== Contadores ====================
+
+    public void onFixReceived(String provider) {
+        if ("gps".equals(provider)) {
+            fixesGps.incrementAndGet();
+        } else if ("network".equals(provider)) {
+            fixesNetwork.incrementAndGet();
+        } else {
+            fixesOtros.incrementAndGet();
+        }
+    }
+
+    public void onFixFiltered() {
+        fixesDescartados.incrementAndGet();
+    }
+
+    /**
+     * Marca el inicio de una subida; devuelve el instante para {@link #onUploadFinished}
+     */
+    public long onUploadStarted() {
+        subidasIntentadas.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    /**
+     * @param points puntos que quedaron en el servidor (0 si falló)
+     */
+    public void onUploadFinished(long startNanos, boolean ok, int points) {
+        latenciaSubida.record((System.nanoTime() - startNanos) / 1000000);
+        if (ok) {
+            subidasOk.incrementAndGet();
+            puntosSubidos.addAndGet(points);
+        } else {
+            subidasFallidas.incrementAndGet();
+        }
+    }
+
+    /**
+     * El servidor confirmó una subida cuyo punto más nuevo tenía {@code ageMs}
+     */
+    public void onPointDelivered(UploadLanes.Lane lane, long ageMs) {
+        (lane == UploadLanes.Lane.EXPRESS ? edadExpreso : edadEnEspera).record(Math.max(0, ageMs));
+    }
+
+    /**
+     * Arrancó (o re-arrancó) el servicio; {@code warm} si se restauró un fix guardado.
+     * {@code nowMs} con el mismo reloj que {@link #onLocationUploaded}.
+     */
+    public void onServiceStarted(boolean warm, long nowMs) {
+        arranqueTibio = warm;
+        arranqueEn.set(nowMs);
+    }
+
+    /**
+     * El servidor confirmó una ubicación: la primera después de un arranque cierra su medición
+     */
+    public void onLocationUploaded(long nowMs) {
+        long inicio = arranqueEn.getAndSet(-1);
+        if (inicio >= 0) {
+            (arranqueTibio ? primeraSubidaTibio : primeraSubidaFrio).record(Math.max(0, nowMs - inicio));
+        }
+    }
+
+    public void onNotificationPosted() {
+        notificaciones.incrementAndGet();
+    }
+
+    // ==================== Valores de estado ====================
+
+    public void setBacklog(int pending) {
+        bandejaPendientes.set(pending);
+    }
+
+    public void setWakeLock(long heldThisHourMs, long heldTotalMs) {
+        wakeLockHoraMs.set(heldThisHourMs);
+        wakeLockTotalMs.set(heldTotalMs);
+    }
+
+    public void setBytes(long sent, long received) {
+        bytesEnviados.set(sent);
+        bytesRecibidos.set(received);
+    }
+
+    /**
+     * PSS del proceso que corre el tracking, en KB
+     */
+    public void setMemory(long pssKb) {
+        memoriaPssKb.set(pssKb);
+    }
+
+    // ==================== Lectura ====================
+
+    public long getFixesReceived() {
+        return fixesGps.get() + fixesNetwork.get() + fixesOtros.get();
+    }
+
+    public long getFixesFiltered() {
+        return fixesDescartados.get();
+    }
+
+    public long getUploadsAttempted() {
+        return subidasIntentadas.get();
+    }
+
+    public long getUploadsSucceeded() {
+        return subidasOk.get();
+    }
+
+    public long getUploadsFailed() {
+        return subidasFallidas.get();
+    }
+
+    public long getNotificationPosts() {
+        return notificaciones.get();
+    }
+
+    public LatencyHistogram getUploadLatency() {
+        return latenciaSubida;
+    }
+
+    public LatencyHistogram getPointAge(UploadLanes.Lane lane) {
+        return lane == UploadLanes.Lane.EXPRESS ? edadExpreso : edadEnEspera;
+    }
+
+    public LatencyHistogram getFirstUpload(boolean warm) {
+        return warm ? primeraSubidaTibio : primeraSubidaFrio;
+    }
+
+    public boolean isDumpEnabled() {
+        return dumpEnabled;
+    }
+
+    public void setDumpEnabled(boolean enabled) {
+        dumpEnabled = enabled;
+    }
+
+    /**
+     * Foto de todas las métricas como un objeto JSON de una línea
+     */
+    public String toJson(long now) {
+        StringBuilder sb = new StringBuilder(800);
+        sb.append('{');
+        field(sb, "timestamp", now).append(',');
+        field(sb, "uptimeMs", now - startTime).append(',');
+
+        sb.append("\"fixes\":{");
+        field(sb, "gps", fixesGps.get()).append(',');
+        field(sb, "network", fixesNetwork.get()).append(',');
+        field(sb, "otros", fixesOtros.get()).append(',');
+        field(sb, "descartados", fixesDescartados.get());
+        sb.append("},");
+
+        sb.append("\"subidas\":{");
+        field(sb, "intentadas", subidasIntentadas.get()).append(',');
+        field(sb, "ok", subidasOk.get()).append(',');
+        field(sb, "fallidas", subidasFallidas.get()).append(',');
+        field(sb, "puntos", puntosSubidos.get()).append(',');
+        sb.append("\"latenciaMs\":{");
+        field(sb, "p50", latenciaSubida.percentile(0.50)).append(',');
+        field(sb, "p90", latenciaSubida.percentile(0.90)).append(',');
+        field(sb, "p99", latenciaSubida.percentile(0.99)).append(',');
+        field(sb, "max", latenciaSubida.getMax());
+        sb.append("}},");
+
+        sb.append("\"carriles\":{");
+        histograma(sb, "expreso", "subidas", edadExpreso).append(',');
+        histograma(sb, "enEspera", "subidas", edadEnEspera);
+        sb.append("},");
+
+        sb.append("\"primeraSubidaMs\":{");
+        histograma(sb, "tibio", "arranques", primeraSubidaTibio).append(',');
+        histograma(sb, "frio", "arranques", primeraSubidaFrio);
+        sb.append("},");
+
+        sb.append("\"bytes\":{");
+        field(sb, "enviados", bytesEnviados.get()).append(',');
+        field(sb, "recibidos", bytesRecibidos.get());
+        sb.append("},");
+
+        field(sb, "bandejaPendientes", bandejaPendientes.get()).append(',');
+        sb.append("\"wakeLock\":{");
+        field(sb, "estaHoraMs", wakeLockHoraMs.get()).append(',');
+        field(sb, "totalMs", wakeLockTotalMs.get());
+        sb.append("},");
+        sb.append("\"memoria\":{");
+        field(sb, "pssKb", memoriaPssKb.get());
+        sb.append("},");
+        field(sb, "notificaciones", notificaciones.get());
+        sb.append('}');
+        return sb.toString();
+    }
+
+    private static StringBuilder histograma(StringBuilder sb, String name, String count, LatencyHistogram h) {
+        sb.append('"').append(name).append("\":{");
+        field(sb, count, h.getCount()).append(',');
+        field(sb, "p50", h.percentile(0.50)).append(',');
+        field(sb, "p90", h.percentile(0.90)).append(',');
+        field(sb, "p99", h.percentile(0.99)).append(',');
+        field(sb, "max", h.getMax());
+        return sb.append('}');
+    }
+
+    private static StringBuilder field(StringBuilder sb, String name, long value) {
+        return sb.append('"').append(name).append("\":").append(value);
+    }
+
+    /**
+     * Agrega la foto actual como una línea al archivo. Al pasar {@link #MAX_DUMP_BYTES}
+     * el archivo se rota a ".1" (queda a lo sumo el doble en disco).
+     */
+    public void dump(File file, long now) throws IOException {
+        if (file.length() > MAX_DUMP_BYTES) {
+            File rotated = new File(file.getPath() + ".1");
+            if (rotated.exists() && !rotated.delete()) {
+                throw new IOException("No se pudo borrar " + rotated);
+            }
+            if (!file.renameTo(rotated)) {
+                throw new IOException("No se pudo rotar " + file);
+            }
+        }
+        OutputStream out = new FileOutputStream(file, true);
+        try {
+            out.write((toJson(now) + "\n").getBytes(UTF_8));
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Histograma de latencias por cubetas fijas, sin locks.
+     * Los percentiles devuelven el límite superior de la cubeta (error acotado por su ancho).
+     */
+    public static final class LatencyHistogram {
+        static final long[] BOUNDS_MS = {
+            25, 50, 75, 100, 150, 200, 300, 400, 500, 750,
+            1000, 1500, 2000, 3000, 5000, 7500, 10000, 15000, 30000, Long.MAX_VALUE
+        };
+
+        private final AtomicLongArray counts = new AtomicLongArray(BOUNDS_MS.length);
+        private final AtomicLong max = new AtomicLong();
+
+        public void record(long ms) {
+            int i = 0;
+            while (ms > BOUNDS_MS[i]) {
+                i++;
+            }
+            counts.incrementAndGet(i);
+
+            long current = max.get();
+            while (ms > current && !max.compareAndSet(current, ms)) {
+                current = max.get();
+            }
+        }
+
+        public long getCount() {
+            long total = 0;
+            for (int i = 0; i < counts.length(); i++) {
+                total += counts.get(i);
+            }
+            return total;
+        }
+
+        public long getMax() {
+            return max.get();
+        }
+
+        /**
+         * Percentil {@code p} (0..1) en ms, o 0 sin datos. La última cubeta devuelve el máximo visto.
+         */
+        public long percentile(double p) {
+            long total = getCount();
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(p * total);
+            long cumulative = 0;
+            for (int i = 0; i < counts.length(); i++) {
+                cumulative += counts.get(i);
+                if (cumulative >= rank) {
+                    return Math.min(BOUNDS_MS[i], max.get());
+                }
+            }
+            return max.get();
+        }
+    }
+}
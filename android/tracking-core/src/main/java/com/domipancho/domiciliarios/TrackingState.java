@@ -0,0 +1,95 @@
+package com.domipancho.domiciliarios;
+
+/**
+ * Foto inmutable del estado persistente del tracking.
+ *
+ * El plugin y el servicio leen esta foto en vez de claves sueltas de
+ * SharedPreferences; los cambios se hacen con los with* (devuelven una copia).
+ */
+public final class TrackingState {
+    public static final TrackingState EMPTY = new TrackingState(false, 0, false, 0, null);
+
+    private final boolean trackingActive;
+    private final int pedidoActivo;
+    private final boolean pedidosActivos;
+    private final long lastUpdate;
+    private final LocationFix lastFix;
+
+    public TrackingState(boolean trackingActive, int pedidoActivo, boolean pedidosActivos, long lastUpdate,
+                         LocationFix lastFix) {
+        this.trackingActive = trackingActive;
+        this.pedidoActivo = pedidoActivo;
+        this.pedidosActivos = pedidosActivos;
+        this.lastUpdate = lastUpdate;
+        this.lastFix = lastFix;
+    }
+
+    /**
+     * El domiciliario está disponible y el servicio debe estar rastreando
+     */
+    public boolean isTrackingActive() {
+        return trackingActive;
+    }
+
+    /**
+     * ID del pedido en camino (0 si no hay)
+     */
+    public int getPedidoActivo() {
+        return pedidoActivo;
+    }
+
+    /**
+     * El último polling encontró pedidos en camino (título de la notificación y muestreo)
+     */
+    public boolean hasPedidosActivos() {
+        return pedidosActivos;
+    }
+
+    /**
+     * Momento (epoch ms) del último cambio de tracking activo
+     */
+    public long getLastUpdate() {
+        return lastUpdate;
+    }
+
+    /**
+     * Último fix aceptado por el filtro (guardado a lo sumo cada {@link TrackingEngine#WARM_FIX_SAVE_INTERVAL_MS}),
+     * o null si no hay. Su edad decide si el re-arranque es tibio.
+     */
+    public LocationFix getLastFix() {
+        return lastFix;
+    }
+
+    public TrackingState withTrackingActive(boolean active, long now) {
+        return new TrackingState(active, pedidoActivo, pedidosActivos, now, lastFix);
+    }
+
+    public TrackingState withPedidoActivo(int pedidoId) {
+        if (pedidoId == pedidoActivo) {
+            return this;
+        }
+        return new TrackingState(trackingActive, pedidoId, pedidosActivos, lastUpdate, lastFix);
+    }
+
+    public TrackingState withPedidosActivos(boolean activos) {
+        if (activos == pedidosActivos) {
+            return this;
+        }
+        return new TrackingState(trackingActive, pedidoActivo, activos, lastUpdate, lastFix);
+    }
+
+    public TrackingState withLastFix(LocationFix fix) {
+        if (fix == lastFix) {
+            return this;
+        }
+        return new TrackingState(trackingActive, pedidoActivo, pedidosActivos, lastUpdate, fix);
+    }
+
+    @Override
+    public String toString() {
+        return "Tracking: " + trackingActive
+            + " - Pedido activo: " + pedidoActivo
+            + " - Pedidos en camino: " + pedidosActivos
+            + " - Último fix: " + (lastFix != null ? lastFix.getTimestamp() : "ninguno");
+    }
+}
@@ -0,0 +1,112 @@
+package com.domipancho.domiciliarios;
+
+/**
+ * Estado del tracking en memoria con escritura diferida.
+ *
+ * Se carga una sola vez; las lecturas salen de memoria sin tocar disco.
+ * Cada cambio deja el estado sucio y pide un flush solo en la transición
+ * limpio → sucio, así una ráfaga de cambios termina en una sola escritura.
+ * En los puntos de cierre (detener servicio, onDestroy) se llama
+ * {@link #flush()} explícitamente.
+ *
+ * Independiente de Android: dónde se guarda y cuándo corre el flush se inyectan.
+ */
+public final class TrackingStateStore {
+
+    public interface Persistence {
+        TrackingState load();
+
+        void save(TrackingState state);
+    }
+
+    /**
+     * Programa un {@link #flush()} diferido (p. ej. en un hilo de fondo)
+     */
+    public interface FlushScheduler {
+        void requestFlush();
+    }
+
+    public interface Update {
+        TrackingState apply(TrackingState current);
+    }
+
+    private final Persistence persistence;
+    private final FlushScheduler scheduler;
+
+    private final Object saveLock = new Object(); // dos flush seguidos no se adelantan entre sí
+    private volatile TrackingState state;
+    private boolean dirty;
+    private long updates;
+    private long saves;
+
+    public TrackingStateStore(Persistence persistence, FlushScheduler scheduler) {
+        this.persistence = persistence;
+        this.scheduler = scheduler;
+        TrackingState loaded = persistence.load();
+        this.state = loaded != null ? loaded : TrackingState.EMPTY;
+    }
+
+    /**
+     * Foto actual, sin bloqueo
+     */
+    public TrackingState snapshot() {
+        return state;
+    }
+
+    /**
+     * Aplica un cambio de forma atómica (leer-modificar-escribir) y devuelve la foto nueva
+     */
+    public TrackingState update(Update update) {
+        boolean requestFlush;
+        TrackingState updated;
+        synchronized (this) {
+            updated = update.apply(state);
+            if (updated == null || updated == state) {
+                return state;
+            }
+            state = updated;
+            updates++;
+            requestFlush = !dirty;
+            dirty = true;
+        }
+        if (requestFlush) {
+            scheduler.requestFlush();
+        }
+        return updated;
+    }
+
+    /**
+     * Guarda el estado si hay cambios pendientes
+     */
+    public void flush() {
+        synchronized (saveLock) {
+            TrackingState pending;
+            synchronized (this) {
+                if (!dirty) {
+                    return;
+                }
+                dirty = false;
+                pending = state;
+                saves++;
+            }
+            persistence.save(pending);
+        }
+    }
+
+    public synchronized boolean isDirty() {
+        return dirty;
+    }
+
+    public synchronized long getUpdateCount() {
+        return updates;
+    }
+
+    public synchronized long getSaveCount() {
+        return saves;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return state + " - Cambios: " + updates + " - Escrituras: " + saves;
+    }
+}
@@ -0,0 +1,210 @@
+package com.domipancho.domiciliarios;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Simplificador de trayectoria en streaming (Douglas-Peucker "ventana abierta").
+ *
+ * Entre el filtro y el envío: recibe los fixes ya filtrados y solo deja pasar
+ * los puntos que cambian la forma del recorrido.
+ *
+ * - Mientras todos los fixes desde el último punto emitido queden a menos de
+ *   {@code toleranceM} de la línea ancla → fix actual, no se emite nada
+ *   (en una recta el servidor puede interpolar).
+ * - Cuando un fix se sale de la línea (curva, giro), se emite el fix anterior,
+ *   que es el vértice, y pasa a ser la nueva ancla.
+ * - Al detenerse se emite el punto de parada.
+ * - Si pasan {@code maxSilenceMs} sin emitir, {@link #poll(long)} devuelve el fix
+ *   más reciente para que el servidor siga viendo al domiciliario vivo.
+ *
+ * Determinista: el tiempo de los fixes es el de {@link LocationFix#getTimestamp()}.
+ * No es thread-safe; el servicio lo usa solo desde el hilo de ubicación.
+ */
+public class TrajectorySimplifier {
+    public static final float DEFAULT_TOLERANCE_M = 15f;
+    public static final long DEFAULT_MAX_SILENCE_MS = 30000;
+
+    static final float STOP_SPEED_MPS = 0.8f;
+    static final float MOVING_SPEED_MPS = 2f;   // histéresis: volver a "en movimiento"
+    static final int MAX_WINDOW = 300;          // cota de la ventana (costo O(n) por fix)
+
+    private final float toleranceM;
+    private final long maxSilenceMs;
+
+    private LocationFix anchor;                 // último punto emitido
+    private final List<LocationFix> window = new ArrayList<>();
+    private LocationFix latest;
+    private long lastOutputTime;                // último envío, por forma o por silencio
+    private boolean stopped;
+
+    private long received;
+    private long emittedShape;
+    private long emittedStop;
+    private long emittedSilence;
+
+    public TrajectorySimplifier() {
+        this(DEFAULT_TOLERANCE_M, DEFAULT_MAX_SILENCE_MS);
+    }
+
+    public TrajectorySimplifier(float toleranceM, long maxSilenceMs) {
+        if (toleranceM <= 0 || maxSilenceMs <= 0) {
+            throw new IllegalArgumentException("Tolerancia y silencio deben ser positivos");
+        }
+        this.toleranceM = toleranceM;
+        this.maxSilenceMs = maxSilenceMs;
+    }
+
+    /**
+     * Procesa un fix filtrado. Devuelve el punto a enviar, o null si el fix no cambia la forma.
+     * El punto devuelto puede ser un fix anterior (el vértice de una curva).
+     */
+    public LocationFix process(LocationFix fix) {
+        received++;
+        LocationFix previous = latest;
+        latest = fix;
+
+        if (anchor == null) {
+            emittedShape++;
+            return emit(fix);
+        }
+        if (previous != null && fix.getTimestamp() <= previous.getTimestamp()) {
+            latest = previous;
+            return null;
+        }
+
+        // Parada: se emite en cuanto la velocidad cae, una sola vez por parada
+        float speed = speedOf(fix, previous);
+        if (!stopped && speed >= 0 && speed < STOP_SPEED_MPS) {
+            stopped = true;
+            emittedStop++;
+            return emit(fix);
+        }
+        if (stopped && speed > MOVING_SPEED_MPS) {
+            stopped = false;
+        }
+
+        if (!window.isEmpty() && deviates(fix)) {
+            // El fix anterior fue el último que mantenía la línea: es el vértice
+            LocationFix vertex = window.get(window.size() - 1);
+            emittedShape++;
+            emit(vertex);
+            window.add(fix);
+            return vertex;
+        }
+
+        if (fix.getTimestamp() - lastOutputTime >= maxSilenceMs || window.size() >= MAX_WINDOW) {
+            emittedSilence++;
+            return emit(fix);
+        }
+
+        window.add(fix);
+        return null;
+    }
+
+    /**
+     * Revisión por tiempo (sin fix nuevo: el GPS no entrega nada si no se supera la
+     * distancia mínima). Devuelve el fix más reciente si se superó el silencio máximo.
+     * Si ese fix ya se emitió, se devuelve igual: el envío sirve de señal de vida.
+     */
+    public LocationFix poll(long now) {
+        if (latest == null || now - lastOutputTime < maxSilenceMs) {
+            return null;
+        }
+        emittedSilence++;
+        if (latest != anchor) {
+            emit(latest);
+        }
+        lastOutputTime = now;
+        return latest;
+    }
+
+    public void reset() {
+        anchor = null;
+        latest = null;
+        lastOutputTime = 0;
+        stopped = false;
+        window.clear();
+    }
+
+    private LocationFix emit(LocationFix fix) {
+        anchor = fix;
+        lastOutputTime = Math.max(lastOutputTime, fix.getTimestamp());
+        // Los fixes posteriores al nuevo ancla siguen en la ventana
+        int keep = window.indexOf(fix);
+        if (keep >= 0) {
+            window.subList(0, keep + 1).clear();
+        } else {
+            window.clear();
+        }
+        return fix;
+    }
+
+    /**
+     * ¿Algún fix de la ventana queda a más de la tolerancia de la línea ancla → fix?
+     */
+    private boolean deviates(LocationFix end) {
+        double cosLat = Math.cos(Math.toRadians(anchor.getLatitude()));
+        double ex = x(end, cosLat);
+        double ey = y(end);
+        double lengthSq = ex * ex + ey * ey;
+
+        for (int i = 0; i < window.size(); i++) {
+            LocationFix point = window.get(i);
+            double px = x(point, cosLat);
+            double py = y(point);
+            double t = lengthSq > 0 ? (px * ex + py * ey) / lengthSq : 0;
+            t = Math.max(0, Math.min(1, t));
+            double dx = px - t * ex;
+            double dy = py - t * ey;
+            if (dx * dx + dy * dy > (double) toleranceM * toleranceM) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Proyección equirectangular local alrededor del ancla, en metros
+    private double x(LocationFix fix, double cosLat) {
+        return Math.toRadians(fix.getLongitude() - anchor.getLongitude()) * cosLat * LocationFix.EARTH_RADIUS_M;
+    }
+
+    private double y(LocationFix fix) {
+        return Math.toRadians(fix.getLatitude() - anchor.getLatitude()) * LocationFix.EARTH_RADIUS_M;
+    }
+
+    private static float speedOf(LocationFix fix, LocationFix previous) {
+        if (fix.hasSpeed()) {
+            return fix.getSpeed();
+        }
+        if (previous == null) {
+            return -1f;
+        }
+        return (float) (fix.distanceTo(previous) * 1000.0 / (fix.getTimestamp() - previous.getTimestamp()));
+    }
+
+    // ==================== Métricas ====================
+
+    public float getToleranceM() {
+        return toleranceM;
+    }
+
+    public long getMaxSilenceMs() {
+        return maxSilenceMs;
+    }
+
+    public long getReceivedCount() {
+        return received;
+    }
+
+    public long getEmittedCount() {
+        return emittedShape + emittedStop + emittedSilence;
+    }
+
+    @Override
+    public String toString() {
+        return "Recibidos: " + received
+            + " - Emitidos: " + getEmittedCount()
+            + " (forma " + emittedShape + ", paradas " + emittedStop + ", silencio " + emittedSilence + ")";
+    }
+}
@@ -0,0 +1,162 @@
+package com.domipancho.domiciliarios;
+
+import java.util.Random;
+
+/**
+ * Decide si ahora se puede subir algo al servidor.
+ *
+ * - Sin red no se intenta nada: el fix queda en la bandeja (antes cada intento
+ *   gastaba el timeout de conexión y un hilo del pool para nada).
+ * - Con errores del servidor (5xx, 429 o la conexión cortada) espera con backoff
+ *   exponencial y jitter: {@link #BACKOFF_BASE_MS}, el doble, ... hasta
+ *   {@link #BACKOFF_MAX_MS}, y de cada espera un valor al azar entre la mitad y el total.
+ * - Al volver la red, el primer intento sale tras una espera al azar de hasta
+ *   {@link #RECONNECT_SPREAD_MS}: después de una caída del operador toda la flota
+ *   recupera la señal a la vez y no debe caerle junta al servidor.
+ * - La bandeja atrasada se drena en ráfagas de como mucho {@link #BURST_MAX_BATCHES}
+ *   lotes con una pausa (también con jitter) entre ráfagas.
+ *
+ * Independiente de Android: el estado de red lo pasa el servicio (callbacks de
+ * ConnectivityManager) y el azar se inyecta. Thread-safe.
+ */
+public final class UploadGate {
+
+    public static final long BACKOFF_BASE_MS = 2000;
+    public static final long BACKOFF_MAX_MS = 5 * 60000;
+    public static final long RECONNECT_SPREAD_MS = 30000;
+    public static final int BURST_MAX_BATCHES = 4;
+    public static final long BURST_PAUSE_MS = 5000;
+
+    private final Random random;
+
+    private boolean online = true;
+    private int failures;
+    private long nextAttemptAt;
+
+    private long offlineSkips;
+    private long backoffSkips;
+    private long backoffs;
+    private long reconnects;
+
+    public UploadGate() {
+        this(new Random());
+    }
+
+    public UploadGate(Random random) {
+        this.random = random;
+    }
+
+    /**
+     * Cambió la red. Devuelve cuánto esperar para el primer intento si recién volvió, -1 si no.
+     */
+    public synchronized long setOnline(boolean conectado, long now) {
+        if (online == conectado) {
+            return -1;
+        }
+        online = conectado;
+        if (!conectado) {
+            return -1;
+        }
+        reconnects++;
+        failures = 0; // los errores de antes eran de la falta de red
+        long spread = (long) (random.nextDouble() * RECONNECT_SPREAD_MS);
+        nextAttemptAt = now + spread;
+        return spread;
+    }
+
+    /**
+     * ¿Se puede subir ahora? Cuenta el salto si no.
+     */
+    public synchronized boolean tryAcquire(long now) {
+        if (!online) {
+            offlineSkips++;
+            return false;
+        }
+        if (now < nextAttemptAt) {
+            backoffSkips++;
+            return false;
+        }
+        return true;
+    }
+
+    public synchronized boolean isOnline() {
+        return online;
+    }
+
+    /**
+     * Milisegundos hasta que se pueda intentar (0 si ya, {@link Long#MAX_VALUE} sin red)
+     */
+    public synchronized long delayUntilAllowed(long now) {
+        if (!online) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, nextAttemptAt - now);
+    }
+
+    /**
+     * Resultado de un intento: código HTTP, o 0 si la conexión falló.
+     * Devuelve la espera impuesta (0 si ninguna).
+     */
+    public synchronized long onResult(int code, long now) {
+        if (code >= 200 && code < 300) {
+            failures = 0;
+            nextAttemptAt = 0;
+            return 0;
+        }
+        if (!isRetryable(code)) {
+            return 0; // un 4xx no mejora esperando
+        }
+        failures++;
+        backoffs++;
+        long delay = jitter(backoffMs(failures));
+        nextAttemptAt = now + delay;
+        return delay;
+    }
+
+    /**
+     * Terminó una ráfaga de drenado con más por enviar: pausa antes de la siguiente
+     */
+    public synchronized long onBurstDone(long now) {
+        long delay = jitter(BURST_PAUSE_MS);
+        nextAttemptAt = Math.max(nextAttemptAt, now + delay);
+        return nextAttemptAt - now;
+    }
+
+    static boolean isRetryable(int code) {
+        return code == 0 || code == 429 || code >= 500;
+    }
+
+    /**
+     * Espera sin jitter tras {@code failures} fallos seguidos
+     */
+    static long backoffMs(int failures) {
+        int exp = Math.min(failures - 1, 20);
+        return Math.min(BACKOFF_MAX_MS, BACKOFF_BASE_MS << exp);
+    }
+
+    private long jitter(long ms) {
+        return ms / 2 + (long) (random.nextDouble() * (ms / 2));
+    }
+
+    public synchronized int getConsecutiveFailures() {
+        return failures;
+    }
+
+    public synchronized long getOfflineSkips() {
+        return offlineSkips;
+    }
+
+    public synchronized long getBackoffSkips() {
+        return backoffSkips;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "Red: " + (online ? "sí" : "no")
+            + " - Fallos seguidos: " + failures
+            + " - Saltos sin red: " + offlineSkips
+            + " - Saltos por backoff: " + backoffSkips
+            + " - Backoffs: " + backoffs
+            + " - Reconexiones: " + reconnects;
+    }
+}
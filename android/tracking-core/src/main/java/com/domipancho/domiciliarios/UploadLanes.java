@@ -0,0 +1,137 @@
+package com.domipancho.domiciliarios;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Los puntos que esperan subida, en uno de dos carriles según haya una entrega en curso.
+ *
+ * - {@link Lane#EXPRESS} (pedido en camino: el cliente mira el mapa): cada punto
+ *   sale como mucho {@link #EXPRESS_MAX_WAIT_MS} después de llegar, sin esperar
+ *   al intervalo de subida; los que llegan dentro de esa ventana salen juntos.
+ *   En una recta el simplificador no emite nada, así que además se sube el fix
+ *   nuevo si el servidor quedaría con una posición de más de {@link #EXPRESS_MAX_STALE_MS}.
+ * - {@link Lane#IDLE} (buscando pedidos): nadie mira en vivo, así que solo
+ *   importa la última posición. Por ventana de subida se guarda un único punto,
+ *   el más nuevo; los anteriores se descartan.
+ *
+ * No lleva reloj propio: el plazo del carril expreso lo arma {@link #arm(long)}
+ * con el reloj del motor. No es thread-safe; lo usa {@link TrackingEngine}.
+ */
+public final class UploadLanes {
+
+    public enum Lane {
+        EXPRESS,
+        IDLE
+    }
+
+    public static final long EXPRESS_MAX_WAIT_MS = 2000;
+    public static final long EXPRESS_MAX_STALE_MS = 10000;
+
+    private final List<LocationFix> pending = new ArrayList<>();
+    private Lane lane = Lane.IDLE;
+    private long dueAt = Long.MAX_VALUE;
+    private long lastQueued = Long.MIN_VALUE; // hora del fix del último punto encolado
+
+    private long expressUploads;
+    private long idleUploads;
+    private long coalesced;
+
+    /**
+     * Un punto nuevo para subir
+     */
+    public void add(LocationFix punto) {
+        if (pending.contains(punto)) {
+            return;
+        }
+        if (lane == Lane.IDLE && !pending.isEmpty()) {
+            coalesced += pending.size();
+            pending.clear();
+        }
+        pending.add(punto);
+        lastQueued = Math.max(lastQueued, punto.getTimestamp());
+    }
+
+    /**
+     * Carril expreso: si el servidor quedaría con una posición más vieja que
+     * {@link #EXPRESS_MAX_STALE_MS}, el fix nuevo se sube aunque no cambie la forma
+     */
+    public void offerFresh(LocationFix fix) {
+        if (lane == Lane.EXPRESS && fix.getTimestamp() - lastQueued >= EXPRESS_MAX_STALE_MS) {
+            add(fix);
+        }
+    }
+
+    /**
+     * Carril expreso con puntos y sin plazo: el plazo corre desde {@code now}.
+     * Devuelve true si se armó (hay que reprogramar el tick).
+     */
+    public boolean arm(long now) {
+        if (lane != Lane.EXPRESS || pending.isEmpty() || dueAt != Long.MAX_VALUE) {
+            return false;
+        }
+        dueAt = now + EXPRESS_MAX_WAIT_MS;
+        return true;
+    }
+
+    /**
+     * Cambia de carril. Devuelve true si cambió.
+     */
+    public boolean setLane(Lane nuevo) {
+        if (lane == nuevo) {
+            return false;
+        }
+        lane = nuevo;
+        if (nuevo == Lane.IDLE) {
+            dueAt = Long.MAX_VALUE; // lo pendiente sale con el intervalo de subida
+        }
+        return true;
+    }
+
+    public boolean isDue(long now) {
+        return now >= dueAt;
+    }
+
+    /**
+     * Milisegundos hasta el plazo del carril expreso ({@link Long#MAX_VALUE} si no hay)
+     */
+    public long delayUntilDue(long now) {
+        return dueAt == Long.MAX_VALUE ? Long.MAX_VALUE : Math.max(0, dueAt - now);
+    }
+
+    /**
+     * Saca todo lo pendiente para subirlo
+     */
+    public List<LocationFix> take() {
+        List<LocationFix> puntos = new ArrayList<>(pending);
+        pending.clear();
+        dueAt = Long.MAX_VALUE;
+        if (lane == Lane.EXPRESS) {
+            expressUploads++;
+        } else {
+            idleUploads++;
+        }
+        return puntos;
+    }
+
+    public boolean isEmpty() {
+        return pending.isEmpty();
+    }
+
+    public Lane getLane() {
+        return lane;
+    }
+
+    public long getCoalescedCount() {
+        return coalesced;
+    }
+
+    @Override
+    public String toString() {
+        return "Carril: " + lane
+            + " - Subidas expreso: " + expressUploads
+            + " - Subidas en espera: " + idleUploads
+            + " - Puntos juntados: " + coalesced
+            + " - Pendientes: " + pending.size();
+    }
+}
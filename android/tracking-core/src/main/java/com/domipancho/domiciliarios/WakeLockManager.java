@@ -0,0 +1,202 @@
+package com.domipancho.domiciliarios;
+
+/**
+ * Wake lock por ciclos: retiene la CPU solo mientras hay trabajo real
+ * (procesar un fix, una ráfaga de envío, drenar la bandeja) y la deja dormir el resto.
+ *
+ * Las retenciones se cuentan por referencia sobre un único lock del sistema
+ * no contado: el primero que entra lo adquiere, el último que sale lo libera.
+ * Cada adquisición lleva un timeout de seguridad ({@link #HOLD_TIMEOUT_MS}):
+ * una retención olvidada nunca deja la CPU despierta más de eso.
+ *
+ * Lleva la cuenta del tiempo retenido por hora de reloj (últimas {@link #HOURS_KEPT} horas).
+ * Independiente de Android: el lock y el reloj se inyectan.
+ */
+public class WakeLockManager {
+
+    /**
+     * El lock del sistema (PowerManager.WakeLock no contado por referencia)
+     */
+    public interface Lock {
+        void acquire(long timeoutMs);
+
+        void release();
+    }
+
+    public interface Clock {
+        long now();
+    }
+
+    static final long HOLD_TIMEOUT_MS = 60000;
+    static final long HOUR_MS = 3600000;
+    static final int HOURS_KEPT = 24;
+
+    private final Lock lock;
+    private final Clock clock;
+
+    private int holders;
+    private long heldSince;
+    private long lastAcquire;
+    private long acquisitions;
+    private long totalHeldMs;
+
+    // Anillo de horas: bucketHour[i] dice a qué hora (now / HOUR_MS) corresponde bucketMs[i]
+    private final long[] bucketHour = new long[HOURS_KEPT];
+    private final long[] bucketMs = new long[HOURS_KEPT];
+
+    public WakeLockManager(Lock lock, Clock clock) {
+        this.lock = lock;
+        this.clock = clock;
+        for (int i = 0; i < HOURS_KEPT; i++) {
+            bucketHour[i] = -1;
+        }
+    }
+
+    /**
+     * Entra una retención. Si el lock ya estaba tomado solo se renueva el timeout
+     * (a lo sumo una vez por medio timeout, para no llamar al sistema en cada fix).
+     */
+    public synchronized void acquire() {
+        long now = clock.now();
+        if (holders++ == 0) {
+            heldSince = now;
+            acquisitions++;
+            renew(now);
+        } else if (now - lastAcquire >= HOLD_TIMEOUT_MS / 2) {
+            renew(now);
+        }
+    }
+
+    /**
+     * Sale una retención; con la última se libera el lock y se contabiliza el tiempo
+     */
+    public synchronized void release() {
+        if (holders == 0) {
+            return;
+        }
+        if (--holders == 0) {
+            account(clock.now());
+            lock.release();
+        }
+    }
+
+    /**
+     * Renueva el timeout de una retención larga (p. ej. un drenado de muchos lotes)
+     */
+    public synchronized void keepAlive() {
+        if (holders > 0) {
+            renew(clock.now());
+        }
+    }
+
+    /**
+     * Corre la tarea con la CPU retenida
+     */
+    public void run(Runnable task) {
+        acquire();
+        try {
+            task.run();
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Suelta todo (al destruir el servicio): las tareas que quedaron en vuelo ya no importan
+     */
+    public synchronized void releaseAll() {
+        if (holders > 0) {
+            holders = 0;
+            account(clock.now());
+            lock.release();
+        }
+    }
+
+    private void renew(long now) {
+        lastAcquire = now;
+        lock.acquire(HOLD_TIMEOUT_MS);
+    }
+
+    /**
+     * Suma la retención que termina ahora, partida por horas. Si el sistema ya soltó
+     * el lock por timeout, solo cuenta hasta ahí.
+     */
+    private void account(long now) {
+        long end = Math.min(now, lastAcquire + HOLD_TIMEOUT_MS);
+        long start = heldSince;
+        if (end <= start) {
+            return;
+        }
+        totalHeldMs += end - start;
+        while (start < end) {
+            long hour = start / HOUR_MS;
+            long hourEnd = Math.min(end, (hour + 1) * HOUR_MS);
+            addToHour(hour, hourEnd - start);
+            start = hourEnd;
+        }
+    }
+
+    private void addToHour(long hour, long ms) {
+        int i = (int) (hour % HOURS_KEPT);
+        if (bucketHour[i] != hour) {
+            bucketHour[i] = hour;
+            bucketMs[i] = 0;
+        }
+        bucketMs[i] += ms;
+    }
+
+    // ==================== Métricas ====================
+
+    public synchronized boolean isHeld() {
+        return holders > 0;
+    }
+
+    public synchronized int getHolders() {
+        return holders;
+    }
+
+    public synchronized long getAcquisitionCount() {
+        return acquisitions;
+    }
+
+    /**
+     * Tiempo retenido en total, incluida la retención en curso
+     */
+    public synchronized long getTotalHeldMs() {
+        return totalHeldMs + currentHoldMs(clock.now(), Long.MIN_VALUE);
+    }
+
+    /**
+     * Tiempo retenido en la hora de reloj que contiene a {@code time} (0 si ya salió del anillo)
+     */
+    public synchronized long getHeldMsInHour(long time) {
+        long hour = time / HOUR_MS;
+        int i = (int) (hour % HOURS_KEPT);
+        long closed = bucketHour[i] == hour ? bucketMs[i] : 0;
+        return closed + currentHoldMs(clock.now(), hour * HOUR_MS);
+    }
+
+    /**
+     * Parte de la retención en curso desde {@code from}, o 0 si no hay retención
+     */
+    private long currentHoldMs(long now, long from) {
+        if (holders == 0) {
+            return 0;
+        }
+        long end = Math.min(now, lastAcquire + HOLD_TIMEOUT_MS);
+        long start = Math.max(heldSince, from);
+        if (from != Long.MIN_VALUE) {
+            end = Math.min(end, from + HOUR_MS);
+        }
+        return Math.max(0, end - start);
+    }
+
+    @Override
+    public synchronized String toString() {
+        long now = clock.now();
+        return "Retenido esta hora: " + getHeldMsInHour(now) / 1000 + "s"
+            + " - Hora anterior: " + getHeldMsInHour(now - HOUR_MS) / 1000 + "s"
+            + " - Total: " + getTotalHeldMs() / 1000 + "s"
+            + " - Adquisiciones: " + acquisitions;
+    }
+}
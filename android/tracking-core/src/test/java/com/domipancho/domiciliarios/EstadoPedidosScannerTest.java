@@ -0,0 +1,124 @@
+package com.domipancho.domiciliarios;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.List;
+import org.junit.Test;
+
+public class EstadoPedidosScannerTest {
+
+    private static final String EN_CAMINO = "camino a tu casa";
+
+    @Test
+    public void countsOnlyMatchingEstado() throws Exception {
+        String json = "[{\"id\":1,\"estado\":\"camino a tu casa\"},"
+            + "{\"id\":2,\"estado\":\"pendiente\"},"
+            + "{\"estado\":\"camino a tu casa\",\"id\":3}]";
+
+        assertEquals(2, count(json));
+    }
+
+    @Test
+    public void emptyArray() throws Exception {
+        assertEquals(0, count("[]"));
+        assertEquals(0, count("  [ ]\n"));
+    }
+
+    @Test
+    public void ignoresEstadoInsideNestedObjects() throws Exception {
+        String json = "[{\"id\":1,\"estado\":\"entregado\","
+            + "\"restaurante\":{\"estado\":\"camino a tu casa\"},"
+            + "\"historial\":[{\"estado\":\"camino a tu casa\"}]}]";
+
+        assertEquals(0, count(json));
+    }
+
+    @Test
+    public void handlesEscapesNumbersAndLiterals() throws Exception {
+        String json = "[{\"nota\":\"dice \\\"estado\\\": \\\"camino a tu casa\\\" \\\\\","
+            + "\"total\":-12.5e3,\"pagado\":true,\"cupon\":null,"
+            + "\"estado\":\"camino a tu \\u0063asa\"},"
+            + "{\"estado\":\"camino a tu casa!\"},"
+            + "{\"estado\":null},"
+            + "{\"estado\":\"camino\"}]";
+
+        assertEquals(1, count(json));
+    }
+
+    @Test
+    public void readsAcrossBufferBoundaries() throws Exception {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 2000; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"id\":").append(i)
+                .append(",\"direccion\":\"Calle ").append(i).append(" # 10-20, Bogotá\"")
+                .append(",\"productos\":[{\"nombre\":\"Perro caliente\",\"cantidad\":2}]")
+                .append(",\"estado\":\"").append(i % 3 == 0 ? EN_CAMINO : "preparando").append("\"}");
+        }
+        json.append(']');
+
+        // Reader que entrega de a pocos caracteres, como un stream de red
+        Reader reader = new StringReader(json.toString()) {
+            @Override
+            public int read(char[] buffer, int offset, int length) throws IOException {
+                return super.read(buffer, offset, Math.min(length, 7));
+            }
+        };
+        assertEquals(667, EstadoPedidosScanner.countByEstado(reader, EN_CAMINO));
+    }
+
+    @Test
+    public void rejectsTruncatedOrInvalidJson() {
+        assertInvalid("[{\"estado\":\"camino a tu casa\"");
+        assertInvalid("{\"estado\":\"camino a tu casa\"}");
+        assertInvalid("[{\"estado\" \"x\"}]");
+        assertInvalid("");
+    }
+
+    @Test
+    public void readsPedidosWithTheirRawJson() throws Exception {
+        String json = "[ {\"id\": 7, \"estado\":\"esperando repartidor\", \"domiciliario_id\":null,"
+            + "\"restaurante\":{\"id\":99,\"estado\":\"abierto\"},\"distancia_al_restaurante\":1.25},"
+            + "{\"domiciliario_id\":\"12\",\"estado\":\"camino a tu \\u0063asa\",\"id\":8},"
+            + "{}]";
+
+        List<OrderBook.Order> pedidos = EstadoPedidosScanner.readPedidos(new StringReader(json));
+
+        assertEquals(3, pedidos.size());
+        assertEquals(7, pedidos.get(0).getId());
+        assertEquals("esperando repartidor", pedidos.get(0).getEstado());
+        assertEquals(0, pedidos.get(0).getDomiciliarioId());
+        assertEquals("{\"id\": 7, \"estado\":\"esperando repartidor\", \"domiciliario_id\":null,"
+            + "\"restaurante\":{\"id\":99,\"estado\":\"abierto\"},\"distancia_al_restaurante\":1.25}",
+            pedidos.get(0).getJson());
+        assertEquals(8, pedidos.get(1).getId());
+        assertEquals(EN_CAMINO, pedidos.get(1).getEstado());
+        assertEquals(12, pedidos.get(1).getDomiciliarioId());
+        assertEquals("{}", pedidos.get(2).getJson());
+    }
+
+    @Test
+    public void readsUsuarioId() throws Exception {
+        assertEquals(42, EstadoPedidosScanner.readId(
+            new StringReader("{\"usuario\":\"ana\",\"roles\":[{\"id\":1}],\"id\":42}")));
+        assertEquals(0, EstadoPedidosScanner.readId(new StringReader("{\"usuario\":\"ana\"}")));
+    }
+
+    private static int count(String json) throws IOException {
+        return EstadoPedidosScanner.countByEstado(new StringReader(json), EN_CAMINO);
+    }
+
+    private static void assertInvalid(String json) {
+        try {
+            count(json);
+            fail("Debió fallar: " + json);
+        } catch (IOException expected) {
+            // ok
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.domipancho.domiciliarios;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * {@link LocationSource} de mentira para correr el motor fuera del teléfono: el
+ * arnés le ofrece cada fix de la traza en su hora y ella decide si lo entrega.
+ * - Como requestLocationUpdates(minTime, minDistance): por provider, solo si se
+ *   cumplen el intervalo y la distancia mínima del perfil registrado.
+ * - Con lotes (como el fusionado con maxUpdateDelay): si el perfil permite retener
+ *   al menos dos intervalos, junta los fixes y los entrega todos juntos cuando el
+ *   más viejo cumple el retraso máximo; el arnés consulta {@link #nextFlushAt()}.
+ *
+ * Nunca llama al oyente desde {@link #request}: un cambio de perfil con fixes
+ * retenidos solo adelanta la entrega, y el arnés la hace en la siguiente vuelta.
+ */
+final class FakeLocationSource implements LocationSource {
+
+    private final Listener listener;
+    private final boolean batching;
+    private final List<LocationFix> lote = new ArrayList<>();
+    private SamplingPolicy.Profile profile;
+    private LocationFix lastGps;
+    private LocationFix lastNetwork;
+    private long firstFixAt = Long.MIN_VALUE;
+    private long flushAt = Long.MAX_VALUE;
+
+    FakeLocationSource(Listener listener, boolean batching) {
+        this.listener = listener;
+        this.batching = batching;
+    }
+
+    /**
+     * Antes de esto no entrega nada (el receptor todavía no tiene fix)
+     */
+    void setFirstFixAt(long firstFixAt) {
+        this.firstFixAt = firstFixAt;
+    }
+
+    /**
+     * Un fix de la traza a su hora. Devuelve true si pasó el intervalo y la distancia
+     * mínima (entregado ya o retenido en el lote).
+     */
+    boolean offer(LocationFix fix, long now) {
+        if (profile == null || fix.getTimestamp() < firstFixAt) {
+            return false;
+        }
+        boolean gps = "gps".equals(fix.getProvider());
+        LocationFix last = gps ? lastGps : lastNetwork;
+        long minTime = gps ? profile.getGpsIntervalMs() : profile.getNetworkIntervalMs();
+        float minDistance = gps ? profile.getGpsMinDistanceM() : profile.getNetworkMinDistanceM();
+        if (last != null && (fix.getTimestamp() - last.getTimestamp() < minTime || fix.distanceTo(last) < minDistance)) {
+            return false;
+        }
+        if (gps) {
+            lastGps = fix;
+        } else {
+            lastNetwork = fix;
+        }
+
+        if (!isBatching()) {
+            entregar(Collections.singletonList(fix));
+            return true;
+        }
+        if (lote.isEmpty()) {
+            flushAt = now + profile.getMaxUpdateDelayMs();
+        }
+        lote.add(fix);
+        return true;
+    }
+
+    /**
+     * Cuándo sale el lote retenido (Long.MAX_VALUE si no hay; si ya pasó, sale ya)
+     */
+    long nextFlushAt() {
+        return lote.isEmpty() ? Long.MAX_VALUE : flushAt;
+    }
+
+    /**
+     * Entrega el lote si ya venció
+     */
+    void flush(long now) {
+        if (!lote.isEmpty() && now >= flushAt) {
+            List<LocationFix> fixes = new ArrayList<>(lote);
+            lote.clear();
+            flushAt = Long.MAX_VALUE;
+            entregar(fixes);
+        }
+    }
+
+    private boolean isBatching() {
+        // El fusionado solo junta si el retraso permite al menos dos fixes
+        return batching && profile.getMaxUpdateDelayMs() >= 2 * profile.getGpsIntervalMs();
+    }
+
+    private void entregar(List<LocationFix> fixes) {
+        listener.onLocations(fixes);
+    }
+
+    // ==================== LocationSource ====================
+
+    @Override
+    public boolean request(SamplingPolicy.Profile profile) {
+        this.profile = profile;
+        if (!lote.isEmpty() && !isBatching()) {
+            flushAt = Long.MIN_VALUE; // sin lotes en el perfil nuevo: lo retenido sale ya
+        }
+        return true;
+    }
+
+    @Override
+    public void requestLastKnown() {
+        // Las trazas no traen última conocida: el primer fix es el de la traza
+    }
+
+    @Override
+    public void stop() {
+        profile = null;
+        lote.clear();
+        flushAt = Long.MAX_VALUE;
+    }
+
+    @Override
+    public String getName() {
+        return "fake";
+    }
+}
@@ -0,0 +1,107 @@
+package com.domipancho.domiciliarios;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * Hacia la WebView: a lo sumo un fix por intervalo (el más nuevo) y nada en segundo plano.
+ */
+public class FixCoalescerTest {
+
+    private final List<LocationFix> delivered = new ArrayList<>();
+    private final List<Long> timers = new ArrayList<>();
+    private final FixCoalescer coalescer = new FixCoalescer(delivered::add, timers::add, 2000);
+
+    private static LocationFix fix(long ts) {
+        return new LocationFix(4.6 + ts / 1e7, -74.08, ts, 5f, "gps", 5f);
+    }
+
+    @Test
+    public void firstFixGoesThroughImmediately() {
+        coalescer.offer(fix(0), 0);
+        assertEquals(1, delivered.size());
+        assertTrue(timers.isEmpty());
+    }
+
+    @Test
+    public void burstIsCoalescedToTheNewestOnTheTimer() {
+        coalescer.offer(fix(0), 0);
+        coalescer.offer(fix(500), 500);
+        coalescer.offer(fix(1000), 1000);
+        coalescer.offer(fix(1500), 1500);
+
+        assertEquals(1, delivered.size());
+        assertEquals(1, timers.size()); // un solo temporizador para toda la ráfaga
+        assertEquals(1500L, (long) timers.get(0));
+
+        coalescer.flush(2000);
+        assertEquals(2, delivered.size());
+        assertEquals(1500, delivered.get(1).getTimestamp());
+        assertEquals(2, coalescer.getCoalescedCount());
+    }
+
+    @Test
+    public void earlyFlushReschedulesTheRest() {
+        coalescer.offer(fix(0), 0);
+        coalescer.offer(fix(100), 100);
+        coalescer.flush(1500);
+        assertEquals(1, delivered.size());
+        assertEquals(500L, (long) timers.get(1));
+        coalescer.flush(2000);
+        assertEquals(2, delivered.size());
+    }
+
+    @Test
+    public void backgroundDropsEverythingAndResumeDeliversOnlyTheLatest() {
+        coalescer.offer(fix(0), 0);
+        coalescer.offer(fix(500), 500); // pendiente
+        coalescer.setForeground(false, 600);
+        coalescer.flush(2000);
+        for (long t = 3000; t <= 60000; t += 1000) {
+            coalescer.offer(fix(t), t);
+        }
+        assertEquals(1, delivered.size());
+
+        coalescer.setForeground(true, 61000);
+        assertEquals(2, delivered.size());
+        assertEquals(60000, delivered.get(1).getTimestamp());
+        assertEquals(59, coalescer.getDroppedCount()); // el pendiente + 58 en segundo plano
+    }
+
+    @Test
+    public void cityTraceIsThinnedToTheInterval() throws Exception {
+        List<LocationFix> trace = Traces.onlyProvider(Traces.load("ciudad_moto.csv"), "gps");
+        long[] nextTimer = {Long.MAX_VALUE};
+        FixCoalescer c = new FixCoalescer(delivered::add, delay -> nextTimer[0] = delay, 2000);
+
+        long start = trace.get(0).getTimestamp();
+        long timerAt = Long.MAX_VALUE;
+        for (LocationFix f : trace) {
+            if (timerAt <= f.getTimestamp()) {
+                timerAt = Long.MAX_VALUE;
+                c.flush(f.getTimestamp());
+            }
+            nextTimer[0] = Long.MAX_VALUE;
+            c.offer(f, f.getTimestamp());
+            if (nextTimer[0] != Long.MAX_VALUE) {
+                timerAt = f.getTimestamp() + nextTimer[0];
+            }
+        }
+
+        if (timerAt != Long.MAX_VALUE) {
+            c.flush(timerAt); // el temporizador pendiente después del último fix
+        }
+
+        long seconds = (trace.get(trace.size() - 1).getTimestamp() - start) / 1000;
+        assertTrue(seconds + " s: " + c, delivered.size() <= seconds / 2 + 1);
+        assertTrue(seconds + " s: " + c, delivered.size() >= seconds / 3);
+        assertEquals(trace.size(), c.getOfferedCount());
+        assertEquals(delivered.size(), c.getDeliveredCount());
+        // Lo último que ve la WebView está al día (a lo sumo un intervalo de atraso)
+        long end = trace.get(trace.size() - 1).getTimestamp();
+        assertTrue(end - delivered.get(delivered.size() - 1).getTimestamp() <= 2000);
+    }
+}
@@ -0,0 +1,187 @@
+package com.domipancho.domiciliarios;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+public class FixFilterTest {
+
+    @Test
+    public void impreciseNetworkFixNeverReplacesFreshGps() {
+        FixFilter filter = new FixFilter();
+
+        assertNotNull(filter.process(new LocationFix(4.6483, -74.0625, 1000, 5f, "gps")));
+        assertNull(filter.process(new LocationFix(4.6600, -74.0500, 2000, 1500f, "network")));
+        assertEquals(1, filter.getDroppedAccuracyCount());
+    }
+
+    @Test
+    public void networkFixIsAcceptedWhenGpsGoesQuiet() {
+        FixFilter filter = new FixFilter();
+        filter.process(new LocationFix(4.6483, -74.0625, 0, 5f, "gps"));
+
+        // 40s sin GPS: la incertidumbre del último fix (5 + 4*40 = 165m) ya es peor que la red
+        assertNotNull(filter.process(new LocationFix(4.6490, -74.0620, 40000, 150f, "network")));
+    }
+
+    @Test
+    public void rejectsImpossibleJump() {
+        FixFilter filter = new FixFilter();
+        filter.process(new LocationFix(4.6483, -74.0625, 0, 5f, "gps"));
+
+        // 2 km en 1 segundo con precisión de 5m
+        assertNull(filter.process(new LocationFix(4.6663, -74.0625, 1000, 5f, "gps")));
+        assertEquals(1, filter.getDroppedSpeedCount());
+    }
+
+    @Test
+    public void rejectsStaleAndDuplicateFixes() {
+        FixFilter filter = new FixFilter();
+        filter.process(new LocationFix(4.6483, -74.0625, 5000, 5f, "gps"));
+
+        assertNull(filter.process(new LocationFix(4.6483, -74.0625, 5000, 5f, "gps")));
+        assertNull(filter.process(new LocationFix(4.6483, -74.0625, 4000, 3f, "network")));
+        assertEquals(2, filter.getDroppedStaleCount());
+    }
+
+    @Test
+    public void cityRideDropsBadNetworkFixesAndKeepsGps() throws Exception {
+        List<LocationFix> trace = Traces.load("ciudad_moto.csv");
+        FixFilter filter = new FixFilter();
+
+        List<LocationFix> output = run(filter, trace);
+
+        assertEquals(trace.size(), filter.getAcceptedCount() + filter.getDroppedCount());
+        int gps = Traces.onlyProvider(trace, "gps").size();
+        assertTrue("Deben pasar casi todos los GPS", filter.getAcceptedCount() >= gps * 0.95);
+        for (LocationFix fix : output) {
+            assertTrue("Precisión filtrada " + fix.getAccuracy(), fix.getAccuracy() <= 30f);
+        }
+        assertMaxImpliedSpeed(output, FixFilter.MAX_SPEED_MPS);
+        assertTrue("Sin fixes de red descartados - " + filter, filter.getDroppedAccuracyCount() > 0);
+    }
+
+    @Test
+    public void driftTraceDropsMultipathJumps() throws Exception {
+        List<LocationFix> trace = Traces.load("deriva_gps.csv");
+        FixFilter filter = new FixFilter();
+
+        List<LocationFix> output = run(filter, trace);
+
+        assertTrue(filter.getDroppedSpeedCount() >= 1);
+        for (LocationFix fix : output) {
+            assertTrue("Salto no filtrado: " + fix, fix.distanceTo(output.get(0)) < 300);
+        }
+    }
+
+    @Test
+    public void tunnelTraceRecoversAfterGpsOutage() throws Exception {
+        List<LocationFix> trace = Traces.load("tunel.csv");
+        FixFilter filter = new FixFilter();
+
+        List<LocationFix> output = run(filter, trace);
+
+        List<LocationFix> gps = Traces.onlyProvider(trace, "gps");
+        LocationFix lastRaw = gps.get(gps.size() - 1);
+        LocationFix lastFiltered = output.get(output.size() - 1);
+        assertTrue(lastFiltered.distanceTo(lastRaw) < 50);
+        // Durante el túnel la red mantiene viva la posición
+        assertFalse(Traces.onlyProvider(output, "network").isEmpty());
+    }
+
+    @Test
+    public void kalmanReducesNoiseWhileParked() throws Exception {
+        List<LocationFix> gps = Traces.onlyProvider(Traces.load("parado_esperando.csv"), "gps");
+        FixFilter filter = new FixFilter();
+
+        List<LocationFix> output = run(filter, gps);
+
+        double rawSpread = rmsSpread(gps);
+        double filteredSpread = rmsSpread(output);
+        assertTrue("Dispersión cruda " + rawSpread + " m, filtrada " + filteredSpread + " m",
+            filteredSpread < rawSpread / 2);
+    }
+
+    @Test
+    public void networkOnlyRideDoesNotLagBehind() {
+        // Moto a 10 m/s hacia el norte solo con fixes de red (sin velocidad), uno cada 10 s
+        Random random = new Random(42);
+        FixFilter filter = new FixFilter();
+        float accuracy = 40f;
+        double maxLag = 0;
+        double sumLag = 0;
+        int n = 0;
+        for (int i = 0; i < 60; i++) {
+            double norte = i * 100.0;
+            double ruidoN = random.nextGaussian() * 20;
+            double ruidoE = random.nextGaussian() * 20;
+            LocationFix fix = new LocationFix(4.6483 + (norte + ruidoN) / 111320.0,
+                -74.0625 + ruidoE / 111000.0, i * 10000L, accuracy, "network");
+            LocationFix filtered = filter.process(fix);
+            assertNotNull("Fix descartado: " + fix, filtered);
+            if (i >= 10) {
+                LocationFix real = new LocationFix(4.6483 + norte / 111320.0, -74.0625, 0, 0f, "");
+                double lag = filtered.distanceTo(real);
+                maxLag = Math.max(maxLag, lag);
+                sumLag += lag;
+                n++;
+            }
+        }
+        // Con q fijo de 3 m/s el punto quedaba ~370 m atrás; ahora el error es del orden del ruido
+        assertTrue("Atraso medio " + sumLag / n + " m", sumLag / n < accuracy);
+        assertTrue("Atraso máximo " + maxLag + " m", maxLag < 2.5 * accuracy);
+    }
+
+    @Test
+    public void isDeterministic() throws Exception {
+        List<LocationFix> trace = Traces.load("ciudad_moto.csv");
+
+        List<LocationFix> first = run(new FixFilter(), trace);
+        List<LocationFix> second = run(new FixFilter(), trace);
+
+        assertEquals(first.size(), second.size());
+        for (int i = 0; i < first.size(); i++) {
+            assertEquals(first.get(i).getLatitude(), second.get(i).getLatitude(), 0);
+            assertEquals(first.get(i).getLongitude(), second.get(i).getLongitude(), 0);
+        }
+    }
+
+    private static List<LocationFix> run(FixFilter filter, List<LocationFix> trace) {
+        List<LocationFix> output = new ArrayList<>();
+        for (LocationFix fix : trace) {
+            LocationFix filtered = filter.process(fix);
+            if (filtered != null) {
+                output.add(filtered);
+            }
+        }
+        return output;
+    }
+
+    private static void assertMaxImpliedSpeed(List<LocationFix> fixes, double maxMps) {
+        for (int i = 1; i < fixes.size(); i++) {
+            LocationFix a = fixes.get(i - 1);
+            LocationFix b = fixes.get(i);
+            double speed = b.distanceTo(a) * 1000.0 / (b.getTimestamp() - a.getTimestamp());
+            assertTrue("Velocidad implícita " + speed + " m/s en " + b, speed <= maxMps);
+        }
+    }
+
+    private static double rmsSpread(List<LocationFix> fixes) {
+        double lat = 0;
+        double lon = 0;
+        for (LocationFix fix : fixes) {
+            lat += fix.getLatitude();
+            lon += fix.getLongitude();
+        }
+        LocationFix center = new LocationFix(lat / fixes.size(), lon / fixes.size(), 0, 0f, "");
+        double sum = 0;
+        for (LocationFix fix : fixes) {
+            double d = fix.distanceTo(center);
+            sum += d * d;
+        }
+        return Math.sqrt(sum / fixes.size());
+    }
+}
@@ -0,0 +1,140 @@
+package com.domipancho.domiciliarios;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import org.junit.Test;
+
+public class LocationBatchCodecTest {
+
+    @Test
+    public void roundTripKeepsFixedPointPrecision() throws IOException {
+        List<LocationFix> route = route(200);
+
+        List<LocationFix> decoded = LocationBatchCodec.decode(LocationBatchCodec.encode(route, false));
+
+        assertRouteEquals(route, decoded);
+    }
+
+    @Test
+    public void roundTripWithGzip() throws IOException {
+        List<LocationFix> route = route(200);
+
+        byte[] data = LocationBatchCodec.encode(route, true);
+
+        assertEquals(LocationBatchCodec.FLAG_GZIP, data[3]);
+        assertRouteEquals(route, LocationBatchCodec.decode(data));
+    }
+
+    @Test
+    public void providersAreDictionaryCoded() throws IOException {
+        List<LocationFix> fixes = new ArrayList<>();
+        fixes.add(new LocationFix(4.65, -74.05, 1000, 5f, "gps"));
+        fixes.add(new LocationFix(4.65, -74.05, 2000, 900f, "network"));
+        fixes.add(new LocationFix(4.65, -74.05, 3000, 5f, "gps"));
+        fixes.add(new LocationFix(4.65, -74.05, 4000, 5f, ""));
+
+        List<LocationFix> decoded = LocationBatchCodec.decode(LocationBatchCodec.encode(fixes, false));
+
+        assertEquals("gps", decoded.get(0).getProvider());
+        assertEquals("network", decoded.get(1).getProvider());
+        assertEquals("gps", decoded.get(2).getProvider());
+        assertEquals("", decoded.get(3).getProvider());
+    }
+
+    @Test
+    public void handlesNegativeDeltasAndOutOfOrderTimes() throws IOException {
+        List<LocationFix> fixes = new ArrayList<>();
+        fixes.add(new LocationFix(-33.45, -70.66, 1700000010000L, 12.5f, "gps"));
+        fixes.add(new LocationFix(-33.46, -70.67, 1700000000000L, 3.1f, "gps"));
+        fixes.add(new LocationFix(10.39, 179.999999, 1700000020000L, 0f, "gps"));
+
+        assertRouteEquals(fixes, LocationBatchCodec.decode(LocationBatchCodec.encode(fixes, false)));
+    }
+
+    @Test
+    public void emptyBatch() throws IOException {
+        assertTrue(LocationBatchCodec.decode(
+            LocationBatchCodec.encode(Collections.<LocationFix>emptyList(), false)).isEmpty());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsTruncatedData() throws IOException {
+        byte[] data = LocationBatchCodec.encode(route(10), false);
+        byte[] truncated = new byte[data.length - 3];
+        System.arraycopy(data, 0, truncated, 0, truncated.length);
+        LocationBatchCodec.decode(truncated);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsUnknownHeader() throws IOException {
+        LocationBatchCodec.decode(new byte[] {'{', '"', 'a', '"'});
+    }
+
+    @Test
+    public void jsonFallbackKeepsCurrentKeys() {
+        String json = LocationBatchCodec.toJson(new LocationFix(4.6097, -74.0817, 1, 5.5f, "gp\"s"), 1700000000000L);
+
+        assertEquals("{\"latitud\":4.6097,\"longitud\":-74.0817,\"timestamp\":1700000000000,"
+            + "\"accuracy\":5.5,\"provider\":\"gp\\\"s\"}", json);
+    }
+
+    @Test
+    public void bytesPerPointReport() {
+        List<LocationFix> route = route(500);
+
+        int json = 0;
+        for (LocationFix fix : route) {
+            json += LocationBatchCodec.toJson(fix, fix.getTimestamp()).getBytes(StandardCharsets.UTF_8).length;
+        }
+        int plain = LocationBatchCodec.encode(route, false).length;
+        int gzip = LocationBatchCodec.encode(route, true).length;
+
+        System.out.println(String.format(Locale.ROOT,
+            "Bytes por punto (%d puntos) - JSON: %.1f - Compacto: %.1f - Compacto+gzip: %.1f",
+            route.size(), json / (double) route.size(), plain / (double) route.size(), gzip / (double) route.size()));
+
+        assertTrue(plain / (double) route.size() < 12);
+        assertTrue(plain * 8 < json);
+        assertTrue(LocationBatchCodec.encodeSmallest(route).length <= Math.min(plain, gzip));
+    }
+
+    /**
+     * Ruta sintética en moto: un fix GPS cada ~10s con algo de ruido y uno de red de vez en cuando
+     */
+    private static List<LocationFix> route(int points) {
+        Random random = new Random(42);
+        List<LocationFix> fixes = new ArrayList<>();
+        double lat = 4.609710;
+        double lon = -74.081750;
+        long time = 1700000000000L;
+        for (int i = 0; i < points; i++) {
+            lat += 0.0004 + random.nextGaussian() * 0.00002;
+            lon += (i / 50 % 2 == 0 ? 0.0003 : -0.0001) + random.nextGaussian() * 0.00002;
+            time += 10000 + random.nextInt(300);
+            boolean network = i % 17 == 0;
+            float accuracy = network ? 30 + random.nextInt(800) : 3 + random.nextInt(15) / 2f;
+            fixes.add(new LocationFix(lat, lon, time, accuracy, network ? "network" : "gps"));
+        }
+        return fixes;
+    }
+
+    private static void assertRouteEquals(List<LocationFix> expected, List<LocationFix> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            LocationFix e = expected.get(i);
+            LocationFix a = actual.get(i);
+            assertEquals(e.getLatitude(), a.getLatitude(), 0.6e-6);
+            assertEquals(e.getLongitude(), a.getLongitude(), 0.6e-6);
+            assertEquals(e.getTimestamp(), a.getTimestamp());
+            assertEquals(e.getAccuracy(), a.getAccuracy(), 0.051);
+            assertEquals(e.getProvider(), a.getProvider());
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package com.domipancho.domiciliarios;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * La bandeja en disco: lotes, cursor, reaperturas y límite de pendientes.
+ */
+public class LocationOutboxTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static final long T0 = 1_700_000_000_000L;
+
+    private static LocationFix fix(int i) {
+        return new LocationFix(4.6 + i * 1e-5, -74.08, T0 + i * 1000L, 8f, "gps");
+    }
+
+    private File dir() {
+        return new File(tmp.getRoot(), "location_outbox");
+    }
+
+    private LocationOutbox open(int maxPending) throws IOException {
+        return new LocationOutbox(dir(), maxPending);
+    }
+
+    private static void appendAll(LocationOutbox outbox, int from, int to) throws IOException {
+        for (int i = from; i < to; i++) {
+            outbox.append(fix(i));
+        }
+    }
+
+    private static File[] segments(File dir) {
+        return dir.listFiles((d, name) -> name.startsWith("seg-"));
+    }
+
+    @Test
+    public void commitAdvancesCursorAndSurvivesReopen() throws IOException {
+        LocationOutbox outbox = open(1000);
+        appendAll(outbox, 0, 5);
+
+        LocationOutbox.Batch batch = outbox.peek(3);
+        assertEquals(3, batch.size());
+        assertEquals(5, outbox.pendingCount()); // peek no borra nada
+        outbox.commit(batch);
+        assertEquals(2, outbox.pendingCount());
+
+        // Cursor escrito con tmp + rename: el definitivo queda, el temporal no
+        assertTrue(new File(dir(), "cursor").exists());
+        assertFalse(new File(dir(), "cursor.tmp").exists());
+
+        LocationOutbox reopened = open(1000);
+        assertEquals(2, reopened.pendingCount());
+        assertEquals(T0 + 4000, reopened.getLastAppendedTimestamp());
+        List<LocationFix> rest = reopened.peek(10).getFixes();
+        assertEquals(2, rest.size());
+        assertEquals(T0 + 3000, rest.get(0).getTimestamp());
+        assertEquals(T0 + 4000, rest.get(1).getTimestamp());
+        assertEquals(fix(3).getLatitude(), rest.get(0).getLatitude(), 1e-9);
+        assertEquals("gps", rest.get(0).getProvider());
+    }
+
+    @Test
+    public void uncommittedBatchIsReadAgain() throws IOException {
+        LocationOutbox outbox = open(1000);
+        appendAll(outbox, 0, 4);
+
+        outbox.peek(2); // el envío falló: no hay commit
+        List<LocationFix> again = outbox.peek(2).getFixes();
+        assertEquals(T0, again.get(0).getTimestamp());
+        assertEquals(4, open(1000).pendingCount());
+    }
+
+    @Test
+    public void repeatedCommitIsIgnored() throws IOException {
+        LocationOutbox outbox = open(1000);
+        appendAll(outbox, 0, 4);
+
+        LocationOutbox.Batch batch = outbox.peek(2);
+        outbox.commit(batch);
+        outbox.commit(batch);
+        assertEquals(2, outbox.pendingCount());
+        assertEquals(T0 + 2000, outbox.peek(1).getFixes().get(0).getTimestamp());
+    }
+
+    @Test
+    public void partialCommitKeepsTheRestPending() throws IOException {
+        LocationOutbox outbox = open(100_000);
+        appendAll(outbox, 0, 3000); // el lote cruza de segmento
+
+        LocationOutbox.Batch batch = outbox.peek(2500);
+        outbox.commit(batch, 0);
+        assertEquals(3000, outbox.pendingCount());
+
+        // Enviados de a uno: el servidor aceptó 2000 antes de fallar
+        outbox.commit(batch, 2000);
+        assertEquals(1000, outbox.pendingCount());
+        assertEquals(T0 + 2000 * 1000L, outbox.peek(1).getFixes().get(0).getTimestamp());
+        assertEquals(1000, open(100_000).pendingCount());
+
+        // El resto del mismo lote ya no puede volver a confirmar lo confirmado
+        outbox.commit(batch, 1500);
+        assertEquals(1000, outbox.pendingCount());
+
+        outbox.commit(batch, batch.size());
+        assertEquals(500, outbox.pendingCount());
+        assertEquals(T0 + 2500 * 1000L, outbox.peek(1).getFixes().get(0).getTimestamp());
+    }
+
+    @Test
+    public void tornTailIsTruncatedOnReopen() throws IOException {
+        LocationOutbox outbox = open(1000);
+        appendAll(outbox, 0, 2);
+
+        // Proceso muerto a mitad de una escritura: línea sin salto final
+        File[] files = segments(dir());
+        assertEquals(1, files.length);
+        long sano = files[0].length();
+        try (FileOutputStream out = new FileOutputStream(files[0], true)) {
+            out.write("1700000002000,4.6".getBytes(StandardCharsets.UTF_8));
+        }
+
+        LocationOutbox reopened = open(1000);
+        assertEquals(2, reopened.pendingCount());
+        assertEquals(sano, files[0].length());
+
+        // El siguiente append queda alineado y se lee entero
+        reopened.append(fix(2));
+        List<LocationFix> fixes = reopened.peek(10).getFixes();
+        assertEquals(3, fixes.size());
+        assertEquals(T0 + 2000, fixes.get(2).getTimestamp());
+        assertEquals(fix(2).getLatitude(), fixes.get(2).getLatitude(), 1e-9);
+    }
+
+    @Test
+    public void corruptCursorResendsFromTheStart() throws IOException {
+        LocationOutbox outbox = open(1000);
+        appendAll(outbox, 0, 3);
+        outbox.commit(outbox.peek(2));
+
+        try (FileOutputStream out = new FileOutputStream(new File(dir(), "cursor"), false)) {
+            out.write("basura\n".getBytes(StandardCharsets.UTF_8));
+        }
+        // Reenviar de más es preferible a perder fixes
+        assertEquals(3, open(1000).pendingCount());
+    }
+
+    @Test
+    public void batchesSpanSegmentsWithoutGapsOrRepeats() throws IOException {
+        LocationOutbox outbox = open(100_000);
+        int total = 4000; // ~36 bytes por línea: más de dos segmentos de 64 KB
+        appendAll(outbox, 0, total);
+        assertTrue(segments(dir()).length > 1);
+
+        List<LocationFix> sent = new ArrayList<>();
+        LocationOutbox.Batch batch;
+        while (!(batch = outbox.peek(500)).isEmpty()) {
+            assertTrue(batch.size() <= 500);
+            sent.addAll(batch.getFixes());
+            outbox.commit(batch);
+        }
+
+        assertEquals(total, sent.size());
+        for (int i = 0; i < total; i++) {
+            assertEquals(T0 + i * 1000L, sent.get(i).getTimestamp());
+        }
+        assertEquals(0, outbox.pendingCount());
+        assertEquals(1, segments(dir()).length); // solo queda el segmento en escritura
+        assertEquals(0, open(100_000).pendingCount());
+    }
+
+    @Test
+    public void reopenMidSegmentContinuesAtCursor() throws IOException {
+        LocationOutbox outbox = open(100_000);
+        appendAll(outbox, 0, 3000);
+        outbox.commit(outbox.peek(2500)); // el cursor queda en el segundo segmento
+
+        LocationOutbox reopened = open(100_000);
+        assertEquals(500, reopened.pendingCount());
+        assertEquals(T0 + 2500 * 1000L, reopened.peek(1).getFixes().get(0).getTimestamp());
+    }
+
+    @Test
+    public void dropsOldestSegmentAboveMax() throws IOException {
+        int max = 2000;
+        LocationOutbox outbox = open(max);
+        int total = 2500;
+        appendAll(outbox, 0, total);
+
+        int pending = outbox.pendingCount();
+        assertTrue(pending > 0);
+        assertTrue(pending <= max);
+
+        // Se perdió lo más viejo, nunca lo más nuevo ni un hueco en el medio
+        List<LocationFix> fixes = outbox.peek(max).getFixes();
+        assertEquals(pending, fixes.size());
+        int first = total - pending;
+        assertTrue(first > 0);
+        for (int i = 0; i < pending; i++) {
+            assertEquals(T0 + (first + i) * 1000L, fixes.get(i).getTimestamp());
+        }
+        assertEquals(pending, open(max).pendingCount());
+    }
+
+    @Test
+    public void neverDropsTheSegmentBeingWritten() throws IOException {
+        LocationOutbox outbox = open(10);
+        appendAll(outbox, 0, 30); // todo cabe en un segmento
+
+        assertEquals(30, outbox.pendingCount());
+        assertEquals(T0, outbox.peek(1).getFixes().get(0).getTimestamp());
+    }
+
+    @Test
+    public void acknowledgesTheFreshFixOnlyWhenItIsAlone() throws IOException {
+        LocationOutbox outbox = open(1000);
+        outbox.append(fix(0));
+
+        assertFalse(outbox.acknowledgeIfOnlyPending(T0 + 1000)); // otro fix
+        assertTrue(outbox.acknowledgeIfOnlyPending(T0));
+        assertEquals(0, outbox.pendingCount());
+        assertTrue(outbox.peek(10).isEmpty());
+        assertEquals(0, open(1000).pendingCount());
+
+        // Con atraso no confirma: el drenado manda todo en orden
+        outbox.append(fix(1));
+        outbox.append(fix(2));
+        assertFalse(outbox.acknowledgeIfOnlyPending(T0 + 2000));
+        assertEquals(2, outbox.pendingCount());
+    }
+}
@@ -0,0 +1,180 @@
+package com.domipancho.domiciliarios;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Coalescido, tareas únicas y rechazo con la cola llena.
+ */
+public class NetworkExecutorTest {
+
+    private static final long TIMEOUT_S = 5;
+
+    private final List<String> sent = Collections.synchronizedList(new ArrayList<>());
+    private final CountDownLatch bloqueo = new CountDownLatch(1);
+    private NetworkExecutor executor;
+
+    @After
+    public void tearDown() {
+        bloqueo.countDown();
+        if (executor != null) {
+            executor.shutdown(1000);
+        }
+    }
+
+    /**
+     * Ocupa el único hilo hasta soltar {@link #bloqueo}: lo que siga queda en la cola
+     */
+    private void ocuparHilo() {
+        assertTrue(executor.submitOnce("bloqueo", () -> {
+            try {
+                bloqueo.await(TIMEOUT_S, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+    }
+
+    /**
+     * Espera a que el pool ejecute todo lo encolado hasta ahora
+     */
+    private void esperarCola() throws InterruptedException {
+        CountDownLatch hecho = new CountDownLatch(1);
+        long deadline = System.currentTimeMillis() + TIMEOUT_S * 1000;
+        while (!executor.submitOnce("fin", hecho::countDown)) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+        assertTrue(hecho.await(TIMEOUT_S, TimeUnit.SECONDS));
+    }
+
+    private void send(String value) {
+        sent.add(value);
+    }
+
+    @Test
+    public void coalescesToTheNewestWhileQueued() throws InterruptedException {
+        executor = new NetworkExecutor("test", 1, 4);
+        ocuparHilo();
+
+        executor.submitLatest("ubicacion", "a", this::send);
+        executor.submitLatest("ubicacion", "b", this::send);
+        executor.submitLatest("ubicacion", "c", this::send);
+        assertEquals(2, executor.getCoalescedCount());
+        assertEquals(1, executor.getQueueDepth());
+
+        bloqueo.countDown();
+        esperarCola();
+        assertEquals(Collections.singletonList("c"), sent);
+
+        // Ya enviado: el siguiente vuelve a encolarse
+        executor.submitLatest("ubicacion", "d", this::send);
+        esperarCola();
+        assertEquals(2, sent.size());
+        assertEquals("d", sent.get(1));
+    }
+
+    @Test
+    public void submitOnceDropsDuplicatesWhileQueued() throws InterruptedException {
+        executor = new NetworkExecutor("test", 1, 4);
+        AtomicInteger runs = new AtomicInteger();
+        ocuparHilo();
+
+        assertTrue(executor.submitOnce("drenado", runs::incrementAndGet));
+        assertFalse(executor.submitOnce("drenado", runs::incrementAndGet));
+        assertEquals(1, executor.getDroppedCount());
+
+        bloqueo.countDown();
+        esperarCola();
+        assertEquals(1, runs.get());
+
+        // La clave se libera al empezar la tarea
+        assertTrue(executor.submitOnce("drenado", runs::incrementAndGet));
+        esperarCola();
+        assertEquals(2, runs.get());
+    }
+
+    @Test
+    public void rejectionIsCountedAndReleasesTheKey() throws InterruptedException {
+        executor = new NetworkExecutor("test", 1, 1);
+        AtomicInteger enters = new AtomicInteger();
+        AtomicInteger exits = new AtomicInteger();
+        executor.setGuard(new NetworkExecutor.Guard() {
+            @Override
+            public void enter() {
+                enters.incrementAndGet();
+            }
+
+            @Override
+            public void exit() {
+                exits.incrementAndGet();
+            }
+        });
+        ocuparHilo();
+        assertTrue(executor.submitOnce("relleno", () -> { }));
+
+        assertFalse(executor.submitOnce("drenado", () -> sent.add("drenado")));
+        executor.submitLatest("ubicacion", "a", this::send);
+        assertEquals(2, executor.getRejectedCount());
+
+        bloqueo.countDown();
+        esperarCola();
+        assertTrue(sent.isEmpty());
+
+        // Ninguna clave quedó trabada por el rechazo
+        assertTrue(executor.submitOnce("drenado", () -> sent.add("drenado")));
+        esperarCola(); // con cola de 1, de a una
+        executor.submitLatest("ubicacion", "b", this::send);
+        esperarCola();
+        assertTrue(sent.contains("drenado"));
+        assertTrue(sent.contains("b"));
+
+        executor.shutdown(1000); // el exit de cada tarea corre al terminarla
+        assertEquals(enters.get(), exits.get()); // el guard no queda tomado por lo rechazado
+    }
+
+    @Test
+    public void rejectionKeepsAValueCoalescedMeanwhile() throws InterruptedException {
+        executor = new NetworkExecutor("test", 1, 1);
+        ocuparHilo();
+        assertTrue(executor.submitOnce("relleno", () -> { }));
+
+        // Entre el put de "a" y el rechazo de su tarea, otro envío coalesce "b"
+        // (el guard corre justo antes de encolar). Al reintentar por "b" la cola ya se vació.
+        AtomicInteger enters = new AtomicInteger();
+        executor.setGuard(new NetworkExecutor.Guard() {
+            @Override
+            public void enter() {
+                int n = enters.incrementAndGet();
+                if (n == 1) {
+                    executor.submitLatest("ubicacion", "b", NetworkExecutorTest.this::send);
+                } else if (n == 2) {
+                    bloqueo.countDown();
+                    long deadline = System.currentTimeMillis() + TIMEOUT_S * 1000;
+                    while (executor.getQueueDepth() > 0 && System.currentTimeMillis() < deadline) {
+                        Thread.yield();
+                    }
+                }
+            }
+
+            @Override
+            public void exit() {
+            }
+        });
+
+        executor.submitLatest("ubicacion", "a", this::send);
+        assertEquals(1, executor.getCoalescedCount());
+        assertEquals(1, executor.getRejectedCount());
+
+        esperarCola();
+        assertEquals(Collections.singletonList("b"), sent);
+    }
+}
@@ -0,0 +1,120 @@
+package com.domipancho.domiciliarios;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * La notificación solo se republica cuando cambia lo que se ve, con un intervalo mínimo.
+ */
+public class NotificationRendererTest {
+
+    private final List<String> posted = new ArrayList<>();
+    private final NotificationRenderer renderer =
+        new NotificationRenderer((title, text) -> posted.add(title + " | " + text), 10000);
+
+    private static LocationFix fix(double lat, double lon, float accuracy, long ts) {
+        return new LocationFix(lat, lon, ts, accuracy, "gps", 5f);
+    }
+
+    @Test
+    public void formatsLikeTheOldNotification() {
+        renderer.renderNow(false, null, 0);
+        renderer.renderNow(false, fix(4.6, -74.08, 12f, 0), 0);
+        renderer.renderNow(true, fix(4.609712, -74.081758, 7f, 0), 0);
+        renderer.renderNow(true, fix(-0.000012, 0.5, 300f, 0), 0);
+
+        assertEquals("DomiPancho - Rastreando Ubicación | Buscando pedidos cercanos", posted.get(0));
+        assertEquals("DomiPancho - Rastreando Ubicación | Buscando pedidos cercanos (10m precisión)", posted.get(1));
+        assertEquals("DomiPancho - Entrega Activa | Última ubicación: 4.60971, -74.08176 (5m)", posted.get(2));
+        assertEquals("DomiPancho - Entrega Activa | Última ubicación: -0.00001, 0.50000 (300m)", posted.get(3));
+    }
+
+    @Test
+    public void unchangedTextIsNotReposted() {
+        assertTrue(renderer.render(false, fix(4.6, -74.08, 9f, 0), 0));
+        // Se mueve y la precisión baila dentro del mismo tramo: sin coordenadas visibles, nada cambia
+        assertFalse(renderer.render(false, fix(4.61, -74.09, 11f, 20000), 20000));
+        assertFalse(renderer.render(false, fix(4.62, -74.10, 8f, 40000), 40000));
+        assertEquals(1, posted.size());
+    }
+
+    @Test
+    public void titleFlipPostsImmediately() {
+        renderer.render(false, fix(4.6, -74.08, 9f, 0), 0);
+        assertTrue(renderer.render(true, fix(4.6, -74.08, 9f, 0), 100));
+        assertTrue(renderer.render(false, fix(4.6, -74.08, 9f, 0), 200));
+        assertEquals(3, posted.size());
+    }
+
+    @Test
+    public void changesWithinMinIntervalAreDeferredAndFlushed() {
+        renderer.render(true, fix(4.60000, -74.08, 9f, 0), 0);
+        assertFalse(renderer.render(true, fix(4.60010, -74.08, 9f, 1000), 1000));
+        assertFalse(renderer.render(true, fix(4.60020, -74.08, 9f, 2000), 2000));
+        assertFalse(renderer.flush(5000));
+        assertTrue(renderer.flush(10000));
+        assertFalse(renderer.flush(30000));
+
+        assertEquals(2, posted.size());
+        assertTrue(posted.get(1).contains("4.60020"));
+        assertEquals(1, renderer.getDeferredCount());
+    }
+
+    @Test
+    public void goingBackToPublishedStateCancelsPending() {
+        renderer.render(false, fix(4.6, -74.08, 10f, 0), 0);
+        renderer.render(false, fix(4.6, -74.08, 50f, 0), 1000);
+        renderer.render(false, fix(4.6, -74.08, 10f, 0), 2000);
+        assertFalse(renderer.flush(20000));
+        assertEquals(1, posted.size());
+    }
+
+    @Test
+    public void accuracyBuckets() {
+        assertEquals(5, NotificationRenderer.bucketPrecision(1f));
+        assertEquals(10, NotificationRenderer.bucketPrecision(11f));
+        assertEquals(20, NotificationRenderer.bucketPrecision(19f));
+        assertEquals(25, NotificationRenderer.bucketPrecision(30f));
+        assertEquals(75, NotificationRenderer.bucketPrecision(80f));
+        assertEquals(200, NotificationRenderer.bucketPrecision(180f));
+    }
+
+    @Test
+    public void cityRideReplayPostsFarLessThanOncePerFix() throws Exception {
+        List<LocationFix> trace = Traces.load("ciudad_moto.csv");
+        FixFilter filter = new FixFilter();
+        NotificationRenderer activa = new NotificationRenderer((t, x) -> { });
+        NotificationRenderer buscando = new NotificationRenderer((t, x) -> { });
+
+        int fixes = 0;
+        long lastTick = 0;
+        for (LocationFix raw : trace) {
+            LocationFix fix = filter.process(raw);
+            if (fix == null) {
+                continue;
+            }
+            fixes++;
+            long now = fix.getTimestamp();
+            activa.render(true, fix, now);
+            buscando.render(false, fix, now);
+            if (now - lastTick >= 15000) {
+                activa.flush(now);
+                buscando.flush(now);
+                lastTick = now;
+            }
+        }
+
+        long durationMin = (trace.get(trace.size() - 1).getTimestamp() - trace.get(0).getTimestamp()) / 60000;
+        String resumen = fixes + " fixes en " + durationMin + " min -> entrega " + activa.getPostCount()
+            + ", buscando " + buscando.getPostCount();
+
+        // Con entrega activa las coordenadas cambian siempre: manda el intervalo mínimo
+        assertTrue(resumen, activa.getPostCount() <= durationMin * 6 + 2);
+        assertTrue(resumen, activa.getPostCount() * 3 < fixes);
+        // Sin entrega solo cuenta el tramo de precisión
+        assertTrue(resumen, buscando.getPostCount() * 10 < fixes);
+    }
+}
@@ -0,0 +1,91 @@
+package com.domipancho.domiciliarios;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * Diff de la lista de pedidos por id: nuevos disponibles, cambios de estado y removidos.
+ */
+public class OrderBookTest {
+
+    private static final int YO = 5;
+    private static final int OTRO = 9;
+    private static final String EN_CAMINO = OrderStateMessage.ESTADO_EN_CAMINO;
+
+    private final OrderBook book = new OrderBook();
+
+    private static OrderBook.Order pedido(int id, String estado, int domiciliario) {
+        return new OrderBook.Order(id, estado, domiciliario, "{\"id\":" + id + "}");
+    }
+
+    private List<String> update(OrderBook.Order... pedidos) {
+        List<String> eventos = new ArrayList<>();
+        for (OrderBook.Event event : book.update(Arrays.asList(pedidos), YO)) {
+            eventos.add(event.getType() + " " + event.getOrder().getId());
+        }
+        return eventos;
+    }
+
+    @Test
+    public void firstResponseOnlyFillsTheBook() {
+        assertTrue(update(pedido(1, OrderBook.ESTADO_ESPERANDO, 0)).isEmpty());
+        assertEquals(1, book.size());
+    }
+
+    @Test
+    public void newAvailableOrder() {
+        update(pedido(1, OrderBook.ESTADO_ESPERANDO, 0));
+        assertEquals(Arrays.asList("NEW 2"),
+            update(pedido(1, OrderBook.ESTADO_ESPERANDO, 0), pedido(2, OrderBook.ESTADO_ESPERANDO, 0)));
+        // Sin cambios: nada
+        assertTrue(update(pedido(1, OrderBook.ESTADO_ESPERANDO, 0), pedido(2, OrderBook.ESTADO_ESPERANDO, 0)).isEmpty());
+    }
+
+    @Test
+    public void takenByMeStaysTakenByOtherIsRemoved() {
+        update(pedido(1, OrderBook.ESTADO_ESPERANDO, 0), pedido(2, OrderBook.ESTADO_ESPERANDO, 0));
+        List<String> eventos = update(pedido(1, "asignado", YO), pedido(2, "asignado", OTRO));
+        assertEquals(Arrays.asList("CHANGED 1", "CHANGED 2", "REMOVED 2"), eventos);
+    }
+
+    @Test
+    public void finalStatesAndMissingOrdersAreRemovedOnce() {
+        update(pedido(1, EN_CAMINO, YO), pedido(2, EN_CAMINO, YO), pedido(3, OrderBook.ESTADO_ESPERANDO, 0));
+        assertEquals(Arrays.asList("CHANGED 1", "REMOVED 1", "REMOVED 3"),
+            update(pedido(1, OrderBook.ESTADO_ENTREGADO, YO), pedido(2, EN_CAMINO, YO)));
+        // Sigue entregado en la lista: no se vuelve a avisar
+        assertTrue(update(pedido(1, OrderBook.ESTADO_ENTREGADO, YO), pedido(2, EN_CAMINO, YO)).isEmpty());
+    }
+
+    @Test
+    public void releasedOrderIsAvailableAgain() {
+        update(pedido(1, "asignado", YO));
+        assertEquals(Arrays.asList("CHANGED 1", "NEW 1"), update(pedido(1, OrderBook.ESTADO_ESPERANDO, 0)));
+    }
+
+    @Test
+    public void countsMyOrdersOnTheWay() {
+        update(pedido(1, EN_CAMINO, YO), pedido(2, EN_CAMINO, OTRO), pedido(3, EN_CAMINO, 0), pedido(4, "asignado", YO));
+        assertEquals(2, book.countMine(EN_CAMINO, YO));
+    }
+
+    @Test
+    public void diffIsLinearOnLargeLists() {
+        List<OrderBook.Order> antes = new ArrayList<>();
+        List<OrderBook.Order> despues = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            antes.add(pedido(i, OrderBook.ESTADO_ESPERANDO, 0));
+            despues.add(pedido(i + 1, OrderBook.ESTADO_ESPERANDO, 0));
+        }
+        book.update(antes, YO);
+        long start = System.nanoTime();
+        List<OrderBook.Event> eventos = book.update(despues, YO);
+        long ms = (System.nanoTime() - start) / 1000000;
+        assertEquals(2, eventos.size()); // 20000 nuevo, 0 removido
+        assertTrue("diff de 20000 pedidos en " + ms + " ms", ms < 1000);
+    }
+}
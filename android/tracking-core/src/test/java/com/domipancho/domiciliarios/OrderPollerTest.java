@@ -0,0 +1,137 @@
+package com.domipancho.domiciliarios;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Una ronda = un GET condicional de pedidos; el usuario se pide una sola vez.
+ */
+public class OrderPollerTest {
+
+    private MockWebServer server;
+    private ServiceHttpClient client;
+    private final List<String> eventos = new ArrayList<>();
+    private final List<Boolean> enCamino = new ArrayList<>();
+    private OrderPoller poller;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+        client = new ServiceHttpClient(server.url("").toString().replaceAll("/$", ""));
+        poller = new OrderPoller(client, new OrderPoller.Listener() {
+            @Override
+            public void onOrderEvents(List<OrderBook.Event> events) {
+                for (OrderBook.Event event : events) {
+                    eventos.add(event.getType() + " " + event.getOrder().getId());
+                }
+            }
+
+            @Override
+            public void onActiveOrders(boolean activos) {
+                enCamino.add(activos);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.close();
+        server.shutdown();
+    }
+
+    private static MockResponse pedidos(String etag, String json) {
+        return new MockResponse().setHeader("ETag", etag).setBody(json);
+    }
+
+    @Test
+    public void userIsFetchedOnceAndUnchangedListsAreNotRead() throws Exception {
+        server.enqueue(new MockResponse().setBody("{\"id\":5,\"usuario\":\"ana\"}"));
+        server.enqueue(pedidos("\"v1\"", "[{\"id\":1,\"estado\":\"esperando repartidor\"}]"));
+        server.enqueue(new MockResponse().setResponseCode(304));
+        server.enqueue(pedidos("\"v2\"", "[{\"id\":1,\"estado\":\"esperando repartidor\"},"
+            + "{\"id\":2,\"estado\":\"esperando repartidor\"}]"));
+
+        assertEquals(200, poller.poll());
+        assertEquals(304, poller.poll());
+        assertEquals(200, poller.poll());
+
+        assertEquals(4, server.getRequestCount()); // 1 usuario + 3 rondas
+        assertEquals(OrderPoller.PATH_USUARIO, server.takeRequest().getPath());
+        assertNull(server.takeRequest().getHeader("If-None-Match"));
+        RecordedRequest condicional = server.takeRequest();
+        assertEquals(OrderPoller.PATH_PEDIDOS, condicional.getPath());
+        assertEquals("\"v1\"", condicional.getHeader("If-None-Match"));
+        assertEquals("\"v1\"", server.takeRequest().getHeader("If-None-Match"));
+
+        assertEquals(5, poller.getUsuarioId());
+        assertEquals(1, eventos.size());
+        assertEquals("NEW 2", eventos.get(0));
+        assertEquals(2, enCamino.size()); // no en el 304
+        assertFalse(enCamino.get(1));
+    }
+
+    @Test
+    public void everyRequestCarriesTheSession() throws Exception {
+        client.close();
+        String baseUrl = server.url("").toString().replaceAll("/$", "");
+        client = new ServiceHttpClient(baseUrl, new SessionCookieJar(baseUrl, new SessionCookieJar.Store() {
+            @Override
+            public String load() {
+                return "connect.sid=s%3Aabc";
+            }
+
+            @Override
+            public void save(String cookieHeader) {
+            }
+        }));
+        poller = new OrderPoller(client, new OrderPoller.Listener() {
+            @Override
+            public void onOrderEvents(List<OrderBook.Event> events) {
+            }
+
+            @Override
+            public void onActiveOrders(boolean activos) {
+            }
+        });
+        server.enqueue(new MockResponse().setBody("{\"id\":5}"));
+        server.enqueue(pedidos("\"v1\"", "[]"));
+
+        assertEquals(200, poller.poll());
+
+        RecordedRequest usuario = server.takeRequest();
+        assertEquals(OrderPoller.PATH_USUARIO, usuario.getPath());
+        assertEquals("connect.sid=s%3Aabc", usuario.getHeader("Cookie"));
+        RecordedRequest lista = server.takeRequest();
+        assertEquals(OrderPoller.PATH_PEDIDOS, lista.getPath());
+        assertEquals("connect.sid=s%3Aabc", lista.getHeader("Cookie"));
+        assertEquals(5, poller.getUsuarioId());
+    }
+
+    @Test
+    public void rejectedSessionForgetsUserAndList() throws Exception {
+        server.enqueue(new MockResponse().setBody("{\"id\":5}"));
+        server.enqueue(pedidos("\"v1\"", "[{\"id\":1,\"estado\":\"camino a tu casa\",\"domiciliario_id\":5}]"));
+        server.enqueue(new MockResponse().setResponseCode(401));
+        server.enqueue(new MockResponse().setBody("{\"id\":6}"));
+        server.enqueue(pedidos("\"w1\"", "[]"));
+
+        poller.poll();
+        assertTrue(enCamino.get(0));
+        assertEquals(401, poller.poll());
+        assertEquals(0, poller.getUsuarioId());
+        poller.poll();
+
+        assertEquals(6, poller.getUsuarioId());
+        assertTrue(eventos.isEmpty()); // la lista nueva es la primera de la sesión
+        assertFalse(enCamino.get(1));
+    }
+}
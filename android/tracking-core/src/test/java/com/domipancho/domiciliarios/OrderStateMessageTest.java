@@ -0,0 +1,57 @@
+package com.domipancho.domiciliarios;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+
+public class OrderStateMessageTest {
+
+    @Test
+    public void parsesOrderStateDataMessage() {
+        OrderStateMessage message = OrderStateMessage.parse(data("pedido_estado", "42", " Camino a tu casa "));
+
+        assertNotNull(message);
+        assertEquals(42, message.getPedidoId());
+        assertTrue(message.isEnCamino());
+    }
+
+    @Test
+    public void ignoresOtherMessages() {
+        assertNull(OrderStateMessage.parse(null));
+        assertNull(OrderStateMessage.parse(new HashMap<String, String>()));
+        assertNull(OrderStateMessage.parse(data("wake_for_location", "42", "camino a tu casa")));
+        assertNull(OrderStateMessage.parse(data("pedido_estado", "abc", "camino a tu casa")));
+        assertNull(OrderStateMessage.parse(data("pedido_estado", "0", "camino a tu casa")));
+        assertNull(OrderStateMessage.parse(data("pedido_estado", "42", null)));
+    }
+
+    @Test
+    public void enCaminoBecomesActiveOrder() {
+        OrderStateMessage message = OrderStateMessage.parse(data("pedido_estado", "42", "camino a tu casa"));
+
+        assertEquals(42, message.applyTo(0));
+        assertEquals(42, message.applyTo(7));
+    }
+
+    @Test
+    public void finishingActiveOrderClearsIt() {
+        OrderStateMessage delivered = OrderStateMessage.parse(data("pedido_estado", "42", "entregado"));
+
+        assertFalse(delivered.isEnCamino());
+        assertEquals(0, delivered.applyTo(42));
+        // Otro pedido terminó: el activo no cambia
+        assertEquals(7, delivered.applyTo(7));
+    }
+
+    private static Map<String, String> data(String type, String pedidoId, String estado) {
+        Map<String, String> data = new HashMap<>();
+        data.put("type", type);
+        data.put("pedidoId", pedidoId);
+        if (estado != null) {
+            data.put("estado", estado);
+        }
+        return data;
+    }
+}
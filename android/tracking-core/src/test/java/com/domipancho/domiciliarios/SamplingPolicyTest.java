@@ -0,0 +1,177 @@
+package com.domipancho.domiciliarios;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Perfiles de muestreo: subir de densidad al momento, bajar tras la histéresis,
+ * parada por tiempo y radio, y fixes imprecisos fuera de la decisión.
+ */
+public class SamplingPolicyTest {
+
+    private static final double LAT = 4.6097;
+    private static final double LON = -74.0817;
+    private static final double METROS_POR_GRADO = 111320.0;
+
+    private final SamplingPolicy policy = new SamplingPolicy();
+
+    /**
+     * Fix a {@code norteM} metros al norte del origen, con la velocidad que reporta el provider
+     */
+    private static LocationFix fix(long t, double norteM, float accuracy, float speed) {
+        return new LocationFix(LAT + norteM / METROS_POR_GRADO, LON, t, accuracy, "gps", speed);
+    }
+
+    /**
+     * Quieto desde t=0 hasta quedar PARKED (parada a los 120 s + 30 s de histéresis)
+     */
+    private long estacionar() {
+        policy.onFix(fix(0, 0, 8f, 0f), 0);
+        policy.refresh(SamplingPolicy.STATIONARY_AFTER_MS); // la espera cuenta desde que se evalúa
+        long parked = SamplingPolicy.STATIONARY_AFTER_MS + SamplingPolicy.MIN_DWELL_MS;
+        assertTrue(policy.refresh(parked));
+        assertEquals(SamplingPolicy.Profile.PARKED, policy.getProfile());
+        return parked;
+    }
+
+    @Test
+    public void startsIdle() {
+        assertEquals(SamplingPolicy.Profile.IDLE, policy.getProfile());
+        assertFalse(policy.refresh(0));
+    }
+
+    @Test
+    public void stationaryAfterTimeoutThenParkedAfterDwell() {
+        policy.onFix(fix(0, 0, 8f, 0f), 0);
+
+        long parada = SamplingPolicy.STATIONARY_AFTER_MS;
+        assertFalse(policy.isStationary(parada - 1));
+        assertFalse(policy.refresh(parada - 1));
+        assertTrue(policy.isStationary(parada));
+
+        // Bajar de densidad espera MIN_DWELL_MS con el candidato estable
+        assertFalse(policy.refresh(parada));
+        assertFalse(policy.refresh(parada + SamplingPolicy.MIN_DWELL_MS - 1));
+        assertEquals(SamplingPolicy.Profile.IDLE, policy.getProfile());
+        assertTrue(policy.refresh(parada + SamplingPolicy.MIN_DWELL_MS));
+        assertEquals(SamplingPolicy.Profile.PARKED, policy.getProfile());
+    }
+
+    @Test
+    public void jitterInsideTheRadiusIsNotMovement() {
+        policy.onFix(fix(0, 0, 8f, 0f), 0);
+        for (long t = 10000; t <= SamplingPolicy.STATIONARY_AFTER_MS; t += 10000) {
+            double norte = (t / 10000) % 2 == 0 ? 0 : SamplingPolicy.STATIONARY_RADIUS_M - 5;
+            policy.onFix(fix(t, norte, 8f, 0f), t);
+        }
+        assertTrue(policy.isStationary(SamplingPolicy.STATIONARY_AFTER_MS));
+    }
+
+    @Test
+    public void radiusGrowsWithTheFixAccuracy() {
+        policy.onFix(fix(0, 0, 60f, 0f), 0);
+        policy.onFix(fix(60000, 50, 60f, 0f), 60000); // 50 m pero ±60 m: puede ser el mismo punto
+        assertTrue(policy.isStationary(SamplingPolicy.STATIONARY_AFTER_MS));
+
+        policy.onFix(fix(130000, 150, 8f, 0f), 130000); // fuera de max(30 m, 8 m)
+        assertFalse(policy.isStationary(SamplingPolicy.STATIONARY_AFTER_MS + 130000 - 1));
+    }
+
+    @Test
+    public void speedAboveWalkingIsMovementEvenInsideTheRadius() {
+        policy.onFix(fix(0, 0, 8f, 0f), 0);
+        policy.onFix(fix(100000, 10, 8f, SamplingPolicy.MOVING_SPEED_MPS + 1f), 100000);
+        assertFalse(policy.isStationary(SamplingPolicy.STATIONARY_AFTER_MS));
+        assertTrue(policy.isStationary(100000 + SamplingPolicy.STATIONARY_AFTER_MS));
+    }
+
+    @Test
+    public void fixesWorseThan100mAreIgnored() {
+        policy.onFix(fix(0, 0, 8f, 0f), 0);
+        // Un fix de red a 500 m con ±150 m no cuenta como movimiento ni como velocidad
+        policy.onFix(fix(60000, 500, SamplingPolicy.MAX_USEFUL_ACCURACY_M + 50f, 20f), 60000);
+        assertTrue(policy.getSpeed() < 1f);
+        assertTrue(policy.isStationary(SamplingPolicy.STATIONARY_AFTER_MS));
+
+        // Justo en el límite sí cuenta
+        policy.onFix(fix(70000, 500, SamplingPolicy.MAX_USEFUL_ACCURACY_M, 0f), 70000);
+        assertFalse(policy.isStationary(SamplingPolicy.STATIONARY_AFTER_MS));
+    }
+
+    @Test
+    public void startingToMoveUpgradesImmediately() {
+        long t = estacionar() + 5000;
+        assertTrue(policy.onFix(fix(t, 200, 8f, 5f), t));
+        assertEquals(SamplingPolicy.Profile.IDLE, policy.getProfile());
+    }
+
+    @Test
+    public void activeOrdersChangeTheProfileImmediatelyBothWays() {
+        long t = estacionar() + 1000;
+
+        assertTrue(policy.setActiveOrders(true, t));
+        assertEquals(SamplingPolicy.Profile.DELIVERY_STOPPED, policy.getProfile());
+        assertFalse(policy.setActiveOrders(true, t + 1000)); // sin cambio
+
+        // Terminar los pedidos baja de densidad, pero sin esperar la histéresis
+        assertTrue(policy.setActiveOrders(false, t + 2000));
+        assertEquals(SamplingPolicy.Profile.PARKED, policy.getProfile());
+    }
+
+    @Test
+    public void deliverySpeedSelectsFastAndDowngradesAfterDwell() {
+        policy.setActiveOrders(true, 0);
+        assertEquals(SamplingPolicy.Profile.DELIVERY, policy.getProfile());
+
+        assertTrue(policy.onFix(fix(1000, 0, 8f, 12f), 1000));
+        assertEquals(SamplingPolicy.Profile.DELIVERY_FAST, policy.getProfile());
+
+        // La velocidad suavizada baja de 8.3 m/s en el segundo fix lento
+        long t = 2000;
+        policy.onFix(fix(t, 20, 8f, 5f), t);
+        assertEquals(SamplingPolicy.Profile.DELIVERY_FAST, policy.getProfile());
+        t += 1000;
+        assertFalse(policy.onFix(fix(t, 40, 8f, 5f), t));
+        assertTrue(policy.getSpeed() <= SamplingPolicy.FAST_SPEED_MPS);
+        long desde = t;
+
+        assertFalse(policy.refresh(desde + SamplingPolicy.MIN_DWELL_MS - 1));
+        assertEquals(SamplingPolicy.Profile.DELIVERY_FAST, policy.getProfile());
+        assertTrue(policy.refresh(desde + SamplingPolicy.MIN_DWELL_MS));
+        assertEquals(SamplingPolicy.Profile.DELIVERY, policy.getProfile());
+    }
+
+    @Test
+    public void flappingCandidateRestartsTheDwell() {
+        policy.setActiveOrders(true, 0);
+        policy.onFix(fix(1000, 0, 8f, 20f), 1000);
+        assertEquals(SamplingPolicy.Profile.DELIVERY_FAST, policy.getProfile());
+
+        // Candidato DELIVERY desde t=3000...
+        policy.onFix(fix(2000, 20, 8f, 1.6f), 2000);
+        policy.onFix(fix(3000, 40, 8f, 1.6f), 3000);
+        assertTrue(policy.getSpeed() <= SamplingPolicy.FAST_SPEED_MPS);
+        // ...vuelve a ir rápido antes de cumplir la histéresis: se reinicia la espera
+        policy.onFix(fix(20000, 200, 8f, 30f), 20000);
+        policy.onFix(fix(21000, 220, 8f, 1.6f), 21000);
+        policy.onFix(fix(22000, 240, 8f, 1.6f), 22000);
+        assertTrue(policy.getSpeed() <= SamplingPolicy.FAST_SPEED_MPS);
+
+        assertFalse(policy.refresh(3000 + SamplingPolicy.MIN_DWELL_MS));
+        assertEquals(SamplingPolicy.Profile.DELIVERY_FAST, policy.getProfile());
+        assertTrue(policy.refresh(22000 + SamplingPolicy.MIN_DWELL_MS));
+        assertEquals(SamplingPolicy.Profile.DELIVERY, policy.getProfile());
+    }
+
+    @Test
+    public void maxUpdateDelayBatchesOnlyOutsideDelivery() {
+        assertEquals(0, SamplingPolicy.Profile.DELIVERY_FAST.getMaxUpdateDelayMs());
+        assertEquals(0, SamplingPolicy.Profile.DELIVERY.getMaxUpdateDelayMs());
+        assertEquals(0, SamplingPolicy.Profile.DELIVERY_STOPPED.getMaxUpdateDelayMs());
+        assertEquals(SamplingPolicy.Profile.IDLE.getUploadIntervalMs(),
+            SamplingPolicy.Profile.IDLE.getMaxUpdateDelayMs());
+        assertEquals(30000, SamplingPolicy.Profile.IDLE.getMaxUpdateDelayMs());
+        assertEquals(60000, SamplingPolicy.Profile.PARKED.getMaxUpdateDelayMs());
+    }
+}
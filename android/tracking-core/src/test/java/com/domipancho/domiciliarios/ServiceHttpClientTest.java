@@ -0,0 +1,232 @@
+package com.domipancho.domiciliarios;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import okhttp3.CookieJar;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.tls.HandshakeCertificates;
+import okhttp3.tls.HeldCertificate;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Verifica contra un servidor HTTPS local que ubicación, heartbeat y pedidos
+ * comparten una sola conexión (un solo handshake TLS).
+ */
+public class ServiceHttpClientTest {
+
+    private MockWebServer server;
+    private HandshakeCertificates clientCertificates;
+
+    @Before
+    public void setUp() throws Exception {
+        HeldCertificate localhost = new HeldCertificate.Builder()
+            .addSubjectAlternativeName("localhost")
+            .build();
+        HandshakeCertificates serverCertificates = new HandshakeCertificates.Builder()
+            .heldCertificate(localhost)
+            .build();
+        clientCertificates = new HandshakeCertificates.Builder()
+            .addTrustedCertificate(localhost.certificate())
+            .build();
+
+        server = new MockWebServer();
+        server.useHttps(serverCertificates.sslSocketFactory(), false);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void reusesOneConnectionOverHttp11() throws Exception {
+        server.setProtocols(Arrays.asList(Protocol.HTTP_1_1));
+        assertSingleHandshake();
+    }
+
+    @Test
+    public void reusesOneConnectionOverHttp2() throws Exception {
+        server.setProtocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1));
+        assertSingleHandshake();
+    }
+
+    @Test
+    public void newClientPerRequestPaysOneHandshakeEach() throws Exception {
+        server.setProtocols(Arrays.asList(Protocol.HTTP_1_1));
+        enqueueOk(3);
+        server.start();
+
+        long handshakes = 0;
+        for (int i = 0; i < 3; i++) {
+            ServiceHttpClient client = newClient();
+            assertTrue(client.postJson("/api/domiciliario-heartbeat", "{}").isOk());
+            handshakes += client.getHandshakeCount();
+            client.close();
+        }
+
+        assertEquals(3, handshakes);
+        assertEquals(3, countServerConnections(3));
+    }
+
+    @Test
+    public void sendsAjaxHeader() throws Exception {
+        enqueueOk(1);
+        server.start();
+
+        ServiceHttpClient client = newClient();
+        client.get("/api/pedidos-domiciliario");
+
+        RecordedRequest request = server.takeRequest();
+        assertEquals("XMLHttpRequest", request.getHeader("X-Requested-With"));
+        client.close();
+    }
+
+    @Test
+    public void sendsSessionCookieAndKeepsRenewals() throws Exception {
+        server.enqueue(new MockResponse().setBody("[]")
+            .addHeader("Set-Cookie", "connect.sid=s%3Anueva; Path=/; HttpOnly"));
+        server.enqueue(new MockResponse().setBody("[]"));
+        server.start();
+
+        String[] sesion = {"connect.sid=s%3Avieja; tema=oscuro"};
+        ServiceHttpClient client = newClient(new SessionCookieJar(server.url("/").toString(),
+            new SessionCookieJar.Store() {
+                @Override
+                public String load() {
+                    return sesion[0];
+                }
+
+                @Override
+                public void save(String cookieHeader) {
+                    sesion[0] = cookieHeader;
+                }
+            }));
+        client.postJsonWithHeartbeat("/api/domiciliario/ubicacion", "{\"latitud\":4.6}");
+        client.get("/api/usuario-actual");
+
+        assertEquals("connect.sid=s%3Avieja; tema=oscuro", server.takeRequest().getHeader("Cookie"));
+        assertEquals("connect.sid=s%3Anueva; tema=oscuro", server.takeRequest().getHeader("Cookie"));
+        assertEquals("connect.sid=s%3Anueva; tema=oscuro", sesion[0]);
+        client.close();
+    }
+
+    @Test
+    public void withoutSessionSendsNoCookie() throws Exception {
+        enqueueOk(1);
+        server.start();
+
+        ServiceHttpClient client = newClient(new SessionCookieJar(server.url("/").toString(),
+            new SessionCookieJar.Store() {
+                @Override
+                public String load() {
+                    return null;
+                }
+
+                @Override
+                public void save(String cookieHeader) {
+                    throw new AssertionError("Nada que guardar");
+                }
+            }));
+        client.get("/api/usuario-actual");
+
+        assertNull(server.takeRequest().getHeader("Cookie"));
+        client.close();
+    }
+
+    @Test
+    public void heartbeatRidesOnLocationUpload() throws Exception {
+        enqueueOk(2);
+        server.start();
+
+        ServiceHttpClient client = newClient();
+        client.postJsonWithHeartbeat("/api/domiciliario/ubicacion", "{\"latitud\":4.6}");
+        client.postJson("/api/domiciliario/ubicacion", "{\"latitud\":4.6}");
+
+        assertEquals("1", server.takeRequest().getHeader(ServiceHttpClient.HEADER_HEARTBEAT));
+        assertNull(server.takeRequest().getHeader(ServiceHttpClient.HEADER_HEARTBEAT));
+        client.close();
+    }
+
+    @Test
+    public void conditionalGetSkipsBodyOnNotModified() throws Exception {
+        server.enqueue(new MockResponse()
+            .setHeader("ETag", "\"v1\"")
+            .setBody("[{\"estado\":\"camino a tu casa\"}]"));
+        server.enqueue(new MockResponse().setResponseCode(304).setHeader("ETag", "\"v1\""));
+        server.start();
+
+        ServiceHttpClient client = newClient();
+        ServiceHttpClient.ConditionalResponse<Integer> first = client.getConditional(
+            "/api/pedidos-domiciliario", null, null,
+            body -> EstadoPedidosScanner.countByEstado(body, "camino a tu casa"));
+        assertTrue(first.isOk());
+        assertEquals(Integer.valueOf(1), first.getValue());
+        assertEquals("\"v1\"", first.getEtag());
+
+        ServiceHttpClient.ConditionalResponse<Integer> second = client.getConditional(
+            "/api/pedidos-domiciliario", first.getEtag(), first.getLastModified(),
+            body -> {
+                throw new AssertionError("Un 304 no se parsea");
+            });
+        assertTrue(second.isNotModified());
+        assertNull(second.getValue());
+
+        assertNull(server.takeRequest().getHeader("If-None-Match"));
+        assertEquals("\"v1\"", server.takeRequest().getHeader("If-None-Match"));
+        client.close();
+    }
+
+    private void assertSingleHandshake() throws Exception {
+        enqueueOk(3);
+        server.start();
+
+        ServiceHttpClient client = newClient();
+        assertTrue(client.postJson("/api/domiciliario/ubicacion", "{\"latitud\":4.6}").isOk());
+        assertTrue(client.postJson("/api/domiciliario-heartbeat", "{}").isOk());
+        assertTrue(client.get("/api/pedidos-domiciliario").isOk());
+
+        assertEquals(3, client.getRequestCount());
+        assertEquals(1, client.getConnectionCount());
+        assertEquals(1, client.getHandshakeCount());
+        assertEquals(1, countServerConnections(3));
+        client.close();
+    }
+
+    private ServiceHttpClient newClient() {
+        return newClient(CookieJar.NO_COOKIES);
+    }
+
+    private ServiceHttpClient newClient(CookieJar cookies) {
+        OkHttpClient.Builder builder = ServiceHttpClient.defaultBuilder()
+            .cookieJar(cookies)
+            .sslSocketFactory(clientCertificates.sslSocketFactory(), clientCertificates.trustManager());
+        String baseUrl = server.url("/").toString();
+        return new ServiceHttpClient(baseUrl.substring(0, baseUrl.length() - 1), builder);
+    }
+
+    private void enqueueOk(int count) {
+        for (int i = 0; i < count; i++) {
+            server.enqueue(new MockResponse().setBody("[]"));
+        }
+    }
+
+    /**
+     * Cada request con sequenceNumber 0 abrió una conexión (y un handshake) nueva en el servidor
+     */
+    private int countServerConnections(int requests) throws InterruptedException {
+        int connections = 0;
+        for (int i = 0; i < requests; i++) {
+            if (server.takeRequest().getSequenceNumber() == 0) {
+                connections++;
+            }
+        }
+        return connections;
+    }
+}
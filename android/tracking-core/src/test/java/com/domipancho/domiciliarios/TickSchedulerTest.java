@@ -0,0 +1,140 @@
+package com.domipancho.domiciliarios;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class TickSchedulerTest {
+
+    private static final String UBICACION = "ubicacion";
+    private static final String HEARTBEAT = "heartbeat";
+    private static final String PEDIDOS = "pedidos";
+    private static final long HOUR_MS = 3600000;
+
+    @Test
+    public void newTaskIsDueImmediately() {
+        TickScheduler scheduler = new TickScheduler();
+        scheduler.schedule(PEDIDOS, 30000, 0, 1000);
+
+        assertTrue(scheduler.isWakeup(1000));
+        assertTrue(scheduler.isEligible(PEDIDOS, 1000));
+        scheduler.markRun(PEDIDOS, 1000);
+        assertEquals(31000, scheduler.nextWakeup());
+        assertFalse(scheduler.isWakeup(20000));
+    }
+
+    @Test
+    public void tasksWithinFlexShareTheWakeup() {
+        TickScheduler scheduler = new TickScheduler();
+        scheduler.schedule(UBICACION, 10000, 5000, 0);
+        scheduler.schedule(PEDIDOS, 30000, 0, 0);
+        scheduler.markRun(PEDIDOS, 0);
+
+        // En 30s vencen los pedidos; la ubicación vence en 33s pero cae en su ventana flexible
+        scheduler.markRun(UBICACION, 23000);
+        assertEquals(30000, scheduler.nextWakeup());
+        assertTrue(scheduler.isWakeup(30000));
+        assertTrue(scheduler.isEligible(PEDIDOS, 30000));
+        assertTrue(scheduler.isEligible(UBICACION, 30000));
+        scheduler.markRun(UBICACION, 30000);
+        assertEquals(1, scheduler.getAlignedRunCount());
+        // Sin flex no se adelanta
+        assertFalse(scheduler.isEligible(PEDIDOS, 29000));
+    }
+
+    @Test
+    public void piggybackedHeartbeatIsNotSentAlone() {
+        TickScheduler scheduler = new TickScheduler();
+        scheduler.schedule(HEARTBEAT, 30000, 0, 0);
+        scheduler.markRun(HEARTBEAT, 0);
+
+        // Una ubicación salió a los 25s con el heartbeat a cuestas
+        scheduler.markRun(HEARTBEAT, 25000);
+        assertFalse(scheduler.isWakeup(30000));
+        assertEquals(55000, scheduler.nextWakeup());
+        assertEquals(1, scheduler.getAlignedRunCount());
+    }
+
+    @Test
+    public void rejectsUnknownTask() {
+        TickScheduler scheduler = new TickScheduler();
+        try {
+            scheduler.isEligible(HEARTBEAT, 0);
+            fail();
+        } catch (IllegalArgumentException expected) {
+            // ok
+        }
+    }
+
+    /**
+     * Reproduce la ruta urbana con reloj virtual y cuenta peticiones por hora de domiciliario:
+     * antes 3 timers (ubicación 10s, heartbeat 30s, pedidos 30s), ahora un solo tick.
+     */
+    @Test
+    public void cityRideCutsRequestsPerCourierHour() throws Exception {
+        List<LocationFix> trace = Traces.load("ciudad_moto.csv");
+        long start = trace.get(0).getTimestamp();
+        long end = trace.get(trace.size() - 1).getTimestamp();
+
+        FixFilter filter = new FixFilter();
+        TrajectorySimplifier simplifier = new TrajectorySimplifier();
+        TickScheduler scheduler = new TickScheduler();
+        scheduler.schedule(UBICACION, 10000, 5000, start);
+        scheduler.schedule(PEDIDOS, 30000, 0, start);
+        scheduler.schedule(HEARTBEAT, 30000, 0, start);
+
+        List<LocationFix> pending = new ArrayList<>();
+        int next = 0;
+        long uploads = 0;
+        long heartbeats = 0;
+        long pedidos = 0;
+        long now = start;
+        while (now <= end) {
+            for (; next < trace.size() && trace.get(next).getTimestamp() <= now; next++) {
+                LocationFix filtered = filter.process(trace.get(next));
+                LocationFix point = filtered != null ? simplifier.process(filtered) : null;
+                if (point != null) {
+                    pending.add(point);
+                }
+            }
+
+            if (scheduler.isWakeup(now)) {
+                if (scheduler.isEligible(UBICACION, now)) {
+                    LocationFix alive = simplifier.poll(now);
+                    if (alive != null && !pending.contains(alive)) {
+                        pending.add(alive);
+                    }
+                    if (!pending.isEmpty()) {
+                        uploads++; // uno o varios puntos: una sola petición
+                        pending.clear();
+                        scheduler.markRun(HEARTBEAT, now);
+                    }
+                    scheduler.markRun(UBICACION, now);
+                }
+                if (scheduler.isEligible(PEDIDOS, now)) {
+                    pedidos++;
+                    scheduler.markRun(PEDIDOS, now);
+                }
+                if (scheduler.isEligible(HEARTBEAT, now)) {
+                    heartbeats++;
+                    scheduler.markRun(HEARTBEAT, now);
+                }
+            }
+            now += Math.max(1, scheduler.delayUntilNext(now));
+        }
+
+        double hours = (double) (end - start) / HOUR_MS;
+        double before = ((end - start) / 10000 + 2 * ((end - start) / 30000)) / hours;
+        double after = (uploads + heartbeats + pedidos) / hours;
+        String resumen = "peticiones/hora " + before + " -> " + after + " (ubicación " + uploads / hours
+            + ", heartbeat " + heartbeats / hours + ", pedidos " + pedidos / hours + ") - " + scheduler;
+
+        assertTrue(resumen, after <= before / 2);
+        // Un solo reloj: las tareas que vencen juntas comparten despertada
+        assertTrue(resumen, scheduler.getAlignedRunCount() > 0);
+        assertTrue(resumen, scheduler.getWakeupCount() < scheduler.getRunCount());
+        assertTrue("Heartbeats sueltos: " + heartbeats, heartbeats / hours <= 12);
+    }
+}
@@ -0,0 +1,237 @@
+package com.domipancho.domiciliarios;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Reproduce una traza grabada a través de {@link TrackingEngine}, el mismo código
+ * que corre LocationForegroundService, con un reloj virtual:
+ * - los fixes los entrega una {@link FakeLocationSource}: uno por uno como el
+ *   LocationManager, o en lotes como el proveedor fusionado;
+ * - el tick corre cuando el motor lo programó (como el postDelayed del handler);
+ * - cada petición de red retiene el wake lock {@link #NETWORK_HOLD_MS}, como el guard
+ *   del pool de red; fix y tick lo retienen mientras corren (instantáneo en el reloj virtual).
+ *
+ * Determinista: mismo resultado en cada corrida, sin hilos ni red.
+ */
+final class TraceReplay implements TrackingEngine.Actions, LocationSource.Listener {
+
+    static final long NETWORK_HOLD_MS = 400;   // ida y vuelta típica por datos móviles
+    static final int OUTBOX_BATCH_SIZE = 50;   // como el drenado de la bandeja del servicio
+    static final long RESTART_FIRST_FIX_MS = 10000; // re-arranque: el receptor tarda en dar el primer fix
+
+    static final class Result {
+        double km;
+        long durationMs;
+        long fixesDelivered;
+        long fixesAccepted;
+        long locationWakeups;        // veces que la fuente despertó al servicio (un lote cuenta una)
+        long locationUploads;
+        long uploadedPoints;
+        long uploadBytes;
+        long heartbeats;
+        long pedidos;
+        long ticks;
+        long notificationPosts;
+        long wakeLockMs;
+        // Edad del punto más nuevo de cada subida al confirmarla el servidor (lo que ve el cliente)
+        final TrackingMetrics.LatencyHistogram pointAge = new TrackingMetrics.LatencyHistogram();
+        long persistedFixes;
+        boolean warm;                // restore() aceptó el fix guardado
+        long firstUploadMs = -1;     // del arranque a la primera ubicación confirmada
+        boolean firstUploadCached;   // la primera subida fue el fix guardado (anterior a la traza)
+
+        double uploadsPerKm() {
+            return locationUploads / km;
+        }
+
+        double bytesPerKm() {
+            return uploadBytes / km;
+        }
+
+        /**
+         * Todas las veces que la CPU despertó por el tracking: fixes y ticks
+         */
+        long wakeups() {
+            return locationWakeups + ticks;
+        }
+
+        double hours() {
+            return durationMs / 3600000.0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(java.util.Locale.ROOT,
+                "%.2f km en %.1f min - fixes %d/%d en %d despertadas - subidas %d (%d puntos, %d B) - heartbeats %d"
+                    + " - pedidos %d - ticks %d - notificaciones %d - wake lock %d ms",
+                km, durationMs / 60000.0, fixesAccepted, fixesDelivered, locationWakeups, locationUploads, uploadedPoints,
+                uploadBytes, heartbeats, pedidos, ticks, notificationPosts, wakeLockMs);
+        }
+    }
+
+    private final Result result = new Result();
+    private final WakeLockManager wakeLocks;
+    private final PriorityQueue<Long> releases = new PriorityQueue<>();
+    private final FakeLocationSource source;
+    private TrackingEngine engine;
+    private long now;
+    private long start;
+    private long nextTick = Long.MAX_VALUE;
+
+    private TraceReplay(boolean batching) {
+        source = new FakeLocationSource(this, batching);
+        wakeLocks = new WakeLockManager(new WakeLockManager.Lock() {
+            @Override
+            public void acquire(long timeoutMs) {
+            }
+
+            @Override
+            public void release() {
+            }
+        }, () -> now);
+    }
+
+    static Result replay(List<LocationFix> trace, boolean activeOrders) {
+        return replay(trace, activeOrders, false);
+    }
+
+    /**
+     * {@code batching}: la fuente entrega en lotes cuando el perfil lo permite (fusionado)
+     */
+    static Result replay(List<LocationFix> trace, boolean activeOrders, boolean batching) {
+        return new TraceReplay(batching).run(trace, activeOrders, null);
+    }
+
+    /**
+     * Re-arranque del servicio al comienzo de la traza con la foto que quedó guardada;
+     * el primer fix llega {@link #RESTART_FIRST_FIX_MS} después
+     */
+    static Result replayRestart(List<LocationFix> trace, TrackingState saved) {
+        return new TraceReplay(false).run(trace, saved.hasPedidosActivos(), saved);
+    }
+
+    private Result run(List<LocationFix> trace, boolean activeOrders, TrackingState saved) {
+        start = trace.get(0).getTimestamp();
+        long end = trace.get(trace.size() - 1).getTimestamp();
+        now = start;
+        source.setFirstFixAt(saved != null ? start + RESTART_FIRST_FIX_MS : start);
+        engine = new TrackingEngine(this, (title, text) -> result.notificationPosts++, now);
+        if (saved != null) {
+            result.warm = engine.restore(saved, now);
+        } else {
+            engine.setActiveOrders(activeOrders, now);
+        }
+        engine.start(now);
+
+        int next = 0;
+        while (true) {
+            long fixAt = next < trace.size() ? trace.get(next).getTimestamp() : Long.MAX_VALUE;
+            long releaseAt = releases.isEmpty() ? Long.MAX_VALUE : releases.peek();
+            long flushAt = Math.max(now, source.nextFlushAt());
+            long at = Math.min(Math.min(fixAt, flushAt), Math.min(nextTick, releaseAt));
+            if (at > end) {
+                break;
+            }
+            now = at;
+
+            if (flushAt == at) {
+                source.flush(now);
+            } else if (releaseAt == at) {
+                releases.poll();
+                wakeLocks.release();
+            } else if (nextTick == at) {
+                nextTick = Long.MAX_VALUE;
+                result.ticks++;
+                wakeLocks.run(() -> engine.tick(now));
+            } else {
+                source.offer(trace.get(next++), now);
+            }
+        }
+
+        now = end;
+        wakeLocks.releaseAll();
+        result.durationMs = end - start;
+        result.wakeLockMs = wakeLocks.getTotalHeldMs();
+        result.km = Traces.lengthKm(Traces.onlyProvider(trace, "gps"));
+        return result;
+    }
+
+    private void request() {
+        wakeLocks.acquire();
+        releases.add(now + NETWORK_HOLD_MS);
+    }
+
+    // ==================== LocationSource.Listener ====================
+
+    @Override
+    public void onLocations(List<LocationFix> fixes) {
+        result.locationWakeups++;
+        result.fixesDelivered += fixes.size();
+        wakeLocks.run(() -> {
+            long antes = engine.getFixFilter().getAcceptedCount();
+            engine.onFixes(fixes, now);
+            result.fixesAccepted += engine.getFixFilter().getAcceptedCount() - antes;
+        });
+    }
+
+    @Override
+    public void onLastKnown(List<LocationFix> candidates) {
+    }
+
+    // ==================== TrackingEngine.Actions ====================
+
+    @Override
+    public void registerProfile(SamplingPolicy.Profile profile) {
+        source.request(profile);
+    }
+
+    @Override
+    public void scheduleTick(long delayMs) {
+        nextTick = now + delayMs;
+    }
+
+    @Override
+    public void sendPoints(List<LocationFix> points, UploadLanes.Lane lane) {
+        result.pointAge.record(now + NETWORK_HOLD_MS - points.get(points.size() - 1).getTimestamp());
+        if (result.firstUploadMs < 0) {
+            result.firstUploadMs = now + NETWORK_HOLD_MS - start;
+            result.firstUploadCached = points.get(0).getTimestamp() < start;
+        }
+        result.uploadedPoints += points.size();
+        if (points.size() == 1) {
+            result.locationUploads++;
+            result.uploadBytes += LocationBatchCodec.toJson(points.get(0), now).getBytes(StandardCharsets.UTF_8).length;
+            request();
+            return;
+        }
+        for (int i = 0; i < points.size(); i += OUTBOX_BATCH_SIZE) {
+            List<LocationFix> lote = points.subList(i, Math.min(points.size(), i + OUTBOX_BATCH_SIZE));
+            result.locationUploads++;
+            result.uploadBytes += LocationBatchCodec.encodeSmallest(lote).length;
+            request();
+        }
+    }
+
+    @Override
+    public void checkOrders() {
+        result.pedidos++;
+        request();
+    }
+
+    @Override
+    public void sendHeartbeat() {
+        result.heartbeats++;
+        request();
+    }
+
+    @Override
+    public void refreshStats(long now) {
+    }
+
+    @Override
+    public void persistFix(LocationFix fix) {
+        result.persistedFixes++;
+    }
+}
@@ -0,0 +1,214 @@
+package com.domipancho.domiciliarios;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * Presupuestos de costo del tracking por traza: si un cambio sube las subidas por km,
+ * los bytes, las notificaciones o el tiempo de CPU retenida más allá del margen, falla.
+ * Los valores medidos están en el comentario de cada prueba; el presupuesto les da ~20%.
+ * Si un cambio los baja, ajustar el presupuesto hacia abajo en el mismo commit.
+ *
+ * Con entrega los puntos van por el carril expreso (el servidor nunca queda con
+ * una posición de más de 10 s si hay fixes): cuesta ~2.5x subidas por km a cambio
+ * de que el mapa del cliente no se atrase hasta 20-30 s en las rectas.
+ */
+public class TraceReplayTest {
+
+    // ==================== En movimiento: por km ====================
+
+    @Test
+    public void ciudadEnMotoConEntrega() throws Exception {
+        // Medido: 10.9 subidas/km, 1338 B/km, 92 notificaciones, 147 s/h de wake lock
+        TraceReplay.Result r = replay("ciudad_moto.csv", true);
+        assertPorKm(r, 13.0, 1600);
+        assertNotificaciones(r, 110);
+        assertWakeLockPorHora(r, 176000);
+    }
+
+    @Test
+    public void tunelConEntrega() throws Exception {
+        // Medido: 7.5 subidas/km, 920 B/km, 30 notificaciones, 128 s/h de wake lock
+        TraceReplay.Result r = replay("tunel.csv", true);
+        assertPorKm(r, 9.0, 1100);
+        assertNotificaciones(r, 36);
+        assertWakeLockPorHora(r, 153000);
+    }
+
+    @Test
+    public void vueltaGpxConEntrega() throws Exception {
+        // Medido: 16.0 subidas/km, 1938 B/km, 17 notificaciones, 186 s/h de wake lock
+        TraceReplay.Result r = replay("vuelta_manzana.gpx", true);
+        assertPorKm(r, 19.2, 2330);
+        assertNotificaciones(r, 21);
+        assertWakeLockPorHora(r, 223000);
+    }
+
+    // ==================== Quieto: por hora (los km son ruido) ====================
+
+    @Test
+    public void paradoEsperandoSinPedido() throws Exception {
+        // Medido: 117 subidas/h, 14.7 KB/h, 8 notificaciones, 48 s/h de wake lock
+        TraceReplay.Result r = replay("parado_esperando.csv", false);
+        assertPorHora(r, 140, 17600);
+        assertNotificaciones(r, 10);
+        assertWakeLockPorHora(r, 58000);
+    }
+
+    @Test
+    public void derivaGpsConEntrega() throws Exception {
+        // Medido: 272 subidas/h, 33.4 KB/h, 60 notificaciones, 120 s/h de wake lock
+        TraceReplay.Result r = replay("deriva_gps.csv", true);
+        assertPorHora(r, 330, 40100);
+        assertNotificaciones(r, 72);
+        assertWakeLockPorHora(r, 144000);
+    }
+
+    // ==================== Carriles: edad del punto que ve el cliente ====================
+
+    @Test
+    public void carrilExpresoAcotaLaEdadDelPunto() throws Exception {
+        // Medido con entrega: p90 3 s, máximo 6.4 s (sin entrega: p90 15 s, máximo 34 s)
+        TraceReplay.Result entrega = replay("ciudad_moto.csv", true);
+        TraceReplay.Result sinEntrega = replay("ciudad_moto.csv", false);
+
+        // Peor caso con fixes llegando: el límite de atraso, un intervalo de GPS, la espera y la red
+        long cota = UploadLanes.EXPRESS_MAX_STALE_MS + SamplingPolicy.Profile.DELIVERY.getGpsIntervalMs()
+            + UploadLanes.EXPRESS_MAX_WAIT_MS + TraceReplay.NETWORK_HOLD_MS;
+        assertTrue("máximo " + entrega.pointAge.getMax(), entrega.pointAge.getMax() <= cota);
+        assertTrue("p90 " + entrega.pointAge.percentile(0.90), entrega.pointAge.percentile(0.90) <= 3000);
+        assertTrue(entrega.pointAge.percentile(0.90) < sinEntrega.pointAge.percentile(0.90));
+    }
+
+    // ==================== Fuente con lotes (proveedor fusionado) ====================
+
+    @Test
+    public void lotesFueraDeEntregaAhorranDespertadas() throws Exception {
+        // Medido sin pedido: 65 despertadas con lotes vs 153 de a un fix (ciudad),
+        // 57 vs 61 quieto; sin más subidas ni más wake lock
+        List<LocationFix> ciudad = Traces.load("ciudad_moto.csv");
+        TraceReplay.Result unoPorUno = TraceReplay.replay(ciudad, false, false);
+        TraceReplay.Result lotes = TraceReplay.replay(ciudad, false, true);
+        assertTrue(lotes.toString(), lotes.wakeups() <= 78);
+        assertTrue(lotes.wakeups() < unoPorUno.wakeups());
+        assertTrue(lotes.locationUploads <= unoPorUno.locationUploads);
+        assertTrue(lotes.wakeLockMs <= unoPorUno.wakeLockMs);
+
+        List<LocationFix> parado = Traces.load("parado_esperando.csv");
+        TraceReplay.Result paradoUnoPorUno = TraceReplay.replay(parado, false, false);
+        TraceReplay.Result paradoLotes = TraceReplay.replay(parado, false, true);
+        assertTrue(paradoLotes.toString(), paradoLotes.wakeups() < paradoUnoPorUno.wakeups());
+        assertTrue(paradoLotes.locationUploads <= paradoUnoPorUno.locationUploads);
+        assertTrue(paradoLotes.wakeLockMs <= paradoUnoPorUno.wakeLockMs);
+    }
+
+    @Test
+    public void conEntregaLaFuenteConLotesEntregaDeAUno() throws Exception {
+        // En entrega el retraso máximo es 0: el carril exprés ve exactamente lo mismo
+        for (String nombre : new String[] {"ciudad_moto.csv", "tunel.csv", "deriva_gps.csv"}) {
+            List<LocationFix> trace = Traces.load(nombre);
+            assertEquals(nombre, TraceReplay.replay(trace, true, false).toString(),
+                TraceReplay.replay(trace, true, true).toString());
+        }
+    }
+
+    // ==================== Re-arranque ====================
+
+    @Test
+    public void reinicioTibioSubeElFixGuardadoAlInstante() throws Exception {
+        // Medido: tibio 400 ms (el fix guardado sale en el primer tick), frío 11.4 s
+        // (espera al primer fix del receptor y el servidor queda sin posición mientras tanto)
+        List<LocationFix> ciudad = Traces.load("ciudad_moto.csv");
+        int corte = ciudad.size() / 2;
+        List<LocationFix> resto = ciudad.subList(corte, ciudad.size());
+        TrackingState guardado = new TrackingState(true, 12, true, 0, ciudad.get(corte - 10));
+
+        TraceReplay.Result tibio = TraceReplay.replayRestart(resto, guardado);
+        TraceReplay.Result frio = TraceReplay.replayRestart(resto, guardado.withLastFix(null));
+
+        assertTrue(tibio.warm);
+        assertTrue(tibio.firstUploadCached);
+        assertEquals(TraceReplay.NETWORK_HOLD_MS, tibio.firstUploadMs);
+        assertFalse(frio.warm);
+        assertTrue(frio.firstUploadMs > TraceReplay.RESTART_FIRST_FIX_MS);
+        // Con la foto al día la verificación de pedidos por red espera su intervalo
+        assertEquals(frio.pedidos - 1, tibio.pedidos);
+    }
+
+    @Test
+    public void fixGuardadoViejoArrancaEnFrio() throws Exception {
+        List<LocationFix> ciudad = Traces.load("ciudad_moto.csv");
+        int corte = ciudad.size() / 2;
+        TrackingState viejo = new TrackingState(true, 0, false, 0, ciudad.get(0));
+
+        TraceReplay.Result r = TraceReplay.replayRestart(ciudad.subList(corte, ciudad.size()), viejo);
+        assertFalse(r.warm);
+        assertFalse(r.firstUploadCached);
+    }
+
+    @Test
+    public void primerFixVivoSaleSinEsperarElIntervalo() throws Exception {
+        // Medido: 400 ms sin pedidos (antes esperaba hasta el intervalo de subida, 30 s)
+        TraceReplay.Result r = replay("parado_esperando.csv", false);
+        assertTrue("primera subida " + r.firstUploadMs,
+            r.firstUploadMs < SamplingPolicy.Profile.IDLE.getUploadIntervalMs());
+        // El fix para el re-arranque se guarda a lo sumo cada WARM_FIX_SAVE_INTERVAL_MS
+        assertTrue(r.persistedFixes <= r.durationMs / TrackingEngine.WARM_FIX_SAVE_INTERVAL_MS + 1);
+    }
+
+    // ==================== Arnés ====================
+
+    @Test
+    public void esDeterminista() throws Exception {
+        List<LocationFix> trace = Traces.load("ciudad_moto.csv");
+        assertEquals(TraceReplay.replay(trace, true).toString(), TraceReplay.replay(trace, true).toString());
+    }
+
+    @Test
+    public void cargaGpxConPrecisionDeHdop() throws Exception {
+        List<LocationFix> trace = Traces.load("vuelta_manzana.gpx");
+        assertEquals(156, trace.size());
+        assertEquals(1000, trace.get(1).getTimestamp() - trace.get(0).getTimestamp());
+        assertEquals(1.3f * Traces.GPX_METERS_PER_HDOP, trace.get(0).getAccuracy(), 0.001f);
+        assertTrue(trace.get(0).hasSpeed());
+    }
+
+    @Test
+    public void todosLosPuntosSalenYElHeartbeatVaACuestas() throws Exception {
+        TraceReplay.Result r = replay("ciudad_moto.csv", true);
+        assertTrue(r.uploadedPoints >= r.locationUploads);
+        // Subiendo ubicación cada pocos segundos casi no hace falta heartbeat suelto
+        assertTrue(r.toString(), r.heartbeats <= r.durationMs / TrackingEngine.HEARTBEAT_INTERVAL_MS / 4);
+        // Pedidos de respaldo cada 2 min (más el de arranque)
+        assertEquals(r.durationMs / TrackingEngine.PEDIDOS_INTERVAL_MS + 1, r.pedidos);
+    }
+
+    private static TraceReplay.Result replay(String trace, boolean activeOrders) throws Exception {
+        return TraceReplay.replay(Traces.load(trace), activeOrders);
+    }
+
+    private static void assertPorKm(TraceReplay.Result r, double maxUploadsPerKm, double maxBytesPerKm) {
+        assertTrue("subidas/km " + r.uploadsPerKm() + " - " + r, r.uploadsPerKm() <= maxUploadsPerKm);
+        assertTrue("bytes/km " + r.bytesPerKm() + " - " + r, r.bytesPerKm() <= maxBytesPerKm);
+    }
+
+    private static void assertPorHora(TraceReplay.Result r, double maxUploadsPerHour, double maxBytesPerHour) {
+        double subidas = r.locationUploads / r.hours();
+        double bytes = r.uploadBytes / r.hours();
+        assertTrue("subidas/h " + subidas + " - " + r, subidas <= maxUploadsPerHour);
+        assertTrue("bytes/h " + bytes + " - " + r, bytes <= maxBytesPerHour);
+    }
+
+    private static void assertNotificaciones(TraceReplay.Result r, long max) {
+        assertTrue("notificaciones - " + r, r.notificationPosts <= max);
+    }
+
+    private static void assertWakeLockPorHora(TraceReplay.Result r, long maxMsPerHour) {
+        double msPorHora = r.wakeLockMs / r.hours();
+        assertTrue("wake lock ms/h " + msPorHora + " - " + r, msPorHora <= maxMsPerHour);
+    }
+}
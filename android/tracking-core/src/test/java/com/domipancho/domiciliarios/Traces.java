@@ -0,0 +1,118 @@
+package com.domipancho.domiciliarios;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+/**
+ * Carga las trazas de src/test/resources/traces:
+ * - CSV: timestamp,latitud,longitud,accuracy,provider,speed (líneas con # son comentarios);
+ * - GPX: los trkpt de un track grabado (todos como "gps"; precisión de hdop si viene).
+ */
+final class Traces {
+
+    private Traces() {
+    }
+
+    static final float GPX_DEFAULT_ACCURACY_M = 10f;
+    static final float GPX_METERS_PER_HDOP = 5f;
+
+    static List<LocationFix> load(String name) throws IOException {
+        InputStream in = Traces.class.getResourceAsStream("/traces/" + name);
+        if (in == null) {
+            throw new IOException("Traza no encontrada: " + name);
+        }
+        if (name.endsWith(".gpx")) {
+            try (InputStream gpx = in) {
+                return loadGpx(gpx);
+            }
+        }
+
+        List<LocationFix> fixes = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] parts = line.split(",", -1);
+                fixes.add(new LocationFix(
+                    Double.parseDouble(parts[1]),
+                    Double.parseDouble(parts[2]),
+                    Long.parseLong(parts[0]),
+                    Float.parseFloat(parts[3]),
+                    parts[4],
+                    parts[5].isEmpty() ? -1f : Float.parseFloat(parts[5])
+                ));
+            }
+        }
+        return fixes;
+    }
+
+    private static List<LocationFix> loadGpx(InputStream in) throws IOException {
+        Document doc;
+        try {
+            doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(in);
+        } catch (ParserConfigurationException | SAXException e) {
+            throw new IOException("GPX inválido: " + e.getMessage(), e);
+        }
+
+        List<LocationFix> fixes = new ArrayList<>();
+        NodeList points = doc.getElementsByTagName("trkpt");
+        for (int i = 0; i < points.getLength(); i++) {
+            Element point = (Element) points.item(i);
+            String time = childText(point, "time");
+            if (time == null) {
+                continue; // sin hora no se puede reproducir
+            }
+            String hdop = childText(point, "hdop");
+            String speed = childText(point, "speed");
+            fixes.add(new LocationFix(
+                Double.parseDouble(point.getAttribute("lat")),
+                Double.parseDouble(point.getAttribute("lon")),
+                Instant.parse(time).toEpochMilli(),
+                hdop != null ? Float.parseFloat(hdop) * GPX_METERS_PER_HDOP : GPX_DEFAULT_ACCURACY_M,
+                "gps",
+                speed != null ? Float.parseFloat(speed) : -1f
+            ));
+        }
+        return fixes;
+    }
+
+    private static String childText(Element parent, String tag) {
+        NodeList nodes = parent.getElementsByTagName(tag);
+        return nodes.getLength() > 0 ? nodes.item(0).getTextContent().trim() : null;
+    }
+
+    static List<LocationFix> onlyProvider(List<LocationFix> fixes, String provider) {
+        List<LocationFix> result = new ArrayList<>();
+        for (LocationFix fix : fixes) {
+            if (provider.equals(fix.getProvider())) {
+                result.add(fix);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Longitud del recorrido en km
+     */
+    static double lengthKm(List<LocationFix> fixes) {
+        double meters = 0;
+        for (int i = 1; i < fixes.size(); i++) {
+            meters += fixes.get(i).distanceTo(fixes.get(i - 1));
+        }
+        return meters / 1000.0;
+    }
+}
@@ -0,0 +1,134 @@
+package com.domipancho.domiciliarios;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Contadores sin locks, percentiles del histograma y volcado a archivo.
+ */
+public class TrackingMetricsTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private final TrackingMetrics metrics = new TrackingMetrics(0);
+
+    @Test
+    public void percentilesFollowBuckets() {
+        TrackingMetrics.LatencyHistogram histogram = new TrackingMetrics.LatencyHistogram();
+        assertEquals(0, histogram.percentile(0.5));
+
+        for (int i = 0; i < 90; i++) {
+            histogram.record(120); // cubeta <=150
+        }
+        for (int i = 0; i < 9; i++) {
+            histogram.record(900); // cubeta <=1000
+        }
+        histogram.record(42000); // última cubeta
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(150, histogram.percentile(0.50));
+        assertEquals(150, histogram.percentile(0.90));
+        assertEquals(1000, histogram.percentile(0.99));
+        assertEquals(42000, histogram.percentile(1.0));
+        assertEquals(42000, histogram.getMax());
+    }
+
+    @Test
+    public void percentileNeverExceedsMax() {
+        TrackingMetrics.LatencyHistogram histogram = new TrackingMetrics.LatencyHistogram();
+        histogram.record(3);
+        assertEquals(3, histogram.percentile(0.99));
+    }
+
+    @Test
+    public void countersFromManyThreadsAddUp() throws Exception {
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 10000; i++) {
+                    metrics.onFixReceived(i % 2 == 0 ? "gps" : "network");
+                    long start = metrics.onUploadStarted();
+                    metrics.onUploadFinished(start, i % 10 != 0, 1);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(40000, metrics.getFixesReceived());
+        assertEquals(40000, metrics.getUploadsAttempted());
+        assertEquals(36000, metrics.getUploadsSucceeded());
+        assertEquals(4000, metrics.getUploadsFailed());
+        assertEquals(40000, metrics.getUploadLatency().getCount());
+    }
+
+    @Test
+    public void jsonHasEveryMetric() {
+        metrics.onFixReceived("gps");
+        metrics.onFixReceived("network");
+        metrics.onFixReceived("fused");
+        metrics.onFixFiltered();
+        metrics.onNotificationPosted();
+        metrics.setBacklog(17);
+        metrics.setWakeLock(1200, 5400);
+        metrics.setBytes(2048, 512);
+        metrics.setMemory(18432);
+        metrics.onPointDelivered(UploadLanes.Lane.EXPRESS, 2800);
+        metrics.onServiceStarted(true, 1000);
+        metrics.onLocationUploaded(1450);
+        metrics.onLocationUploaded(9000); // solo cuenta la primera
+
+        String json = metrics.toJson(60000);
+        assertTrue(json, json.startsWith("{\"timestamp\":60000,\"uptimeMs\":60000,"));
+        assertTrue(json, json.contains("\"fixes\":{\"gps\":1,\"network\":1,\"otros\":1,\"descartados\":1}"));
+        assertTrue(json, json.contains("\"latenciaMs\":{\"p50\":0,\"p90\":0,\"p99\":0,\"max\":0}"));
+        assertTrue(json, json.contains("\"carriles\":{\"expreso\":{\"subidas\":1,\"p50\":2800,\"p90\":2800,"
+            + "\"p99\":2800,\"max\":2800},\"enEspera\":{\"subidas\":0,"));
+        assertTrue(json, json.contains("\"primeraSubidaMs\":{\"tibio\":{\"arranques\":1,\"p50\":450,"));
+        assertTrue(json, json.contains("\"frio\":{\"arranques\":0,"));
+        assertTrue(json, json.contains("\"bytes\":{\"enviados\":2048,\"recibidos\":512}"));
+        assertTrue(json, json.contains("\"bandejaPendientes\":17"));
+        assertTrue(json, json.contains("\"wakeLock\":{\"estaHoraMs\":1200,\"totalMs\":5400}"));
+        assertTrue(json, json.contains("\"memoria\":{\"pssKb\":18432}"));
+        assertTrue(json, json.endsWith("\"notificaciones\":1}"));
+    }
+
+    @Test
+    public void dumpAppendsOneLinePerCallAndRotates() throws Exception {
+        File file = new File(tmp.getRoot(), TrackingMetrics.DUMP_FILE_NAME);
+        metrics.dump(file, 1000);
+        metrics.dump(file, 2000);
+        assertEquals(2, countLines(file));
+
+        // Llenar por encima del tope: la siguiente foto rota el archivo
+        long lineBytes = file.length() / 2;
+        for (long t = 3000; file.length() <= TrackingMetrics.MAX_DUMP_BYTES; t++) {
+            metrics.dump(file, t);
+        }
+        metrics.dump(file, 999999);
+
+        File rotated = new File(file.getPath() + ".1");
+        assertTrue(rotated.exists());
+        assertEquals(1, countLines(file));
+        assertTrue(file.length() + rotated.length() <= 2 * TrackingMetrics.MAX_DUMP_BYTES + 2 * lineBytes);
+    }
+
+    private static int countLines(File file) throws Exception {
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            int lines = 0;
+            while (reader.readLine() != null) {
+                lines++;
+            }
+            return lines;
+        }
+    }
+}
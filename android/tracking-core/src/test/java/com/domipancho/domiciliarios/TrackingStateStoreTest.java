@@ -0,0 +1,128 @@
+package com.domipancho.domiciliarios;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * Lecturas desde memoria y escrituras agrupadas hasta el flush.
+ */
+public class TrackingStateStoreTest {
+
+    private static final class FakePersistence implements TrackingStateStore.Persistence {
+        TrackingState stored;
+        int loads;
+        final List<TrackingState> saved = new ArrayList<>();
+
+        FakePersistence(TrackingState stored) {
+            this.stored = stored;
+        }
+
+        @Override
+        public TrackingState load() {
+            loads++;
+            return stored;
+        }
+
+        @Override
+        public void save(TrackingState state) {
+            stored = state;
+            saved.add(state);
+        }
+    }
+
+    private int flushRequests;
+
+    private TrackingStateStore newStore(FakePersistence persistence) {
+        return new TrackingStateStore(persistence, () -> flushRequests++);
+    }
+
+    @Test
+    public void loadsOnceAndReadsFromMemory() {
+        FakePersistence persistence = new FakePersistence(new TrackingState(true, 7, false, 100, null));
+        TrackingStateStore store = newStore(persistence);
+
+        for (int i = 0; i < 100; i++) {
+            assertTrue(store.snapshot().isTrackingActive());
+            assertEquals(7, store.snapshot().getPedidoActivo());
+        }
+        assertEquals(1, persistence.loads);
+    }
+
+    @Test
+    public void nothingStoredStartsEmpty() {
+        TrackingStateStore store = newStore(new FakePersistence(null));
+        assertSame(TrackingState.EMPTY, store.snapshot());
+    }
+
+    @Test
+    public void burstOfUpdatesIsOneWrite() {
+        FakePersistence persistence = new FakePersistence(null);
+        TrackingStateStore store = newStore(persistence);
+
+        store.update(s -> s.withTrackingActive(true, 1000));
+        for (int i = 0; i < 50; i++) {
+            LocationFix fix = new LocationFix(4.6 + i * 1e-4, -74.08, 2000 + i * 1000, 8f, "gps");
+            store.update(s -> s.withLastFix(fix));
+        }
+        store.update(s -> s.withPedidoActivo(12));
+
+        assertEquals(1, flushRequests);
+        assertTrue(persistence.saved.isEmpty());
+
+        store.flush();
+        assertEquals(1, persistence.saved.size());
+        TrackingState saved = persistence.saved.get(0);
+        assertTrue(saved.isTrackingActive());
+        assertEquals(12, saved.getPedidoActivo());
+        assertEquals(51000, saved.getLastFix().getTimestamp());
+        assertEquals(52, store.getUpdateCount());
+    }
+
+    @Test
+    public void flushWithoutChangesDoesNotWrite() {
+        FakePersistence persistence = new FakePersistence(null);
+        TrackingStateStore store = newStore(persistence);
+        store.flush();
+        store.update(s -> s.withPedidoActivo(0)); // sin cambio real
+        store.flush();
+        assertTrue(persistence.saved.isEmpty());
+        assertEquals(0, flushRequests);
+    }
+
+    @Test
+    public void changeAfterFlushRequestsAnother() {
+        FakePersistence persistence = new FakePersistence(null);
+        TrackingStateStore store = newStore(persistence);
+
+        store.update(s -> s.withPedidoActivo(3));
+        store.flush();
+        store.update(s -> s.withPedidoActivo(0));
+        assertEquals(2, flushRequests);
+        assertTrue(store.isDirty());
+
+        store.flush();
+        assertEquals(0, persistence.stored.getPedidoActivo());
+        assertEquals(2, store.getSaveCount());
+    }
+
+    @Test
+    public void concurrentReadModifyWriteLosesNothing() throws Exception {
+        TrackingStateStore store = newStore(new FakePersistence(null));
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    store.update(s -> s.withPedidoActivo(s.getPedidoActivo() + 1));
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(4000, store.snapshot().getPedidoActivo());
+    }
+}
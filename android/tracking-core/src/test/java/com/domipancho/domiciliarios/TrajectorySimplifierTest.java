@@ -0,0 +1,212 @@
+package com.domipancho.domiciliarios;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class TrajectorySimplifierTest {
+
+    private static final double LAT = 4.6483;
+    private static final double LON = -74.0625;
+    private static final double METERS_PER_DEGREE = Math.toRadians(1) * LocationFix.EARTH_RADIUS_M;
+
+    @Test
+    public void straightLineOnlyEmitsOnSilence() {
+        TrajectorySimplifier simplifier = new TrajectorySimplifier(15f, 30000);
+
+        // 2 minutos hacia el norte a 10 m/s, 1 fix por segundo
+        List<LocationFix> emitted = new ArrayList<>();
+        for (int i = 0; i <= 120; i++) {
+            LocationFix out = simplifier.process(fix(i * 10, 0, i * 1000L, 10f));
+            if (out != null) {
+                emitted.add(out);
+            }
+        }
+
+        // El primero + uno cada 30 s
+        assertEquals(5, emitted.size());
+        for (int i = 1; i < emitted.size(); i++) {
+            assertEquals(30000, emitted.get(i).getTimestamp() - emitted.get(i - 1).getTimestamp());
+        }
+    }
+
+    @Test
+    public void emitsVertexAtTurn() {
+        TrajectorySimplifier simplifier = new TrajectorySimplifier(15f, 60000);
+        List<LocationFix> emitted = new ArrayList<>();
+
+        // 200 m al norte y luego 200 m al este (giro de 90° en (200, 0))
+        long t = 0;
+        for (int i = 0; i <= 20; i++, t += 1000) {
+            add(emitted, simplifier.process(fix(i * 10, 0, t, 10f)));
+        }
+        for (int i = 1; i <= 20; i++, t += 1000) {
+            add(emitted, simplifier.process(fix(200, i * 10, t, 10f)));
+        }
+
+        LocationFix corner = fix(200, 0, 0, 10f);
+        boolean found = false;
+        for (LocationFix point : emitted) {
+            found |= point.distanceTo(corner) <= 15;
+        }
+        assertTrue("Debe emitir el vértice del giro: " + emitted, found);
+        assertTrue(emitted.size() <= 3);
+    }
+
+    @Test
+    public void emitsOnceWhenStopping() {
+        TrajectorySimplifier simplifier = new TrajectorySimplifier(15f, 60000);
+        long t = 0;
+        for (int i = 0; i <= 10; i++, t += 1000) {
+            simplifier.process(fix(i * 10, 0, t, 10f));
+        }
+
+        LocationFix stop = simplifier.process(fix(101, 0, t, 0.2f));
+        assertNotNull("La parada se emite de inmediato", stop);
+        assertEquals(t, stop.getTimestamp());
+
+        // Quieto: no vuelve a emitir hasta el silencio máximo
+        for (int i = 1; i < 30; i++) {
+            assertNull(simplifier.process(fix(101, 0, t + i * 1000L, 0.1f)));
+        }
+    }
+
+    @Test
+    public void pollKeepsLivenessWithoutNewFixes() {
+        TrajectorySimplifier simplifier = new TrajectorySimplifier(15f, 30000);
+        LocationFix first = fix(0, 0, 0, 0f);
+        simplifier.process(first);
+
+        assertNull(simplifier.poll(29999));
+        assertSame(first, simplifier.poll(30000));
+        // Después de la señal de vida, el silencio vuelve a contar desde ahí
+        assertNull(simplifier.poll(45000));
+        assertSame(first, simplifier.poll(60000));
+    }
+
+    @Test
+    public void cityRideReducesPointsPerKm() throws Exception {
+        List<LocationFix> filtered = filter(Traces.load("ciudad_moto.csv"));
+        TrajectorySimplifier simplifier = new TrajectorySimplifier();
+
+        List<LocationFix> emitted = run(simplifier, filtered);
+
+        double km = Traces.lengthKm(Traces.onlyProvider(filtered, "gps"));
+        double before = filtered.size() / km;
+        double after = emitted.size() / km;
+
+        assertTrue("Reducción insuficiente: " + before + " -> " + after + " puntos/km", after <= before / 4);
+        assertEquals(filtered.size(), simplifier.getReceivedCount());
+        assertEquals(emitted.size(), simplifier.getEmittedCount());
+        assertMaxGap(emitted, simplifier.getMaxSilenceMs() + 2000);
+        assertShapeWithinTolerance(Traces.onlyProvider(filtered, "gps"), emitted, 40);
+    }
+
+    @Test
+    public void parkedTraceOnlySendsLiveness() throws Exception {
+        List<LocationFix> filtered = filter(Traces.load("parado_esperando.csv"));
+        TrajectorySimplifier simplifier = new TrajectorySimplifier();
+
+        List<LocationFix> emitted = run(simplifier, filtered);
+
+        long minutes = (filtered.get(filtered.size() - 1).getTimestamp() - filtered.get(0).getTimestamp()) / 60000;
+        // Aprox. uno por silencio máximo (30 s), nada por el ruido del GPS
+        assertTrue(minutes + " min: " + simplifier, emitted.size() <= minutes * 2 + 3);
+        assertMaxGap(emitted, simplifier.getMaxSilenceMs() + 2000);
+    }
+
+    @Test
+    public void tunnelTraceKeepsLivenessDuringOutage() throws Exception {
+        List<LocationFix> filtered = filter(Traces.load("tunel.csv"));
+        TrajectorySimplifier simplifier = new TrajectorySimplifier();
+
+        List<LocationFix> emitted = run(simplifier, filtered);
+
+        assertTrue(emitted.size() < filtered.size() / 3);
+        // En el túnel el filtro deja pasar pocos fixes de red: el silencio no puede ser menor que eso
+        assertMaxGap(emitted, simplifier.getMaxSilenceMs() + maxGap(filtered));
+    }
+
+    private static List<LocationFix> filter(List<LocationFix> trace) {
+        FixFilter filter = new FixFilter();
+        List<LocationFix> output = new ArrayList<>();
+        for (LocationFix fix : trace) {
+            add(output, filter.process(fix));
+        }
+        return output;
+    }
+
+    private static List<LocationFix> run(TrajectorySimplifier simplifier, List<LocationFix> fixes) {
+        List<LocationFix> emitted = new ArrayList<>();
+        for (LocationFix fix : fixes) {
+            add(emitted, simplifier.process(fix));
+        }
+        return emitted;
+    }
+
+    private static void add(List<LocationFix> list, LocationFix fix) {
+        if (fix != null) {
+            list.add(fix);
+        }
+    }
+
+    private static long maxGap(List<LocationFix> fixes) {
+        long max = 0;
+        for (int i = 1; i < fixes.size(); i++) {
+            max = Math.max(max, fixes.get(i).getTimestamp() - fixes.get(i - 1).getTimestamp());
+        }
+        return max;
+    }
+
+    private static void assertMaxGap(List<LocationFix> emitted, long maxGapMs) {
+        for (int i = 1; i < emitted.size(); i++) {
+            long gap = emitted.get(i).getTimestamp() - emitted.get(i - 1).getTimestamp();
+            assertTrue("Silencio de " + gap + " ms antes de " + emitted.get(i), gap <= maxGapMs);
+        }
+    }
+
+    /**
+     * Cada fix GPS hasta el último punto emitido debe quedar cerca de la polilínea simplificada
+     */
+    private static void assertShapeWithinTolerance(List<LocationFix> raw, List<LocationFix> emitted, double maxM) {
+        long end = emitted.get(emitted.size() - 1).getTimestamp();
+        for (LocationFix fix : raw) {
+            if (fix.getTimestamp() > end) {
+                break;
+            }
+            double best = Double.MAX_VALUE;
+            for (int i = 1; i < emitted.size(); i++) {
+                best = Math.min(best, distanceToSegment(fix, emitted.get(i - 1), emitted.get(i)));
+            }
+            assertTrue("Fix a " + best + " m de la ruta simplificada: " + fix, best <= maxM);
+        }
+    }
+
+    private static double distanceToSegment(LocationFix p, LocationFix a, LocationFix b) {
+        double cosLat = Math.cos(Math.toRadians(a.getLatitude()));
+        double bx = (b.getLongitude() - a.getLongitude()) * cosLat * METERS_PER_DEGREE;
+        double by = (b.getLatitude() - a.getLatitude()) * METERS_PER_DEGREE;
+        double px = (p.getLongitude() - a.getLongitude()) * cosLat * METERS_PER_DEGREE;
+        double py = (p.getLatitude() - a.getLatitude()) * METERS_PER_DEGREE;
+        double lengthSq = bx * bx + by * by;
+        double t = lengthSq > 0 ? Math.max(0, Math.min(1, (px * bx + py * by) / lengthSq)) : 0;
+        return Math.hypot(px - t * bx, py - t * by);
+    }
+
+    /**
+     * Fix a (norte, este) metros del punto base
+     */
+    private static LocationFix fix(double northM, double eastM, long timestamp, float speed) {
+        double cosLat = Math.cos(Math.toRadians(LAT));
+        return new LocationFix(
+            LAT + northM / METERS_PER_DEGREE,
+            LON + eastM / (METERS_PER_DEGREE * cosLat),
+            timestamp,
+            5f,
+            "gps",
+            speed
+        );
+    }
+}
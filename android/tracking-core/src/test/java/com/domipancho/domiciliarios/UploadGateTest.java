@@ -0,0 +1,88 @@
+package com.domipancho.domiciliarios;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Sin red no se intenta; errores del servidor con backoff y jitter; la flota
+ * no reconecta toda en el mismo segundo.
+ */
+public class UploadGateTest {
+
+    private final UploadGate gate = new UploadGate(new Random(7));
+
+    @Test
+    public void offlineSkipsUntilReconnect() {
+        assertTrue(gate.tryAcquire(0));
+        assertEquals(-1, gate.setOnline(false, 1000));
+        assertFalse(gate.tryAcquire(2000));
+        assertEquals(Long.MAX_VALUE, gate.delayUntilAllowed(2000));
+
+        long spread = gate.setOnline(true, 10000);
+        assertTrue(spread >= 0 && spread < UploadGate.RECONNECT_SPREAD_MS);
+        assertFalse(spread > 0 && gate.tryAcquire(10000));
+        assertTrue(gate.tryAcquire(10000 + spread));
+        assertEquals(1, gate.getOfflineSkips());
+    }
+
+    @Test
+    public void serverErrorsBackOffExponentiallyWithJitter() {
+        long now = 0;
+        long anterior = 0;
+        for (int fallo = 1; fallo <= 12; fallo++) {
+            long delay = gate.onResult(503, now);
+            long base = UploadGate.backoffMs(fallo);
+            assertTrue("fallo " + fallo + ": " + delay, delay >= base / 2 && delay <= base);
+            assertFalse(gate.tryAcquire(now + delay - 1));
+            assertTrue(gate.tryAcquire(now + delay));
+            now += delay;
+            anterior = base;
+        }
+        assertEquals(UploadGate.BACKOFF_MAX_MS, anterior);
+
+        assertEquals(0, gate.onResult(200, now));
+        assertEquals(0, gate.getConsecutiveFailures());
+        assertEquals(UploadGate.BACKOFF_BASE_MS, UploadGate.backoffMs(1));
+    }
+
+    @Test
+    public void clientErrorsDoNotBackOff() {
+        assertEquals(0, gate.onResult(400, 0));
+        assertEquals(0, gate.onResult(401, 0));
+        assertTrue(gate.tryAcquire(0));
+        assertTrue(gate.onResult(429, 0) > 0);
+        assertTrue(gate.onResult(0, 0) > 0); // conexión cortada
+    }
+
+    @Test
+    public void reconnectingFleetIsSpreadOut() {
+        int couriers = 1000;
+        int[] porSegundo = new int[(int) (UploadGate.RECONNECT_SPREAD_MS / 1000)];
+        Random semillas = new Random(42); // cada teléfono con su propia semilla, como new Random()
+        for (int i = 0; i < couriers; i++) {
+            UploadGate courier = new UploadGate(new Random(semillas.nextLong()));
+            courier.setOnline(false, 0);
+            porSegundo[(int) (courier.setOnline(true, 60000) / 1000)]++;
+        }
+        int max = 0;
+        for (int n : porSegundo) {
+            max = Math.max(max, n);
+        }
+        // Parejo: ~33 por segundo, nunca toda la flota junta
+        assertTrue("pico de " + max + " reconexiones en un segundo", max < couriers / 10);
+    }
+
+    @Test
+    public void burstPauseDoesNotShortenBackoff() {
+        long pausa = gate.onBurstDone(0);
+        assertTrue(pausa >= UploadGate.BURST_PAUSE_MS / 2 && pausa <= UploadGate.BURST_PAUSE_MS);
+
+        long backoff = 0;
+        for (int i = 0; i < 5; i++) {
+            backoff = gate.onResult(500, 0); // 16-32 s
+        }
+        assertEquals(backoff, gate.onBurstDone(0));
+    }
+}
@@ -0,0 +1,71 @@
+package com.domipancho.domiciliarios;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * Expreso: plazo corto y todos los puntos. En espera: solo el último por ventana.
+ */
+public class UploadLanesTest {
+
+    private final UploadLanes lanes = new UploadLanes();
+
+    private static LocationFix fix(long t) {
+        return new LocationFix(4.6, -74.08, t, 5f, "gps", 5f);
+    }
+
+    @Test
+    public void idleLaneKeepsOnlyTheLatest() {
+        lanes.add(fix(1000));
+        lanes.add(fix(2000));
+        lanes.add(fix(3000));
+        assertFalse(lanes.arm(3000)); // sin plazo: sale con el intervalo de subida
+        assertEquals(Long.MAX_VALUE, lanes.delayUntilDue(3000));
+
+        List<LocationFix> puntos = lanes.take();
+        assertEquals(1, puntos.size());
+        assertEquals(3000, puntos.get(0).getTimestamp());
+        assertEquals(2, lanes.getCoalescedCount());
+    }
+
+    @Test
+    public void expressLaneFlushesWithinTheWait() {
+        lanes.setLane(UploadLanes.Lane.EXPRESS);
+        lanes.add(fix(1000));
+        assertTrue(lanes.arm(1000));
+        lanes.add(fix(1500));
+        assertFalse(lanes.arm(1500)); // el plazo corre desde el primero
+        assertEquals(UploadLanes.EXPRESS_MAX_WAIT_MS - 500, lanes.delayUntilDue(1500));
+        assertFalse(lanes.isDue(2999));
+        assertTrue(lanes.isDue(1000 + UploadLanes.EXPRESS_MAX_WAIT_MS));
+
+        assertEquals(2, lanes.take().size());
+        assertTrue(lanes.isEmpty());
+        assertEquals(Long.MAX_VALUE, lanes.delayUntilDue(3000));
+    }
+
+    @Test
+    public void expressLaneRefreshesStalePosition() {
+        lanes.setLane(UploadLanes.Lane.EXPRESS);
+        lanes.add(fix(0));
+        lanes.take();
+
+        lanes.offerFresh(fix(UploadLanes.EXPRESS_MAX_STALE_MS - 1));
+        assertTrue(lanes.isEmpty()); // todavía fresca: la recta no se sube
+        lanes.offerFresh(fix(UploadLanes.EXPRESS_MAX_STALE_MS));
+        assertFalse(lanes.isEmpty());
+    }
+
+    @Test
+    public void switchingToIdleDropsTheDeadline() {
+        lanes.setLane(UploadLanes.Lane.EXPRESS);
+        lanes.add(fix(1000));
+        lanes.arm(1000);
+        assertTrue(lanes.setLane(UploadLanes.Lane.IDLE));
+        assertFalse(lanes.isDue(10000));
+        assertFalse(lanes.isEmpty());
+        assertFalse(lanes.setLane(UploadLanes.Lane.IDLE));
+    }
+}
@@ -0,0 +1,185 @@
+package com.domipancho.domiciliarios;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+/**
+ * Retenciones cortas contadas por referencia, tiempo retenido por hora y
+ * cobertura de las tareas del pool de red.
+ */
+public class WakeLockManagerTest {
+
+    private static final long HOUR = WakeLockManager.HOUR_MS;
+
+    private static final class FakeLock implements WakeLockManager.Lock {
+        boolean held;
+        long lastTimeout;
+        int acquires;
+        int releases;
+
+        @Override
+        public void acquire(long timeoutMs) {
+            held = true;
+            lastTimeout = timeoutMs;
+            acquires++;
+        }
+
+        @Override
+        public void release() {
+            held = false;
+            releases++;
+        }
+    }
+
+    private static final class FakeClock implements WakeLockManager.Clock {
+        long now;
+
+        @Override
+        public long now() {
+            return now;
+        }
+    }
+
+    private final FakeLock lock = new FakeLock();
+    private final FakeClock clock = new FakeClock();
+    private final WakeLockManager manager = new WakeLockManager(lock, clock);
+
+    @Test
+    public void nestedHoldsShareOneSystemLock() {
+        manager.acquire();
+        clock.now += 100;
+        manager.acquire();
+        manager.release();
+        assertTrue(lock.held);
+
+        clock.now += 200;
+        manager.release();
+        assertFalse(lock.held);
+        assertEquals(1, lock.acquires);
+        assertEquals(1, lock.releases);
+        assertEquals(WakeLockManager.HOLD_TIMEOUT_MS, lock.lastTimeout);
+        assertEquals(300, manager.getTotalHeldMs());
+        assertEquals(1, manager.getAcquisitionCount());
+    }
+
+    @Test
+    public void unbalancedReleaseIsIgnored() {
+        manager.release();
+        manager.acquire();
+        manager.release();
+        manager.release();
+        assertEquals(1, lock.releases);
+        assertFalse(manager.isHeld());
+    }
+
+    @Test
+    public void runReleasesEvenIfTaskThrows() {
+        try {
+            manager.run(() -> {
+                throw new IllegalStateException("falla");
+            });
+            fail();
+        } catch (IllegalStateException expected) {
+            // ok
+        }
+        assertFalse(lock.held);
+    }
+
+    @Test
+    public void forgottenHoldCountsOnlyUntilTimeout() {
+        manager.acquire();
+        clock.now += 10 * WakeLockManager.HOLD_TIMEOUT_MS;
+        assertEquals(WakeLockManager.HOLD_TIMEOUT_MS, manager.getTotalHeldMs());
+
+        manager.releaseAll();
+        assertEquals(WakeLockManager.HOLD_TIMEOUT_MS, manager.getTotalHeldMs());
+        assertFalse(lock.held);
+    }
+
+    @Test
+    public void keepAliveRenewsLongHolds() {
+        manager.acquire();
+        for (int i = 0; i < 5; i++) {
+            clock.now += WakeLockManager.HOLD_TIMEOUT_MS - 1000;
+            manager.keepAlive();
+        }
+        manager.release();
+        assertEquals(6, lock.acquires);
+        assertEquals(5 * (WakeLockManager.HOLD_TIMEOUT_MS - 1000), manager.getTotalHeldMs());
+    }
+
+    @Test
+    public void heldTimeIsSplitPerHour() {
+        clock.now = 10 * HOUR - 1000;
+        manager.acquire();
+        clock.now += 3000;
+        manager.release();
+
+        clock.now = 10 * HOUR + 30 * 60000;
+        manager.run(() -> clock.now += 500);
+
+        assertEquals(1000, manager.getHeldMsInHour(9 * HOUR));
+        assertEquals(2500, manager.getHeldMsInHour(10 * HOUR));
+        assertEquals(0, manager.getHeldMsInHour(11 * HOUR));
+
+        // Pasado el anillo, la hora vieja se pisa
+        clock.now = (9 + WakeLockManager.HOURS_KEPT) * HOUR;
+        manager.run(() -> clock.now += 100);
+        assertEquals(0, manager.getHeldMsInHour(9 * HOUR));
+        assertEquals(100, manager.getHeldMsInHour(clock.now));
+    }
+
+    @Test
+    public void duringCourierHourCpuSleepsMostOfTheTime() {
+        // Fix cada 5 s (20 ms), envío cada 15 s (300 ms de red): el lock no pasa del 5%
+        for (long t = 0; t < HOUR; t += 5000) {
+            clock.now = t;
+            manager.run(() -> clock.now += 20);
+            if (t % 15000 == 0) {
+                manager.run(() -> clock.now += 300);
+            }
+        }
+        long held = manager.getHeldMsInHour(0);
+        assertTrue("Retenido " + held + " ms", held < HOUR / 20);
+    }
+
+    @Test
+    public void networkTasksAreCoveredUntilTheyFinish() throws Exception {
+        NetworkExecutor executor = new NetworkExecutor("test", 1, 4);
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        executor.setGuard(new NetworkExecutor.Guard() {
+            @Override
+            public void enter() {
+                manager.acquire();
+            }
+
+            @Override
+            public void exit() {
+                manager.release();
+            }
+        });
+
+        executor.submitOnce("a", () -> {
+            running.countDown();
+            try {
+                finish.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(running.await(1, TimeUnit.SECONDS));
+        executor.submitOnce("b", () -> { });
+        executor.submitOnce("b", () -> { }); // duplicada: no retiene
+        assertEquals(2, manager.getHolders());
+
+        finish.countDown();
+        executor.submitOnce("c", () -> { });
+        executor.shutdown(1000);
+        assertEquals(0, manager.getHolders());
+        assertFalse(lock.held);
+    }
+}
@@ -75,7 +75,13 @@ class FCMNotificationService {
         // NO reproducir sonido para este tipo
         return;
       }
-      
+
+      // ✅ Cambio de estado de pedido: lo aplica el servicio nativo, sin sonido ni notificación
+      if (data.type === 'pedido_estado') {
+        console.log('📨 Estado de pedido recibido:', data.pedidoId, data.estado);
+        return;
+      }
+
       // Para otras notificaciones, reproducir sonido según configuración
       if (this.notificacionesActivas) {
         this.audio.play().catch(console.error);
@@ -1,4 +1,10 @@
 // socket-mock.js - Socket.IO mock mejorado para app móvil
+//
+// ✅ Con el servicio nativo corriendo y su sesión aceptada por el servidor, los
+// pedidos los verifica él (un solo polling, condicional, con el usuario en
+// memoria) y los cambios llegan por el evento 'pedidos' del plugin LocationService.
+// El polling JS (autenticado por CapacitorHttp) sigue siendo la fuente mientras
+// no haya servicio (web o tracking apagado) o el nativo no tenga sesión.
 (function() {
   'use strict';
   
@@ -7,8 +13,10 @@
       this.connected = false;
       this.listeners = {};
       this.pollingInterval = null;
-      this.lastPedidosState = null;
+      this.pedidosPorId = null;     // Map id -> pedido de la última respuesta (null = aún no hay)
       this.usuarioId = null;
+      this.nativeListeners = [];
+      this.nativo = false;          // true: los eventos los manda el servicio nativo
     }
 
     on(event, callback) {
@@ -33,6 +41,11 @@
       console.log('📱 Socket mock conectando...');
       this.connected = true;
       this.triggerEvent('connect');
+      
+      if (window.Capacitor?.Plugins?.LocationService) {
+        this.connectNative();
+        return;
+      }
       this.startPolling();
     }
 
@@ -40,9 +53,96 @@
       console.log('📱 Socket desconectando...');
       this.connected = false;
       this.stopPolling();
+      this.disconnectNative();
       this.triggerEvent('disconnect');
     }
 
+    /**
+     * ✅ Eventos del servicio nativo. trackingState (retenido por el plugin) dice si
+     * el servicio corre y si su polling está autenticado: si no, polling JS.
+     */
+    async connectNative() {
+      const { LocationService } = window.Capacitor.Plugins;
+      try {
+        this.nativeListeners.push(await LocationService.addListener('pedidos', (data) => {
+          this.procesarEventosNativos(data.eventos || []);
+        }));
+        this.nativeListeners.push(await LocationService.addListener('trackingState', (state) => {
+          this.setNativo(state.running && state.pedidosNativos);
+        }));
+        
+        const { running, pedidosNativos } = await LocationService.watchOrders({ watching: true });
+        this.setNativo(running && pedidosNativos);
+      } catch (error) {
+        console.error('❌ Error conectando con el servicio nativo:', error);
+        this.setNativo(false);
+      }
+    }
+
+    async disconnectNative() {
+      const listeners = this.nativeListeners;
+      this.nativeListeners = [];
+      if (listeners.length === 0) return;
+      
+      try {
+        await window.Capacitor.Plugins.LocationService.watchOrders({ watching: false });
+      } catch (error) {
+        console.error('❌ Error avisando al servicio nativo:', error);
+      }
+      for (const listener of listeners) {
+        try {
+          await listener.remove();
+        } catch (error) {
+          console.error('❌ Error quitando listener nativo:', error);
+        }
+      }
+    }
+
+    setNativo(running) {
+      running = !!running;
+      if (!this.connected) return;
+      // Sin cambios (el respaldo arranca una sola vez)
+      if (running === this.nativo && (running || this.pollingInterval)) return;
+      this.nativo = running;
+      
+      if (this.nativo) {
+        console.log('📡 Pedidos desde el servicio nativo');
+        this.stopPolling();
+        this.pedidosPorId = null; // al volver al respaldo, la primera respuesta es la base
+      } else {
+        console.log('🔄 Servicio nativo detenido o sin sesión: polling JS');
+        this.startPolling();
+      }
+    }
+
+    /**
+     * Mismos eventos que el polling JS (y que el socket real)
+     */
+    procesarEventosNativos(eventos) {
+      eventos.forEach(evento => {
+        if (evento.tipo === 'NEW') {
+          console.log(`📦 Nuevo pedido disponible detectado: ${evento.pedidoId}`);
+          this.triggerEvent('nuevo-pedido-geografico', {
+            pedido: evento.pedido,
+            distancia: evento.pedido?.distancia_al_restaurante || 0,
+            conexion_inicial: false
+          });
+        } else if (evento.tipo === 'CHANGED') {
+          console.log(`🔄 Estado cambió: Pedido ${evento.pedidoId} de '${evento.estadoAnterior}' a '${evento.estado}'`);
+          this.triggerEvent('estado-pedido-actualizado', {
+            pedidoId: evento.pedidoId,
+            estadoAnterior: evento.estadoAnterior,
+            nuevoEstado: evento.estado
+          });
+        } else if (evento.tipo === 'REMOVED') {
+          console.log(`🗑️ Pedido removido detectado: ${evento.pedidoId}`);
+          this.triggerEvent('pedido-removido', {
+            pedidoId: evento.pedidoId
+          });
+        }
+      });
+    }
+
     startPolling() {
       if (this.pollingInterval) return;
       
@@ -53,7 +153,7 @@
       
       // Polling regular
       this.pollingInterval = setInterval(() => {
-        if (this.connected) {
+        if (this.connected && !document.hidden) {
           this.checkForUpdates();
         }
       }, 10000); // 10 segundos
@@ -68,43 +168,58 @@
 
     async checkForUpdates() {
       try {
-        // Obtener usuario actual primero
-        const userResponse = await window.apiRequest('/api/usuario-actual');
-        if (!userResponse.ok) return;
-        const usuario = await userResponse.json();
+        // Usuario actual: una vez (o el que mandó join-domiciliario)
+        if (!this.usuarioId) this.usuarioId = await this.obtenerUsuarioId();
+        if (!this.usuarioId) return;
         
         const response = await window.apiRequest('/api/pedidos-domiciliario-con-distancias');
         
         if (!response.ok) {
           console.error('❌ Error en polling:', response.status);
+          if (response.status === 401 || response.status === 403) {
+            this.usuarioId = null;
+            this.pedidosPorId = null;
+          }
           return;
         }
 
         const pedidos = await response.json();
+        if (this.nativo) return; // el servicio arrancó mientras tanto
         
         // Detectar cambios con el ID del usuario
-        this.detectarCambios(pedidos, usuario.id);
+        this.detectarCambios(pedidos, this.usuarioId);
         
       } catch (error) {
         console.error('❌ Error en checkForUpdates:', error);
       }
     }
 
-    detectarCambios(pedidosNuevos, usuarioId) {
-      if (!this.lastPedidosState) {
-        this.lastPedidosState = pedidosNuevos;
-        return;
-      }
+    async obtenerUsuarioId() {
+      const userResponse = await window.apiRequest('/api/usuario-actual');
+      if (!userResponse.ok) return null;
+      const usuario = await userResponse.json();
+      return usuario.id;
+    }
 
-      // Detectar nuevos pedidos disponibles
-      const disponiblesNuevos = pedidosNuevos.filter(p => 
-        p.estado === 'esperando repartidor' &&
-        !this.lastPedidosState.some(old => old.id === p.id && old.estado === 'esperando repartidor')
-      );
+    /**
+     * Diff por id en O(n): un Map de la respuesta anterior en vez de buscar
+     * cada pedido en la lista vieja
+     */
+    detectarCambios(pedidosNuevos, usuarioId) {
+      const anteriores = this.pedidosPorId;
+      const actuales = new Map(pedidosNuevos.map(p => [p.id, p]));
+      this.pedidosPorId = actuales;
+      if (!anteriores) return;
 
-      // Detectar pedidos que cambiaron de estado
+      const nuevos = [];
+      const removidos = [];
       pedidosNuevos.forEach(pedidoNuevo => {
-        const pedidoViejo = this.lastPedidosState.find(p => p.id === pedidoNuevo.id);
+        const pedidoViejo = anteriores.get(pedidoNuevo.id);
+        const esperando = pedidoNuevo.estado === 'esperando repartidor';
+        
+        if (!pedidoViejo && esperando) {
+          nuevos.push(pedidoNuevo);
+        }
         
         if (pedidoViejo && pedidoViejo.estado !== pedidoNuevo.estado) {
           console.log(`🔄 Estado cambió: Pedido ${pedidoNuevo.id} de '${pedidoViejo.estado}' a '${pedidoNuevo.estado}'`);
@@ -114,11 +229,31 @@
             estadoAnterior: pedidoViejo.estado,
             nuevoEstado: pedidoNuevo.estado
           });
+          
+          const esFinal = e => e === 'entregado' || e === 'cancelado';
+          if (esperando) {
+            nuevos.push(pedidoNuevo);
+          } else if (esFinal(pedidoNuevo.estado) && !esFinal(pedidoViejo.estado)) {
+            removidos.push(pedidoNuevo);
+          } else if (pedidoViejo.estado === 'esperando repartidor') {
+            // Si es mi pedido (asignado a mí), NO remover; si lo tomó otro, SÍ
+            if (pedidoNuevo.domiciliario_id === usuarioId) {
+              console.log(`✋ Pedido ${pedidoNuevo.id} es mío, NO remover`);
+            } else {
+              console.log(`🚫 Pedido ${pedidoNuevo.id} tomado por otro, remover`);
+              removidos.push(pedidoNuevo);
+            }
+          }
         }
       });
 
+      // El pedido ya no existe
+      anteriores.forEach((pedidoViejo, id) => {
+        if (!actuales.has(id)) removidos.push(pedidoViejo);
+      });
+
       // Notificar nuevos pedidos disponibles
-      disponiblesNuevos.forEach(pedido => {
+      nuevos.forEach(pedido => {
         console.log(`📦 Nuevo pedido disponible detectado: ${pedido.id}`);
         
         // Simular evento geográfico
@@ -129,42 +264,12 @@
         });
       });
 
-      // ✅ DETECTAR PEDIDOS QUE DEBEN REMOVERSE
-      const pedidosRemovidos = this.lastPedidosState.filter(viejo => {
-        const pedidoNuevo = pedidosNuevos.find(nuevo => nuevo.id === viejo.id);
-        
-        // Caso 1: El pedido ya no existe
-        if (!pedidoNuevo) return true;
-        
-        // Caso 2: Era "esperando repartidor" y ahora está en otro estado
-        // PERO: Solo remover si NO es mi pedido
-        if (viejo.estado === 'esperando repartidor' && pedidoNuevo.estado !== 'esperando repartidor') {
-          // Si es mi pedido (asignado a mí), NO remover
-          if (pedidoNuevo.domiciliario_id === usuarioId) {
-            console.log(`✋ Pedido ${pedidoNuevo.id} es mío, NO remover`);
-            return false;
-          }
-          // Si lo tomó otro domiciliario, SÍ remover
-          console.log(`🚫 Pedido ${pedidoNuevo.id} tomado por otro, remover`);
-          return true;
-        }
-        
-        // Caso 3: Estados finales
-        if (pedidoNuevo.estado === 'entregado' || pedidoNuevo.estado === 'cancelado') {
-          return true;
-        }
-        
-        return false;
-      });
-
-      pedidosRemovidos.forEach(pedido => {
+      removidos.forEach(pedido => {
         console.log(`🗑️ Pedido removido detectado: ${pedido.id}`);
         this.triggerEvent('pedido-removido', {
           pedidoId: pedido.id
         });
       });
-
-      this.lastPedidosState = pedidosNuevos;
     }
 
     triggerEvent(event, data) {
@@ -196,5 +301,14 @@
     return window.socketMockInstance;
   };
 
+  // ✅ Con eventos nativos, lo que pasó en segundo plano no llegó (el plugin no
+  // emite con la WebView oculta): al volver, 'connect' hace que la página recargue
+  document.addEventListener('visibilitychange', () => {
+    const socket = window.socketMockInstance;
+    if (!document.hidden && socket?.connected && socket.nativo) {
+      socket.triggerEvent('connect');
+    }
+  });
+
   console.log('✅ Socket.IO mock v2 cargado');
 })();
\ No newline at end of file
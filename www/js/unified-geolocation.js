@@ -5,6 +5,9 @@ class UnifiedGeolocationService {
     this.isNative = !!window.Capacitor;
     this.isTracking = false;
     this.lastPosition = null;
+    this.nativeState = null;      // { running, pedidosActivos, perfil, pedidosNativos } del servicio nativo
+    this.lastFix = null;          // último fix del servicio nativo, con timestamp
+    this.nativeListeners = [];    // suscripciones a los eventos del plugin LocationService
     this.permissionStatus = localStorage.getItem('geo_permission_status') || 'prompt';
     
     // ✅ Verificar si hay tracking pendiente al cargar
@@ -165,11 +168,51 @@ class UnifiedGeolocationService {
   
     console.log('🚀 Iniciando tracking...');
   
+    // ✅ NATIVO: el servicio foreground es el único que sigue el GPS y sube la ubicación
+    // (la última conocida sale en su primer tick); aquí solo escuchamos sus fixes.
+    // Mientras el servicio no esté autenticado (pedidosNativos) sus subidas no cuentan:
+    // la ubicación inicial la sigue mandando JS, que sí lleva la sesión
+    if (this.isNative && window.Capacitor?.Plugins?.LocationService) {
+      this.isTracking = true;
+      localStorage.setItem('tracking_activo', 'true');
+      await this.subscribeNativeEvents();
+      if (!this.nativeState?.pedidosNativos) {
+        await this.sendInitialPosition();
+      }
+      await this.startNativeService();
+      console.log('✅ Tracking iniciado correctamente (servicio nativo)');
+      return;
+    }
+  
+    // ✅ PASO 1 Y 2: UBICACIÓN INICIAL AL SERVIDOR
+    await this.sendInitialPosition();
+  
+    // ✅ PASO 3: MARCAR COMO ACTIVO
+    this.isTracking = true;
+    localStorage.setItem('tracking_activo', 'true');
+  
+    // ✅ PASO 4: INICIAR SERVICIO FOREGROUND NATIVO
+    if (this.isNative) {
+      await this.startNativeService();
+    } else {
+      await this.startWebTracking();
+    }
+  
+    console.log('✅ Tracking iniciado correctamente');
+  }
+
+  /**
+   * ✅ Obtiene la ubicación y la sube ya, para que el sistema busque pedidos cercanos
+   */
+  async sendInitialPosition() {
     // ✅ PASO 1: OBTENER UBICACIÓN INMEDIATAMENTE
     try {
       console.log('📍 Obteniendo ubicación inicial...');
       
-      if (this.isNative && window.Capacitor?.Plugins?.BackgroundGeolocation) {
+      if (this.isNative && this.lastFix && Date.now() - this.lastFix.timestamp < 60000) {
+        // Fix reciente del servicio nativo: sin otra sesión de GPS
+        console.log('✅ Ubicación nativa retenida:', this.lastPosition);
+      } else if (this.isNative && window.Capacitor?.Plugins?.BackgroundGeolocation) {
         const { BackgroundGeolocation } = window.Capacitor.Plugins;
         const location = await BackgroundGeolocation.getCurrentPosition({
           enableHighAccuracy: true,
@@ -209,19 +252,6 @@ class UnifiedGeolocationService {
       console.error('❌ Error obteniendo ubicación inicial:', error);
       // Continuar de todos modos, el tracking periódico lo intentará
     }
-  
-    // ✅ PASO 3: MARCAR COMO ACTIVO
-    this.isTracking = true;
-    localStorage.setItem('tracking_activo', 'true');
-  
-    // ✅ PASO 4: INICIAR SERVICIO FOREGROUND NATIVO
-    if (this.isNative) {
-      await this.startNativeService();
-    } else {
-      await this.startWebTracking();
-    }
-  
-    console.log('✅ Tracking iniciado correctamente');
   }
 
   async startNativeService() {
@@ -240,6 +270,45 @@ class UnifiedGeolocationService {
     }
   }
 
+  /**
+   * ✅ Fixes y estado del servicio nativo (ya filtrados, como mucho uno cada 2 s
+   * y nada mientras la app está en segundo plano): sin una segunda sesión de GPS
+   */
+  async subscribeNativeEvents() {
+    if (this.nativeListeners.length > 0) return;
+    
+    try {
+      const { LocationService } = window.Capacitor.Plugins;
+      
+      this.nativeListeners.push(await LocationService.addListener('location', (fix) => {
+        this.lastPosition = {
+          latitude: fix.latitude,
+          longitude: fix.longitude
+        };
+        this.lastFix = fix;
+      }));
+      
+      this.nativeListeners.push(await LocationService.addListener('trackingState', (state) => {
+        this.nativeState = state;
+        console.log('📡 Estado del servicio nativo:', state);
+      }));
+    } catch (error) {
+      console.error('❌ Error suscribiendo a eventos nativos:', error);
+    }
+  }
+
+  async unsubscribeNativeEvents() {
+    const listeners = this.nativeListeners;
+    this.nativeListeners = [];
+    for (const listener of listeners) {
+      try {
+        await listener.remove();
+      } catch (error) {
+        console.error('❌ Error quitando listener nativo:', error);
+      }
+    }
+  }
+
   async startWebTracking() {
     this.watcherId = navigator.geolocation.watchPosition(
       (position) => {
@@ -275,6 +344,7 @@ class UnifiedGeolocationService {
   
     // ✅ DETENER SERVICIO NATIVO
     if (this.isNative) {
+      await this.unsubscribeNativeEvents();
       await this.stopNativeService();
     } else if (this.watcherId) {
       navigator.geolocation.clearWatch(this.watcherId);